@@ -27,6 +27,15 @@ public class ExtractingResourceProducer implements ResourceProducer {
 		if(current == null) {
 			return null;
 		}
+		return extract(current, mapper);
+	}
+
+	/**
+	 * Applies the factories of mapper to current, until none applies
+	 * @return the innermost Resource
+	 */
+	public static Resource extract(Resource current, ResourceFactoryMapper mapper)
+	throws ResourceParseException, IOException {
 		while(true) {
 			ResourceFactory f = mapper.mapResourceToFactory(current);
 			if(f == null) {
@@ -0,0 +1,472 @@
+package org.archive.extract;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.GZIPConstants;
+import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.gzip.GZIPMemberIndex;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.format.gzip.GZIPSeriesMember;
+import org.archive.resource.AbstractResource;
+import org.archive.resource.MetaData;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceContainer;
+import org.archive.resource.ResourceFactory;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.resource.arc.ARCResourceFactory;
+import org.archive.resource.gzip.GZIPResource;
+import org.archive.resource.warc.WARCResourceFactory;
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.streamcontext.Stream;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Reads the gzip members of a local .warc.gz, .arc.gz or .gz file on a pool
+ * of threads, rather than one after another as a GZIPResourceContainer
+ * wrapped in an ExtractingResourceProducer does.
+ *
+ * Member starts come from the file's GZIPMemberIndex if there is one, or
+ * else from a scan for the gzip magic, ahead of the consumer. Each worker
+ * inflates the member at one of those offsets, parses it with the envelope
+ * factory and the mapper, as ExtractingResourceProducer would, and reads
+ * the innermost Resource into memory. getNext() returns those Resources in
+ * file order, following the end of each member to the next: a magic found
+ * inside compressed data is never reached, and its (failed) result dropped.
+ *
+ * A Resource larger than maxBufferBytes is not kept by the worker, but
+ * parsed again, streaming, when its turn comes. Resources are returned
+ * already extracted, so wrapping this in an ExtractingResourceProducer
+ * changes nothing.
+ */
+public class ParallelExtractingResourceProducer implements ResourceProducer,
+	ResourceContainer, GZIPConstants {
+	private static final Logger LOG =
+		Logger.getLogger(ParallelExtractingResourceProducer.class.getName());
+
+	public final static int DEFAULT_MAX_BUFFER_BYTES = 8 * 1024 * 1024;
+	private final static int SCAN_BUFFER_SIZE = 1024 * 1024;
+
+	protected File file;
+	protected String name;
+	protected long length;
+	protected boolean strict = false;
+	protected int maxPending;
+	protected int maxBufferBytes = DEFAULT_MAX_BUFFER_BYTES;
+
+	protected ExecutorService executor;
+	protected ThreadLocal<Extractor> extractors = new ThreadLocal<Extractor>() {
+		@Override
+		protected Extractor initialValue() {
+			return new Extractor(newEnvelopeFactory(), newMapper());
+		}
+	};
+
+	protected RandomAccessFile scanFile;
+	protected long scanOffset = 0;
+	protected GZIPMemberIndex index;
+	protected int indexPos = 0;
+	protected Deque<Long> unsubmitted = new ArrayDeque<Long>();
+	protected TreeMap<Long, Future<Member>> pending = new TreeMap<Long, Future<Member>>();
+
+	protected long next = 0;
+	protected boolean resync = false;
+	protected long currentStartOffset = 0;
+	protected Stream currentStream = null;
+
+	// The factories are not thread safe: one set per thread
+	protected static class Extractor
+	{
+		protected ResourceFactory envelopeFactory;
+		protected ResourceFactoryMapper mapper;
+
+		protected Extractor(ResourceFactory envelopeFactory, ResourceFactoryMapper mapper)
+		{
+			this.envelopeFactory = envelopeFactory;
+			this.mapper = mapper;
+		}
+	}
+
+	// The outcome of reading the member at one offset
+	protected static class Member
+	{
+		protected long end = -1;
+		protected Resource resource;
+		protected Exception error;
+	}
+
+	protected static class BufferedResource extends AbstractResource
+	{
+		protected byte[] data;
+
+		protected BufferedResource(Resource resource, byte[] data)
+		{
+			super(resource.getMetaData(), resource.getContainer());
+			this.data = data;
+		}
+
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(data);
+		}
+	}
+
+	public ParallelExtractingResourceProducer(File file, int numThreads) throws IOException
+	{
+		this.file = file;
+		this.name = file.getName();
+		this.scanFile = new RandomAccessFile(file, "r");
+		this.length = scanFile.length();
+		this.index = GZIPMemberIndex.forFile(file);
+		this.maxPending = numThreads * 4;
+
+		executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("ParallelExtractingResourceProducer-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * @return the factory for the records of each member, null for none.
+	 * Called once per thread
+	 */
+	protected ResourceFactory newEnvelopeFactory()
+	{
+		if (name.endsWith(".warc.gz") || name.endsWith(".wat.gz")) {
+			return new WARCResourceFactory();
+		} else if (name.endsWith(".arc.gz")) {
+			return new ARCResourceFactory();
+		}
+		return null;
+	}
+
+	/**
+	 * Called once per thread
+	 */
+	protected ResourceFactoryMapper newMapper()
+	{
+		return new ExtractingResourceFactoryMapper();
+	}
+
+	protected Stream openStream(long offset) throws IOException
+	{
+		return new RandomAccessFileStream(file, offset);
+	}
+
+	public Resource getNext() throws ResourceParseException, IOException {
+		closeCurrent();
+
+		while (true) {
+			fill();
+
+			if (next >= length) {
+				return null;
+			}
+
+			// Magic inside compressed data, skipped over
+			while (!pending.isEmpty() && (pending.firstKey() < next)) {
+				pending.pollFirstEntry().getValue().cancel(true);
+			}
+
+			if (pending.isEmpty()) {
+				if (!unsubmitted.isEmpty()) {
+					continue;
+				}
+				LOG.warning(String.format("No gzip member in the last %d bytes of %s", length - next, name));
+				next = length;
+				return null;
+			}
+
+			long start = pending.firstKey();
+
+			if (start != next) {
+				long skipped = start - next;
+				next = start;
+
+				if (resync) {
+					resync = false;
+				} else if (strict) {
+					throw new GZIPFormatException("Not aligned at gzip start: " + name + " at offset " + (start - skipped));
+				} else {
+					LOG.warning(String.format("Skipped %d bytes in (%s) before finding magic at offset(%d)", skipped, name, start));
+				}
+			}
+
+			Member member = await(pending.remove(start));
+			currentStartOffset = start;
+			resync = false;
+
+			if (member.error != null) {
+				if (member.end >= 0) {
+					next = member.end;
+				} else {
+					// Find the next member from the scan
+					next = start + 1;
+					resync = true;
+				}
+				throw rethrow(member.error);
+			}
+
+			next = member.end;
+
+			if (member.resource != null) {
+				return member.resource;
+			}
+
+			// Too large to hold: parse it again, streaming
+			currentStream = openStream(start);
+			GZIPMemberSeries series = new GZIPMemberSeries(currentStream, name, start, true);
+			return extract(series.getNextMember(), extractors.get());
+		}
+	}
+
+	protected Member await(Future<Member> future) throws IOException
+	{
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+	}
+
+	protected IOException rethrow(Exception e) throws ResourceParseException
+	{
+		if (e instanceof ResourceParseException) {
+			throw (ResourceParseException)e;
+		} else if (e instanceof IOException) {
+			return (IOException)e;
+		} else if (e instanceof RuntimeException) {
+			throw (RuntimeException)e;
+		}
+		return new IOException(e);
+	}
+
+	// Submits members to read, up to maxPending, scanning ahead as needed
+	protected void fill() throws IOException
+	{
+		while (pending.size() < maxPending) {
+			if (unsubmitted.isEmpty()) {
+				if (scanOffset >= length) {
+					return;
+				}
+				scan();
+				continue;
+			}
+
+			final long offset = unsubmitted.pollFirst();
+
+			if (offset < next) {
+				continue;
+			}
+
+			pending.put(offset, executor.submit(new Callable<Member>() {
+				public Member call() {
+					return read(offset);
+				}
+			}));
+		}
+	}
+
+	protected void scan() throws IOException
+	{
+		if (index != null) {
+			// Exact starts: one chunk at a time, as they are only longs
+			int end = Math.min(indexPos + SCAN_BUFFER_SIZE / 8, index.size());
+			for (; indexPos < end; indexPos++) {
+				unsubmitted.addLast(index.getStart(indexPos));
+			}
+			scanOffset = (indexPos < index.size()) ? index.getStart(indexPos) : length;
+			return;
+		}
+
+		byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+		scanFile.seek(scanOffset);
+		int size = 0;
+
+		while (size < buffer.length) {
+			int amt = scanFile.read(buffer, size, buffer.length - size);
+			if (amt < 0) {
+				break;
+			}
+			size += amt;
+		}
+
+		for (int i = 0; i + 3 < size; i++) {
+			if (((buffer[i] & 0xff) == GZIP_MAGIC_ONE) &&
+					((buffer[i + 1] & 0xff) == GZIP_MAGIC_TWO) &&
+					((buffer[i + 2] & 0xff) == GZIP_COMPRESSION_METHOD_DEFLATE) &&
+					((buffer[i + 3] & ~GZIP_FLAG_VALID_BITS) == 0)) {
+				unsubmitted.addLast(scanOffset + i);
+			}
+		}
+
+		// The next scan overlaps, for magic across the boundary
+		if (scanOffset + size >= length) {
+			scanOffset = length;
+		} else {
+			scanOffset += size - 3;
+		}
+	}
+
+	// On a worker thread
+	protected Member read(long offset)
+	{
+		Member result = new Member();
+		Stream stream = null;
+
+		try {
+			stream = openStream(offset);
+			GZIPMemberSeries series = new GZIPMemberSeries(stream, name, offset, true);
+			GZIPSeriesMember member = series.getNextMember();
+
+			if (member == null) {
+				throw new GZIPFormatException("No gzip member at " + offset + " in " + name);
+			}
+
+			try {
+				Resource resource = extract(member, extractors.get());
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+				if (copy(resource.getInputStream(), data)) {
+					result.resource = new BufferedResource(resource, data.toByteArray());
+				}
+			} catch (Exception e) {
+				result.error = e;
+			}
+
+			member.skipMember();
+			result.end = series.getOffset();
+
+		} catch (Exception e) {
+			if (result.error == null) {
+				result.error = e;
+			}
+		} finally {
+			closeQuietly(stream);
+		}
+
+		return result;
+	}
+
+	protected Resource extract(GZIPSeriesMember member, Extractor extractor)
+	throws ResourceParseException, IOException {
+		Resource resource = new GZIPResource(new MetaData(), this, member);
+
+		if (extractor.envelopeFactory != null) {
+			resource = extractor.envelopeFactory.getResource(resource.getInputStream(),
+					resource.getMetaData(), resource.getContainer());
+		}
+
+		return ExtractingResourceProducer.extract(resource, extractor.mapper);
+	}
+
+	// To EOF, or false past maxBufferBytes
+	protected boolean copy(InputStream in, ByteArrayOutputStream out) throws IOException
+	{
+		byte[] buffer = new byte[4096];
+		int amt;
+
+		while ((amt = in.read(buffer, 0, buffer.length)) != -1) {
+			if (out.size() + amt > maxBufferBytes) {
+				if (LOG.isLoggable(Level.FINE)) {
+					LOG.fine("Over " + maxBufferBytes + " bytes, left for streaming");
+				}
+				return false;
+			}
+			out.write(buffer, 0, amt);
+		}
+
+		return true;
+	}
+
+	protected void closeCurrent()
+	{
+		closeQuietly(currentStream);
+		currentStream = null;
+	}
+
+	protected void closeQuietly(Stream stream)
+	{
+		if (stream == null) {
+			return;
+		}
+
+		try {
+			stream.close();
+		} catch (IOException e) {
+			LOG.warning(e.toString());
+		}
+	}
+
+	public void close() throws IOException {
+		executor.shutdownNow();
+
+		for (Map.Entry<Long, Future<Member>> entry : pending.entrySet()) {
+			entry.getValue().cancel(true);
+		}
+		pending.clear();
+
+		closeCurrent();
+		scanFile.close();
+	}
+
+	public String getContext() {
+		return String.format("Context(%s)(%d)", name, currentStartOffset);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public boolean isCompressed() {
+		return true;
+	}
+
+	public boolean isStrict() {
+		return strict;
+	}
+
+	/**
+	 * @param strict throw on bytes between members, rather than skip them
+	 */
+	public void setStrict(boolean strict) {
+		this.strict = strict;
+	}
+
+	public int getMaxPending() {
+		return maxPending;
+	}
+
+	/**
+	 * @param maxPending members read ahead of the consumer at most, each
+	 * holding up to maxBufferBytes
+	 */
+	public void setMaxPending(int maxPending) {
+		this.maxPending = maxPending;
+	}
+
+	public int getMaxBufferBytes() {
+		return maxBufferBytes;
+	}
+
+	public void setMaxBufferBytes(int maxBufferBytes) {
+		this.maxBufferBytes = maxBufferBytes;
+	}
+}
@@ -83,4 +83,22 @@ public class ProducerUtils {
 	    }
 	    return producer;
 	}
+
+	/**
+	 * @return a producer reading the members of a local gzip file on
+	 * numThreads threads, already extracted, or null for other paths
+	 */
+	public static ResourceProducer getParallelProducer(String path, int numThreads) throws IOException {
+		if(path.startsWith("hdfs://") || path.startsWith("http://") || !path.endsWith(".gz")) {
+			return null;
+		}
+		File file = new File(path);
+		if(!(file.exists() && file.canRead())) {
+			return null;
+		}
+		ParallelExtractingResourceProducer producer =
+			new ParallelExtractingResourceProducer(file, numThreads);
+		producer.setStrict(STRICT_GZ);
+		return producer;
+	}
 }
@@ -53,6 +53,10 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		System.err.println("\t\t\t (note that column 1 is NOT standard Wayback canonicalized)\n");
 		System.err.println("\t\t-wat\tembed JSON output in a compressed WARC" +
 				"wrapper, for storage, or sharing.");
+		System.err.println("\tOPT can be preceded by:");
+		System.err.println("\t\t-strict\tstop at gzip errors");
+		System.err.println("\t\t-threads N\tread the members of a local gzip " +
+				"SRC on N threads");
 		return exitCode;
 	}
 
@@ -74,7 +78,7 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 		if(args.length < 1) {
 			return USAGE(1);
 		}
-		if(args.length > 3) {
+		if(args.length > 5) {
 			return USAGE(1);
 		}
 		int max = Integer.MAX_VALUE;
@@ -82,11 +86,20 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    Logger.getLogger("org.archive").setLevel(Level.WARNING);
 	    ExtractorOutput out;
 	    int arg = 0;
-	    if(args.length > 0) {
-	    	if(args[0].equals("-strict")) {
+	    int threads = 0;
+	    while(arg < args.length - 1) {
+	    	if(args[arg].equals("-strict")) {
 	    		ProducerUtils.STRICT_GZ = true;
 	    		arg++;
-	    	}	   
+	    	} else if(args[arg].equals("-threads")) {
+	    		threads = Integer.parseInt(args[arg+1]);
+	    		arg += 2;
+	    	} else {
+	    		break;
+	    	}
+	    }
+	    if(arg >= args.length) {
+	    	return USAGE(1);
 	    }
 	    String path = args[arg];
 	    if(args.length == arg + 2) {
@@ -108,7 +121,13 @@ public class ResourceExtractor implements ResourceConstants, Tool {
 	    } else {
 	    	out = new DumpingExtractorOutput(os);
 	    }
-	    ResourceProducer producer = ProducerUtils.getProducer(path);
+	    ResourceProducer producer = null;
+	    if(threads > 1) {
+	    	producer = ProducerUtils.getParallelProducer(path, threads);
+	    }
+	    if(producer == null) {
+	    	producer = ProducerUtils.getProducer(path);
+	    }
 	    if(producer == null) {
 	    	return USAGE(1);
 	    }
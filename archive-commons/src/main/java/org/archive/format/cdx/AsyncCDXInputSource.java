@@ -0,0 +1,333 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.archive.format.gzip.zipnum.ZipNumBlockLoader;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Multiplexes the queries of a CDXInputSource over a small pool of threads,
+ * pushing the lines of each to a LineHandler, or collecting them into a list.
+ *
+ * A query does not keep a thread to itself: each task either opens the
+ * query, or hands at most linesPerTask lines to its handler, then puts the
+ * query back at the end of the queue. Many long queries so take turns on a
+ * few threads, and a cancelled query stops at its next task.
+ *
+ * This is not non-blocking I/O: Java 6 has no asynchronous file channel, and
+ * the HTTP and HDFS readers block, so a task still blocks its thread while it
+ * opens a query or reads the next block, but for one block at most.
+ *
+ * At most numThreads + maxQueued queries run at once, further queries fail
+ * at once with a RejectedExecutionException rather than piling up.
+ */
+public class AsyncCDXInputSource {
+
+	public final static int DEFAULT_NUM_THREADS = 8;
+	public final static int DEFAULT_MAX_QUEUED = 10000;
+	public final static int DEFAULT_LINES_PER_TASK = 256;
+
+	protected CDXInputSource source;
+	protected ExecutorService executor;
+	protected int maxQueries;
+	protected int linesPerTask = DEFAULT_LINES_PER_TASK;
+
+	protected AtomicInteger numRunning = new AtomicInteger();
+	protected AtomicLong numQueries = new AtomicLong();
+	protected AtomicLong numRejected = new AtomicLong();
+
+	/**
+	 * Receives the lines of a query, on a pool thread
+	 */
+	public interface LineHandler
+	{
+		/**
+		 * @return false to end the query
+		 */
+		public boolean handle(String line) throws IOException;
+	}
+
+	public AsyncCDXInputSource(CDXInputSource source)
+	{
+		this(source, DEFAULT_NUM_THREADS, DEFAULT_MAX_QUEUED);
+	}
+
+	public AsyncCDXInputSource(CDXInputSource source, int numThreads, int maxQueued)
+	{
+		this(source, new ThreadPoolExecutor(numThreads, numThreads,
+				0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactoryBuilder().setNameFormat("AsyncCDXInputSource-%d").setDaemon(true).build()),
+				numThreads + maxQueued);
+	}
+
+	public AsyncCDXInputSource(CDXInputSource source, ExecutorService executor)
+	{
+		this(source, executor, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @param executor runs the tasks of each query in turn, and must not
+	 * reject them while open
+	 * @param maxQueries queries to run at once at most
+	 */
+	public AsyncCDXInputSource(CDXInputSource source, ExecutorService executor, int maxQueries)
+	{
+		this.source = source;
+		this.executor = executor;
+		this.maxQueries = maxQueries;
+	}
+
+	/**
+	 * @return the number of lines handled
+	 */
+	public ListenableFuture<Integer> query(String key, String start, boolean exact,
+			ZipNumParams params, LineHandler handler)
+	{
+		numQueries.incrementAndGet();
+
+		if (numRunning.incrementAndGet() > maxQueries) {
+			numRunning.decrementAndGet();
+			numRejected.incrementAndGet();
+			return Futures.immediateFailedFuture(
+					new RejectedExecutionException("Over " + maxQueries + " queries running"));
+		}
+
+		Query query = new Query(key, start, exact, params, handler);
+
+		try {
+			executor.execute(query);
+		} catch (RejectedExecutionException e) {
+			numRunning.decrementAndGet();
+			numRejected.incrementAndGet();
+			return Futures.immediateFailedFuture(e);
+		}
+
+		query.addListener(new Runnable() {
+			public void run() {
+				numRunning.decrementAndGet();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+
+		return query;
+	}
+
+	/**
+	 * @param maxLines lines to collect at most, or 0 for all
+	 */
+	public ListenableFuture<List<String>> query(String key, String start, boolean exact,
+			ZipNumParams params, final int maxLines)
+	{
+		final List<String> result = new ArrayList<String>();
+
+		ListenableFuture<Integer> count = query(key, start, exact, params, new LineHandler() {
+			public boolean handle(String line) {
+				result.add(line);
+				return (maxLines <= 0) || (result.size() < maxLines);
+			}
+		});
+
+		return Futures.transform(count, new Function<Integer, List<String>>() {
+			public List<String> apply(Integer numLines) {
+				return result;
+			}
+		});
+	}
+
+	/**
+	 * One query, run as a series of tasks, one at a time. The executor's
+	 * queue passes the iterator from each task to the next.
+	 */
+	protected class Query extends AbstractFuture<Integer> implements Runnable
+	{
+		protected String key;
+		protected String start;
+		protected boolean exact;
+		protected ZipNumParams params;
+		protected LineHandler handler;
+
+		protected CloseableIterator<String> lines = null;
+		protected int count = 0;
+		protected Thread runner = null;
+
+		protected Query(String key, String start, boolean exact, ZipNumParams params, LineHandler handler)
+		{
+			this.key = key;
+			this.start = start;
+			this.exact = exact;
+			this.params = params;
+			this.handler = handler;
+		}
+
+		public void run()
+		{
+			synchronized (this) {
+				if (isDone()) {
+					closeQuietly();
+					return;
+				}
+
+				runner = Thread.currentThread();
+			}
+
+			boolean more = false;
+
+			try {
+				more = step();
+			} catch (Throwable e) {
+				closeQuietly();
+				setException(e);
+			} finally {
+				synchronized (this) {
+					runner = null;
+				}
+
+				// The interrupt for a cancel that came as the task ended
+				if (isCancelled()) {
+					Thread.interrupted();
+				}
+
+				// The readers belong to the iterator, not to this thread
+				ZipNumBlockLoader.releaseReaders();
+			}
+
+			if (!more) {
+				return;
+			}
+
+			if (isDone()) {
+				closeQuietly();
+				return;
+			}
+
+			try {
+				executor.execute(this);
+			} catch (RejectedExecutionException e) {
+				abort(e);
+			}
+		}
+
+		/**
+		 * Opens the query, or handles up to linesPerTask lines
+		 * @return true if there is more to do
+		 */
+		protected boolean step() throws IOException
+		{
+			if (lines == null) {
+				lines = source.getCDXIterator(key, start, exact, params);
+				return true;
+			}
+
+			for (int i = 0; i < linesPerTask; i++) {
+				if (isDone()) {
+					return false;
+				}
+
+				if (!lines.hasNext()) {
+					close();
+					set(count);
+					return false;
+				}
+
+				count++;
+
+				if (!handler.handle(lines.next())) {
+					close();
+					set(count);
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		protected void abort(Throwable e)
+		{
+			closeQuietly();
+			setException(e);
+		}
+
+		@Override
+		protected synchronized void interruptTask()
+		{
+			if (runner != null) {
+				runner.interrupt();
+			}
+		}
+
+		protected void close() throws IOException
+		{
+			CloseableIterator<String> toClose = lines;
+			lines = null;
+
+			if (toClose != null) {
+				toClose.close();
+			}
+		}
+
+		protected void closeQuietly()
+		{
+			try {
+				close();
+			} catch (IOException e) {
+				// Already failed or cancelled
+			}
+		}
+	}
+
+	/**
+	 * Stops the pool, interrupting the running queries, and fails the
+	 * queries waiting for their next task
+	 */
+	public void close()
+	{
+		for (Runnable task : executor.shutdownNow()) {
+			if (task instanceof Query) {
+				((Query)task).abort(new RejectedExecutionException("Closed"));
+			}
+		}
+	}
+
+	public CDXInputSource getSource() {
+		return source;
+	}
+
+	public int getLinesPerTask() {
+		return linesPerTask;
+	}
+
+	/**
+	 * @param linesPerTask lines a query hands on before it lets the next query
+	 * have the thread
+	 */
+	public void setLinesPerTask(int linesPerTask) {
+		this.linesPerTask = Math.max(linesPerTask, 1);
+	}
+
+	public long getNumQueries() {
+		return numQueries.get();
+	}
+
+	/**
+	 * @return queries refused as too many were running
+	 */
+	public long getNumRejected() {
+		return numRejected.get();
+	}
+}
@@ -0,0 +1,750 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.archive.format.gzip.zipnum.LocalClusterBuilder;
+import org.archive.format.gzip.zipnum.ZipNumBlockLoader;
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.binsearch.ByteLineReader;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.LoserTreeMergeIterator;
+
+/**
+ * A base index plus small delta clusters and tombstones kept in deltaDir,
+ * merged at query time, so new CDX is searchable as soon as its delta is
+ * built instead of after a merge of the whole base cluster.
+ *
+ * Every entry of deltaDir is numbered with a generation, newer is higher,
+ * the base being generation 0:
+ * <ul>
+ * <li>NNNNNNNNNNNN/ a ZipNum cluster (ALL.summary and parts)</li>
+ * <li>NNNNNNNNNNNN-MMMMMMMMMMMM/ a ZipNum cluster compacted from the deltas of
+ * generations N to M, which it replaces. Its lines are of generation M. Its
+ * INPUTS file names the deltas it was compacted from.</li>
+ * <li>NNNNNNNNNNNN.tomb one tombstone per line: a full CDX line, or the first
+ * fields of the lines to remove (eg. the url key, or url key and timestamp)</li>
+ * </ul>
+ * A tombstone hides matching lines of older generations only, so a url can be
+ * deleted and added again. Lines present in several generations are returned
+ * once.
+ *
+ * Entries are written under a .tmp name and renamed, and deltaDir is
+ * rescanned every refreshIntervalMs. See DeltaCompactor for merging deltas.
+ */
+public class DeltaCDXInputSource implements CDXInputSource {
+
+	private final static Logger LOGGER = Logger.getLogger(DeltaCDXInputSource.class.getName());
+
+	public final static String TOMBSTONE_SUFFIX = ".tomb";
+	public final static String TMP_SUFFIX = ".tmp";
+	public final static String INPUTS_NAME = "INPUTS";
+
+	public final static long DEFAULT_REFRESH_INTERVAL_MS = 60000;
+
+	protected final static Pattern ENTRY_PATTERN = Pattern.compile("(\\d+)(?:-(\\d+)|(\\.tomb))?");
+
+	protected CDXInputSource base;
+	protected File deltaDir;
+	protected long refreshIntervalMs = DEFAULT_REFRESH_INTERVAL_MS;
+
+	// Shared by the delta clusters
+	protected ZipNumBlockLoader blockLoader = new ZipNumBlockLoader();
+
+	protected volatile Snapshot snapshot = new Snapshot();
+	protected volatile long lastRefresh = 0;
+	protected long reservedGeneration = 0;
+	
+	// Handed out by nextGeneration(), not committed yet
+	protected Set<Long> reserved = new HashSet<Long>();
+
+	public static class Delta
+	{
+		protected long firstGeneration;
+		protected long generation;
+		protected File dir;
+		protected ZipNumCluster cluster;
+		protected long numBytes;
+		
+		// Generation ranges compacted into this delta, or null if not known
+		protected List<long[]> inputs;
+
+		/**
+		 * @return the oldest generation compacted into this delta
+		 */
+		public long getFirstGeneration() {
+			return firstGeneration;
+		}
+
+		public long getGeneration() {
+			return generation;
+		}
+
+		public File getDir() {
+			return dir;
+		}
+
+		public ZipNumCluster getCluster() {
+			return cluster;
+		}
+
+		/**
+		 * @return compressed size of the parts
+		 */
+		public long getNumBytes() {
+			return numBytes;
+		}
+
+		@Override
+		public String toString() {
+			return dir.getPath();
+		}
+	}
+
+	// Contents of deltaDir as of the last refresh, never modified
+	protected static class Snapshot
+	{
+		List<Delta> deltas = Collections.emptyList();
+
+		// Deltas replaced by a compacted one, still to delete
+		List<Delta> superseded = Collections.emptyList();
+
+		// Tombstone -> its newest generation
+		Map<String, Long> tombstones = Collections.emptyMap();
+		
+		Set<Long> tombstoneGenerations = Collections.emptySet();
+
+		long maxGeneration = 0;
+	}
+
+	// A line and the generation it came from
+	protected static class GenLine
+	{
+		String line;
+		long generation;
+
+		GenLine(String line, long generation)
+		{
+			this.line = line;
+			this.generation = generation;
+		}
+	}
+
+	protected final static Comparator<GenLine> GEN_LINE_COMPARATOR = new Comparator<GenLine>() {
+		public int compare(GenLine l1, GenLine l2) {
+			return l1.line.compareTo(l2.line);
+		}
+	};
+
+	public DeltaCDXInputSource()
+	{
+
+	}
+
+	public DeltaCDXInputSource(CDXInputSource base, File deltaDir) throws IOException
+	{
+		this.base = base;
+		this.deltaDir = deltaDir;
+		init();
+	}
+
+	public void init() throws IOException
+	{
+		if (!deltaDir.isDirectory() && !deltaDir.mkdirs()) {
+			throw new IOException("Could not create " + deltaDir);
+		}
+
+		refresh();
+	}
+
+	/**
+	 * Rescans deltaDir for new and removed deltas and tombstones
+	 */
+	public synchronized void refresh() throws IOException
+	{
+		Map<String, Delta> prevDeltas = new HashMap<String, Delta>();
+
+		for (Delta delta : snapshot.deltas) {
+			prevDeltas.put(delta.dir.getName(), delta);
+		}
+		for (Delta delta : snapshot.superseded) {
+			prevDeltas.put(delta.dir.getName(), delta);
+		}
+
+		Snapshot next = new Snapshot();
+		List<Delta> found = new ArrayList<Delta>();
+		Map<String, Long> tombstones = new HashMap<String, Long>();
+		Set<Long> tombstoneGenerations = new HashSet<Long>();
+
+		File[] files = deltaDir.listFiles();
+
+		if (files == null) {
+			throw new IOException("Could not list " + deltaDir);
+		}
+
+		for (File file : files) {
+			Matcher m = ENTRY_PATTERN.matcher(file.getName());
+
+			if (!m.matches()) {
+				continue;
+			}
+
+			long generation = Long.parseLong(m.group(1));
+
+			if (m.group(3) != null) {
+				readTombstones(file, generation, tombstones);
+				tombstoneGenerations.add(generation);
+			} else if (file.isDirectory()) {
+				Delta delta = prevDeltas.get(file.getName());
+
+				if (delta == null) {
+					long lastGeneration = ((m.group(2) != null) ? Long.parseLong(m.group(2)) : generation);
+					delta = openDelta(file, generation, lastGeneration);
+				}
+
+				found.add(delta);
+				generation = delta.generation;
+			} else {
+				continue;
+			}
+
+			next.maxGeneration = Math.max(next.maxGeneration, generation);
+		}
+
+		// Oldest first, widest first for each start
+		Collections.sort(found, new Comparator<Delta>() {
+			public int compare(Delta d1, Delta d2) {
+				if (d1.firstGeneration != d2.firstGeneration) {
+					return (d1.firstGeneration < d2.firstGeneration) ? -1 : 1;
+				}
+				return (d1.generation > d2.generation) ? -1 : ((d1.generation == d2.generation) ? 0 : 1);
+			}
+		});
+
+		List<Delta> deltas = new ArrayList<Delta>();
+		List<Delta> superseded = new ArrayList<Delta>();
+
+		for (Delta delta : found) {
+			boolean replaced = false;
+
+			for (Delta other : found) {
+				if (compactedInto(delta, other)) {
+					replaced = true;
+					break;
+				}
+			}
+
+			if (replaced) {
+				superseded.add(delta);
+			} else {
+				deltas.add(delta);
+			}
+		}
+
+		next.deltas = Collections.unmodifiableList(deltas);
+		next.superseded = Collections.unmodifiableList(superseded);
+		next.tombstones = tombstones;
+		next.tombstoneGenerations = Collections.unmodifiableSet(tombstoneGenerations);
+
+		snapshot = next;
+		lastRefresh = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return true if delta is one of the deltas compacted into other. A
+	 * delta committed within the range of a compacted one, after it was
+	 * built, is not: its generation was still being written.
+	 */
+	protected static boolean compactedInto(Delta delta, Delta other)
+	{
+		if ((delta == other) || (delta.firstGeneration < other.firstGeneration) || (delta.generation > other.generation)) {
+			return false;
+		}
+
+		// Compacted before the inputs were recorded
+		if (other.inputs == null) {
+			return true;
+		}
+
+		for (long[] input : other.inputs) {
+			if ((delta.firstGeneration >= input[0]) && (delta.generation <= input[1])) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	protected Delta openDelta(File dir, long firstGeneration, long generation) throws IOException
+	{
+		Delta delta = new Delta();
+		delta.firstGeneration = firstGeneration;
+		delta.generation = generation;
+		delta.dir = dir;
+
+		if (firstGeneration != generation) {
+			delta.inputs = readInputs(dir);
+		}
+
+		for (File part : getParts(dir)) {
+			delta.numBytes += part.length();
+		}
+
+		delta.cluster = new ZipNumCluster();
+		delta.cluster.setSummaryFile(new File(dir, LocalClusterBuilder.SUMMARY_NAME).getAbsolutePath());
+		delta.cluster.setBlockLoader(blockLoader);
+		delta.cluster.init();
+		return delta;
+	}
+
+	/**
+	 * Releases the readers of a delta no longer in use
+	 */
+	public void closeDelta(Delta delta)
+	{
+		for (File part : getParts(delta.dir)) {
+			try {
+				blockLoader.closeFileFactory(part.getPath());
+			} catch (IOException io) {
+				LOGGER.warning(io.toString());
+			}
+		}
+	}
+
+	protected static List<File> getParts(File dir)
+	{
+		List<File> parts = new ArrayList<File>();
+		File[] files = dir.listFiles();
+
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith("part-") && file.getName().endsWith(".gz")) {
+					parts.add(file);
+				}
+			}
+		}
+
+		return parts;
+	}
+
+	/**
+	 * Records the deltas compacted into the delta being built in dir
+	 */
+	public static void writeInputs(File dir, List<Delta> inputs) throws IOException
+	{
+		PrintWriter pw = new PrintWriter(new File(dir, INPUTS_NAME), "UTF-8");
+
+		try {
+			for (Delta input : inputs) {
+				pw.print(input.dir.getName());
+				pw.print('\n');
+			}
+		} finally {
+			pw.close();
+		}
+	}
+
+	/**
+	 * @return the generation ranges in dir's INPUTS, or null if it has none
+	 */
+	protected static List<long[]> readInputs(File dir) throws IOException
+	{
+		File file = new File(dir, INPUTS_NAME);
+
+		if (!file.isFile()) {
+			return null;
+		}
+
+		List<long[]> inputs = new ArrayList<long[]>();
+		InputStream in = new FileInputStream(file);
+
+		try {
+			ByteLineReader reader = new ByteLineReader(in, 8192);
+			byte[] bytes;
+
+			while ((bytes = reader.readLineBytes()) != null) {
+				Matcher m = ENTRY_PATTERN.matcher(new String(bytes, FieldPredicate.UTF8));
+
+				if (m.matches() && (m.group(3) == null)) {
+					long first = Long.parseLong(m.group(1));
+					inputs.add(new long[]{first, ((m.group(2) != null) ? Long.parseLong(m.group(2)) : first)});
+				}
+			}
+		} finally {
+			in.close();
+		}
+
+		return inputs;
+	}
+
+	protected static void readTombstones(File file, long generation, Map<String, Long> tombstones) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+
+		try {
+			ByteLineReader reader = new ByteLineReader(in, 8192);
+			byte[] bytes;
+
+			while ((bytes = reader.readLineBytes()) != null) {
+				if (bytes.length == 0) {
+					continue;
+				}
+
+				String tombstone = new String(bytes, FieldPredicate.UTF8);
+				Long prev = tombstones.get(tombstone);
+
+				if ((prev == null) || (prev < generation)) {
+					tombstones.put(tombstone, generation);
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	protected void maybeRefresh()
+	{
+		if ((refreshIntervalMs <= 0) || ((System.currentTimeMillis() - lastRefresh) < refreshIntervalMs)) {
+			return;
+		}
+
+		try {
+			refresh();
+		} catch (IOException io) {
+			LOGGER.warning("Could not refresh " + deltaDir + ": " + io);
+			lastRefresh = System.currentTimeMillis();
+		}
+	}
+
+	public CloseableIterator<String> getCDXIterator(String key, String prefix, boolean exact, ZipNumParams params) throws IOException {
+		maybeRefresh();
+
+		Snapshot snap = snapshot;
+		LoserTreeMergeIterator<GenLine> merged = new LoserTreeMergeIterator<GenLine>(GEN_LINE_COMPARATOR);
+
+		try {
+			if (base != null) {
+				merged.addIterator(new GenIterator(base.getCDXIterator(key, prefix, exact, params), 0));
+			}
+
+			for (Delta delta : snap.deltas) {
+				merged.addIterator(new GenIterator(delta.cluster.getCDXIterator(key, prefix, exact, params), delta.generation));
+			}
+		} catch (IOException io) {
+			merged.close();
+			throw io;
+		}
+
+		return new DeltaMergeIterator(merged, snap.tombstones);
+	}
+
+	/**
+	 * @return all lines of the given deltas, with the tombstones of the
+	 * current snapshot applied, as for a query
+	 */
+	public CloseableIterator<String> getDeltaIterator(List<Delta> deltas) throws IOException
+	{
+		LoserTreeMergeIterator<GenLine> merged = new LoserTreeMergeIterator<GenLine>(GEN_LINE_COMPARATOR);
+
+		try {
+			for (Delta delta : deltas) {
+				merged.addIterator(new GenIterator(delta.cluster.getCDXIterator("", "", false, new ZipNumParams()), delta.generation));
+			}
+		} catch (IOException io) {
+			merged.close();
+			throw io;
+		}
+
+		return new DeltaMergeIterator(merged, snapshot.tombstones);
+	}
+
+	protected static class GenIterator extends AbstractPeekableIterator<GenLine>
+	{
+		CloseableIterator<String> inner;
+		long generation;
+
+		GenIterator(CloseableIterator<String> inner, long generation)
+		{
+			this.inner = inner;
+			this.generation = generation;
+		}
+
+		@Override
+		public GenLine getNextInner() {
+			return (inner.hasNext() ? new GenLine(inner.next(), generation) : null);
+		}
+
+		@Override
+		public void close() throws IOException {
+			inner.close();
+		}
+	}
+
+	// Drops repeated and tombstoned lines
+	protected static class DeltaMergeIterator extends AbstractPeekableIterator<String>
+	{
+		LoserTreeMergeIterator<GenLine> merged;
+		Map<String, Long> tombstones;
+		String prev = null;
+
+		DeltaMergeIterator(LoserTreeMergeIterator<GenLine> merged, Map<String, Long> tombstones)
+		{
+			this.merged = merged;
+			this.tombstones = tombstones;
+		}
+
+		@Override
+		public String getNextInner() {
+			while (merged.hasNext()) {
+				GenLine next = merged.next();
+
+				if (next.line.equals(prev)) {
+					continue;
+				}
+
+				if (!tombstones.isEmpty() && isDeleted(tombstones, next.line, next.generation)) {
+					continue;
+				}
+
+				prev = next.line;
+				return next.line;
+			}
+
+			return null;
+		}
+
+		@Override
+		public void close() throws IOException {
+			merged.close();
+		}
+	}
+
+	/**
+	 * @return true if a tombstone newer than generation is the line, or the
+	 * line up to one of its spaces
+	 */
+	protected static boolean isDeleted(Map<String, Long> tombstones, String line, long generation)
+	{
+		int end = line.length();
+
+		while (end > 0) {
+			Long tombstone = tombstones.get(line.substring(0, end));
+
+			if ((tombstone != null) && (tombstone > generation)) {
+				return true;
+			}
+
+			end = line.lastIndexOf(' ', end - 1);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return a new generation, after everything in deltaDir
+	 */
+	public synchronized long nextGeneration()
+	{
+		long max = Math.max(snapshot.maxGeneration, reservedGeneration);
+		String[] names = deltaDir.list();
+
+		if (names != null) {
+			for (String name : names) {
+				Matcher m = ENTRY_PATTERN.matcher(name.endsWith(TMP_SUFFIX) ?
+						name.substring(0, name.length() - TMP_SUFFIX.length()) : name);
+
+				if (m.matches()) {
+					max = Math.max(max, Long.parseLong((m.group(2) != null) ? m.group(2) : m.group(1)));
+				}
+			}
+		}
+
+		reservedGeneration = max + 1;
+		reserved.add(reservedGeneration);
+		return reservedGeneration;
+	}
+
+	/**
+	 * Hands back a generation from nextGeneration() that will not be
+	 * committed
+	 */
+	public synchronized void releaseGeneration(long generation)
+	{
+		reserved.remove(generation);
+	}
+
+	/**
+	 * @return the generations handed out by nextGeneration(), or being written
+	 * to a .tmp entry of deltaDir, that are not committed yet
+	 */
+	public synchronized Set<Long> getPendingGenerations()
+	{
+		Set<Long> pending = new HashSet<Long>(reserved);
+		String[] names = deltaDir.list();
+
+		if (names != null) {
+			for (String name : names) {
+				if (!name.endsWith(TMP_SUFFIX)) {
+					continue;
+				}
+
+				Matcher m = ENTRY_PATTERN.matcher(name.substring(0, name.length() - TMP_SUFFIX.length()));
+
+				// Compactions write N-M.tmp, of generations already committed
+				if (m.matches() && (m.group(2) == null)) {
+					pending.add(Long.parseLong(m.group(1)));
+				}
+			}
+		}
+
+		return pending;
+	}
+
+	public static String getEntryName(long generation)
+	{
+		return String.format("%012d", generation);
+	}
+
+	public static String getEntryName(long firstGeneration, long generation)
+	{
+		return getEntryName(firstGeneration) + "-" + getEntryName(generation);
+	}
+
+	/**
+	 * Builds the CDX (or CDX.gz) inputs, in any order, into a new delta
+	 * @return its generation
+	 */
+	public long addDelta(List<File> inputs, LocalClusterBuilder builder) throws IOException
+	{
+		long generation = nextGeneration();
+		File tmp = new File(deltaDir, getEntryName(generation) + TMP_SUFFIX);
+
+		try {
+			builder.build(inputs, tmp);
+			commitEntry(tmp, new File(deltaDir, getEntryName(generation)));
+		} finally {
+			releaseGeneration(generation);
+		}
+		return generation;
+	}
+
+	/**
+	 * Adds tombstones hiding lines of every existing generation
+	 * @return their generation
+	 */
+	public long addTombstones(Collection<String> tombstones) throws IOException
+	{
+		long generation = nextGeneration();
+		File tmp = new File(deltaDir, getEntryName(generation) + TOMBSTONE_SUFFIX + TMP_SUFFIX);
+
+		try {
+			PrintWriter pw = new PrintWriter(tmp, "UTF-8");
+
+			try {
+				for (String tombstone : tombstones) {
+					pw.print(tombstone);
+					pw.print('\n');
+				}
+			} finally {
+				pw.close();
+			}
+
+			commitEntry(tmp, new File(deltaDir, getEntryName(generation) + TOMBSTONE_SUFFIX));
+		} finally {
+			releaseGeneration(generation);
+		}
+		return generation;
+	}
+
+	public void commitEntry(File tmp, File entry) throws IOException
+	{
+		if (!tmp.renameTo(entry)) {
+			throw new IOException("Could not rename " + tmp + " to " + entry);
+		}
+
+		Matcher m = ENTRY_PATTERN.matcher(entry.getName());
+
+		if (m.matches() && (m.group(2) == null)) {
+			releaseGeneration(Long.parseLong(m.group(1)));
+		}
+
+		refresh();
+	}
+
+	/**
+	 * @return the deltas as of the last refresh, oldest first
+	 */
+	public List<Delta> getDeltas()
+	{
+		return snapshot.deltas;
+	}
+
+	/**
+	 * @return the generations of the tombstones, as of the last refresh
+	 */
+	public Set<Long> getTombstoneGenerations()
+	{
+		return snapshot.tombstoneGenerations;
+	}
+
+	/**
+	 * @return the deltas replaced by compacted ones, as of the last refresh
+	 */
+	public List<Delta> getSupersededDeltas()
+	{
+		return snapshot.superseded;
+	}
+
+	public CDXInputSource getBase() {
+		return base;
+	}
+
+	public void setBase(CDXInputSource base) {
+		this.base = base;
+	}
+
+	public File getDeltaDir() {
+		return deltaDir;
+	}
+
+	public void setDeltaDir(File deltaDir) {
+		this.deltaDir = deltaDir;
+	}
+
+	public long getRefreshIntervalMs() {
+		return refreshIntervalMs;
+	}
+
+	/**
+	 * @param refreshIntervalMs how often queries rescan deltaDir, 0 for only
+	 * on refresh()
+	 */
+	public void setRefreshIntervalMs(long refreshIntervalMs) {
+		this.refreshIntervalMs = refreshIntervalMs;
+	}
+
+	public ZipNumBlockLoader getBlockLoader() {
+		return blockLoader;
+	}
+
+	public void close() throws IOException {
+		blockLoader.close();
+	}
+}
@@ -0,0 +1,322 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.archive.format.cdx.DeltaCDXInputSource.Delta;
+import org.archive.format.gzip.zipnum.LocalClusterBuilder;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Merges the small deltas of a DeltaCDXInputSource into one larger delta
+ * cluster, in the background, so queries merge a few deltas rather than one
+ * per ingest.
+ *
+ * Deltas of sealBytes or more are left alone: small deltas are compacted
+ * once there are maxDeltas of them in a row, or they add up to sealBytes.
+ * Only runs of deltas with no missing generation in between, other than
+ * tombstones, are compacted together: a generation still being written
+ * must not end up inside a compacted range. The replaced deltas are deleted
+ * deleteDelayMs later, once queries are done with them.
+ * Folding deltas into the base cluster is still the job of cluster-merge.
+ */
+public class DeltaCompactor implements Runnable {
+
+	private final static Logger LOGGER = Logger.getLogger(DeltaCompactor.class.getName());
+
+	public final static int DEFAULT_MAX_DELTAS = 8;
+	public final static long DEFAULT_SEAL_BYTES = 1024L * 1024 * 1024;
+	public final static long DEFAULT_CHECK_INTERVAL_MS = 60000;
+	public final static long DEFAULT_DELETE_DELAY_MS = 600000;
+
+	protected DeltaCDXInputSource source;
+	protected LocalClusterBuilder builder = new LocalClusterBuilder();
+
+	protected int maxDeltas = DEFAULT_MAX_DELTAS;
+	protected long sealBytes = DEFAULT_SEAL_BYTES;
+	protected long checkIntervalMs = DEFAULT_CHECK_INTERVAL_MS;
+	protected long deleteDelayMs = DEFAULT_DELETE_DELAY_MS;
+
+	protected ScheduledExecutorService scheduler = null;
+
+	// Superseded delta dir -> when first seen
+	protected Map<String, Long> supersededSince = new HashMap<String, Long>();
+
+	public DeltaCompactor(DeltaCDXInputSource source)
+	{
+		this.source = source;
+	}
+
+	/**
+	 * Checks the deltas every checkIntervalMs, on a daemon thread
+	 */
+	public synchronized void start()
+	{
+		if (scheduler != null) {
+			return;
+		}
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("DeltaCompactor-%d").setDaemon(true).build());
+		scheduler.scheduleWithFixedDelay(this, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	public synchronized void close()
+	{
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	public void run()
+	{
+		try {
+			source.refresh();
+			compact(false);
+			deleteSuperseded();
+		} catch (IOException io) {
+			LOGGER.warning("Compaction of " + source.getDeltaDir() + " failed: " + io);
+		} catch (RuntimeException e) {
+			// An exception would cancel the schedule
+			LOGGER.severe("Compaction of " + source.getDeltaDir() + " failed: " + e);
+		}
+	}
+
+	/**
+	 * @return the longest run of deltas smaller than sealBytes, with only
+	 * committed tombstones between them, and no pending generation
+	 */
+	protected List<Delta> pickDeltas(List<Delta> deltas)
+	{
+		Set<Long> pending = source.getPendingGenerations();
+		Set<Long> tombstones = source.getTombstoneGenerations();
+
+		List<Delta> best = new ArrayList<Delta>();
+		List<Delta> run = new ArrayList<Delta>();
+		Delta prev = null;
+
+		for (Delta delta : deltas) {
+			if ((delta.getNumBytes() >= sealBytes) ||
+					containsAny(pending, delta.getFirstGeneration(), delta.getGeneration())) {
+				run = new ArrayList<Delta>();
+				prev = null;
+				continue;
+			}
+
+			if ((prev != null) && !follows(prev, delta, tombstones)) {
+				run = new ArrayList<Delta>();
+			}
+
+			run.add(delta);
+			prev = delta;
+
+			if (run.size() > best.size()) {
+				best = run;
+			}
+		}
+
+		return best;
+	}
+
+	/**
+	 * @return true if delta comes after prev with only tombstones between
+	 */
+	protected static boolean follows(Delta prev, Delta delta, Set<Long> tombstones)
+	{
+		if (delta.getFirstGeneration() <= prev.getGeneration()) {
+			return false;
+		}
+
+		for (long g = prev.getGeneration() + 1; g < delta.getFirstGeneration(); g++) {
+			if (!tombstones.contains(g)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	protected static boolean containsAny(Set<Long> generations, long first, long last)
+	{
+		for (long g : generations) {
+			if ((g >= first) && (g <= last)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @param force compact any run of two or more small deltas, regardless
+	 * of maxDeltas and sealBytes
+	 * @return the compacted delta, or null if there was nothing to compact
+	 */
+	public synchronized File compact(boolean force) throws IOException
+	{
+		List<Delta> inputs = pickDeltas(source.getDeltas());
+
+		long numBytes = 0;
+
+		for (Delta delta : inputs) {
+			numBytes += delta.getNumBytes();
+		}
+
+		if (inputs.size() < 2) {
+			return null;
+		}
+
+		if (!force && (inputs.size() < maxDeltas) && (numBytes < sealBytes)) {
+			return null;
+		}
+
+		long first = inputs.get(0).getFirstGeneration();
+		long last = inputs.get(inputs.size() - 1).getGeneration();
+
+		String name = DeltaCDXInputSource.getEntryName(first, last);
+		File tmp = new File(source.getDeltaDir(), name + DeltaCDXInputSource.TMP_SUFFIX);
+
+		long start = System.currentTimeMillis();
+		CloseableIterator<String> lines = source.getDeltaIterator(inputs);
+
+		try {
+			builder.buildSorted(new BytesIterator(lines), tmp);
+		} finally {
+			lines.close();
+		}
+
+		DeltaCDXInputSource.writeInputs(tmp, inputs);
+
+		File compacted = new File(source.getDeltaDir(), name);
+		source.commitEntry(tmp, compacted);
+
+		LOGGER.info("Compacted " + inputs.size() + " deltas (" + numBytes + " bytes) into " + compacted +
+				" in " + (System.currentTimeMillis() - start) + "ms");
+
+		return compacted;
+	}
+
+	/**
+	 * Deletes the deltas replaced by compaction at least deleteDelayMs ago
+	 */
+	public synchronized void deleteSuperseded()
+	{
+		long now = System.currentTimeMillis();
+		Map<String, Long> stillSuperseded = new HashMap<String, Long>();
+
+		for (Delta delta : source.getSupersededDeltas()) {
+			String path = delta.getDir().getPath();
+			Long since = supersededSince.get(path);
+
+			if (since == null) {
+				since = now;
+			}
+
+			if ((now - since) < deleteDelayMs) {
+				stillSuperseded.put(path, since);
+				continue;
+			}
+
+			source.closeDelta(delta);
+
+			if (!delete(delta.getDir())) {
+				LOGGER.warning("Could not delete " + delta.getDir());
+			}
+		}
+
+		supersededSince = stillSuperseded;
+	}
+
+	protected static boolean delete(File file)
+	{
+		File[] children = file.listFiles();
+
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+
+		return file.delete();
+	}
+
+	protected static class BytesIterator extends AbstractPeekableIterator<byte[]>
+	{
+		CloseableIterator<String> inner;
+
+		BytesIterator(CloseableIterator<String> inner)
+		{
+			this.inner = inner;
+		}
+
+		@Override
+		public byte[] getNextInner() {
+			return (inner.hasNext() ? inner.next().getBytes(FieldPredicate.UTF8) : null);
+		}
+
+		@Override
+		public void close() throws IOException {
+			inner.close();
+		}
+	}
+
+	public LocalClusterBuilder getBuilder() {
+		return builder;
+	}
+
+	/**
+	 * @param builder sets the lines per block, threads, bloom filters... of
+	 * compacted deltas
+	 */
+	public void setBuilder(LocalClusterBuilder builder) {
+		this.builder = builder;
+	}
+
+	public int getMaxDeltas() {
+		return maxDeltas;
+	}
+
+	public void setMaxDeltas(int maxDeltas) {
+		this.maxDeltas = maxDeltas;
+	}
+
+	public long getSealBytes() {
+		return sealBytes;
+	}
+
+	/**
+	 * @param sealBytes size from which a delta is not compacted again
+	 */
+	public void setSealBytes(long sealBytes) {
+		this.sealBytes = sealBytes;
+	}
+
+	public long getCheckIntervalMs() {
+		return checkIntervalMs;
+	}
+
+	public void setCheckIntervalMs(long checkIntervalMs) {
+		this.checkIntervalMs = checkIntervalMs;
+	}
+
+	public long getDeleteDelayMs() {
+		return deleteDelayMs;
+	}
+
+	public void setDeleteDelayMs(long deleteDelayMs) {
+		this.deleteDelayMs = deleteDelayMs;
+	}
+}
@@ -0,0 +1,148 @@
+package org.archive.format.cdx;
+
+import java.nio.charset.Charset;
+import java.util.regex.Pattern;
+
+import org.archive.util.ByteOp;
+
+/**
+ * A test on one space delimited field of a CDX line (0 is the url key, 1 the
+ * timestamp...), evaluated on the raw UTF-8 bytes of the line so that lines
+ * that fail it never need to be decoded. Only regex() decodes, and then only
+ * its field.
+ *
+ * Values compare as unsigned bytes, ie. in the sort order of the CDX.
+ */
+public abstract class FieldPredicate {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	protected int field;
+
+	protected FieldPredicate(int field)
+	{
+		this.field = field;
+	}
+
+	public int getField()
+	{
+		return field;
+	}
+
+	/**
+	 * @return true if the field, line[start, end), matches
+	 */
+	public abstract boolean matchesField(byte[] line, int start, int end);
+
+	/**
+	 * @return true if the line, line[off, off + len) without the newline,
+	 * has the field and it matches
+	 */
+	public boolean matches(byte[] line, int off, int len)
+	{
+		int start = off;
+		int end = off + len;
+
+		for (int i = 0; i < field; i++) {
+			int space = indexOf(line, start, end);
+
+			if (space < 0) {
+				return false;
+			}
+
+			start = space + 1;
+		}
+
+		int fieldEnd = indexOf(line, start, end);
+
+		return matchesField(line, start, (fieldEnd < 0 ? end : fieldEnd));
+	}
+
+	public boolean matches(String line)
+	{
+		byte[] bytes = line.getBytes(UTF8);
+		return matches(bytes, 0, bytes.length);
+	}
+
+	protected static int indexOf(byte[] line, int start, int end)
+	{
+		for (int i = start; i < end; i++) {
+			if (line[i] == ' ') {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	public static FieldPredicate equalTo(int field, String value)
+	{
+		final byte[] bytes = value.getBytes(UTF8);
+
+		return new FieldPredicate(field) {
+			public boolean matchesField(byte[] line, int start, int end) {
+				return ((end - start) == bytes.length) && ByteOp.cmp(line, start, bytes, 0, bytes.length);
+			}
+		};
+	}
+
+	public static FieldPredicate prefix(int field, String prefix)
+	{
+		final byte[] bytes = prefix.getBytes(UTF8);
+
+		return new FieldPredicate(field) {
+			public boolean matchesField(byte[] line, int start, int end) {
+				return ByteOp.startsWith(line, start, end - start, bytes);
+			}
+		};
+	}
+
+	/**
+	 * @param min lowest matching value, inclusive, or null for no limit
+	 * @param max end of the range, exclusive, or null for no limit. A
+	 * timestamp window is eg. range(1, "2010", "2012").
+	 */
+	public static FieldPredicate range(int field, String min, String max)
+	{
+		final byte[] minBytes = (min == null ? null : min.getBytes(UTF8));
+		final byte[] maxBytes = (max == null ? null : max.getBytes(UTF8));
+
+		return new FieldPredicate(field) {
+			public boolean matchesField(byte[] line, int start, int end) {
+				int len = end - start;
+
+				if ((minBytes != null) && (ByteOp.compare(line, start, len, minBytes, 0, minBytes.length) < 0)) {
+					return false;
+				}
+
+				if ((maxBytes != null) && (ByteOp.compare(line, start, len, maxBytes, 0, maxBytes.length) >= 0)) {
+					return false;
+				}
+
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * @param regex must match the whole field
+	 */
+	public static FieldPredicate regex(int field, String regex)
+	{
+		final Pattern pattern = Pattern.compile(regex);
+
+		return new FieldPredicate(field) {
+			public boolean matchesField(byte[] line, int start, int end) {
+				return pattern.matcher(new String(line, start, end - start, UTF8)).matches();
+			}
+		};
+	}
+
+	public static FieldPredicate not(final FieldPredicate predicate)
+	{
+		return new FieldPredicate(predicate.getField()) {
+			public boolean matchesField(byte[] line, int start, int end) {
+				return !predicate.matchesField(line, start, end);
+			}
+		};
+	}
+}
@@ -4,12 +4,23 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
+import org.archive.format.gzip.zipnum.ZipNumBlockLoader;
 import org.archive.format.gzip.zipnum.ZipNumCluster;
 import org.archive.format.gzip.zipnum.ZipNumParams;
 import org.archive.util.iterator.CloseableIterator;
-import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.LoserTreeMergeIterator;
+import org.archive.util.iterator.PrefetchingIterator;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class MultiCDXInputSource implements CDXInputSource {
 
@@ -17,6 +28,14 @@ public class MultiCDXInputSource implements CDXInputSource {
 	
 	protected List<CDXInputSource> cdx;
 	
+	public final static int DEFAULT_NUM_THREADS = 16;
+	public final static int DEFAULT_PREFETCH_LINES = 0;
+	
+	protected int numThreads = DEFAULT_NUM_THREADS;
+	protected long openTimeoutMs = 0;
+	protected int prefetchLines = DEFAULT_PREFETCH_LINES;
+	protected ExecutorService executor = null;
+	
 	public List<CDXInputSource> getCdx() {
 		return cdx;
 	}
@@ -49,19 +68,186 @@ public class MultiCDXInputSource implements CDXInputSource {
 	
 	public CloseableIterator<String> getCDXIterator(String key, String prefix, boolean exact, ZipNumParams params) throws IOException {
 		
-		SortedCompositeIterator<String> scitr = new SortedCompositeIterator<String>(cdx.size(), comparator);
-		
-		CloseableIterator<String> iter = null;
+		LoserTreeMergeIterator<String> scitr = new LoserTreeMergeIterator<String>(comparator);
 		
-		for (CDXInputSource cdxReader : cdx) {
+		if (cdx.size() == 1) {
 			try {
-				iter = cdxReader.getCDXIterator(key, prefix, exact, params);
-				scitr.addIterator(iter);
+				scitr.addIterator(cdx.get(0).getCDXIterator(key, prefix, exact, params));
 			} catch (IOException io) {
 				LOGGER.warning(io.toString());
 			}
+			return scitr;
+		}
+		
+		ExecutorService exec = getExecutor();
+		
+		// Open every source at once: a query costs the slowest source, not the sum
+		List<OpenTask> tasks = new ArrayList<OpenTask>(cdx.size());
+		
+		for (CDXInputSource cdxReader : cdx) {
+			OpenTask task = new OpenTask(cdxReader, key, prefix, exact, params);
+			task.future = exec.submit(task);
+			tasks.add(task);
+		}
+		
+		long deadline = System.currentTimeMillis() + openTimeoutMs;
+		
+		for (OpenTask task : tasks) {
+			CloseableIterator<String> iter = task.await(deadline);
+			
+			if (iter == null) {
+				continue;
+			}
+			
+			if (prefetchLines > 0) {
+				iter = new ReleasingPrefetchingIterator(iter, exec, prefetchLines);
+			}
+			
+			scitr.addIterator(iter);
 		}
 		
 		return scitr;
 	}
+	
+	/**
+	 * Opens one source. A source that misses the deadline is left out of the
+	 * results, and its iterator is closed whenever it does open.
+	 */
+	protected class OpenTask implements Callable<CloseableIterator<String>> {
+		CDXInputSource source;
+		String key, prefix;
+		boolean exact;
+		ZipNumParams params;
+		
+		Future<CloseableIterator<String>> future;
+		CloseableIterator<String> result = null;
+		boolean abandoned = false;
+		
+		OpenTask(CDXInputSource source, String key, String prefix, boolean exact, ZipNumParams params) {
+			this.source = source;
+			this.key = key;
+			this.prefix = prefix;
+			this.exact = exact;
+			this.params = params;
+		}
+
+		public CloseableIterator<String> call() throws IOException {
+			CloseableIterator<String> iter;
+			
+			try {
+				iter = source.getCDXIterator(key, prefix, exact, params);
+			} finally {
+				ZipNumBlockLoader.releaseReaders();
+			}
+			
+			synchronized (this) {
+				if (!abandoned) {
+					result = iter;
+					return iter;
+				}
+			}
+			
+			iter.close();
+			return null;
+		}
+		
+		CloseableIterator<String> await(long deadline) {
+			try {
+				if (openTimeoutMs <= 0) {
+					return future.get();
+				}
+				return future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException te) {
+				LOGGER.warning("Timed out after " + openTimeoutMs + "ms opening " + source);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				LOGGER.warning(e.getCause().toString());
+				return null;
+			}
+			
+			synchronized (this) {
+				abandoned = true;
+				
+				// Opened just in time after all
+				if (result != null) {
+					return result;
+				}
+			}
+			
+			future.cancel(true);
+			return null;
+		}
+	}
+	
+	/**
+	 * Reads ahead on a pool thread, which must not keep the block readers
+	 * it opens: they belong to the iterator, and are closed with it.
+	 */
+	protected static class ReleasingPrefetchingIterator extends PrefetchingIterator<String> {
+		ReleasingPrefetchingIterator(CloseableIterator<String> inner, ExecutorService executor, int chunkSize) {
+			super(inner, executor, chunkSize);
+		}
+		
+		@Override
+		protected List<String> readChunk() {
+			try {
+				return super.readChunk();
+			} finally {
+				ZipNumBlockLoader.releaseReaders();
+			}
+		}
+	}
+	
+	protected synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(numThreads, 
+					new ThreadFactoryBuilder().setNameFormat("MultiCDX-%d").setDaemon(true).build());
+		}
+		return executor;
+	}
+	
+	public void close() {
+		synchronized (this) {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * @param numThreads size of the pool sources are opened and prefetched on
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	public long getOpenTimeoutMs() {
+		return openTimeoutMs;
+	}
+
+	/**
+	 * @param openTimeoutMs how long to wait for each source to open, after
+	 * which the query goes on with the sources that did. 0 waits forever.
+	 */
+	public void setOpenTimeoutMs(long openTimeoutMs) {
+		this.openTimeoutMs = openTimeoutMs;
+	}
+
+	public int getPrefetchLines() {
+		return prefetchLines;
+	}
+
+	/**
+	 * @param prefetchLines lines to read ahead of the merge from each source,
+	 * on the pool, or 0 (the default) to read them on the caller's thread
+	 */
+	public void setPrefetchLines(int prefetchLines) {
+		this.prefetchLines = prefetchLines;
+	}
 }
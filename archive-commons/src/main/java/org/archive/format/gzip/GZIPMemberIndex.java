@@ -0,0 +1,261 @@
+package org.archive.format.gzip;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.archive.streamcontext.Stream;
+
+/**
+ * The start offset, compressed length and uncompressed length of every gzip
+ * member in a file, such as a WARC.gz, so a reader can go straight to a
+ * member, or past one, without inflating anything.
+ *
+ * Kept next to the file, with SUFFIX appended, as: magic, version, the
+ * number of members, then for each member the bytes skipped since the end
+ * of the previous one (0 unless there is junk between members), its
+ * compressed length and its uncompressed length, all as variable length
+ * longs: under 8 bytes for a typical WARC record.
+ *
+ * Written as members are by GZIPMemberWriter.setIndex(), or built from an
+ * existing file by build().
+ */
+public class GZIPMemberIndex {
+	public final static String SUFFIX = ".gzi";
+
+	// "GZIX"
+	final static int MAGIC = 0x475A4958;
+	final static int VERSION = 1;
+
+	protected int size = 0;
+	protected long[] starts;
+	protected long[] compressedLengths;
+	protected long[] uncompressedLengths;
+
+	public GZIPMemberIndex()
+	{
+		this(1024);
+	}
+
+	public GZIPMemberIndex(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		starts = new long[capacity];
+		compressedLengths = new long[capacity];
+		uncompressedLengths = new long[capacity];
+	}
+
+	/**
+	 * Adds the next member, which must start at or after the end of the last
+	 */
+	public void add(long start, long compressedLength, long uncompressedLength)
+	{
+		if ((size > 0) && (start < getEnd(size - 1))) {
+			throw new IllegalArgumentException("Member at " + start + " overlaps the previous one");
+		}
+
+		if (size == starts.length) {
+			int capacity = size * 2;
+			starts = Arrays.copyOf(starts, capacity);
+			compressedLengths = Arrays.copyOf(compressedLengths, capacity);
+			uncompressedLengths = Arrays.copyOf(uncompressedLengths, capacity);
+		}
+
+		starts[size] = start;
+		compressedLengths[size] = compressedLength;
+		uncompressedLengths[size] = uncompressedLength;
+		size++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getStart(int i) {
+		return starts[i];
+	}
+
+	public long getCompressedLength(int i) {
+		return compressedLengths[i];
+	}
+
+	public long getUncompressedLength(int i) {
+		return uncompressedLengths[i];
+	}
+
+	/**
+	 * @return the offset just past member i
+	 */
+	public long getEnd(int i) {
+		return starts[i] + compressedLengths[i];
+	}
+
+	/**
+	 * @return the member starting exactly at offset, or -1
+	 */
+	public int indexOf(long offset)
+	{
+		int i = Arrays.binarySearch(starts, 0, size, offset);
+		return (i >= 0) ? i : -1;
+	}
+
+	/**
+	 * @return the first member starting at or after offset, or size() if none
+	 */
+	public int ceiling(long offset)
+	{
+		int i = Arrays.binarySearch(starts, 0, size, offset);
+		return (i >= 0) ? i : -(i + 1);
+	}
+
+	/**
+	 * @return the compressed length of the member starting at offset, or -1
+	 */
+	public long getCompressedLength(long offset)
+	{
+		int i = indexOf(offset);
+		return (i >= 0) ? compressedLengths[i] : -1;
+	}
+
+	public void write(OutputStream out) throws IOException
+	{
+		DataOutputStream dos = new DataOutputStream(out);
+		dos.writeInt(MAGIC);
+		dos.writeInt(VERSION);
+		dos.writeInt(size);
+
+		long end = 0;
+
+		for (int i = 0; i < size; i++) {
+			writeVLong(dos, starts[i] - end);
+			writeVLong(dos, compressedLengths[i]);
+			writeVLong(dos, uncompressedLengths[i]);
+			end = getEnd(i);
+		}
+
+		dos.flush();
+	}
+
+	public void write(File file) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+
+		try {
+			write(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public static GZIPMemberIndex read(InputStream in) throws IOException
+	{
+		DataInputStream dis = new DataInputStream(in);
+
+		if (dis.readInt() != MAGIC) {
+			throw new IOException("Not a gzip member index");
+		}
+
+		int version = dis.readInt();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported gzip member index version " + version);
+		}
+
+		int size = dis.readInt();
+		GZIPMemberIndex index = new GZIPMemberIndex(size);
+		long end = 0;
+
+		for (int i = 0; i < size; i++) {
+			long start = end + readVLong(dis);
+			long compressedLength = readVLong(dis);
+			index.add(start, compressedLength, readVLong(dis));
+			end = start + compressedLength;
+		}
+
+		return index;
+	}
+
+	public static GZIPMemberIndex read(File file) throws IOException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Builds the index of stream, from its current offset, in one pass
+	 * @param strict fail on bytes between members, rather than skip them
+	 */
+	public static GZIPMemberIndex build(Stream stream, String context, boolean strict) throws IOException
+	{
+		GZIPMemberSeries series = new GZIPMemberSeries(stream, context, stream.getOffset(), strict);
+		GZIPMemberIndex index = new GZIPMemberIndex();
+		GZIPSeriesMember member;
+
+		while ((member = series.getNextMember()) != null) {
+			long start = member.getRecordStartOffset();
+			member.skipMember();
+			index.add(start, series.getOffset() - start, member.getUncompressedBytesRead());
+		}
+
+		return index;
+	}
+
+	public static File getIndexFile(File file)
+	{
+		return new File(file.getPath() + SUFFIX);
+	}
+
+	/**
+	 * @return the index kept next to file, or null if there is none, or it
+	 * is older than file
+	 */
+	public static GZIPMemberIndex forFile(File file) throws IOException
+	{
+		File indexFile = getIndexFile(file);
+
+		if (!indexFile.isFile() || (indexFile.lastModified() < file.lastModified())) {
+			return null;
+		}
+
+		return read(indexFile);
+	}
+
+	static void writeVLong(DataOutputStream out, long value) throws IOException
+	{
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+
+		out.writeByte((int)value);
+	}
+
+	static long readVLong(DataInputStream in) throws IOException
+	{
+		long value = 0;
+
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readByte();
+			value |= (long)(b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Malformed variable length long");
+	}
+}
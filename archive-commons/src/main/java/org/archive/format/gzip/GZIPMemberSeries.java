@@ -96,6 +96,7 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 	private int bufferPos = 0;
 	private int bufferSize = 0;
 	private long offset = 0;
+	private GZIPMemberIndex index = null;
 
 	public GZIPMemberSeries(Stream bis) {
 		this(bis,"unknown");
@@ -177,7 +178,9 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 			LOG.info("getNextMember-ATEOF");
 			return null;
 		}
-		if(state == STATE_DEFLATING) {
+		if((state == STATE_DEFLATING) && skipIndexed()) {
+			LOG.info("getNextMember-without complete read - skipped by index");
+		} else if(state == STATE_DEFLATING) {
 			LOG.info("getNextMember-without complete read - finishing current");
 			// currentMember better not be null...
 			try {
@@ -276,6 +279,66 @@ public class GZIPMemberSeries extends InputStream implements GZIPConstants {
 		return currentMember;
 	}
 
+	/**
+	 * Moves past the current member by its length in the index, rather than
+	 * inflating the rest of it
+	 * @return false if the member is not in the index
+	 */
+	private boolean skipIndexed() throws IOException {
+		if(index == null) {
+			return false;
+		}
+		int i = index.indexOf(currentMemberStartOffset);
+		if(i < 0) {
+			return false;
+		}
+		setStreamOffset(index.getEnd(i));
+		state = STATE_ALIGNED;
+		return true;
+	}
+
+	private void setStreamOffset(long newOffset) throws IOException {
+		offset = newOffset;
+		bufferSize = 0;
+		bufferPos = 0;
+		stream.setOffset(newOffset);
+	}
+
+	/**
+	 * Moves to the first member starting at or after offset, from the index,
+	 * so the next getNextMember() returns it
+	 * @return false if there is no such member
+	 */
+	public boolean seekToMember(long seekOffset) throws IOException {
+		if(index == null) {
+			throw new IOException("seekToMember() without an index in " 
+					+ streamContext);
+		}
+		int i = index.ceiling(seekOffset);
+		if(i == index.size()) {
+			gotEOF = true;
+			return false;
+		}
+		setStreamOffset(index.getStart(i));
+		currentMember = null;
+		currentMemberStartOffset = offset;
+		gotEOF = false;
+		state = STATE_ALIGNED;
+		return true;
+	}
+
+	public GZIPMemberIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @param index of the members of the underlying Stream, used to skip
+	 * unread members and to seekToMember(), or null
+	 */
+	public void setIndex(GZIPMemberIndex index) {
+		this.index = index;
+	}
+
 	public int read() throws IOException {
 		int amt = read(singleByteRead, 0, 1);
 		if (amt == -1) {
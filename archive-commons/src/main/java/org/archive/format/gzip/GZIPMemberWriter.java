@@ -1,5 +1,7 @@
 package org.archive.format.gzip;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,6 +10,7 @@ import java.util.zip.DeflaterOutputStream;
 
 import org.archive.util.StreamCopy;
 import org.archive.util.io.CRCInputStream;
+import org.archive.util.zip.GZIPMembersInputStream;
 
 import com.google.common.io.CountingOutputStream;
 
@@ -16,23 +19,93 @@ public class GZIPMemberWriter implements GZIPConstants {
 	private byte slRecordName[] = SL_RECORD;
 	public int maxBuffer = MAX_RAM_BUFFER;
 	private CountingOutputStream out;
+	private byte[] dictionary = null;
+	private GZIPMemberIndex index = null;
 	
 	public GZIPMemberWriter(OutputStream out) {
 		this.out = new CountingOutputStream(out);
 	}
 
 	public void write(InputStream is) throws IOException {
+		long start = out.getCount();
 		CRCInputStream crc = new CRCInputStream(is);
 		GZIPHeader gzHeader = new GZIPHeader();
 		// TODO: add fields...
+		if (dictionary != null) {
+			// so readers without the dictionary fail clearly
+			gzHeader.addRecord(GZIPMembersInputStream.DICTIONARY_ID_SUBFIELD,
+					GZIPMembersInputStream.getDictionaryId(dictionary));
+		}
 		gzHeader.writeBytes(out);
 		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		if (dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
 		DeflaterOutputStream deflateOut = new DeflaterOutputStream(out,deflater);
 		StreamCopy.copy(crc, deflateOut);
 		deflateOut.finish();
+		deflater.end();
 		GZIPFooter gzFooter = new GZIPFooter(crc.getCRCValue(), crc.getByteCount());
 		gzFooter.writeBytes(out);
 		out.flush();
+		if (index != null) {
+			index.add(start, out.getCount() - start, crc.getByteCount());
+		}
+	}
+
+	/**
+	 * @param dictionary preset deflate dictionary for all following members,
+	 * or null. Members written with one can only be read with the same
+	 * dictionary, eg. by GZIPMembersInputStream(in, size, dictionary), not
+	 * by plain gzip tools. Its id is recorded in a 'DI' extra subfield.
+	 */
+	public void setDictionary(byte[] dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Writes a complete member, already compressed elsewhere (eg. by another
+	 * GZIPMemberWriter on a worker thread)
+	 */
+	public void writeMember(byte[] member) throws IOException {
+		long start = out.getCount();
+		out.write(member);
+		out.flush();
+		if (index != null) {
+			// ISIZE, from the footer
+			int n = member.length;
+			long size = (member[n - 4] & 0xffL) | ((member[n - 3] & 0xffL) << 8) |
+				((member[n - 2] & 0xffL) << 16) | ((member[n - 1] & 0xffL) << 24);
+			index.add(start, member.length, size);
+		}
+	}
+
+	/**
+	 * @param index records every following member, with offsets relative to
+	 * the start of this writer's output, or null. Write it next to the
+	 * output (GZIPMemberIndex.getIndexFile()) when done.
+	 */
+	public void setIndex(GZIPMemberIndex index) {
+		this.index = index;
+	}
+
+	public GZIPMemberIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the complete gzip member for data, as write() would produce it
+	 */
+	public static byte[] compressMember(byte[] data) throws IOException {
+		return compressMember(data, null);
+	}
+
+	public static byte[] compressMember(byte[] data, byte[] dictionary) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream((data.length / 4) + 64);
+		GZIPMemberWriter writer = new GZIPMemberWriter(bos);
+		writer.setDictionary(dictionary);
+		writer.write(new ByteArrayInputStream(data));
+		return bos.toByteArray();
 	}
 
 	public long getBytesWritten() {
@@ -21,8 +21,22 @@ public class GZIPMemberWriterCommittedOutputStream extends CommitedOutputStream
 	public void commit() throws IOException {
                 ByteArrayOutputStream bos = (ByteArrayOutputStream) out;
 		gzW.write(new ByteArrayInputStream(bos.toByteArray()));
+		bos.reset();
+	}
+	/**
+	 * @return the bytes written since the last commit, without compressing
+	 * them, and resets the buffer
+	 */
+	protected byte[] takeUncommitted() {
+		ByteArrayOutputStream bos = (ByteArrayOutputStream) out;
+		byte[] bytes = bos.toByteArray();
+		bos.reset();
+		return bytes;
 	}
 	public long getBytesWritten() {
 		return gzW.getBytesWritten();
 	}
+	protected GZIPMemberWriter getMemberWriter() {
+		return gzW;
+	}
 }
@@ -0,0 +1,135 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.archive.format.cdx.FieldPredicate;
+import org.archive.util.binsearch.ByteLineReader;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Reads the lines of each block, one block after another. Subclasses turn
+ * each raw UTF-8 line into an element with decode().
+ */
+public abstract class AbstractMultiBlockIterator<E> extends AbstractPeekableIterator<E> {
+	private static final Logger LOGGER = Logger.getLogger(
+			AbstractMultiBlockIterator.class.getName());
+
+	private SeekableLineReader currLoader = null;
+	private CloseableIterator<SeekableLineReader> blockItr = null;
+	private List<FieldPredicate> predicates = null;
+	private ZipNumScanStats stats = new ZipNumScanStats();
+
+	/**
+	 * @param blocks which should be fetched and unzipped, one after another
+	 */
+	public AbstractMultiBlockIterator(CloseableIterator<SeekableLineReader> blockItr) {
+		this.blockItr = blockItr;
+	}
+	
+	/**
+	 * @param params if it has predicates, only lines matching them are
+	 * returned. They are checked on the raw bytes, before decoding.
+	 * @param stats counts the lines this iterator reads, or null for its own
+	 * (see getStats())
+	 */
+	public void setFilter(ZipNumParams params, ZipNumScanStats stats) {
+		if ((params != null) && params.hasPredicates()) {
+			this.predicates = params.usePredicates();
+		}
+		if (stats != null) {
+			this.stats = stats;
+		}
+	}
+	
+	public ZipNumScanStats getStats() {
+		return stats;
+	}
+	
+	private boolean acceptLine(byte[] line, int off, int len) {
+		stats.linesScanned++;
+		
+		if (predicates != null) {
+			for (FieldPredicate predicate : predicates) {
+				if (!predicate.matches(line, off, len)) {
+					return false;
+				}
+			}
+		}
+		
+		stats.linesMatched++;
+		return true;
+	}
+	
+	/**
+	 * @return the line at buf[start..start+length) as an element
+	 */
+	protected abstract E decode(byte[] buf, int start, int length);
+	
+	private E readLine() throws IOException {
+		ByteLineReader lines = currLoader.getByteLineReader();
+		int length;
+		
+		while ((length = lines.readLine()) >= 0) {
+			if (acceptLine(lines.getBuffer(), lines.getLineStart(), length)) {
+				return decode(lines.getBuffer(), lines.getLineStart(), length);
+			}
+		}
+		
+		return null;
+	}
+	
+	@Override
+	public E getNextInner() {
+				
+		try {
+			while (true) {
+				if (currLoader == null) {
+					if (blockItr.hasNext()) {
+						currLoader = blockItr.next();
+					} else {
+						return null;
+					}
+				}
+				
+				// attempt to read the next line from this:
+				E next = readLine();
+				
+				if (next != null) {
+					return next;
+				}
+		
+				currLoader.close();
+				currLoader = null;
+			}
+		} catch (IOException io) {
+			LOGGER.warning(io.toString());
+			try {
+				close();
+			} catch (IOException exc) {
+				LOGGER.warning(exc.toString());				
+			}
+			return null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (currLoader != null) {
+			try {
+				currLoader.close();
+			} catch (IOException exc) {
+				LOGGER.warning(exc.toString());				
+			}
+			currLoader = null;
+		}
+		
+		if (blockItr != null) {
+			blockItr.close();
+			blockItr = null;
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Memory-mapped reader for the binary summary written by BinarySummaryWriter.
+ *
+ * Lookups binary search the restart keys and then scan one restart group,
+ * comparing UTF-8 bytes directly, so no Strings are created until summary
+ * lines are handed out. Part id, offset, length and line count are read from
+ * fixed width arrays by entry index.
+ *
+ * Keys compare as unsigned UTF-8 bytes, which matches String order for
+ * anything outside the surrogate range (ie. all SURT keys).
+ */
+public class BinarySummary implements Closeable {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static String SUFFIX = ".bin";
+
+	// "ZNSB"
+	final static int MAGIC = 0x5A4E5342;
+	final static int VERSION = 1;
+
+	final static int FLAG_LINE_COUNTS = 1;
+
+	protected String filename;
+
+	protected int numEntries;
+	protected int restartInterval;
+	protected boolean hasLineCounts;
+
+	protected String[] partIds;
+
+	protected IntBuffer partIndexes;
+	protected LongBuffer offsets;
+	protected IntBuffer lengths;
+	protected LongBuffer lineCounts;
+	protected IntBuffer restarts;
+	protected ByteBuffer keys;
+
+	public BinarySummary(String filename) throws IOException
+	{
+		this.filename = filename;
+
+		RandomAccessFile raf = new RandomAccessFile(new File(filename), "r");
+
+		try {
+			if (raf.readInt() != MAGIC) {
+				throw new IOException("Not a binary summary: " + filename);
+			}
+
+			int version = raf.readInt();
+
+			if (version != VERSION) {
+				throw new IOException("Unsupported binary summary version " + version + ": " + filename);
+			}
+
+			numEntries = raf.readInt();
+			int numParts = raf.readInt();
+			restartInterval = raf.readInt();
+			hasLineCounts = ((raf.readInt() & FLAG_LINE_COUNTS) != 0);
+			long keyBlockLength = raf.readLong();
+
+			partIds = new String[numParts];
+
+			for (int i = 0; i < numParts; i++) {
+				partIds[i] = raf.readUTF();
+			}
+
+			int numRestarts = (numEntries + restartInterval - 1) / restartInterval;
+
+			FileChannel channel = raf.getChannel();
+			long pos = raf.getFilePointer();
+
+			partIndexes = map(channel, pos, 4L * numEntries).asIntBuffer();
+			pos += 4L * numEntries;
+
+			offsets = map(channel, pos, 8L * numEntries).asLongBuffer();
+			pos += 8L * numEntries;
+
+			lengths = map(channel, pos, 4L * numEntries).asIntBuffer();
+			pos += 4L * numEntries;
+
+			lineCounts = map(channel, pos, 8L * numEntries).asLongBuffer();
+			pos += 8L * numEntries;
+
+			restarts = map(channel, pos, 4L * numRestarts).asIntBuffer();
+			pos += 4L * numRestarts;
+
+			keys = map(channel, pos, keyBlockLength);
+		} finally {
+			// mappings stay valid after the channel is closed
+			raf.close();
+		}
+	}
+
+	protected ByteBuffer map(FileChannel channel, long pos, long size) throws IOException
+	{
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("Binary summary section too large: " + filename);
+		}
+
+		if ((pos + size) > channel.size()) {
+			throw new IOException("Truncated binary summary: " + filename);
+		}
+
+		return channel.map(MapMode.READ_ONLY, pos, size);
+	}
+
+	/**
+	 * Compares the first len bytes of a to all of b, as unsigned bytes
+	 */
+	static int compare(byte[] a, int len, byte[] b)
+	{
+		int max = Math.min(len, b.length);
+
+		for (int i = 0; i < max; i++) {
+			int diff = (a[i] & 0xFF) - (b[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return len - b.length;
+	}
+
+	/**
+	 * Compares the full key stored at pos in the key block to key
+	 */
+	protected int compareRestart(int pos, byte[] key)
+	{
+		// skip shared length, always 0 at a restart
+		while ((keys.get(pos++) & 0x80) != 0);
+
+		int len = 0;
+		int shift = 0;
+		byte b;
+
+		do {
+			b = keys.get(pos++);
+			len |= (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+
+		int max = Math.min(len, key.length);
+
+		for (int i = 0; i < max; i++) {
+			int diff = (keys.get(pos + i) & 0xFF) - (key[i] & 0xFF);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return len - key.length;
+	}
+
+	/**
+	 * @return index of the first entry whose key is >= key, or
+	 * getNumEntries() if there is none
+	 */
+	public int lowerBound(byte[] key)
+	{
+		int min = 0;
+		int max = restarts.capacity() - 1;
+		int group = -1;
+
+		// last restart with key < search key
+		while (min <= max) {
+			int mid = (min + max) >>> 1;
+
+			if (compareRestart(restarts.get(mid), key) < 0) {
+				group = mid;
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+
+		if (group < 0) {
+			return 0;
+		}
+
+		KeyCursor cursor = new KeyCursor(group * restartInterval);
+		int end = Math.min(numEntries, (group + 1) * restartInterval);
+
+		while (cursor.index < end) {
+			if (compare(cursor.buffer, cursor.length, key) >= 0) {
+				return cursor.index;
+			}
+			cursor.next();
+		}
+
+		return end;
+	}
+
+	public int lowerBound(String key)
+	{
+		return lowerBound(key.getBytes(UTF8));
+	}
+
+	/**
+	 * @return index to start from for a search for key, as in
+	 * SortedTextFile.getRecordIterator(key, lessThan): the last entry
+	 * before key if lessThan is set, otherwise the first one not before it
+	 */
+	public int searchIndex(String key, boolean lessThan)
+	{
+		int index = lowerBound(key);
+
+		if (lessThan && (index > 0)) {
+			index--;
+		}
+
+		return index;
+	}
+
+	public int getNumEntries()
+	{
+		return numEntries;
+	}
+
+	public boolean hasLineCounts()
+	{
+		return hasLineCounts;
+	}
+
+	public String getPartId(int index)
+	{
+		return partIds[partIndexes.get(index)];
+	}
+
+	public long getOffset(int index)
+	{
+		return offsets.get(index);
+	}
+
+	public int getLength(int index)
+	{
+		return lengths.get(index);
+	}
+
+	/**
+	 * @return cumulative count of CDX lines before this block, or -1 if the
+	 * summary has no line counts
+	 */
+	public long getLineCount(int index)
+	{
+		return lineCounts.get(index);
+	}
+
+	public String getKey(int index)
+	{
+		KeyCursor cursor = new KeyCursor(index);
+		return new String(cursor.buffer, 0, cursor.length, UTF8);
+	}
+
+	protected String formatLine(KeyCursor cursor)
+	{
+		int index = cursor.index;
+
+		StringBuilder sb = new StringBuilder(cursor.length + 40);
+		sb.append(new String(cursor.buffer, 0, cursor.length, UTF8));
+		sb.append('\t');
+		sb.append(getPartId(index));
+		sb.append('\t');
+		sb.append(getOffset(index));
+		sb.append('\t');
+		sb.append(getLength(index));
+
+		long lineCount = getLineCount(index);
+
+		if (lineCount >= 0) {
+			sb.append('\t');
+			sb.append(lineCount);
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return the summary line for an entry, as it appears in the text summary
+	 */
+	public String getLine(int index)
+	{
+		return formatLine(new KeyCursor(index));
+	}
+
+	public CloseableIterator<String> getRecordIterator(String key, boolean lessThan)
+	{
+		return getRecordIterator(searchIndex(key, lessThan));
+	}
+
+	/**
+	 * @return text summary lines starting at entry index
+	 */
+	public CloseableIterator<String> getRecordIterator(final int index)
+	{
+		return new CloseableIterator<String>() {
+			KeyCursor cursor = (index < numEntries ? new KeyCursor(index) : null);
+
+			public boolean hasNext() {
+				return (cursor != null) && (cursor.index < numEntries);
+			}
+
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				String line = formatLine(cursor);
+				cursor.next();
+				return line;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			public void close() throws IOException {
+				cursor = null;
+			}
+		};
+	}
+
+	/**
+	 * @return the entries from index on, ending before the first key past
+	 * end as BoundedStringIterator would, or at the last entry if end is null
+	 */
+	public EntryIterator getEntryIterator(int index, String end, boolean inclusive)
+	{
+		return new EntryIterator(index, (end != null ? end.getBytes(UTF8) : null), inclusive);
+	}
+
+	/**
+	 * Steps through the entries for SummaryBlockIterator, with the part,
+	 * offset and length read from the arrays. Keys are only decoded to bytes,
+	 * to check the end bound, unless getKey() is called.
+	 */
+	public class EntryIterator implements Closeable
+	{
+		protected KeyCursor cursor;
+		protected byte[] end;
+		protected boolean inclusive;
+		protected boolean started = false;
+
+		EntryIterator(int index, byte[] end, boolean inclusive)
+		{
+			this.cursor = (index < numEntries ? new KeyCursor(index) : null);
+			this.end = end;
+			this.inclusive = inclusive;
+		}
+
+		/**
+		 * Moves to the next entry, the first one on the first call
+		 * @return false once there are no more entries
+		 */
+		public boolean next()
+		{
+			if (cursor == null) {
+				return false;
+			}
+
+			if (started) {
+				cursor.next();
+			} else {
+				started = true;
+			}
+
+			if ((cursor.index >= numEntries) || isPastEnd()) {
+				cursor = null;
+				return false;
+			}
+
+			return true;
+		}
+
+		protected boolean isPastEnd()
+		{
+			if ((end == null) || (compare(cursor.buffer, cursor.length, end) < 0)) {
+				return false;
+			}
+
+			return !inclusive || !startsWith(cursor.buffer, cursor.length, end);
+		}
+
+		public int getIndex()
+		{
+			return cursor.index;
+		}
+
+		public String getKey()
+		{
+			return new String(cursor.buffer, 0, cursor.length, UTF8);
+		}
+
+		public String getPartId()
+		{
+			return BinarySummary.this.getPartId(cursor.index);
+		}
+
+		public long getOffset()
+		{
+			return offsets.get(cursor.index);
+		}
+
+		public int getLength()
+		{
+			return lengths.get(cursor.index);
+		}
+
+		public void close()
+		{
+			cursor = null;
+		}
+	}
+
+	static boolean startsWith(byte[] a, int len, byte[] prefix)
+	{
+		if (len < prefix.length) {
+			return false;
+		}
+
+		for (int i = 0; i < prefix.length; i++) {
+			if (a[i] != prefix[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public void close() throws IOException
+	{
+		// Mapped buffers are released by GC
+		partIndexes = null;
+		offsets = null;
+		lengths = null;
+		lineCounts = null;
+		restarts = null;
+		keys = null;
+	}
+
+	/**
+	 * Decodes keys sequentially from a restart point into a reused buffer
+	 */
+	protected class KeyCursor
+	{
+		byte[] buffer = new byte[256];
+		int length = 0;
+		int index;
+		int pos;
+
+		KeyCursor(int index)
+		{
+			int group = index / restartInterval;
+			this.index = group * restartInterval;
+			this.pos = restarts.get(group);
+			decode();
+
+			while (this.index < index) {
+				next();
+			}
+		}
+
+		void next()
+		{
+			index++;
+
+			if (index < numEntries) {
+				decode();
+			}
+		}
+
+		int readVInt()
+		{
+			int value = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = keys.get(pos++);
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+
+			return value;
+		}
+
+		void decode()
+		{
+			int shared = readVInt();
+			int suffix = readVInt();
+
+			length = shared + suffix;
+
+			if (length > buffer.length) {
+				byte[] newBuffer = new byte[Math.max(length, buffer.length * 2)];
+				System.arraycopy(buffer, 0, newBuffer, 0, shared);
+				buffer = newBuffer;
+			}
+
+			for (int i = 0; i < suffix; i++) {
+				buffer[shared + i] = keys.get(pos++);
+			}
+		}
+	}
+}
@@ -0,0 +1,258 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Builds the binary sidecar of a ZipNum ALL.summary, read by BinarySummary.
+ *
+ * Entries must be added in summary (sorted) order. Everything is held in
+ * memory until write(), which needs the final entry count up front: roughly
+ * 24 bytes per block plus the compressed keys. The key block is limited to
+ * MAX_KEY_BLOCK_LENGTH bytes, as BinarySummary maps it as one buffer and
+ * restart offsets are ints, although the header stores its length as a long.
+ *
+ * Layout, all big-endian:
+ * <pre>
+ * int    MAGIC, VERSION, numEntries, numParts, restartInterval, flags
+ * long   keyBlockLength
+ * utf    partId[numParts]
+ * int    partIndex[numEntries]
+ * long   offset[numEntries]
+ * int    length[numEntries]
+ * long   lineCount[numEntries]     (cumulative, -1 if unknown)
+ * int    restart[numRestarts]      (offsets into key block)
+ * byte   keyBlock[keyBlockLength]
+ * </pre>
+ * Each key is stored as vint(shared prefix length), vint(suffix length), suffix
+ * (UTF-8), with a full key every restartInterval entries.
+ */
+public class BinarySummaryWriter {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static int DEFAULT_RESTART_INTERVAL = 16;
+
+	public final static long MAX_KEY_BLOCK_LENGTH = Integer.MAX_VALUE;
+
+	protected int restartInterval;
+	protected long maxKeyBlockLength = MAX_KEY_BLOCK_LENGTH;
+
+	protected int numEntries = 0;
+	protected boolean hasLineCounts = true;
+
+	protected HashMap<String, Integer> partIndexMap = new HashMap<String, Integer>();
+	protected List<String> partIds = new ArrayList<String>();
+
+	protected int[] partIndexes = new int[1024];
+	protected long[] offsets = new long[1024];
+	protected int[] lengths = new int[1024];
+	protected long[] lineCounts = new long[1024];
+
+	protected int[] restarts = new int[64];
+	protected int numRestarts = 0;
+
+	protected ByteArrayOutputStream keyBlock = new ByteArrayOutputStream();
+	protected byte[] lastKey = new byte[0];
+
+	public BinarySummaryWriter()
+	{
+		this(DEFAULT_RESTART_INTERVAL);
+	}
+
+	public BinarySummaryWriter(int restartInterval)
+	{
+		this.restartInterval = Math.max(1, restartInterval);
+	}
+
+	/**
+	 * Adds a text summary line: key, part, offset, length[, lineCount]
+	 */
+	public void addLine(String line)
+	{
+		String[] parts = line.split("\t");
+
+		if (parts.length < 4) {
+			throw new IllegalArgumentException("Bad summary line: " + line);
+		}
+
+		long lineCount = -1;
+
+		if (parts.length > 4) {
+			lineCount = Long.parseLong(parts[4]);
+		}
+
+		add(parts[0], parts[1], Long.parseLong(parts[2]), Integer.parseInt(parts[3]), lineCount);
+	}
+
+	public void add(String key, String partId, long offset, int length, long lineCount)
+	{
+		byte[] keyBytes = key.getBytes(UTF8);
+
+		if (BinarySummary.compare(lastKey, lastKey.length, keyBytes) > 0) {
+			throw new IllegalArgumentException("Summary out of order at: " + key);
+		}
+
+		// two vints and at most the whole key
+		if ((keyBlock.size() + 10L + keyBytes.length) > maxKeyBlockLength) {
+			throw new IllegalStateException("Binary summary keys over " + maxKeyBlockLength
+					+ " bytes at entry " + numEntries + ", use the text summary");
+		}
+
+		ensureCapacity(numEntries + 1);
+
+		Integer partIndex = partIndexMap.get(partId);
+
+		if (partIndex == null) {
+			partIndex = partIds.size();
+			partIds.add(partId);
+			partIndexMap.put(partId, partIndex);
+		}
+
+		partIndexes[numEntries] = partIndex;
+		offsets[numEntries] = offset;
+		lengths[numEntries] = length;
+		lineCounts[numEntries] = lineCount;
+
+		if (lineCount < 0) {
+			hasLineCounts = false;
+		}
+
+		int shared = 0;
+
+		if ((numEntries % restartInterval) == 0) {
+			if (numRestarts == restarts.length) {
+				restarts = Arrays.copyOf(restarts, restarts.length * 2);
+			}
+			restarts[numRestarts++] = keyBlock.size();
+		} else {
+			int max = Math.min(lastKey.length, keyBytes.length);
+			while ((shared < max) && (lastKey[shared] == keyBytes[shared])) {
+				shared++;
+			}
+		}
+
+		writeVInt(keyBlock, shared);
+		writeVInt(keyBlock, keyBytes.length - shared);
+		keyBlock.write(keyBytes, shared, keyBytes.length - shared);
+
+		lastKey = keyBytes;
+		numEntries++;
+	}
+
+	protected void ensureCapacity(int size)
+	{
+		if (size <= offsets.length) {
+			return;
+		}
+
+		int newSize = offsets.length * 2;
+		partIndexes = Arrays.copyOf(partIndexes, newSize);
+		offsets = Arrays.copyOf(offsets, newSize);
+		lengths = Arrays.copyOf(lengths, newSize);
+		lineCounts = Arrays.copyOf(lineCounts, newSize);
+	}
+
+	static void writeVInt(OutputStream out, int value)
+	{
+		try {
+			while ((value & ~0x7F) != 0) {
+				out.write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new RuntimeException(e);
+		}
+	}
+
+	public int getNumEntries()
+	{
+		return numEntries;
+	}
+
+	public void write(OutputStream os) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+
+		out.writeInt(BinarySummary.MAGIC);
+		out.writeInt(BinarySummary.VERSION);
+		out.writeInt(numEntries);
+		out.writeInt(partIds.size());
+		out.writeInt(restartInterval);
+		out.writeInt(hasLineCounts ? BinarySummary.FLAG_LINE_COUNTS : 0);
+		out.writeLong(keyBlock.size());
+
+		for (String partId : partIds) {
+			out.writeUTF(partId);
+		}
+
+		for (int i = 0; i < numEntries; i++) {
+			out.writeInt(partIndexes[i]);
+		}
+
+		for (int i = 0; i < numEntries; i++) {
+			out.writeLong(offsets[i]);
+		}
+
+		for (int i = 0; i < numEntries; i++) {
+			out.writeInt(lengths[i]);
+		}
+
+		for (int i = 0; i < numEntries; i++) {
+			out.writeLong(lineCounts[i]);
+		}
+
+		for (int i = 0; i < numRestarts; i++) {
+			out.writeInt(restarts[i]);
+		}
+
+		keyBlock.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Converts a text summary to its binary form, eg. ALL.summary to
+	 * ALL.summary.bin
+	 */
+	public static int convert(File summary, File binary) throws IOException
+	{
+		BinarySummaryWriter writer = new BinarySummaryWriter();
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(summary), UTF8));
+
+		try {
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty()) {
+					writer.addLine(line);
+				}
+			}
+		} finally {
+			br.close();
+		}
+
+		OutputStream out = new FileOutputStream(binary, false);
+
+		try {
+			writer.write(out);
+		} finally {
+			out.close();
+		}
+
+		return writer.getNumEntries();
+	}
+}
@@ -0,0 +1,171 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+import com.google.common.hash.Hashing;
+
+/**
+ * Memory-mapped per-block Bloom filters on the url key (first space
+ * delimited field) of one ZipNum part, as written by BlockBloomFilterWriter.
+ *
+ * Each block has a fixed size filter, stored with the block offset:
+ * <pre>
+ * int    MAGIC, VERSION, numHashes, numWords
+ * { long blockOffset, long bits[numWords] } per block, by offset
+ * </pre>
+ * A lookup touches one filter, usually a single page.
+ */
+public class BlockBloomFilter {
+	public final static String SUFFIX = ".bloom";
+
+	// "ZNBL"
+	final static int MAGIC = 0x5A4E424C;
+	final static int VERSION = 1;
+
+	final static int HEADER_LENGTH = 16;
+
+	protected String filename;
+	protected ByteBuffer buffer;
+
+	protected int numHashes;
+	protected int numWords;
+	protected int recordLength;
+	protected int numBlocks;
+
+	/**
+	 * An empty filter, with no blocks: everything might be contained
+	 */
+	protected BlockBloomFilter()
+	{
+		
+	}
+
+	public BlockBloomFilter(String filename) throws IOException
+	{
+		this.filename = filename;
+
+		RandomAccessFile raf = new RandomAccessFile(new File(filename), "r");
+
+		try {
+			long length = raf.length();
+
+			if (length > Integer.MAX_VALUE) {
+				throw new IOException("Bloom filter file too large: " + filename);
+			}
+
+			buffer = raf.getChannel().map(MapMode.READ_ONLY, 0, length);
+		} finally {
+			raf.close();
+		}
+
+		if ((buffer.capacity() < HEADER_LENGTH) || (buffer.getInt(0) != MAGIC)) {
+			throw new IOException("Not a block bloom filter: " + filename);
+		}
+
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException("Unsupported block bloom filter version " + buffer.getInt(4) + ": " + filename);
+		}
+
+		numHashes = buffer.getInt(8);
+		numWords = buffer.getInt(12);
+		recordLength = 8 + (8 * numWords);
+		numBlocks = (buffer.capacity() - HEADER_LENGTH) / recordLength;
+	}
+
+	static long hash(byte[] key, int off, int len)
+	{
+		return Hashing.murmur3_128().hashBytes(key, off, len).asLong();
+	}
+
+	/**
+	 * @return the length of the url key of a CDX line, ie. up to the first
+	 * space or newline
+	 */
+	static int keyLength(byte[] line, int off, int len)
+	{
+		for (int i = 0; i < len; i++) {
+			byte b = line[off + i];
+			if ((b == ' ') || (b == '\n')) {
+				return i;
+			}
+		}
+
+		return len;
+	}
+
+	protected int findBlock(long offset)
+	{
+		int min = 0;
+		int max = numBlocks - 1;
+
+		while (min <= max) {
+			int mid = (min + max) >>> 1;
+			long midOffset = buffer.getLong(HEADER_LENGTH + (mid * recordLength));
+
+			if (midOffset < offset) {
+				min = mid + 1;
+			} else if (midOffset > offset) {
+				max = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return false if the block starting at blockOffset definitely has no
+	 * line with this url key. Blocks without a filter always return true.
+	 */
+	public boolean mightContain(long blockOffset, byte[] key)
+	{
+		int block = findBlock(blockOffset);
+
+		if (block < 0) {
+			return true;
+		}
+
+		int bitsStart = HEADER_LENGTH + (block * recordLength) + 8;
+		long numBits = 64L * numWords;
+
+		long hash64 = hash(key, 0, key.length);
+		int hash1 = (int)hash64;
+		int hash2 = (int)(hash64 >>> 32);
+
+		for (int i = 1; i <= numHashes; i++) {
+			int combined = hash1 + (i * hash2);
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			long bit = combined % numBits;
+
+			long word = buffer.getLong(bitsStart + (int)(8 * (bit >>> 6)));
+
+			if ((word & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public int getNumBlocks()
+	{
+		return numBlocks;
+	}
+
+	public int getNumHashes()
+	{
+		return numHashes;
+	}
+
+	public int getBitsPerBlock()
+	{
+		return 64 * numWords;
+	}
+}
@@ -0,0 +1,137 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Writes the per-block url key Bloom filters of a ZipNum part, read by
+ * BlockBloomFilter. Keys are added as the lines of a block are written, and
+ * finishBlock() is called with the block offset once it is committed.
+ *
+ * All filters are sized for maxKeysPerBlock, ie. the ZipNum line limit.
+ */
+public class BlockBloomFilterWriter {
+
+	public final static double DEFAULT_FPP = 0.01;
+
+	protected DataOutputStream out;
+
+	protected int numHashes;
+	protected long[] words;
+	protected long numBits;
+
+	protected byte[] lastKey = new byte[0];
+	protected int lastKeyLength = 0;
+
+	public BlockBloomFilterWriter(OutputStream out, int maxKeysPerBlock) throws IOException
+	{
+		this(out, maxKeysPerBlock, DEFAULT_FPP);
+	}
+
+	public BlockBloomFilterWriter(OutputStream out, int maxKeysPerBlock, double fpp) throws IOException
+	{
+		int n = Math.max(1, maxKeysPerBlock);
+		double ln2 = Math.log(2);
+
+		long bits = (long)Math.ceil(-n * Math.log(fpp) / (ln2 * ln2));
+		int numWords = (int)Math.max(1, (bits + 63) / 64);
+
+		this.words = new long[numWords];
+		this.numBits = 64L * numWords;
+		this.numHashes = Math.max(1, (int)Math.round(((double)numBits / n) * ln2));
+
+		this.out = new DataOutputStream(new BufferedOutputStream(out));
+		this.out.writeInt(BlockBloomFilter.MAGIC);
+		this.out.writeInt(BlockBloomFilter.VERSION);
+		this.out.writeInt(numHashes);
+		this.out.writeInt(numWords);
+	}
+
+	/**
+	 * Adds the url key of a CDX line to the current block
+	 */
+	public void addLine(byte[] line, int off, int len)
+	{
+		int keyLength = BlockBloomFilter.keyLength(line, off, len);
+
+		// Sorted input: repeated captures of a url share a key
+		if ((keyLength == lastKeyLength) && equals(line, off, lastKey, keyLength)) {
+			return;
+		}
+
+		if (lastKey.length < keyLength) {
+			lastKey = new byte[Math.max(keyLength, lastKey.length * 2)];
+		}
+		System.arraycopy(line, off, lastKey, 0, keyLength);
+		lastKeyLength = keyLength;
+
+		long hash64 = BlockBloomFilter.hash(line, off, keyLength);
+		int hash1 = (int)hash64;
+		int hash2 = (int)(hash64 >>> 32);
+
+		for (int i = 1; i <= numHashes; i++) {
+			int combined = hash1 + (i * hash2);
+			if (combined < 0) {
+				combined = ~combined;
+			}
+			long bit = combined % numBits;
+			words[(int)(bit >>> 6)] |= (1L << bit);
+		}
+	}
+
+	public void addLine(byte[] line)
+	{
+		addLine(line, 0, line.length);
+	}
+
+	protected static boolean equals(byte[] a, int off, byte[] b, int len)
+	{
+		for (int i = 0; i < len; i++) {
+			if (a[off + i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the filter for the keys added since the last call, for the
+	 * block at blockOffset
+	 */
+	public void finishBlock(long blockOffset) throws IOException
+	{
+		writeBlock(blockOffset, words);
+		Arrays.fill(words, 0);
+		lastKeyLength = 0;
+	}
+
+	/**
+	 * Ends the current block without writing it, for writers that only learn
+	 * the block offset later
+	 * @return the filter bits, to pass to writeBlock()
+	 */
+	public long[] detachBlock()
+	{
+		long[] block = words;
+		words = new long[block.length];
+		lastKeyLength = 0;
+		return block;
+	}
+
+	public void writeBlock(long blockOffset, long[] block) throws IOException
+	{
+		out.writeLong(blockOffset);
+
+		for (long word : block) {
+			out.writeLong(word);
+		}
+	}
+
+	public void close() throws IOException
+	{
+		out.close();
+	}
+}
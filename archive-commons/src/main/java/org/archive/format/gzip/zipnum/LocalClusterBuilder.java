@@ -0,0 +1,586 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+import org.archive.util.ByteOp;
+import org.archive.util.binsearch.ByteLineReader;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.LoserTreeMergeIterator;
+import org.archive.util.zip.GZIPMembersInputStream;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Builds a ZipNum cluster from CDX files on one machine, without Hadoop: the
+ * same part-NNNNN.gz / part-NNNNN.summary / ALL.summary layout as the
+ * cluster-build job with ZipNumOutputFormat.
+ *
+ * <ol>
+ * <li>Inputs (plain or .gz) are read in parallel into chunks of up to
+ * chunkBytes, each sorted and spilled to a run file in tmpDir, with the
+ * offset where each partition starts.</li>
+ * <li>Each partition merges its slice of every run and writes its part
+ * with ZipNumWriter, all partitions in parallel.</li>
+ * <li>The part manifests are joined into ALL.summary, with the part name and
+ * cumulative line count of each block.</li>
+ * </ol>
+ *
+ * Lines are partitioned by url key (the first space delimited field)
+ * against the sorted lines of the split file, as AlphaPartitioner does, and
+ * sorted as unsigned bytes.
+ */
+public class LocalClusterBuilder {
+	private final static Logger LOGGER = Logger.getLogger(LocalClusterBuilder.class.getName());
+
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static String SUMMARY_NAME = "ALL.summary";
+
+	public final static int DEFAULT_LINES_PER_BLOCK = 3000;
+	public final static long DEFAULT_CHUNK_BYTES = 64 * 1024 * 1024;
+
+	protected final static int BUFFER_SIZE = 64 * 1024;
+
+	// Rough per line overhead of a byte[] in a chunk
+	protected final static int LINE_OVERHEAD = 32;
+
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+	protected int linesPerBlock = DEFAULT_LINES_PER_BLOCK;
+	protected long chunkBytes = DEFAULT_CHUNK_BYTES;
+	protected File tmpDir = null;
+	protected double bloomFpp = 0;
+	protected byte[] dictionary = null;
+
+	protected byte[][] boundaries = new byte[0][];
+
+	protected List<SpillRun> runs = Collections.synchronizedList(new ArrayList<SpillRun>());
+
+	// A sorted run, and where each partition starts in it
+	protected static class SpillRun
+	{
+		File file;
+		long[] partitionOffsets;
+	}
+
+	/**
+	 * @param splitFile one boundary per line, one partition per boundary,
+	 * or null for a single part
+	 */
+	public void setSplitFile(File splitFile) throws IOException
+	{
+		List<byte[]> lines = new ArrayList<byte[]>();
+
+		if (splitFile != null) {
+			InputStream in = new FileInputStream(splitFile);
+
+			try {
+				ByteLineReader reader = new ByteLineReader(in, BUFFER_SIZE);
+				byte[] line;
+
+				while ((line = reader.readLineBytes()) != null) {
+					lines.add(line);
+				}
+			} finally {
+				in.close();
+			}
+		}
+
+		boundaries = lines.toArray(new byte[lines.size()][]);
+		Arrays.sort(boundaries, LoserTreeMergeIterator.BYTE_ARRAY_COMPARATOR);
+	}
+
+	public int getNumPartitions()
+	{
+		return Math.max(1, boundaries.length);
+	}
+
+	/**
+	 * @return the index of the last boundary at or before the url key of
+	 * the line, or 0
+	 */
+	protected int getPartition(byte[] line)
+	{
+		int keyLength = BlockBloomFilter.keyLength(line, 0, line.length);
+		int min = 0;
+		int max = boundaries.length - 1;
+		int partition = 0;
+
+		while (min <= max) {
+			int mid = (min + max) >>> 1;
+			byte[] boundary = boundaries[mid];
+
+			if (ByteOp.compare(boundary, 0, boundary.length, line, 0, keyLength) <= 0) {
+				partition = mid;
+				min = mid + 1;
+			} else {
+				max = mid - 1;
+			}
+		}
+
+		return partition;
+	}
+
+	public static String getPartName(int partition)
+	{
+		return String.format("part-%05d", partition);
+	}
+
+	/**
+	 * Builds the cluster in outDir from the inputs
+	 */
+	public void build(List<File> inputs, File outDir) throws IOException
+	{
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new IOException("Could not create " + outDir);
+		}
+
+		File spillDir = ((tmpDir != null) ? tmpDir : outDir);
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+				new ThreadFactoryBuilder().setNameFormat("LocalClusterBuilder-%d").setDaemon(true).build());
+
+		try {
+			long start = System.currentTimeMillis();
+			sortInputs(inputs, spillDir, executor);
+			LOGGER.info("Sorted " + inputs.size() + " inputs into " + runs.size() + " runs in " +
+					(System.currentTimeMillis() - start) + "ms");
+
+			start = System.currentTimeMillis();
+			long[] partLines = mergePartitions(outDir, executor);
+			LOGGER.info("Wrote " + getNumPartitions() + " parts in " + (System.currentTimeMillis() - start) + "ms");
+
+			writeSummary(outDir, partLines, linesPerBlock);
+		} finally {
+			executor.shutdownNow();
+
+			for (SpillRun run : runs) {
+				run.file.delete();
+			}
+			runs.clear();
+		}
+	}
+
+	protected void sortInputs(List<File> inputs, final File spillDir, final ExecutorService executor) throws IOException
+	{
+		// Bounds the chunks in memory, whether being filled or sorted
+		final Semaphore chunkPermits = new Semaphore(numThreads);
+		final List<Future<?>> spills = Collections.synchronizedList(new ArrayList<Future<?>>());
+
+		// Readers run on their own threads, so they never wait on the spills
+		// that would free them a permit
+		ExecutorService readers = Executors.newFixedThreadPool(Math.min(numThreads, Math.max(1, inputs.size())),
+				new ThreadFactoryBuilder().setNameFormat("LocalClusterReader-%d").setDaemon(true).build());
+
+		List<Future<?>> reads = new ArrayList<Future<?>>();
+
+		try {
+			for (final File input : inputs) {
+				reads.add(readers.submit(new Callable<Void>() {
+					public Void call() throws IOException, InterruptedException {
+						readInput(input, spillDir, executor, chunkPermits, spills);
+						return null;
+					}
+				}));
+			}
+
+			waitAll(reads);
+			waitAll(spills);
+		} finally {
+			readers.shutdownNow();
+		}
+	}
+
+	protected void readInput(File input, final File spillDir, ExecutorService executor,
+			final Semaphore chunkPermits, List<Future<?>> spills) throws IOException, InterruptedException
+	{
+		InputStream in = new BufferedInputStream(new FileInputStream(input), BUFFER_SIZE);
+
+		try {
+			if (input.getName().endsWith(".gz")) {
+				in = new GZIPMembersInputStream(in, BUFFER_SIZE);
+			}
+
+			ByteLineReader reader = new ByteLineReader(in, BUFFER_SIZE);
+
+			while (true) {
+				chunkPermits.acquire();
+
+				final List<byte[]> chunk = new ArrayList<byte[]>();
+				long size = 0;
+				byte[] line = null;
+
+				while ((size < chunkBytes) && ((line = reader.readLineBytes()) != null)) {
+					if (line.length > 0) {
+						chunk.add(line);
+						size += line.length + LINE_OVERHEAD;
+					}
+				}
+
+				if (chunk.isEmpty()) {
+					chunkPermits.release();
+					break;
+				}
+
+				spills.add(executor.submit(new Callable<Void>() {
+					public Void call() throws IOException {
+						try {
+							spill(chunk, spillDir);
+						} finally {
+							chunkPermits.release();
+						}
+						return null;
+					}
+				}));
+
+				if (line == null) {
+					break;
+				}
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	protected void spill(List<byte[]> chunk, File spillDir) throws IOException
+	{
+		byte[][] lines = chunk.toArray(new byte[chunk.size()][]);
+		chunk.clear();
+
+		Arrays.sort(lines, LoserTreeMergeIterator.BYTE_ARRAY_COMPARATOR);
+
+		SpillRun run = new SpillRun();
+		run.file = File.createTempFile("cluster-spill-", ".run", spillDir);
+		run.partitionOffsets = new long[getNumPartitions() + 1];
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(run.file), BUFFER_SIZE);
+		long offset = 0;
+		int partition = 0;
+
+		try {
+			for (byte[] line : lines) {
+				// Keys with bytes below ' ' could sort out of key order:
+				// never go back a partition
+				int linePartition = Math.max(partition, getPartition(line));
+
+				while (partition < linePartition) {
+					run.partitionOffsets[++partition] = offset;
+				}
+
+				out.write(line);
+				out.write('\n');
+				offset += line.length + 1;
+			}
+		} finally {
+			out.close();
+		}
+
+		while (partition < getNumPartitions()) {
+			run.partitionOffsets[++partition] = offset;
+		}
+
+		runs.add(run);
+	}
+
+	/**
+	 * @return number of lines written to each part
+	 */
+	protected long[] mergePartitions(final File outDir, ExecutorService executor) throws IOException
+	{
+		int numParts = getNumPartitions();
+		final long[] partLines = new long[numParts];
+
+		// Fewer parts than threads: give each writer the spare threads
+		final int writerThreads = Math.max(1, numThreads / numParts);
+
+		List<Future<?>> merges = new ArrayList<Future<?>>();
+
+		for (int i = 0; i < numParts; i++) {
+			final int partition = i;
+
+			merges.add(executor.submit(new Callable<Void>() {
+				public Void call() throws IOException {
+					partLines[partition] = writePart(outDir, partition, writerThreads);
+					return null;
+				}
+			}));
+		}
+
+		waitAll(merges);
+		return partLines;
+	}
+
+	protected long writePart(File outDir, int partition, int writerThreads) throws IOException
+	{
+		LoserTreeMergeIterator<byte[]> merged =
+			new LoserTreeMergeIterator<byte[]>(LoserTreeMergeIterator.BYTE_ARRAY_COMPARATOR);
+
+		try {
+			for (SpillRun run : runs) {
+				long start = run.partitionOffsets[partition];
+				long end = run.partitionOffsets[partition + 1];
+
+				if (end > start) {
+					merged.addIterator(new RunIterator(run.file, start, end - start));
+				}
+			}
+
+			return writePart(merged, outDir, partition, writerThreads);
+		} finally {
+			merged.close();
+		}
+	}
+
+	/**
+	 * Writes already sorted lines, without newlines, as one part
+	 * @return number of lines written
+	 */
+	public long writePart(Iterator<byte[]> lines, File outDir, int partition, int writerThreads) throws IOException
+	{
+		String name = getPartName(partition);
+
+		OutputStream mainOut = null;
+		OutputStream summaryOut = null;
+		ZipNumWriter writer = null;
+		long numLines = 0;
+
+		try {
+			mainOut = new BufferedOutputStream(new FileOutputStream(new File(outDir, name + ".gz")), BUFFER_SIZE);
+			summaryOut = new BufferedOutputStream(new FileOutputStream(new File(outDir, name + ".summary")), BUFFER_SIZE);
+
+			writer = new ZipNumWriter(mainOut, summaryOut, linesPerBlock, writerThreads);
+
+			if (bloomFpp > 0) {
+				OutputStream bloomOut = new FileOutputStream(new File(outDir, name + BlockBloomFilter.SUFFIX));
+				writer.setBloomFilterWriter(new BlockBloomFilterWriter(bloomOut, linesPerBlock, bloomFpp));
+			}
+
+			if (dictionary != null) {
+				writer.setDictionary(dictionary);
+			}
+
+			while (lines.hasNext()) {
+				byte[] line = lines.next();
+				byte[] record = new byte[line.length + 1];
+				System.arraycopy(line, 0, record, 0, line.length);
+				record[line.length] = '\n';
+				writer.addRecord(record);
+				numLines++;
+			}
+
+			writer.close();
+			writer = null;
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException io) {
+					LOGGER.warning(io.toString());
+				}
+			}
+
+			// ZipNumWriter does not close its streams
+			if (mainOut != null) {
+				mainOut.close();
+			}
+			if (summaryOut != null) {
+				summaryOut.close();
+			}
+		}
+
+		return numLines;
+	}
+
+	/**
+	 * Writes already sorted lines as a single part cluster in outDir, using
+	 * every thread for compression
+	 */
+	public void buildSorted(Iterator<byte[]> lines, File outDir) throws IOException
+	{
+		if (!outDir.isDirectory() && !outDir.mkdirs()) {
+			throw new IOException("Could not create " + outDir);
+		}
+
+		long numLines = writePart(lines, outDir, 0, numThreads);
+		writeSummary(outDir, new long[]{numLines}, linesPerBlock);
+	}
+
+	// The lines of one partition of a spill run
+	protected static class RunIterator extends AbstractPeekableIterator<byte[]>
+	{
+		protected InputStream in;
+		protected ByteLineReader reader;
+
+		protected RunIterator(File file, long offset, long length) throws IOException
+		{
+			FileInputStream fis = new FileInputStream(file);
+
+			try {
+				fis.getChannel().position(offset);
+			} catch (IOException io) {
+				fis.close();
+				throw io;
+			}
+
+			in = ByteStreams.limit(fis, length);
+			reader = new ByteLineReader(in, BUFFER_SIZE);
+		}
+
+		@Override
+		public byte[] getNextInner() {
+			try {
+				return reader.readLineBytes();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * Joins the part manifests (offset, length, first line per block) into
+	 * ALL.summary: first line, part, offset, length, cumulative line count
+	 */
+	public static void writeSummary(File outDir, long[] partLines, int linesPerBlock) throws IOException
+	{
+		PrintWriter summary = new PrintWriter(new File(outDir, SUMMARY_NAME), "UTF-8");
+		long lineCount = 0;
+
+		try {
+			for (int partition = 0; partition < partLines.length; partition++) {
+				String name = getPartName(partition);
+				InputStream in = new FileInputStream(new File(outDir, name + ".summary"));
+				long partEnd = lineCount + partLines[partition];
+
+				try {
+					ByteLineReader reader = new ByteLineReader(in, BUFFER_SIZE);
+					byte[] bytes;
+
+					while ((bytes = reader.readLineBytes()) != null) {
+						String[] fields = new String(bytes, UTF8).split("\t", 3);
+
+						if (fields.length < 3) {
+							continue;
+						}
+
+						summary.format("%s\t%s\t%s\t%s\t%d\n", fields[2], name, fields[0], fields[1], lineCount);
+						lineCount = Math.min(partEnd, lineCount + linesPerBlock);
+					}
+				} finally {
+					in.close();
+				}
+
+				lineCount = partEnd;
+			}
+		} finally {
+			summary.close();
+		}
+	}
+
+	protected static void waitAll(List<Future<?>> futures) throws IOException
+	{
+		try {
+			// spills may still be added while the first ones are waited on
+			for (int i = 0; i < futures.size(); i++) {
+				futures.get(i).get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	public int getLinesPerBlock() {
+		return linesPerBlock;
+	}
+
+	public void setLinesPerBlock(int linesPerBlock) {
+		this.linesPerBlock = linesPerBlock;
+	}
+
+	public long getChunkBytes() {
+		return chunkBytes;
+	}
+
+	/**
+	 * @param chunkBytes approximate memory per sorted run. Up to numThreads
+	 * chunks are in memory at once.
+	 */
+	public void setChunkBytes(long chunkBytes) {
+		this.chunkBytes = chunkBytes;
+	}
+
+	public File getTmpDir() {
+		return tmpDir;
+	}
+
+	/**
+	 * @param tmpDir where sorted runs are spilled, the output directory by
+	 * default. Needs about the size of the uncompressed input.
+	 */
+	public void setTmpDir(File tmpDir) {
+		this.tmpDir = tmpDir;
+	}
+
+	public double getBloomFpp() {
+		return bloomFpp;
+	}
+
+	/**
+	 * @param bloomFpp if > 0, write a .bloom file per part, see
+	 * BlockBloomFilterWriter
+	 */
+	public void setBloomFpp(double bloomFpp) {
+		this.bloomFpp = bloomFpp;
+	}
+
+	public byte[] getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * @param dictionary preset deflate dictionary for every block, see
+	 * ZipNumDictionaryTrainer
+	 */
+	public void setDictionary(byte[] dictionary) {
+		this.dictionary = dictionary;
+	}
+}
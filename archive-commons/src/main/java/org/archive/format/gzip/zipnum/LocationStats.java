@@ -0,0 +1,247 @@
+package org.archive.format.gzip.zipnum;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency and error EWMAs per block location (replica), used to try the
+ * fastest healthy replica first, plus a window of recent latencies across
+ * all locations for picking a hedged read delay.
+ */
+public class LocationStats {
+
+	public final static double DEFAULT_ALPHA = 0.2;
+
+	// Error rate above which a location is tried last
+	public final static double DEFAULT_MAX_ERROR_RATE = 0.5;
+
+	// An unhealthy location is given another chance after this long
+	public final static long DEFAULT_RETRY_INTERVAL_MS = 30000;
+
+	protected final static int NUM_SAMPLES = 1024;
+	protected final static int MIN_SAMPLES = 16;
+
+	protected double alpha = DEFAULT_ALPHA;
+	protected double maxErrorRate = DEFAULT_MAX_ERROR_RATE;
+	protected long retryIntervalMs = DEFAULT_RETRY_INTERVAL_MS;
+
+	protected static class Stat
+	{
+		// -1 until the first success
+		double latencyMs = -1;
+		double errorRate = 0;
+		long lastErrorTime = 0;
+	}
+
+	protected ConcurrentHashMap<String, Stat> stats = new ConcurrentHashMap<String, Stat>();
+
+	// The percentile is re-sorted after this many new samples, or this long
+	protected final static int PERCENTILE_REFRESH_SAMPLES = 64;
+	protected final static long PERCENTILE_REFRESH_MS = 1000;
+
+	protected long[] samples = new long[NUM_SAMPLES];
+	protected int numSamples = 0;
+	protected int nextSample = 0;
+	protected long totalSamples = 0;
+
+	// Last getLatencyPercentileMs() result, all guarded by samples
+	protected double cachedPercentile = -1;
+	protected long cachedLatencyMs = -1;
+	protected long cachedAtSample = 0;
+	protected long cachedAtTime = 0;
+
+	protected Stat getStat(String location)
+	{
+		Stat stat = stats.get(location);
+
+		if (stat == null) {
+			stat = new Stat();
+			Stat existing = stats.putIfAbsent(location, stat);
+			if (existing != null) {
+				stat = existing;
+			}
+		}
+
+		return stat;
+	}
+
+	public void recordSuccess(String location, long latencyMs)
+	{
+		Stat stat = getStat(location);
+
+		synchronized (stat) {
+			if (stat.latencyMs < 0) {
+				stat.latencyMs = latencyMs;
+			} else {
+				stat.latencyMs += alpha * (latencyMs - stat.latencyMs);
+			}
+			stat.errorRate -= alpha * stat.errorRate;
+		}
+
+		synchronized (samples) {
+			samples[nextSample] = latencyMs;
+			nextSample = (nextSample + 1) % samples.length;
+			numSamples = Math.min(numSamples + 1, samples.length);
+			totalSamples++;
+		}
+	}
+
+	public void recordError(String location)
+	{
+		Stat stat = getStat(location);
+
+		synchronized (stat) {
+			stat.errorRate += alpha * (1 - stat.errorRate);
+			stat.lastErrorTime = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * @return latency EWMA in ms, or -1 if unknown
+	 */
+	public double getLatencyMs(String location)
+	{
+		Stat stat = stats.get(location);
+
+		if (stat == null) {
+			return -1;
+		}
+
+		synchronized (stat) {
+			return stat.latencyMs;
+		}
+	}
+
+	public double getErrorRate(String location)
+	{
+		Stat stat = stats.get(location);
+
+		if (stat == null) {
+			return 0;
+		}
+
+		synchronized (stat) {
+			return stat.errorRate;
+		}
+	}
+
+	public boolean isHealthy(String location, long now)
+	{
+		Stat stat = stats.get(location);
+
+		if (stat == null) {
+			return true;
+		}
+
+		synchronized (stat) {
+			return (stat.errorRate <= maxErrorRate) || ((now - stat.lastErrorTime) >= retryIntervalMs);
+		}
+	}
+
+	/**
+	 * @return a copy of locations, healthy ones first, each group by latency.
+	 * Unmeasured locations count as fastest so they get measured, and ties
+	 * keep their original order.
+	 */
+	public String[] order(String[] locations)
+	{
+		if (locations.length < 2) {
+			return locations;
+		}
+
+		final long now = System.currentTimeMillis();
+		final int numLocs = locations.length;
+		final boolean[] healthy = new boolean[numLocs];
+		final double[] latency = new double[numLocs];
+		Integer[] order = new Integer[numLocs];
+
+		for (int i = 0; i < numLocs; i++) {
+			healthy[i] = isHealthy(locations[i], now);
+			latency[i] = Math.max(0, getLatencyMs(locations[i]));
+			order[i] = i;
+		}
+
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if (healthy[a] != healthy[b]) {
+					return (healthy[a] ? -1 : 1);
+				}
+				return Double.compare(latency[a], latency[b]);
+			}
+		});
+
+		String[] ordered = new String[numLocs];
+
+		for (int i = 0; i < numLocs; i++) {
+			ordered[i] = locations[order[i]];
+		}
+
+		return ordered;
+	}
+
+	/**
+	 * @return the given percentile (0-1) of recent successful read latencies
+	 * over all locations, or -1 if there are too few samples yet. Called on
+	 * every hedged read, so the result is reused until
+	 * PERCENTILE_REFRESH_SAMPLES more samples or PERCENTILE_REFRESH_MS.
+	 */
+	public long getLatencyPercentileMs(double percentile)
+	{
+		long now = System.currentTimeMillis();
+		long[] sorted;
+		long atSample;
+
+		synchronized (samples) {
+			if (numSamples < MIN_SAMPLES) {
+				return -1;
+			}
+
+			if ((percentile == cachedPercentile) &&
+					((totalSamples - cachedAtSample) < PERCENTILE_REFRESH_SAMPLES) &&
+					((now - cachedAtTime) < PERCENTILE_REFRESH_MS)) {
+				return cachedLatencyMs;
+			}
+
+			sorted = Arrays.copyOf(samples, numSamples);
+			atSample = totalSamples;
+		}
+
+		Arrays.sort(sorted);
+		int index = (int)Math.min(sorted.length - 1, Math.floor(percentile * sorted.length));
+		long latencyMs = sorted[Math.max(0, index)];
+
+		synchronized (samples) {
+			cachedPercentile = percentile;
+			cachedLatencyMs = latencyMs;
+			cachedAtSample = atSample;
+			cachedAtTime = now;
+		}
+
+		return latencyMs;
+	}
+
+	public double getAlpha() {
+		return alpha;
+	}
+
+	public void setAlpha(double alpha) {
+		this.alpha = alpha;
+	}
+
+	public double getMaxErrorRate() {
+		return maxErrorRate;
+	}
+
+	public void setMaxErrorRate(double maxErrorRate) {
+		this.maxErrorRate = maxErrorRate;
+	}
+
+	public long getRetryIntervalMs() {
+		return retryIntervalMs;
+	}
+
+	public void setRetryIntervalMs(long retryIntervalMs) {
+		this.retryIntervalMs = retryIntervalMs;
+	}
+}
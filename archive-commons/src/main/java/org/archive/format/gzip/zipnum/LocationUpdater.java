@@ -5,9 +5,14 @@ import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,11 +21,14 @@ import org.archive.util.GeneralURIStreamFactory;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.SeekableLineReaderIterator;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class LocationUpdater implements Runnable {
 	
 	final static Logger LOGGER = Logger.getLogger(LocationUpdater.class.getName());
 	
-	protected HashMap<String, String[]> locMap = null;
+	// Replaced, never modified, so readers need no lock
+	protected volatile Map<String, String[]> locMap = null;
 	protected SeekableLineReaderFactory locReaderFactory = null;
 	protected String locUri;
 	
@@ -36,25 +44,33 @@ public class LocationUpdater implements Runnable {
 	public final static String OFF = "OFF";
 	
 	protected SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-	protected Date startDate, endDate;
+	protected volatile Date startDate, endDate;
 	
 	protected ZipNumBlockLoader blockLoader = null;
 	
 	protected Date newStartDate, newEndDate;
 	protected boolean newIsDisabled = false;
-	protected boolean isDisabled = false;
+	protected volatile boolean isDisabled = false;
+	
+	protected LocationStats locationStats = new LocationStats();
+	
+	protected double hedgePercentile = 0;
+	protected long minHedgeDelayMs = 10;
+	protected AtomicLong numHedgedReads = new AtomicLong();
+	protected ExecutorService readExecutor = null;
 	
 	public LocationUpdater(String locUri, ZipNumBlockLoader blockLoader) throws IOException
 	{
 		this.locUri = locUri;
 		this.blockLoader = blockLoader;
 		
-		locMap = new HashMap<String, String[]>();
+		HashMap<String, String[]> initMap = new HashMap<String, String[]>();
 
 		locReaderFactory = GeneralURIStreamFactory.createSeekableStreamFactory(locUri, false);
 		lastModTime = locReaderFactory.getModTime();
 		
-		loadPartLocations(locMap);
+		loadPartLocations(initMap);
+		locMap = Collections.unmodifiableMap(initMap);
 		
 		isDisabled = newIsDisabled;
 		startDate = newStartDate;
@@ -62,6 +78,7 @@ public class LocationUpdater implements Runnable {
 		
 		if (checkInterval > 0) {
 			updaterThread = new Thread(this, "LocationUpdaterThread");
+			updaterThread.setDaemon(true);
 			updaterThread.start();
 		}
 	}
@@ -83,22 +100,23 @@ public class LocationUpdater implements Runnable {
 		
 		ArrayList<String[]> filesToClose = new ArrayList<String[]>();
 		
-		synchronized (this) {
-			for (Entry<String, String[]> files : destMap.entrySet()) {
-				String[] existingFiles = locMap.get(files.getKey());
-				if ((existingFiles != null) && !Arrays.equals(existingFiles, files.getValue())) {					
-					filesToClose.add(existingFiles);
-				}
-				locMap.put(files.getKey(), files.getValue());
+		// Parts missing from the new file keep their old locations
+		HashMap<String, String[]> newMap = new HashMap<String, String[]>(locMap);
+		
+		for (Entry<String, String[]> files : destMap.entrySet()) {
+			String[] existingFiles = newMap.get(files.getKey());
+			if ((existingFiles != null) && !Arrays.equals(existingFiles, files.getValue())) {					
+				filesToClose.add(existingFiles);
 			}
-			
-			//locMap.putAll(destMap);
-			
-			startDate = newStartDate;
-			endDate = newEndDate;
-			isDisabled = newIsDisabled;
+			newMap.put(files.getKey(), files.getValue());
 		}
 		
+		locMap = Collections.unmodifiableMap(newMap);
+		
+		startDate = newStartDate;
+		endDate = newEndDate;
+		isDisabled = newIsDisabled;
+		
 		closeExistingFiles(filesToClose);
 		
 		lastModTime = newModTime;
@@ -116,11 +134,89 @@ public class LocationUpdater implements Runnable {
 		}
 	}
 
-	public synchronized String[] getLocations(String key)
+	public String[] getLocations(String key)
 	{
 		return locMap.get(key);
 	}
 	
+	/**
+	 * @return the locations of a part, fastest healthy one first, see
+	 * LocationStats.order()
+	 */
+	public String[] getOrderedLocations(String key)
+	{
+		String[] locations = locMap.get(key);
+		
+		if (locations == null) {
+			return null;
+		}
+		
+		return locationStats.order(locations);
+	}
+	
+	public LocationStats getLocationStats()
+	{
+		return locationStats;
+	}
+	
+	/**
+	 * @return how long to wait on a read before sending a hedged read to the
+	 * next location, or -1 for no hedging
+	 */
+	public long getHedgeDelayMs()
+	{
+		if (hedgePercentile <= 0) {
+			return -1;
+		}
+		
+		long delay = locationStats.getLatencyPercentileMs(hedgePercentile);
+		
+		if (delay < 0) {
+			return -1;
+		}
+		
+		return Math.max(minHedgeDelayMs, delay);
+	}
+	
+	/**
+	 * @return the pool hedged reads run on. Unbounded, and separate from the
+	 * prefetch pool, so a read never waits behind the one it is hedging.
+	 */
+	public synchronized ExecutorService getReadExecutor()
+	{
+		if (readExecutor == null) {
+			readExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setNameFormat("LocationRead-%d").setDaemon(true).build());
+		}
+		
+		return readExecutor;
+	}
+	
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @param hedgePercentile if > 0, a read still running after this
+	 * percentile (eg. 0.95) of recent read latencies gets a second, hedged
+	 * read from the next location, and the first to finish wins
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+	}
+
+	public long getMinHedgeDelayMs() {
+		return minHedgeDelayMs;
+	}
+
+	public void setMinHedgeDelayMs(long minHedgeDelayMs) {
+		this.minHedgeDelayMs = minHedgeDelayMs;
+	}
+	
+	public long getNumHedgedReads() {
+		return numHedgedReads.get();
+	}
+	
 	protected Date parseDate(String date)
 	{
 		try {
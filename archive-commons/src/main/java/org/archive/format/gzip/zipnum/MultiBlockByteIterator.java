@@ -0,0 +1,27 @@
+package org.archive.format.gzip.zipnum;
+
+import java.util.concurrent.ExecutorService;
+
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * MultiBlockIterator returning the lines as UTF-8 bytes, without decoding
+ */
+public class MultiBlockByteIterator extends AbstractMultiBlockIterator<byte[]> {
+
+	public MultiBlockByteIterator(CloseableIterator<SeekableLineReader> blockItr) {
+		super(blockItr);
+	}
+	
+	public MultiBlockByteIterator(SummaryBlockIterator blockItr, ExecutorService executor, int maxPrefetch) {
+		this(new PrefetchingBlockIterator(blockItr, executor, maxPrefetch));
+	}
+	
+	@Override
+	protected byte[] decode(byte[] buf, int start, int length) {
+		byte[] line = new byte[length];
+		System.arraycopy(buf, start, line, 0, length);
+		return line;
+	}
+}
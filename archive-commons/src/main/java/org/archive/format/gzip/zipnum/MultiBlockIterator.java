@@ -1,78 +1,33 @@
 package org.archive.format.gzip.zipnum;
 
-import java.io.IOException;
-import java.util.logging.Logger;
+import java.util.concurrent.ExecutorService;
 
 import org.archive.util.binsearch.SeekableLineReader;
-import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
 
 /**
  * @author brad, ilya
  *
  */
-public class MultiBlockIterator extends AbstractPeekableIterator<String> {
-	private static final Logger LOGGER = Logger.getLogger(
-			MultiBlockIterator.class.getName());
-
-	private SeekableLineReader currLoader = null;
-	private CloseableIterator<SeekableLineReader> blockItr = null;
+public class MultiBlockIterator extends AbstractMultiBlockIterator<String> {
 
 	/**
 	 * @param blocks which should be fetched and unzipped, one after another
 	 */
 	public MultiBlockIterator(CloseableIterator<SeekableLineReader> blockItr) {
-		this.blockItr = blockItr;
+		super(blockItr);
 	}
 	
-	@Override
-	public String getNextInner() {
-				
-		try {
-			while (true) {
-				if (currLoader == null) {
-					if (blockItr.hasNext()) {
-						currLoader = blockItr.next();
-					} else {
-						return null;
-					}
-				}
-				
-				// attempt to read the next line from this:
-				String next = currLoader.readLine();
-				
-				if (next != null) {
-					return next;
-				}
-		
-				currLoader.close();
-				currLoader = null;
-			}
-		} catch (IOException io) {
-			LOGGER.warning(io.toString());
-			try {
-				close();
-			} catch (IOException exc) {
-				LOGGER.warning(exc.toString());				
-			}
-			return null;
-		}
+	/**
+	 * Prefetch mode: up to maxPrefetch block ranges are fetched and inflated
+	 * on the executor ahead of the lines being read.
+	 */
+	public MultiBlockIterator(SummaryBlockIterator blockItr, ExecutorService executor, int maxPrefetch) {
+		this(new PrefetchingBlockIterator(blockItr, executor, maxPrefetch));
 	}
-
+	
 	@Override
-	public void close() throws IOException {
-		if (currLoader != null) {
-			try {
-				currLoader.close();
-			} catch (IOException exc) {
-				LOGGER.warning(exc.toString());				
-			}
-			currLoader = null;
-		}
-		
-		if (blockItr != null) {
-			blockItr.close();
-			blockItr = null;
-		}
+	protected String decode(byte[] buf, int start, int length) {
+		return new String(buf, start, length, SeekableLineReader.UTF8);
 	}
 }
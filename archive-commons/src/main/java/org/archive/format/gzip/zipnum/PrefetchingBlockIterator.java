@@ -0,0 +1,182 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.logging.Logger;
+
+import org.archive.format.gzip.zipnum.SummaryBlockIterator.BlockRange;
+import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
+import org.archive.util.iterator.AbstractPeekableIterator;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Reads ahead in the summary and fetches and inflates up to maxPrefetch
+ * block ranges on an executor, while still returning the blocks in summary
+ * order.
+ *
+ * At most maxPrefetch ranges are in flight or buffered at any time, so a
+ * slow consumer holds back the summary iteration. close() cancels anything
+ * not yet consumed.
+ */
+public class PrefetchingBlockIterator extends AbstractPeekableIterator<SeekableLineReader> {
+	private static final Logger LOGGER = Logger.getLogger(
+			PrefetchingBlockIterator.class.getName());
+
+	protected SummaryBlockIterator blockIter;
+	protected ExecutorService executor;
+	protected int maxPrefetch;
+
+	protected LinkedList<Future<SeekableLineReader>> pending;
+
+	protected boolean summaryDone = false;
+
+	public PrefetchingBlockIterator(SummaryBlockIterator blockIter, ExecutorService executor, int maxPrefetch)
+	{
+		this.blockIter = blockIter;
+		this.executor = executor;
+		this.maxPrefetch = Math.max(1, maxPrefetch);
+		this.pending = new LinkedList<Future<SeekableLineReader>>();
+	}
+
+	protected void fill()
+	{
+		final SummaryBlockIterator source = blockIter;
+		
+		while (!summaryDone && (pending.size() < maxPrefetch)) {
+			final BlockRange range = source.nextRange();
+
+			if (range == null) {
+				summaryDone = true;
+				break;
+			}
+
+			Callable<SeekableLineReader> task = new Callable<SeekableLineReader>() {
+				public SeekableLineReader call() throws IOException {
+					try {
+						return loadFully(source, range);
+					} finally {
+						// Block readers opened here are tracked by this pool
+						// thread, not the caller's, and the result is in memory
+						ZipNumBlockLoader.closeAllReaders();
+					}
+				}
+			};
+
+			try {
+				pending.add(executor.submit(task));
+			} catch (RejectedExecutionException ree) {
+				// Executor shut down, or its queue is full: load inline instead
+				pending.add(loadInline(source, range));
+			}
+		}
+	}
+
+	protected Future<SeekableLineReader> loadInline(SummaryBlockIterator source, BlockRange range)
+	{
+		try {
+			return Futures.immediateFuture(loadFully(source, range));
+		} catch (IOException io) {
+			return Futures.immediateFailedFuture(io);
+		}
+	}
+
+	protected SeekableLineReader loadFully(SummaryBlockIterator source, BlockRange range) throws IOException
+	{
+		SeekableLineReader reader = source.openRange(range);
+
+		if (reader instanceof ByteArraySeekableLineReader) {
+			return reader;
+		}
+
+		byte[] block = null;
+
+		try {
+			block = ByteStreams.toByteArray(reader.getInputStream());
+		} finally {
+			reader.close();
+		}
+
+		SeekableLineReader blockReader = new ByteArraySeekableLineReader(block);
+		blockReader.seek(0);
+		return blockReader;
+	}
+
+	@Override
+	public SeekableLineReader getNextInner() {
+		if (blockIter == null) {
+			return null;
+		}
+
+		fill();
+
+		Future<SeekableLineReader> next = pending.poll();
+
+		if (next == null) {
+			return null;
+		}
+
+		// Keep the pipeline full while we wait on the head
+		fill();
+
+		try {
+			return next.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.warning(e.toString());
+		} catch (ExecutionException e) {
+			LOGGER.severe(e.getCause().toString());
+		}
+
+		// Same as SummaryBlockIterator: a failed load ends the iteration
+		try {
+			close();
+		} catch (IOException io) {
+			LOGGER.warning(io.toString());
+		}
+
+		return null;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Future<SeekableLineReader> future : pending) {
+			if (!future.cancel(true) && future.isDone()) {
+				closeLoaded(future);
+			}
+		}
+
+		pending.clear();
+
+		// Free the queue slots the cancelled loads still hold
+		if (executor instanceof ThreadPoolExecutor) {
+			((ThreadPoolExecutor)executor).purge();
+		}
+
+		if (blockIter != null) {
+			blockIter.close();
+			blockIter = null;
+		}
+	}
+
+	protected void closeLoaded(Future<SeekableLineReader> future)
+	{
+		try {
+			SeekableLineReader reader = future.get();
+
+			if (reader != null) {
+				reader.close();
+			}
+		} catch (Exception e) {
+			// Failed loads have nothing to close
+		}
+	}
+}
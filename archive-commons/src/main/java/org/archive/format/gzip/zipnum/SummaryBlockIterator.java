@@ -1,12 +1,29 @@
 package org.archive.format.gzip.zipnum;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.archive.util.binsearch.SeekableLineReader;
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
 import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.zip.GZIPMembersInputStream;
+
+import com.google.common.io.ByteStreams;
 
 public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineReader>
 {
@@ -17,27 +34,53 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 	{
 		String line;
 		String partId;
-		String[] parts;
+		boolean hasBlock;
 		
 		//String timestamp;
 		
 		long offset;
 		int length;
 		
+		SplitLine(String partId, long offset, int length)
+		{
+			this.partId = partId;
+			this.offset = offset;
+			this.length = length;
+			hasBlock = (offset >= 0) && (length >= 0);
+		}
+		
 		SplitLine(String line)
 		{
 			this.line = line;
 			if (this.line == null) {
 				return;
 			}
-			parts = this.line.split("\t");
-			partId = parts[1];
-			if (parts.length < 3) {
+			// key, part, offset, length[, count], scanned without split()
+			int partStart = line.indexOf('\t') + 1;
+			int partEnd = line.indexOf('\t', partStart);
+			if ((partStart == 0) || (partEnd < 0)) {
+				partId = (partStart > 0 ? line.substring(partStart) : "");
 				return;
 			}
-			offset = Long.parseLong(parts[2]);
-			length = Integer.parseInt(parts[3]);
-			//timestamp = makeTimestamp(parts[0]);
+			partId = line.substring(partStart, partEnd);
+			int offsetEnd = line.indexOf('\t', partEnd + 1);
+			if (offsetEnd < 0) {
+				return;
+			}
+			int lengthEnd = line.indexOf('\t', offsetEnd + 1);
+			if (lengthEnd < 0) {
+				lengthEnd = line.length();
+			}
+			offset = ZipNumCluster.parseLong(line, partEnd + 1, offsetEnd);
+			long parsedLength = ZipNumCluster.parseLong(line, offsetEnd + 1, lengthEnd);
+			length = (parsedLength <= Integer.MAX_VALUE ? (int)parsedLength : -1);
+			hasBlock = (offset >= 0) && (length >= 0);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return (line != null ? line : partId + "\t" + offset + "\t" + length);
 		}
 		
 //		String makeTimestamp(String key)
@@ -56,7 +99,7 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 		
 		boolean isContinuous(SplitLine next)
 		{
-			if (next == null || next.line == null) {
+			if (next == null || next.partId == null) {
 				return false;
 			}
 			
@@ -72,6 +115,24 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 			return true;
 		}
 		
+		/**
+		 * @return the number of bytes between the end of this block and the
+		 * start of next, or -1 if next is in another part or not after this one
+		 */
+		long gapTo(SplitLine next)
+		{
+			if (next == null || next.partId == null || !next.hasBlock) {
+				return -1;
+			}
+			
+			if (!partId.equals(next.partId)) {
+				return -1;
+			}
+			
+			long gap = next.offset - (offset + length);
+			return (gap >= 0 ? gap : -1);
+		}
+		
 //		boolean sameTimestamp(SplitLine next)
 //		{
 //			if (next == null || next.timestamp == null) {
@@ -88,6 +149,9 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 	
 	protected CloseableIterator<String> summaryIterator;
 	
+	// Set instead of summaryIterator when reading a binary summary
+	protected BinarySummary.EntryIterator summaryEntries;
+	
 	protected ZipNumCluster cluster;
 	
 	//protected SeekableLineReader currReader = null;
@@ -116,13 +180,139 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 		}
 	}
 	
+	/**
+	 * Blocks straight from binary summary entries, without a summary line
+	 * per block
+	 */
+	public SummaryBlockIterator(BinarySummary.EntryIterator summaryEntries, ZipNumCluster cluster, ZipNumParams params)
+	{
+		this(EMPTY_SUMMARY, cluster, params);
+		this.summaryEntries = summaryEntries;
+	}
+	
+	protected final static CloseableIterator<String> EMPTY_SUMMARY = new CloseableIterator<String>()
+	{
+		public boolean hasNext() {
+			return false;
+		}
+
+		public String next() {
+			throw new NoSuchElementException();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() {
+		}
+	};
+	
+	/**
+	 * @return the next summary entry, or null at the end
+	 */
+	protected SplitLine readNext()
+	{
+		if (summaryEntries != null) {
+			if (!summaryEntries.next()) {
+				return null;
+			}
+			return new SplitLine(summaryEntries.getPartId(), summaryEntries.getOffset(), summaryEntries.getLength());
+		}
+		
+		if ((summaryIterator != null) && summaryIterator.hasNext()) {
+			return new SplitLine(summaryIterator.next());
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * A run of summary blocks that is loaded with a single read.
+	 * 
+	 * When gaps are allowed (ZipNumParams.maxCoalesceGap) the run may skip
+	 * bytes between blocks: the whole span is read, but only the listed
+	 * segments are inflated.
+	 */
+	public static class BlockRange
+	{
+		final String partId;
+		final long startOffset;
+		final int totalLength;
+		final int numBlocks;
+		
+		// null if the range is one contiguous segment
+		final long[] segOffsets;
+		final int[] segLengths;
+		
+		BlockRange(String partId, long startOffset, int totalLength, int numBlocks)
+		{
+			this(partId, startOffset, totalLength, numBlocks, null, null);
+		}
+		
+		BlockRange(String partId, long startOffset, int totalLength, int numBlocks, long[] segOffsets, int[] segLengths)
+		{
+			this.partId = partId;
+			this.startOffset = startOffset;
+			this.totalLength = totalLength;
+			this.numBlocks = numBlocks;
+			this.segOffsets = segOffsets;
+			this.segLengths = segLengths;
+		}
+
+		public String getPartId() {
+			return partId;
+		}
+
+		public long getStartOffset() {
+			return startOffset;
+		}
+
+		/**
+		 * @return the length of the whole span read, including any gaps
+		 */
+		public int getTotalLength() {
+			return totalLength;
+		}
+
+		public int getNumBlocks() {
+			return numBlocks;
+		}
+		
+		public boolean hasGaps() {
+			return (segOffsets != null);
+		}
+	}
+	
 	@Override
 	public SeekableLineReader getNextInner() {
+		
+		BlockRange range = nextRange();
+		
+		if (range == null) {
+			return null;
+		}
+		
+		SeekableLineReader currReader = null;
+		
+		try {
+			currReader = openRange(range);
+		} catch (IOException io) {
+			LOGGER.severe(io.toString());
+		}
+		
+		return currReader;
+	}
+	
+	/**
+	 * Advance through the summary to the next run of blocks to load, without
+	 * loading it
+	 * @return the next range, or null if done
+	 */
+	protected BlockRange nextRange() {
 					
 		if (isFirst) {
-			if (summaryIterator.hasNext()) {
-				nextLine = new SplitLine(summaryIterator.next());
-			}
+			nextLine = readNext();
 			isFirst = false;
 		}
 		
@@ -134,81 +324,212 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 			return null;
 		}
 		
-		SeekableLineReader currReader = null;
+		int numBlocks = 0;
+		int maxAggregateBlocks = params.getMaxAggregateBlocks();
+		int maxGap = params.getMaxCoalesceGap();
 		
-		try {
-			
-			int numBlocks = 0;
-			int maxAggregateBlocks = params.getMaxAggregateBlocks();
+		long startOffset = nextLine.offset;
+		String currPartId = nextLine.partId;
+		
+		int totalLength = 0;
+		
+		long[] segOffsets = null;
+		int[] segLengths = null;
+		int numSegs = 0;
+		
+		boolean more = false;
+	
+		do {					
+			currLine = nextLine;
 			
-			long startOffset = nextLine.offset;
-			String currPartId = nextLine.partId;
+			if (currLine == null) {
+				return null;
+			}
 			
-			int totalLength = 0;
+			nextLine = readNext();
 		
-			do {					
-				currLine = nextLine;
-				
-				if (currLine == null) {
-					return null;
-				}
-				
-				if (summaryIterator.hasNext()) {
-					nextLine = new SplitLine(summaryIterator.next());
-				} else {
-					nextLine = null;
-				}
+			if (!currLine.hasBlock) {
+				LOGGER.severe("Bad line(" + currLine +") ");
+				return null;
+			}
 			
-				if (currLine.parts.length < 3) {
-					LOGGER.severe("Bad line(" + currLine.line +") ");
-					return null;
-				}
-				
-//				if (currLine.sameTimestamp(nextLine)) {
-//					if (numBlocks == 0) {
-//						continue;
-//					} else {
-//						break;
-//					}
+//			if (currLine.sameTimestamp(nextLine)) {
+//				if (numBlocks == 0) {
+//					continue;
+//				} else {
+//					break;
 //				}
-	
-//				if ((currPartId == null) || !currPartId.equals(currLine.partId) || (numBlocks == 0)) {
-//					startOffset = currLine.offset;
-//					totalLength = 0;
-//					currPartId = currLine.partId;
-//				}
-				
-				totalLength += currLine.length;
-				numBlocks++;
-				
-			} while (((maxAggregateBlocks <= 0) || (numBlocks < maxAggregateBlocks)) && 
-					  ((params.getMaxBlocks() <= 0) || (totalBlocks + numBlocks) < params.getMaxBlocks()) 
-					  && currLine.isContinuous(nextLine));
+//			}
+
+//			if ((currPartId == null) || !currPartId.equals(currLine.partId) || (numBlocks == 0)) {
+//				startOffset = currLine.offset;
+//				totalLength = 0;
+//				currPartId = currLine.partId;
+//			}
 			
-			if (LOGGER.isLoggable(Level.INFO)) {
-				LOGGER.info("Loading " + numBlocks + " blocks - " + startOffset + ":" + totalLength + " from " + currPartId);
+			if (segOffsets != null) {
+				if ((numSegs > 0) && (segOffsets[numSegs - 1] + segLengths[numSegs - 1] == currLine.offset)) {
+					segLengths[numSegs - 1] += currLine.length;
+				} else {
+					segOffsets[numSegs] = currLine.offset;
+					segLengths[numSegs] = currLine.length;
+					numSegs++;
+				}
+				totalLength = (int)((currLine.offset + currLine.length) - startOffset);
+			} else {
+				totalLength += currLine.length;
 			}
 			
-			currReader = initReader(currPartId);			
-			currReader.seekWithMaxRead(startOffset, true, totalLength);
+			numBlocks++;
 			
-			totalBlocks += numBlocks;
+			more = ((maxAggregateBlocks <= 0) || (numBlocks < maxAggregateBlocks)) && 
+				  ((params.getMaxBlocks() <= 0) || (totalBlocks + numBlocks) < params.getMaxBlocks());
+			
+			if (more && !currLine.isContinuous(nextLine)) {
+				long gap = currLine.gapTo(nextLine);
+				more = (maxGap > 0) && (gap >= 0) && (gap <= maxGap) &&
+					((nextLine.offset + nextLine.length - startOffset) <= Integer.MAX_VALUE);
 				
-		} catch (IOException io) {
-			LOGGER.severe(io.toString());
-			if (currReader != null) {
-				try {
-					currReader.close();
-				} catch (IOException e) {
-	
+				if (more && (segOffsets == null)) {
+					// Switch to tracking the segments that make up the span
+					int maxSegs = ((maxAggregateBlocks > 0) ? maxAggregateBlocks : 16);
+					segOffsets = new long[maxSegs];
+					segLengths = new int[maxSegs];
+					segOffsets[0] = startOffset;
+					segLengths[0] = totalLength;
+					numSegs = 1;
 				}
-				currReader = null;
 			}
+			
+			if (more && (segOffsets != null) && (numSegs == segOffsets.length)) {
+				segOffsets = Arrays.copyOf(segOffsets, numSegs * 2);
+				segLengths = Arrays.copyOf(segLengths, numSegs * 2);
+			}
+			
+		} while (more);
+		
+		totalBlocks += numBlocks;
+		
+		if ((segOffsets != null) && (numSegs > 1)) {
+			return new BlockRange(currPartId, startOffset, totalLength, numBlocks,
+					Arrays.copyOf(segOffsets, numSegs), Arrays.copyOf(segLengths, numSegs));
+		}
+		
+		return new BlockRange(currPartId, startOffset, totalLength, numBlocks);
+	}
+	
+	/**
+	 * Fetch a range returned by nextRange(). Safe to call from another thread
+	 * than the one iterating the summary.
+	 * @return a reader positioned at the start of the decompressed blocks
+	 */
+	protected SeekableLineReader openRange(BlockRange range) throws IOException {
+		
+		if (LOGGER.isLoggable(Level.INFO)) {
+			LOGGER.info("Loading " + range.numBlocks + " blocks - " + range.startOffset + ":" + range.totalLength + " from " + range.partId);
+		}
+		
+		ZipNumBlockCache blockCache = cluster.blockLoader.getBlockCache();
+		
+		if (range.hasGaps()) {
+			return initSpanReader(blockCache, range);
+		}
+		
+		if (blockCache != null) {
+			return initCachedReader(blockCache, range.partId, range.startOffset, range.totalLength);
+		}
+		
+		if (cluster.locationUpdater != null) {
+			return initGzipReader(readFromLocations(range.partId, range.startOffset, range.totalLength));
+		}
+		
+		SeekableLineReader currReader = initReader(range.partId);
+		
+		try {
+			currReader.seekWithMaxRead(range.startOffset, true, range.totalLength);
+		} catch (IOException io) {
+			try {
+				currReader.close();
+			} catch (IOException e) {
+
+			}
+			throw io;
 		}
 		
 		return currReader;
 	}
+	
+	/**
+	 * Load a range with gaps: read the whole span with one request, then
+	 * inflate only the segments that belong to the range. With a block cache,
+	 * each segment is cached on its own.
+	 */
+	protected SeekableLineReader initSpanReader(ZipNumBlockCache blockCache, BlockRange range) throws IOException
+	{
+		int numSegs = range.segOffsets.length;
+		String partUri = cluster.getClusterPart(range.partId);
+		
+		byte[][] inflated = null;
+		
+		if (blockCache != null) {
+			inflated = new byte[numSegs][];
+			boolean complete = true;
+			
+			for (int i = 0; i < numSegs; i++) {
+				inflated[i] = blockCache.getIfPresent(partUri, range.segOffsets[i], range.segLengths[i]);
+				complete &= (inflated[i] != null);
+			}
+			
+			if (complete) {
+				return new ByteArraySeekableLineReader(concat(inflated));
+			}
+		}
+		
+		byte[] span = readRaw(range.partId, range.startOffset, range.totalLength);
+		
+		if (blockCache == null) {
+			byte[][] compressed = new byte[numSegs][];
+			
+			for (int i = 0; i < numSegs; i++) {
+				int start = (int)(range.segOffsets[i] - range.startOffset);
+				compressed[i] = Arrays.copyOfRange(span, start, start + range.segLengths[i]);
+			}
+			
+			return initGzipReader(concat(compressed));
+		}
+		
+		for (int i = 0; i < numSegs; i++) {
+			if (inflated[i] == null) {
+				int start = (int)(range.segOffsets[i] - range.startOffset);
+				InputStream members = new ByteArrayInputStream(span, start, range.segLengths[i]);
+				inflated[i] = ByteStreams.toByteArray(new GZIPMembersInputStream(members, 512,
+						cluster.blockLoader.getDeflateDictionary()));
+				blockCache.put(partUri, range.segOffsets[i], range.segLengths[i], inflated[i]);
+			}
+		}
+		
+		return new ByteArraySeekableLineReader(concat(inflated));
+	}
+	
+	protected static byte[] concat(byte[][] arrays)
+	{
+		int length = 0;
+		
+		for (byte[] array : arrays) {
+			length += array.length;
+		}
+		
+		byte[] result = new byte[length];
+		int offset = 0;
 		
+		for (byte[] array : arrays) {
+			System.arraycopy(array, 0, result, offset, array.length);
+			offset += array.length;
+		}
+		
+		return result;
+	}
+	
 	protected SeekableLineReader initReader(String partId) throws IOException
 	{
 		//if ((currReader == null) || (currPartId == null) || !currPartId.equals(partId)) {
@@ -232,9 +553,199 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 		return currReader;
 	}
 	
+	protected SeekableLineReader initCachedReader(ZipNumBlockCache blockCache, 
+			final String partId, final long startOffset, final int totalLength) throws IOException
+	{
+		// Key by the cluster part, not the location, so all replicas share entries
+		String partUri = cluster.getClusterPart(partId);
+		
+		byte[] block = blockCache.get(partUri, startOffset, totalLength, new ZipNumBlockCache.BlockLoader() {
+			public byte[] load() throws IOException {
+				if (cluster.locationUpdater != null) {
+					byte[] raw = readFromLocations(partId, startOffset, totalLength);
+					return ByteStreams.toByteArray(initGzipReader(raw).getInputStream());
+				}
+				
+				SeekableLineReader reader = initReader(partId);
+				try {
+					reader.seekWithMaxRead(startOffset, true, totalLength);
+					return ByteStreams.toByteArray(reader.getInputStream());
+				} finally {
+					reader.close();
+				}
+			}
+		});
+		
+		SeekableLineReader blockReader = new ByteArraySeekableLineReader(block);
+		blockReader.seek(0);
+		return blockReader;
+	}
+	
+	/**
+	 * @return a reader over the inflated contents of in-memory gzip members
+	 */
+	protected SeekableLineReader initGzipReader(byte[] members) throws IOException
+	{
+		SeekableLineReader membersReader = new ByteArraySeekableLineReader(members);
+		membersReader.setDeflateDictionary(cluster.blockLoader.getDeflateDictionary());
+		membersReader.seekWithMaxRead(0, true, members.length);
+		return membersReader;
+	}
+	
+	/**
+	 * @return the raw (compressed) bytes of a part, from a replica if the
+	 * cluster has locations
+	 */
+	protected byte[] readRaw(String partId, long offset, int length) throws IOException
+	{
+		if (cluster.locationUpdater != null) {
+			return readFromLocations(partId, offset, length);
+		}
+		
+		SeekableLineReader reader = initReader(partId);
+		
+		try {
+			reader.seekWithMaxRead(offset, false, length);
+			byte[] data = new byte[length];
+			ByteStreams.readFully(reader.getInputStream(), data);
+			return data;
+		} finally {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * Read from the fastest healthy location first, falling through to the
+	 * others on errors. With hedging enabled, a read that takes longer than
+	 * the hedge delay also gets a second read from the next location.
+	 */
+	protected byte[] readFromLocations(String partId, long offset, int length) throws IOException
+	{
+		LocationUpdater updater = cluster.locationUpdater;
+		String[] locations = updater.getOrderedLocations(partId);
+		
+		if ((locations == null) || (locations.length == 0)) {
+			throw new IOException("No locations for block(" + partId + ")");
+		}
+		
+		long hedgeDelay = updater.getHedgeDelayMs();
+		
+		if ((hedgeDelay >= 0) && (locations.length > 1)) {
+			try {
+				return hedgedRead(updater, locations, offset, length, hedgeDelay);
+			} catch (RejectedExecutionException ree) {
+				// Executor shut down, read in order below
+			}
+		}
+		
+		IOException last = null;
+		
+		for (String location : locations) {
+			try {
+				return readLocation(updater.getLocationStats(), location, offset, length);
+			} catch (IOException io) {
+				LOGGER.warning("Read from " + location + " failed: " + io);
+				last = io;
+			}
+		}
+		
+		throw last;
+	}
+	
+	protected byte[] hedgedRead(final LocationUpdater updater, final String[] locations, 
+			final long offset, final int length, long hedgeDelay) throws IOException
+	{
+		CompletionService<byte[]> reads = 
+			new ExecutorCompletionService<byte[]>(updater.getReadExecutor());
+		
+		List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>();
+		IOException last = null;
+		int next = 0;
+		int running = 0;
+		boolean hedged = false;
+		
+		try {
+			while ((running > 0) || (next < locations.length)) {
+				if (running == 0) {
+					futures.add(reads.submit(locationRead(updater, locations[next++], offset, length)));
+					running++;
+				}
+				
+				Future<byte[]> done = null;
+				
+				if (!hedged && (next < locations.length)) {
+					done = reads.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+					
+					if (done == null) {
+						hedged = true;
+						updater.numHedgedReads.incrementAndGet();
+						futures.add(reads.submit(locationRead(updater, locations[next++], offset, length)));
+						running++;
+						continue;
+					}
+				} else {
+					done = reads.take();
+				}
+				
+				running--;
+				
+				try {
+					return done.get();
+				} catch (ExecutionException e) {
+					last = ((e.getCause() instanceof IOException) ? (IOException)e.getCause() : new IOException(e.getCause()));
+					LOGGER.warning("Hedged read failed: " + last);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} finally {
+			for (Future<byte[]> future : futures) {
+				future.cancel(true);
+			}
+		}
+		
+		throw last;
+	}
+	
+	protected Callable<byte[]> locationRead(final LocationUpdater updater, final String location, 
+			final long offset, final int length)
+	{
+		return new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return readLocation(updater.getLocationStats(), location, offset, length);
+			}
+		};
+	}
+	
+	protected byte[] readLocation(LocationStats stats, String location, long offset, int length) throws IOException
+	{
+		long start = System.currentTimeMillis();
+		SeekableLineReader reader = null;
+		
+		try {
+			reader = cluster.blockLoader.createBlockReader(location);
+			reader.seekWithMaxRead(offset, false, length);
+			byte[] data = new byte[length];
+			ByteStreams.readFully(reader.getInputStream(), data);
+			stats.recordSuccess(location, System.currentTimeMillis() - start);
+			return data;
+		} catch (IOException io) {
+			// A cancelled hedge is not the location's fault
+			if (!Thread.currentThread().isInterrupted()) {
+				stats.recordError(location);
+			}
+			throw io;
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+	
 	protected SeekableLineReader initLocationReader(String partId)
 	{
-		String[] locations = cluster.locationUpdater.getLocations(partId);
+		String[] locations = cluster.locationUpdater.getOrderedLocations(partId);
 		
 		if (locations == null) {
 			LOGGER.severe("No locations for block(" + partId +")");
@@ -259,6 +770,11 @@ public class SummaryBlockIterator extends AbstractPeekableIterator<SeekableLineR
 			summaryIterator = null;
 		}
 		
+		if (summaryEntries != null) {
+			summaryEntries.close();
+			summaryEntries = null;
+		}
+		
 //		if (currReader != null) {
 //			currReader.close();
 //			currReader = null;
@@ -0,0 +1,156 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+
+/**
+ * A size bounded cache of decompressed ZipNum blocks, keyed by
+ * (part uri, offset, length) and weighted by decompressed size in bytes.
+ *
+ * Eviction is approximately LRU (Guava segmented cache). A single instance
+ * may be shared by several ZipNumBlockLoaders.
+ */
+public class ZipNumBlockCache {
+
+	public final static long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+	// Rough per-entry overhead for the key, entry and array header
+	protected final static int ENTRY_OVERHEAD = 128;
+
+	public interface BlockLoader
+	{
+		public byte[] load() throws IOException;
+	}
+
+	protected static class BlockKey
+	{
+		final String uri;
+		final long offset;
+		final int length;
+		final int hash;
+
+		BlockKey(String uri, long offset, int length)
+		{
+			this.uri = uri;
+			this.offset = offset;
+			this.length = length;
+			this.hash = (31 * (31 * uri.hashCode() + (int)(offset ^ (offset >>> 32)))) + length;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof BlockKey)) {
+				return false;
+			}
+
+			BlockKey other = (BlockKey)obj;
+			return (offset == other.offset) && (length == other.length) && uri.equals(other.uri);
+		}
+
+		int weight()
+		{
+			return ENTRY_OVERHEAD + (uri.length() * 2);
+		}
+	}
+
+	protected final long maxBytes;
+	protected final Cache<BlockKey, byte[]> cache;
+
+	public ZipNumBlockCache()
+	{
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	public ZipNumBlockCache(long maxBytes)
+	{
+		this.maxBytes = maxBytes;
+
+		this.cache = CacheBuilder.newBuilder()
+			.maximumWeight(maxBytes)
+			.weigher(new Weigher<BlockKey, byte[]>() {
+				public int weigh(BlockKey key, byte[] value) {
+					return key.weight() + value.length;
+				}
+			})
+			.recordStats()
+			.build();
+	}
+
+	/**
+	 * @return the cached decompressed block, calling the loader on a miss.
+	 * Concurrent misses for the same block wait for a single load.
+	 */
+	public byte[] get(String uri, long offset, int length, final BlockLoader loader) throws IOException
+	{
+		try {
+			return cache.get(new BlockKey(uri, offset, length), new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return loader.load();
+				}
+			});
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException)e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	public byte[] getIfPresent(String uri, long offset, int length)
+	{
+		return cache.getIfPresent(new BlockKey(uri, offset, length));
+	}
+
+	public void put(String uri, long offset, int length, byte[] block)
+	{
+		cache.put(new BlockKey(uri, offset, length), block);
+	}
+
+	public void invalidateAll()
+	{
+		cache.invalidateAll();
+	}
+
+	public long getMaxBytes()
+	{
+		return maxBytes;
+	}
+
+	public long getNumBlocks()
+	{
+		return cache.size();
+	}
+
+	public long getHitCount()
+	{
+		return cache.stats().hitCount();
+	}
+
+	public long getMissCount()
+	{
+		return cache.stats().missCount();
+	}
+
+	public double getHitRate()
+	{
+		return cache.stats().hitRate();
+	}
+
+	public CacheStats getStats()
+	{
+		return cache.stats();
+	}
+}
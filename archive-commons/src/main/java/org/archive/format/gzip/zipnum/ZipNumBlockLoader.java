@@ -5,15 +5,23 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 import org.archive.util.GeneralURIStreamFactory;
+import org.archive.util.binsearch.PooledSeekableLineReaderFactory;
 import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 public class ZipNumBlockLoader {
 		
 	private final static Logger LOGGER = Logger.getLogger(ZipNumBlockLoader.class.getName());
@@ -22,18 +30,35 @@ public class ZipNumBlockLoader {
 	protected HTTPSeekableLineReaderFactory httpFactory = null;
 	
 	protected boolean useNio = false;
+	protected boolean useMMap = false;
+	protected boolean positionalRead = false;
+	protected int readerPoolSize = 0;
 	protected String httpLib = HttpLibs.APACHE_31.name();
 	
 	protected boolean bufferFully = true;
 	protected boolean noKeepAlive = true;
 	
-	protected int maxHostConnections = 100000;
-	protected int maxTotalConnections = 100000;
+	// Each connection is closed after one block, so no real limit
+	protected final static int UNPOOLED_MAX_CONNECTIONS = 100000;
+	
+	// 0 for the http lib's default
+	protected int maxHostConnections = 0;
+	protected int maxTotalConnections = 0;
 	
 	protected int connectTimeoutMS = 10000;
 	protected int readTimeoutMS = 10000;
 	
 	protected boolean staleChecking = false;
+	
+	protected ZipNumBlockCache blockCache = null;
+	
+	protected byte[] deflateDictionary = null;
+	
+	protected int prefetchThreads = 16;
+	protected ExecutorService prefetchExecutor = null;
+	
+	// Queued prefetch loads per thread, past which the caller loads inline
+	protected final static int PREFETCH_QUEUE_PER_THREAD = 4;
 
 	
 	public ZipNumBlockLoader()
@@ -66,6 +91,26 @@ public class ZipNumBlockLoader {
 		slrMap.get().clear();
 	}
 	
+	/**
+	 * Forgets, without closing, the readers tracked on the current thread.
+	 * For pool threads that open iterators, or read ahead from them, on
+	 * behalf of another thread: the readers belong to those iterators, which
+	 * close them, and are not this thread's to close.
+	 */
+	public static void releaseReaders()
+	{
+		slrMap.get().clear();
+	}
+	
+	/**
+	 * @return the number of readers tracked for closeAllReaders() on the
+	 * current thread
+	 */
+	static int getNumTrackedReaders()
+	{
+		return slrMap.get().size();
+	}
+	
 	public SeekableLineReader createBlockReader(String uri) throws IOException
 	{
 		SeekableLineReader reader = null;
@@ -76,17 +121,36 @@ public class ZipNumBlockLoader {
 			reader = getFileReader(uri);
 		}
 		
-		slrMap.get().put(uri, reader);
+		reader.setDeflateDictionary(deflateDictionary);
+		
+		// A pooled reader may be handed to another thread once closed
+		if (!reader.isPooled()) {
+			slrMap.get().put(uri, reader);
+		}
 				
 		return reader;
 	}
 	
 	protected HTTPSeekableLineReader getHttpReader(String url) throws IOException {
 		
+		boolean pooled = (HttpLibs.valueOf(httpLib) == HttpLibs.POOLED);
+		
 		if (httpFactory == null) {
 			httpFactory = HTTPSeekableLineReaderFactory.getHttpFactory(HttpLibs.valueOf(httpLib), null);
-			httpFactory.setMaxHostConnections(maxHostConnections);
-			httpFactory.setMaxTotalConnections(maxTotalConnections);
+			
+			// The pooled factory keeps its own bounded limits unless set
+			if (maxHostConnections > 0) {
+				httpFactory.setMaxHostConnections(maxHostConnections);
+			} else if (!pooled) {
+				httpFactory.setMaxHostConnections(UNPOOLED_MAX_CONNECTIONS);
+			}
+			
+			if (maxTotalConnections > 0) {
+				httpFactory.setMaxTotalConnections(maxTotalConnections);
+			} else if (!pooled) {
+				httpFactory.setMaxTotalConnections(UNPOOLED_MAX_CONNECTIONS);
+			}
+			
 			httpFactory.setConnectionTimeoutMS(connectTimeoutMS);
 			httpFactory.setSocketTimeoutMS(readTimeoutMS);
 			httpFactory.setStaleChecking(staleChecking);
@@ -94,7 +158,7 @@ public class ZipNumBlockLoader {
 		
 		HTTPSeekableLineReader reader = httpFactory.get(url);
 		reader.setBufferFully(bufferFully);
-		reader.setNoKeepAlive(noKeepAlive);
+		reader.setNoKeepAlive(noKeepAlive && !pooled);
 		return reader;
 	}
 	
@@ -108,7 +172,11 @@ public class ZipNumBlockLoader {
 		SeekableLineReaderFactory factory = fileFactoryMap.get(filename);
 		
 		if (factory == null) {
-			factory = GeneralURIStreamFactory.createSeekableStreamFactory(filename, useNio);
+			factory = GeneralURIStreamFactory.createSeekableStreamFactory(filename, useNio, useMMap, positionalRead);
+			
+			if (readerPoolSize > 0) {
+				factory = new PooledSeekableLineReaderFactory(factory, readerPoolSize);
+			}
 			fileFactoryMap.put(filename, factory);
 		}
 		
@@ -130,8 +198,34 @@ public class ZipNumBlockLoader {
 		}
 	}
 	
+	/**
+	 * @return the shared executor used for block prefetching, created on first
+	 * use. Its queue is bounded: once full, submit() is rejected and the
+	 * caller should do the work itself.
+	 */
+	public synchronized ExecutorService getPrefetchExecutor()
+	{
+		if (prefetchExecutor == null) {
+			ThreadFactory threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("ZipNumPrefetch-%d").setDaemon(true).build();
+			prefetchExecutor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads,
+					0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(prefetchThreads * PREFETCH_QUEUE_PER_THREAD),
+					threadFactory);
+		}
+		
+		return prefetchExecutor;
+	}
+	
 	public void close() throws IOException
 	{
+		synchronized (this) {
+			if (prefetchExecutor != null) {
+				prefetchExecutor.shutdownNow();
+				prefetchExecutor = null;
+			}
+		}
+		
 		if (fileFactoryMap != null) {
 			for (SeekableLineReaderFactory factory : fileFactoryMap.values()) {
 				factory.close();
@@ -152,6 +246,42 @@ public class ZipNumBlockLoader {
 	public void setUseNio(boolean useNio) {
 		this.useNio = useNio;
 	}
+
+	public boolean isPositionalRead() {
+		return positionalRead;
+	}
+
+	/**
+	 * @param positionalRead share one open stream per HDFS part between
+	 * readers, read with positional reads
+	 */
+	public void setPositionalRead(boolean positionalRead) {
+		this.positionalRead = positionalRead;
+	}
+
+	public int getReaderPoolSize() {
+		return readerPoolSize;
+	}
+
+	/**
+	 * @param readerPoolSize idle readers to keep per local part for reuse,
+	 * with their buffers and open files. 0 opens a reader per block read.
+	 */
+	public void setReaderPoolSize(int readerPoolSize) {
+		this.readerPoolSize = readerPoolSize;
+	}
+
+	public boolean isUseMMap() {
+		return useMMap;
+	}
+
+	/**
+	 * @param useMMap map each local part whole, so block reads are memory
+	 * copies. Needs address space for the whole cluster.
+	 */
+	public void setUseMMap(boolean useMMap) {
+		this.useMMap = useMMap;
+	}
 	
 	public boolean isBufferFully() {
 		return bufferFully;
@@ -165,6 +295,10 @@ public class ZipNumBlockLoader {
 		return noKeepAlive;
 	}
 
+	/**
+	 * @param noKeepAlive close the connection after each block, ignored by
+	 * the POOLED http lib, which keeps connections for reuse
+	 */
 	public void setNoKeepAlive(boolean noKeepAlive) {
 		this.noKeepAlive = noKeepAlive;
 	}
@@ -211,6 +345,48 @@ public class ZipNumBlockLoader {
 		return this.staleChecking;
 	}
 
+	public ZipNumBlockCache getBlockCache() {
+		return blockCache;
+	}
+
+	/**
+	 * @param blockCache cache of decompressed blocks, may be shared between loaders
+	 */
+	public void setBlockCache(ZipNumBlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+	
+	/**
+	 * @param maxBytes enable a new decompressed block cache of up to maxBytes, 0 to disable
+	 */
+	public void setBlockCacheMaxBytes(long maxBytes) {
+		this.blockCache = (maxBytes > 0 ? new ZipNumBlockCache(maxBytes) : null);
+	}
+	
+	public long getBlockCacheMaxBytes() {
+		return (blockCache != null ? blockCache.getMaxBytes() : 0);
+	}
+
+	public byte[] getDeflateDictionary() {
+		return deflateDictionary;
+	}
+
+	/**
+	 * @param deflateDictionary preset dictionary the cluster blocks were
+	 * compressed with, or null
+	 */
+	public void setDeflateDictionary(byte[] deflateDictionary) {
+		this.deflateDictionary = deflateDictionary;
+	}
+
+	public int getPrefetchThreads() {
+		return prefetchThreads;
+	}
+
+	public void setPrefetchThreads(int prefetchThreads) {
+		this.prefetchThreads = prefetchThreads;
+	}
+
 	public String getHttpLib() {
 		return httpLib;
 	}
@@ -1,6 +1,13 @@
 package org.archive.format.gzip.zipnum;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.archive.format.cdx.CDXInputSource;
@@ -8,27 +15,73 @@ import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SortedTextFile;
 import org.archive.util.iterator.BoundedStringIterator;
 import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.StartBoundedByteIterator;
 import org.archive.util.iterator.StartBoundedStringIterator;
 
 public class ZipNumCluster implements CDXInputSource {
 	final static Logger LOGGER = Logger.getLogger(ZipNumCluster.class.getName());
+	
+	final static Charset UTF8 = Charset.forName("UTF-8");
 
 	private String clusterRoot;
 		
 	protected String summaryFile;
 	protected SortedTextFile summary;
 	
+	protected boolean useBinarySummary = false;
+	protected BinarySummary binarySummary;
+	
 	protected String locFile;
 	
+	protected String dictionaryFile;
+	
 	protected ZipNumBlockLoader blockLoader;
 	
 	//protected HashMap<String, String[]> locMap = null;
 	protected LocationUpdater locationUpdater = null;
+	protected double hedgePercentile = 0;
 		
 	protected final static boolean DEFAULT_USE_NIO = true;
 	
 	protected boolean useNio = DEFAULT_USE_NIO;
 	
+	protected boolean useMMap = false;
+	
+	protected boolean positionalRead = false;
+	
+	protected int summaryIndexSize = 0;
+	
+	protected int summaryPoolSize = 0;
+	
+	protected String bloomFilterDir;
+	protected ConcurrentHashMap<String, BlockBloomFilter> bloomFilters = new ConcurrentHashMap<String, BlockBloomFilter>();
+	protected AtomicLong bloomFilterSkips = new AtomicLong();
+	
+	// Exact lookups spanning more blocks than this skip the bloom check
+	protected final static int MAX_BLOOM_CHECK_BLOCKS = 8;
+	
+	// Placeholder for parts without a bloom file
+	protected final static BlockBloomFilter NO_BLOOM_FILTER = new BlockBloomFilter();
+	
+	protected final static CloseableIterator<byte[]> EMPTY_BYTE_ITERATOR = new CloseableIterator<byte[]>()
+	{
+		public boolean hasNext() {
+			return false;
+		}
+
+		public byte[] next() {
+			return null;
+		}
+
+		public void remove() {
+			
+		}
+
+		public void close() throws IOException {
+			
+		}	
+	};
+	
 	protected final static CloseableIterator<String> EMPTY_ITERATOR = new CloseableIterator<String>()
 	{
 		@Override
@@ -65,18 +118,77 @@ public class ZipNumCluster implements CDXInputSource {
 	public void init() throws IOException {
 		
 		if (summaryFile != null) {
-			this.summary = new SortedTextFile(summaryFile, useNio);
+			this.summary = new SortedTextFile(summaryFile, useNio, useMMap, positionalRead);
+			this.summary.setMidpointIndexSize(summaryIndexSize);
+			this.summary.setReaderPoolSize(summaryPoolSize);
+			
+			if (useBinarySummary) {
+				this.binarySummary = openBinarySummary(summaryFile);
+			}
 		}
 						
 		if (blockLoader == null) {
 			this.blockLoader = new ZipNumBlockLoader();
 		}
 		
+		File dictFile = getDictionaryPath();
+		
+		if (dictFile != null) {
+			this.blockLoader.setDeflateDictionary(ZipNumDictionaryTrainer.readDictionary(dictFile));
+		}
+		
 		if (locFile != null) {
 			this.locationUpdater = new LocationUpdater(locFile, this.blockLoader);
+			this.locationUpdater.setHedgePercentile(hedgePercentile);
 		}
 	}
 				
+	/**
+	 * @return the preset dictionary file: dictionaryFile if set, otherwise
+	 * ALL.dict next to a local summary, if there is one
+	 */
+	protected File getDictionaryPath()
+	{
+		if (dictionaryFile != null) {
+			return new File(dictionaryFile);
+		}
+		
+		if (summaryFile == null) {
+			return null;
+		}
+		
+		File dir = new File(summaryFile).getAbsoluteFile().getParentFile();
+		File dict = new File(dir, ZipNumDictionaryTrainer.DICTIONARY_NAME);
+		return (dict.isFile() ? dict : null);
+	}
+	
+	protected static BinarySummary openBinarySummary(String summaryFile) throws IOException
+	{
+		File text = new File(summaryFile);
+		File binary = new File(summaryFile + BinarySummary.SUFFIX);
+		
+		if (!binary.isFile()) {
+			LOGGER.warning("No binary summary at " + binary + ", using text summary");
+			return null;
+		}
+		
+		if (binary.lastModified() < text.lastModified()) {
+			LOGGER.warning("Binary summary " + binary + " older than " + text + ", using text summary");
+			return null;
+		}
+		
+		return new BinarySummary(binary.getAbsolutePath());
+	}
+	
+	protected CloseableIterator<String> getSummaryIterator(String key, boolean lessThan) throws IOException
+	{
+		if (binarySummary != null) {
+			return binarySummary.getRecordIterator(key, lessThan);
+		}
+		
+		return summary.getRecordIterator(key, lessThan);
+	}
+				
 	protected static int extractLineCount(String line)
 	{
 		return (int)extractLongField(line, 4);
@@ -84,21 +196,63 @@ public class ZipNumCluster implements CDXInputSource {
 	
 	protected static long extractLongField (String line, int index)
 	{
-		String[] parts = line.split("\t");
+		int start = 0;
+		
+		for (int i = 0; i < index; i++) {
+			start = line.indexOf('\t', start) + 1;
+			
+			if (start == 0) {
+				return -1;
+			}
+		}
 		
-		if (parts.length <= index) {
+		int end = line.indexOf('\t', start);
+		
+		if (end < 0) {
+			end = line.length();
+		}
+		
+		return parseLong(line, start, end);
+	}
+	
+	/**
+	 * Parses a decimal field without a substring, as Long.parseLong() would
+	 * @return the value, or -1 if not a number or out of range
+	 */
+	protected static long parseLong(String line, int start, int end)
+	{
+		if (start >= end) {
 			return -1;
 		}
 		
-		long count = -1;
+		boolean negative = (line.charAt(start) == '-');
 		
-		try {
-			count = Long.parseLong(parts[index]);
-		} catch (NumberFormatException n) {
-
+		if (negative && (++start >= end)) {
+			return -1;
 		}
 		
-		return count;
+		// accumulated negatively, as in Long.parseLong(), to reach MIN_VALUE
+		long limit = (negative ? Long.MIN_VALUE : -Long.MAX_VALUE);
+		long multmin = limit / 10;
+		long value = 0;
+		
+		for (int i = start; i < end; i++) {
+			int digit = line.charAt(i) - '0';
+			
+			if ((digit < 0) || (digit > 9) || (value < multmin)) {
+				return -1;
+			}
+			
+			value *= 10;
+			
+			if (value < limit + digit) {
+				return -1;
+			}
+			
+			value -= digit;
+		}
+		
+		return (negative ? value : -value);
 	}
 
 	
@@ -148,6 +302,10 @@ public class ZipNumCluster implements CDXInputSource {
 	
 	public int getNumLines(String start, String end) throws IOException
 	{
+		if ((binarySummary != null) && binarySummary.hasLineCounts()) {
+			return getNumLines(binarySummary, start, end);
+		}
+		
 		SeekableLineReader slr = null;
 		String startLine = null;
 		String endLine = null;
@@ -197,6 +355,36 @@ public class ZipNumCluster implements CDXInputSource {
 		return endCount - startCount;
 	}
 	
+	protected static int getNumLines(BinarySummary binary, String start, String end)
+	{
+		int numEntries = binary.getNumEntries();
+		
+		if (numEntries == 0) {
+			return 0;
+		}
+		
+		long startCount = 0;
+		
+		if ((start != null) && !start.isEmpty()) {
+			int startIndex = binary.lowerBound(start) - 1;
+			
+			if (startIndex >= 0) {
+				startCount = binary.getLineCount(startIndex);
+			}
+		}
+		
+		int endIndex = numEntries;
+		
+		if ((end != null) && !end.isEmpty()) {
+			endIndex = binary.lowerBound(end);
+		}
+		
+		// as with the text summary, the lines of the last block are not counted
+		long endCount = binary.getLineCount(Math.min(endIndex, numEntries - 1));
+		
+		return (int)(endCount - startCount);
+	}
+	
 	//TODO: Experimental?
 	public long getEstimateSplitSize(String[] blocks)
 	{
@@ -229,7 +417,7 @@ public class ZipNumCluster implements CDXInputSource {
 	public CloseableIterator<String> getClusterRange(String start, String end, boolean inclusive, boolean includePrevLine) throws IOException
 	{
 		CloseableIterator<String> iter = null;
-		iter = summary.getRecordIterator(start, includePrevLine);
+		iter = getSummaryIterator(start, includePrevLine);
 		return wrapEndIterator(iter, end, inclusive);
 		//return wrapStartEndIterator(iter, start, end, inclusive);
 	}
@@ -280,7 +468,7 @@ public class ZipNumCluster implements CDXInputSource {
 	
 	public CloseableIterator<String> getLastBlockCDXLineIterator(String key) throws IOException {
 		// the next line after last key<space> is key! so this will return last key<space> block
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(endKey(key));
+		CloseableIterator<String> summaryIter = getSummaryIterator(endKey(key), true);
 		
 		return wrapStartIterator(getCDXIterator(summaryIter), key);
 	}
@@ -295,12 +483,84 @@ public class ZipNumCluster implements CDXInputSource {
 	}
 				
 	public CloseableIterator<String> getCDXIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+		return getCDXIterator(key, start, exact, params, null);
+	}
+	
+	/**
+	 * @param stats counts the CDX lines read and matched by this query, or null
+	 */
+	public CloseableIterator<String> getCDXIterator(String key, String start, boolean exact, ZipNumParams params, ZipNumScanStats stats) throws IOException {
 		
-		if ((locationUpdater != null) && !locationUpdater.dateRangeCheck(key)) {
+		if (canReadBinaryEntries(params)) {
+			SummaryBlockIterator blockIter = getQueryBlockIterator(key, start, exact, params);
+			
+			if (blockIter == null) {
+				return EMPTY_ITERATOR;
+			}
+			
+			return wrapStartIterator(getCDXIterator(blockIter, params, stats), start);
+		}
+		
+		CloseableIterator<String> summaryIter = getQuerySummaryIterator(key, start, exact, params);
+		
+		if (summaryIter == null) {
 			return EMPTY_ITERATOR;
 		}
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);
+		return wrapStartIterator(getCDXIterator(new SummaryBlockIterator(summaryIter, this, params), params, stats), start);
+	}
+	
+	/**
+	 * getCDXIterator() returning the CDX lines as UTF-8 bytes: only the
+	 * summary lines are decoded
+	 */
+	public CloseableIterator<byte[]> getCDXByteIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+		return getCDXByteIterator(key, start, exact, params, null);
+	}
+	
+	/**
+	 * @param stats counts the CDX lines read and matched by this query, or null
+	 */
+	public CloseableIterator<byte[]> getCDXByteIterator(String key, String start, boolean exact, ZipNumParams params, ZipNumScanStats stats) throws IOException {
+		
+		if (canReadBinaryEntries(params)) {
+			SummaryBlockIterator blockIter = getQueryBlockIterator(key, start, exact, params);
+			
+			if (blockIter == null) {
+				return EMPTY_BYTE_ITERATOR;
+			}
+			
+			return new StartBoundedByteIterator(getCDXByteIterator(blockIter, params, stats), start.getBytes(UTF8));
+		}
+		
+		CloseableIterator<String> summaryIter = getQuerySummaryIterator(key, start, exact, params);
+		
+		if (summaryIter == null) {
+			return EMPTY_BYTE_ITERATOR;
+		}
+		
+		return new StartBoundedByteIterator(getCDXByteIterator(new SummaryBlockIterator(summaryIter, this, params), params, stats), start.getBytes(UTF8));
+	}
+	
+	/**
+	 * @return the summary lines of the blocks a query reads, or null if
+	 * there are none
+	 */
+	protected CloseableIterator<String> getQuerySummaryIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+		
+		if ((locationUpdater != null) && !locationUpdater.dateRangeCheck(key)) {
+			return null;
+		}
+		
+		CloseableIterator<String> summaryIter = getSummaryIterator(key, true);
+		
+		if (exact && (bloomFilterDir != null)) {
+			summaryIter = checkBloomFilters(summaryIter, start);
+			
+			if (summaryIter == null) {
+				return null;
+			}
+		}
 		
 		if (params.getTimestampDedupLength() > 0) {
 			summaryIter = new TimestampDedupIterator(summaryIter, params.getTimestampDedupLength());
@@ -312,21 +572,242 @@ public class ZipNumCluster implements CDXInputSource {
 			summaryIter = lineBufferIter;
 		}
 		
-		summaryIter = wrapPrefix(summaryIter, start, exact);
-				
-		return wrapStartIterator(getCDXIterator(summaryIter, params), start);
+		return wrapPrefix(summaryIter, start, exact);
+	}
+	
+	/**
+	 * @return true if a query can take its blocks straight from the binary
+	 * summary arrays. Timestamp dedup works on the summary keys, so needs
+	 * summary lines.
+	 */
+	protected boolean canReadBinaryEntries(ZipNumParams params)
+	{
+		return (binarySummary != null) && ((params == null) || (params.getTimestampDedupLength() <= 0));
+	}
+	
+	/**
+	 * getQuerySummaryIterator() for a binary summary: the same blocks, with
+	 * no summary lines. Line buffering is not needed, as there is nothing to
+	 * close early, and SummaryBlockIterator applies maxBlocks itself.
+	 * @return null if there are no blocks to read
+	 */
+	protected SummaryBlockIterator getQueryBlockIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+		
+		if ((locationUpdater != null) && !locationUpdater.dateRangeCheck(key)) {
+			return null;
+		}
+		
+		int index = binarySummary.searchIndex(key, true);
+		
+		if (exact && (bloomFilterDir != null) && !entriesMightContain(index, start)) {
+			bloomFilterSkips.incrementAndGet();
+			return null;
+		}
+		
+		BinarySummary.EntryIterator entries = (exact ?
+				binarySummary.getEntryIterator(index, endKey(start), false) :
+				binarySummary.getEntryIterator(index, start, true));
+		
+		return new SummaryBlockIterator(entries, this, params);
+	}
+	
+	/**
+	 * checkBloomFilters() for the binary summary entries from index on
+	 */
+	protected boolean entriesMightContain(int index, String urlKey)
+	{
+		if (urlKey.indexOf(' ') >= 0) {
+			return true;
+		}
+		
+		byte[] keyBytes = urlKey.getBytes(UTF8);
+		int end = binarySummary.lowerBound(endKey(urlKey));
+		int numEntries = binarySummary.getNumEntries();
+		
+		// the first entry is the block before the key, after that only blocks starting with the key
+		for (int i = index; i < numEntries; i++) {
+			if ((i - index) >= MAX_BLOOM_CHECK_BLOCKS) {
+				return true;
+			}
+			
+			if ((i > index) && (i >= end)) {
+				break;
+			}
+			
+			BlockBloomFilter filter = getBloomFilter(binarySummary.getPartId(i));
+			
+			if (filter.mightContain(binarySummary.getOffset(i), keyBytes)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Checks the bloom filters of the blocks that could hold url key
+	 * urlKey, ie. the summary lines before endKey(urlKey)
+	 * 
+	 * @return null if no block has the key, otherwise an iterator over the
+	 * same summary lines as summaryIter
+	 */
+	protected CloseableIterator<String> checkBloomFilters(CloseableIterator<String> summaryIter, String urlKey) throws IOException
+	{
+		if (urlKey.indexOf(' ') >= 0) {
+			return summaryIter;
+		}
+		
+		byte[] keyBytes = urlKey.getBytes(UTF8);
+		String end = endKey(urlKey);
+		
+		List<String> lines = new ArrayList<String>();
+		boolean mightContain = false;
+		
+		while (summaryIter.hasNext()) {
+			if (lines.size() >= MAX_BLOOM_CHECK_BLOCKS) {
+				mightContain = true;
+				break;
+			}
+			
+			String line = summaryIter.next();
+			lines.add(line);
+			
+			// the first line is the block before the key, after that only blocks starting with the key
+			if ((lines.size() > 1) && (line.compareTo(end) >= 0)) {
+				break;
+			}
+			
+			if (blockMightContain(line, keyBytes)) {
+				mightContain = true;
+				break;
+			}
+		}
+		
+		if (!mightContain) {
+			summaryIter.close();
+			bloomFilterSkips.incrementAndGet();
+			return null;
+		}
+		
+		return new BufferedSummaryIterator(lines.iterator(), summaryIter);
+	}
+	
+	protected boolean blockMightContain(String summaryLine, byte[] urlKey)
+	{
+		int partStart = summaryLine.indexOf('\t') + 1;
+		int partEnd = summaryLine.indexOf('\t', partStart);
+		
+		if ((partStart == 0) || (partEnd < 0)) {
+			return true;
+		}
+		
+		long offset = extractLongField(summaryLine, 2);
+		
+		if (offset < 0) {
+			return true;
+		}
+		
+		BlockBloomFilter filter = getBloomFilter(summaryLine.substring(partStart, partEnd));
+		return filter.mightContain(offset, urlKey);
+	}
+	
+	/**
+	 * @return the bloom filters for a part, loaded on first use, or an empty
+	 * filter if it has none
+	 */
+	public BlockBloomFilter getBloomFilter(String partId)
+	{
+		BlockBloomFilter filter = bloomFilters.get(partId);
+		
+		if (filter != null) {
+			return filter;
+		}
+		
+		File file = new File(bloomFilterDir, partId + BlockBloomFilter.SUFFIX);
+		filter = NO_BLOOM_FILTER;
+		
+		if (file.isFile()) {
+			try {
+				filter = new BlockBloomFilter(file.getAbsolutePath());
+			} catch (IOException io) {
+				LOGGER.warning("Bad bloom filter " + file + ": " + io);
+			}
+		}
+		
+		BlockBloomFilter existing = bloomFilters.putIfAbsent(partId, filter);
+		return (existing != null ? existing : filter);
+	}
+	
+	/**
+	 * Summary lines already read, followed by the rest of the summary iterator
+	 */
+	protected static class BufferedSummaryIterator implements CloseableIterator<String>
+	{
+		protected Iterator<String> buffered;
+		protected CloseableIterator<String> rest;
+		
+		public BufferedSummaryIterator(Iterator<String> buffered, CloseableIterator<String> rest)
+		{
+			this.buffered = buffered;
+			this.rest = rest;
+		}
+		
+		public boolean hasNext() {
+			return buffered.hasNext() || rest.hasNext();
+		}
+
+		public String next() {
+			return (buffered.hasNext() ? buffered.next() : rest.next());
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		public void close() throws IOException {
+			rest.close();
+		}
 	}
 	
 	public CloseableIterator<String> getCDXIterator(String key, ZipNumParams params) throws IOException {
 		
-		CloseableIterator<String> summaryIter = summary.getRecordIteratorLT(key);		
+		CloseableIterator<String> summaryIter = getSummaryIterator(key, true);		
 		return wrapStartIterator(getCDXIterator(summaryIter, params), key);
 	}
 	
 	public CloseableIterator<String> getCDXIterator(CloseableIterator<String> summaryIterator, ZipNumParams params)
 	{
-		SummaryBlockIterator blockIter = new SummaryBlockIterator(summaryIterator, this, params);
+		return getCDXIterator(new SummaryBlockIterator(summaryIterator, this, params), params, null);
+	}
+	
+	protected CloseableIterator<String> getCDXIterator(SummaryBlockIterator blockIter, ZipNumParams params, ZipNumScanStats stats)
+	{
+		if ((params != null) && (params.getPrefetchBlocks() > 0)) {
+			MultiBlockIterator zipIter = new MultiBlockIterator(blockIter, blockLoader.getPrefetchExecutor(), params.getPrefetchBlocks());
+			zipIter.setFilter(params, stats);
+			return zipIter;
+		}
+		
 		MultiBlockIterator zipIter = new MultiBlockIterator(blockIter);
+		zipIter.setFilter(params, stats);
+		return zipIter;
+	}
+	
+	public CloseableIterator<byte[]> getCDXByteIterator(CloseableIterator<String> summaryIterator, ZipNumParams params)
+	{
+		return getCDXByteIterator(new SummaryBlockIterator(summaryIterator, this, params), params, null);
+	}
+	
+	protected CloseableIterator<byte[]> getCDXByteIterator(SummaryBlockIterator blockIter, ZipNumParams params, ZipNumScanStats stats)
+	{
+		if ((params != null) && (params.getPrefetchBlocks() > 0)) {
+			MultiBlockByteIterator zipIter = new MultiBlockByteIterator(blockIter, blockLoader.getPrefetchExecutor(), params.getPrefetchBlocks());
+			zipIter.setFilter(params, stats);
+			return zipIter;
+		}
+		
+		MultiBlockByteIterator zipIter = new MultiBlockByteIterator(blockIter);
+		zipIter.setFilter(params, stats);
 		return zipIter;
 	}
 	
@@ -348,6 +829,48 @@ public class ZipNumCluster implements CDXInputSource {
 		return summary;
 	}
 
+	/**
+	 * @return the binary summary in use, or null if lookups go to the text summary
+	 */
+	public BinarySummary getBinarySummary()
+	{
+		return binarySummary;
+	}
+
+	public boolean isUseBinarySummary() {
+		return useBinarySummary;
+	}
+
+	/**
+	 * @param useBinarySummary if set, init() opens summaryFile + ".bin" (see
+	 * BinarySummaryWriter) for lookups when it exists and is not older than
+	 * the text summary
+	 */
+	public void setUseBinarySummary(boolean useBinarySummary) {
+		this.useBinarySummary = useBinarySummary;
+	}
+
+	public String getBloomFilterDir() {
+		return bloomFilterDir;
+	}
+
+	/**
+	 * @param bloomFilterDir local directory with a PART.bloom file of per-block
+	 * url key filters for each part (see BlockBloomFilterWriter). If set,
+	 * exact lookups skip blocks that don't have the url.
+	 */
+	public void setBloomFilterDir(String bloomFilterDir) {
+		this.bloomFilterDir = bloomFilterDir;
+		this.bloomFilters.clear();
+	}
+
+	/**
+	 * @return number of exact lookups answered by the bloom filters alone
+	 */
+	public long getBloomFilterSkips() {
+		return bloomFilterSkips.get();
+	}
+
 	public ZipNumBlockLoader getBlockLoader() {
 		return blockLoader;
 	}
@@ -364,6 +887,75 @@ public class ZipNumCluster implements CDXInputSource {
 		this.useNio = useNio;
 	}
 
+	public boolean isPositionalRead() {
+		return positionalRead;
+	}
+
+	/**
+	 * @param positionalRead read an HDFS summary through one shared stream,
+	 * with positional reads. See ZipNumBlockLoader.setPositionalRead() for
+	 * the parts.
+	 */
+	public void setPositionalRead(boolean positionalRead) {
+		this.positionalRead = positionalRead;
+	}
+
+	public boolean isUseMMap() {
+		return useMMap;
+	}
+
+	/**
+	 * @param useMMap map a local summary whole and binary search it in place
+	 */
+	public void setUseMMap(boolean useMMap) {
+		this.useMMap = useMMap;
+	}
+
+	public int getSummaryIndexSize() {
+		return summaryIndexSize;
+	}
+
+	/**
+	 * @param summaryIndexSize max number of sampled summary keys to keep in
+	 * memory for the summary binary search, 0 to disable
+	 */
+	public void setSummaryIndexSize(int summaryIndexSize) {
+		this.summaryIndexSize = summaryIndexSize;
+		
+		if (summary != null) {
+			summary.setMidpointIndexSize(summaryIndexSize);
+		}
+	}
+
+	public int getSummaryPoolSize() {
+		return summaryPoolSize;
+	}
+
+	/**
+	 * @param summaryPoolSize idle summary readers to keep for reuse, 0 to
+	 * open one per query
+	 */
+	public void setSummaryPoolSize(int summaryPoolSize) {
+		this.summaryPoolSize = summaryPoolSize;
+		
+		if (summary != null) {
+			summary.setReaderPoolSize(summaryPoolSize);
+		}
+	}
+
+	public String getDictionaryFile() {
+		return dictionaryFile;
+	}
+
+	/**
+	 * @param dictionaryFile preset deflate dictionary the blocks were written
+	 * with (see ZipNumDictionaryTrainer). Defaults to ALL.dict next to the
+	 * summary, if present.
+	 */
+	public void setDictionaryFile(String dictionaryFile) {
+		this.dictionaryFile = dictionaryFile;
+	}
+
 	public String getLocFile() {
 		return locFile;
 	}
@@ -371,4 +963,25 @@ public class ZipNumCluster implements CDXInputSource {
 	public void setLocFile(String locFile) {
 		this.locFile = locFile;
 	}
+
+	public LocationUpdater getLocationUpdater() {
+		return locationUpdater;
+	}
+
+	public double getHedgePercentile() {
+		return hedgePercentile;
+	}
+
+	/**
+	 * @param hedgePercentile with a locFile, reads slower than this
+	 * percentile (eg. 0.95) of recent latencies are hedged to another
+	 * location. 0 to disable.
+	 */
+	public void setHedgePercentile(double hedgePercentile) {
+		this.hedgePercentile = hedgePercentile;
+		
+		if (locationUpdater != null) {
+			locationUpdater.setHedgePercentile(hedgePercentile);
+		}
+	}
 }
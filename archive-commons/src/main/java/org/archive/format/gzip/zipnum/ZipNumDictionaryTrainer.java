@@ -0,0 +1,176 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * Builds a preset deflate dictionary for ZipNum CDX blocks from a sample of
+ * lines: the space delimited fields and SURT host prefixes that repeat most
+ * (by count x length), with the most valuable last, where deflate reaches
+ * them with the shortest distances.
+ *
+ * The dictionary is stored once per cluster, as ALL.dict next to the
+ * summary, and set on ZipNumWriter and ZipNumBlockLoader.
+ */
+public class ZipNumDictionaryTrainer {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	public final static String DICTIONARY_NAME = "ALL.dict";
+
+	// deflate can only reach back 32K
+	public final static int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+	public final static int DEFAULT_MAX_SAMPLE_LINES = 100000;
+
+	protected int maxSampleLines;
+	protected HashMap<String, int[]> counts = new HashMap<String, int[]>();
+	protected int numSampleLines = 0;
+
+	public ZipNumDictionaryTrainer()
+	{
+		this(DEFAULT_MAX_SAMPLE_LINES);
+	}
+
+	public ZipNumDictionaryTrainer(int maxSampleLines)
+	{
+		this.maxSampleLines = maxSampleLines;
+	}
+
+	/**
+	 * @return false once enough lines have been sampled
+	 */
+	public boolean addSample(String line)
+	{
+		if (numSampleLines >= maxSampleLines) {
+			return false;
+		}
+
+		numSampleLines++;
+
+		int start = 0;
+
+		while (start < line.length()) {
+			int end = line.indexOf(' ', start);
+
+			if (end < 0) {
+				count(line.substring(start) + "\n");
+				break;
+			}
+
+			if (start == 0) {
+				int hostEnd = line.indexOf(')', start);
+				if ((hostEnd > 0) && (hostEnd < end)) {
+					count(line.substring(0, hostEnd + 1));
+				}
+			}
+
+			count(line.substring(start, end + 1));
+			start = end + 1;
+		}
+
+		return true;
+	}
+
+	protected void count(String token)
+	{
+		int[] count = counts.get(token);
+
+		if (count == null) {
+			counts.put(token, new int[]{1});
+		} else {
+			count[0]++;
+		}
+	}
+
+	public int getNumSampleLines()
+	{
+		return numSampleLines;
+	}
+
+	public byte[] train()
+	{
+		return train(MAX_DICTIONARY_SIZE);
+	}
+
+	public byte[] train(int maxSize)
+	{
+		List<Map.Entry<String, int[]>> tokens = new ArrayList<Map.Entry<String, int[]>>();
+
+		for (Map.Entry<String, int[]> entry : counts.entrySet()) {
+			if (entry.getValue()[0] > 1) {
+				tokens.add(entry);
+			}
+		}
+
+		// highest scores first
+		Collections.sort(tokens, new Comparator<Map.Entry<String, int[]>>() {
+			public int compare(Map.Entry<String, int[]> a, Map.Entry<String, int[]> b) {
+				long scoreA = (long)a.getValue()[0] * a.getKey().length();
+				long scoreB = (long)b.getValue()[0] * b.getKey().length();
+				if (scoreA != scoreB) {
+					return (scoreA > scoreB ? -1 : 1);
+				}
+				return a.getKey().compareTo(b.getKey());
+			}
+		});
+
+		List<byte[]> selected = new ArrayList<byte[]>();
+		int size = 0;
+
+		for (Map.Entry<String, int[]> entry : tokens) {
+			byte[] bytes = entry.getKey().getBytes(UTF8);
+
+			if ((size + bytes.length) > maxSize) {
+				continue;
+			}
+
+			selected.add(bytes);
+			size += bytes.length;
+		}
+
+		ByteArrayOutputStream dict = new ByteArrayOutputStream(size);
+
+		for (int i = selected.size() - 1; i >= 0; i--) {
+			byte[] bytes = selected.get(i);
+			dict.write(bytes, 0, bytes.length);
+		}
+
+		return dict.toByteArray();
+	}
+
+	public static byte[] readDictionary(File file) throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+
+		try {
+			return ByteStreams.toByteArray(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	public static void writeDictionary(File file, byte[] dictionary) throws IOException
+	{
+		OutputStream out = new FileOutputStream(file, false);
+
+		try {
+			out.write(dictionary);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -1,10 +1,21 @@
 package org.archive.format.gzip.zipnum;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.archive.format.cdx.FieldPredicate;
+
 public class ZipNumParams
 {
 	protected int maxAggregateBlocks = 1;
 	protected int timestampDedupLength = 0;
 	protected int maxBlocks = 0;
+	protected int prefetchBlocks = 0;
+	protected int maxCoalesceGap = 0;
+	
+	protected volatile List<FieldPredicate> predicates = Collections.emptyList();
+	protected volatile boolean predicatesInUse = false;
 	
 	public int getMaxAggregateBlocks() {
 		return maxAggregateBlocks;
@@ -29,4 +40,65 @@ public class ZipNumParams
 	public void setMaxBlocks(int maxBlocks) {
 		this.maxBlocks = maxBlocks;
 	}
-}
\ No newline at end of file
+
+	public int getPrefetchBlocks() {
+		return prefetchBlocks;
+	}
+
+	/**
+	 * @param prefetchBlocks number of block ranges to fetch and inflate
+	 * ahead of the reader on the block loader's executor, 0 to load inline
+	 */
+	public void setPrefetchBlocks(int prefetchBlocks) {
+		this.prefetchBlocks = prefetchBlocks;
+	}
+
+	public int getMaxCoalesceGap() {
+		return maxCoalesceGap;
+	}
+
+	/**
+	 * @param maxCoalesceGap max number of unwanted bytes between two blocks
+	 * of the same part that may still be fetched with a single read. The
+	 * skipped bytes are discarded, not inflated. Only applies within
+	 * maxAggregateBlocks; 0 only merges adjacent blocks.
+	 */
+	public void setMaxCoalesceGap(int maxCoalesceGap) {
+		this.maxCoalesceGap = maxCoalesceGap;
+	}
+
+	/**
+	 * Adds a predicate every returned CDX line must match. Predicates are
+	 * checked on the raw bytes as blocks are read, and lines failing them
+	 * are never decoded. They are fixed once these params have been used
+	 * for a query.
+	 * @throws IllegalStateException if a query has used these params
+	 */
+	public synchronized void addPredicate(FieldPredicate predicate) {
+		if (predicatesInUse) {
+			throw new IllegalStateException("Predicates can not be added once queried");
+		}
+		List<FieldPredicate> added = new ArrayList<FieldPredicate>(predicates);
+		added.add(predicate);
+		predicates = Collections.unmodifiableList(added);
+	}
+
+	/**
+	 * @return the predicates, which can not be modified
+	 */
+	public List<FieldPredicate> getPredicates() {
+		return predicates;
+	}
+
+	public boolean hasPredicates() {
+		return !predicates.isEmpty();
+	}
+	
+	/**
+	 * @return getPredicates(), which from now on can not be added to
+	 */
+	synchronized List<FieldPredicate> usePredicates() {
+		predicatesInUse = true;
+		return predicates;
+	}
+}
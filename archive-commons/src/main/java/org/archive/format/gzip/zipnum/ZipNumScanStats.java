@@ -0,0 +1,35 @@
+package org.archive.format.gzip.zipnum;
+
+/**
+ * Lines read by one query's iterator, and how many of them passed its
+ * predicates. Updated only by the thread reading the iterator.
+ */
+public class ZipNumScanStats
+{
+	protected long linesScanned = 0;
+	protected long linesMatched = 0;
+	
+	/**
+	 * @return number of lines checked against the predicates so far
+	 */
+	public long getLinesScanned() {
+		return linesScanned;
+	}
+
+	/**
+	 * @return number of lines that passed the predicates so far
+	 */
+	public long getLinesMatched() {
+		return linesMatched;
+	}
+	
+	public void reset() {
+		linesScanned = 0;
+		linesMatched = 0;
+	}
+	
+	@Override
+	public String toString() {
+		return "scanned=" + linesScanned + " matched=" + linesMatched;
+	}
+}
@@ -0,0 +1,193 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Splits a key range of a ZipNum cluster into splits of about the same
+ * number of CDX lines, or of compressed bytes, using the block lengths and
+ * cumulative line counts of the summary, instead of byte offsets in the
+ * summary file.
+ *
+ * Splits are cut at block boundaries: split i covers the lines in
+ * [getStart(), getEnd()), where each bound is the first line of a block,
+ * or the requested start/end for the first and last split.
+ */
+public class ZipNumSplitPlanner {
+	private final static Logger LOGGER = Logger.getLogger(ZipNumSplitPlanner.class.getName());
+
+	public enum Balance
+	{
+		LINES,
+		BYTES,
+	}
+
+	public static class Split
+	{
+		protected String start;
+		protected String end;
+		protected long numLines;
+		protected long numBytes;
+		protected int numBlocks;
+
+		public String getStart() {
+			return start;
+		}
+
+		public String getEnd() {
+			return end;
+		}
+
+		/**
+		 * @return number of lines in the blocks of the split, which may
+		 * include a few before the start of a partial first block
+		 */
+		public long getNumLines() {
+			return numLines;
+		}
+
+		public long getNumBytes() {
+			return numBytes;
+		}
+
+		public int getNumBlocks() {
+			return numBlocks;
+		}
+
+		@Override
+		public String toString() {
+			return start + "\t" + end + "\t" + numLines + "\t" + numBytes + "\t" + numBlocks;
+		}
+	}
+
+	protected ZipNumCluster cluster;
+
+	public ZipNumSplitPlanner(ZipNumCluster cluster)
+	{
+		this.cluster = cluster;
+	}
+
+	/**
+	 * @param start first key, or "" from the start of the cluster
+	 * @param end end key, exclusive, or "" to the end of the cluster
+	 * @return up to numSplits splits, fewer if the range has fewer blocks
+	 */
+	public List<Split> plan(String start, String end, int numSplits, Balance balance) throws IOException
+	{
+		start = ((start == null) ? "" : start);
+		end = ((end == null) ? "" : end);
+		
+		List<String> keys = new ArrayList<String>();
+		List<long[]> weights = new ArrayList<long[]>();
+
+		readBlocks(start, end, keys, weights);
+
+		List<Split> splits = new ArrayList<Split>();
+		int numBlocks = keys.size();
+
+		if (numBlocks == 0) {
+			return splits;
+		}
+
+		numSplits = Math.max(1, Math.min(numSplits, numBlocks));
+
+		int index = ((balance == Balance.BYTES) ? 1 : 0);
+		long total = 0;
+
+		for (long[] weight : weights) {
+			total += weight[index];
+		}
+
+		Split curr = newSplit(start);
+		long cumulative = 0;
+
+		for (int i = 0; i < numBlocks; i++) {
+			long[] weight = weights.get(i);
+			int splitsLeft = numSplits - splits.size() - 1;
+
+			// Cut before this block once its midpoint passes the next target,
+			// but leave a block for each split still to come
+			if ((curr.numBlocks > 0) && (splitsLeft > 0)) {
+				double target = ((double)total * (splits.size() + 1)) / numSplits;
+				boolean mustCut = ((numBlocks - i) <= splitsLeft);
+
+				if (mustCut || ((cumulative + (weight[index] / 2.0)) > target)) {
+					curr.end = keys.get(i);
+					splits.add(curr);
+					curr = newSplit(keys.get(i));
+				}
+			}
+
+			curr.numLines += weight[0];
+			curr.numBytes += weight[1];
+			curr.numBlocks++;
+			cumulative += weight[index];
+		}
+
+		curr.end = end;
+		splits.add(curr);
+		return splits;
+	}
+
+	protected static Split newSplit(String start)
+	{
+		Split split = new Split();
+		split.start = start;
+		return split;
+	}
+
+	/**
+	 * Reads the first line and {lines, bytes} of each block that may hold
+	 * lines in [start, end). A block's line count is the difference with the
+	 * next block's cumulative count. Without counts in the summary, or for
+	 * the very last block, the average known count is used.
+	 */
+	protected void readBlocks(String start, String end, List<String> keys, List<long[]> weights) throws IOException
+	{
+		CloseableIterator<String> summaryIter = cluster.getSummaryIterator(start, true);
+
+		long prevCount = -1;
+		long knownLines = 0;
+		int knownBlocks = 0;
+
+		try {
+			while (summaryIter.hasNext()) {
+				String line = summaryIter.next();
+				long count = ZipNumCluster.extractLongField(line, 4);
+
+				if ((prevCount >= 0) && (count >= prevCount)) {
+					weights.get(weights.size() - 1)[0] = (count - prevCount);
+					knownLines += (count - prevCount);
+					knownBlocks++;
+				}
+
+				// one more line past the end, for the last block's count
+				if (!end.isEmpty() && (line.compareTo(end) >= 0)) {
+					break;
+				}
+
+				prevCount = count;
+				keys.add(line.substring(0, Math.max(0, line.indexOf('\t'))));
+				weights.add(new long[]{-1, Math.max(0, ZipNumCluster.extractLongField(line, 3))});
+			}
+		} finally {
+			summaryIter.close();
+		}
+
+		if (knownBlocks == 0) {
+			LOGGER.warning("No line counts in summary, balancing by blocks");
+		}
+
+		long average = ((knownBlocks > 0) ? (knownLines / knownBlocks) : 1);
+
+		for (long[] weight : weights) {
+			if (weight[0] < 0) {
+				weight[0] = average;
+			}
+		}
+	}
+}
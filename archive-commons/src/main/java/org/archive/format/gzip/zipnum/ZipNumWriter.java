@@ -4,23 +4,80 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.archive.format.gzip.GZIPMemberWriter;
 import org.archive.format.gzip.GZIPMemberWriterCommittedOutputStream;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Writes lines into gzip members of limit lines each, and a manifest line
+ * (offset, length, first line) per member.
+ *
+ * With numThreads > 1, members are deflated on a pool while the caller keeps
+ * adding records, and written out in order: the output is the same as with
+ * a single thread.
+ */
 public class ZipNumWriter extends GZIPMemberWriterCommittedOutputStream {
 	int limit;
 	int count;
 	OutputStream manifestOut;
 	ByteArrayOutputStream manifestBuffer;
 	char delimiter = '\t';
+	BlockBloomFilterWriter bloomWriter;
+	byte[] dictionary;
 	private static final Charset UTF8 = Charset.forName("utf-8");
+
+	ExecutorService executor;
+	int maxPending;
+	LinkedList<PendingBlock> pending;
+
+	static class PendingBlock {
+		Future<byte[]> member;
+		byte[] firstLine;
+		long[] bloomBits;
+	}
+
 	public ZipNumWriter(OutputStream main, OutputStream manifest, int limit) {
+		this(main, manifest, limit, 1);
+	}
+
+	public ZipNumWriter(OutputStream main, OutputStream manifest, int limit, int numThreads) {
 		super(new GZIPMemberWriter(main));
 		manifestOut = manifest;
 		this.limit = limit;
 		count = 0;
 		manifestBuffer = new ByteArrayOutputStream();
+		if(numThreads > 1) {
+			executor = Executors.newFixedThreadPool(numThreads,
+					new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ZipNumWriter-%d").build());
+			// enough queued to keep every thread busy while the head is written
+			maxPending = numThreads * 2;
+			pending = new LinkedList<PendingBlock>();
+		}
+	}
+
+	/**
+	 * @param bloomWriter if set, gets the url key of every record and a
+	 * filter per block. It is closed by close().
+	 */
+	public void setBloomFilterWriter(BlockBloomFilterWriter bloomWriter) {
+		this.bloomWriter = bloomWriter;
+	}
+
+	/**
+	 * @param dictionary preset deflate dictionary for all blocks, see
+	 * ZipNumDictionaryTrainer. Readers need the same dictionary.
+	 */
+	public void setDictionary(byte[] dictionary) {
+		this.dictionary = dictionary;
+		getMemberWriter().setDictionary(dictionary);
 	}
 
 	public void addRecord(byte[] bytes) throws IOException {
@@ -28,33 +85,105 @@ public class ZipNumWriter extends GZIPMemberWriterCommittedOutputStream {
 			manifestBuffer.write(bytes);
 		}
 		write(bytes);
+		if(bloomWriter != null) {
+			bloomWriter.addLine(bytes);
+		}
 		count++;
 		if(count == limit) {
 			finishCurrent();
 		}
 	}
-	
+
 	public void close() throws IOException {
 		finishCurrent();
+		if(executor != null) {
+			try {
+				while(!pending.isEmpty()) {
+					writePending();
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+		}
+		if(bloomWriter != null) {
+			bloomWriter.close();
+		}
 	}
 
 	private void finishCurrent() throws IOException {
 		if(count == 0) {
 			return;
 		}
+		if(executor != null) {
+			submitCurrent();
+			return;
+		}
 		long start = getBytesWritten();
 		commit();
 		long end = getBytesWritten();
-		long len = end - start;
+		if(bloomWriter != null) {
+			bloomWriter.finishBlock(start);
+		}
+		writeManifest(start, end - start, manifestBuffer.toByteArray());
+		count = 0;
+		manifestBuffer.reset();
+	}
+
+	private void submitCurrent() throws IOException {
+		while(pending.size() >= maxPending) {
+			writePending();
+		}
+		final byte[] block = takeUncommitted();
+		final byte[] dict = dictionary;
+		PendingBlock next = new PendingBlock();
+		next.member = executor.submit(new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return GZIPMemberWriter.compressMember(block, dict);
+			}
+		});
+		next.firstLine = manifestBuffer.toByteArray();
+		if(bloomWriter != null) {
+			next.bloomBits = bloomWriter.detachBlock();
+		}
+		pending.add(next);
+		count = 0;
+		manifestBuffer.reset();
+		// write out whatever is already done, without waiting
+		while(!pending.isEmpty() && pending.peek().member.isDone()) {
+			writePending();
+		}
+	}
+
+	private void writePending() throws IOException {
+		PendingBlock head = pending.poll();
+		byte[] member;
+		try {
+			member = head.member.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+		long start = getBytesWritten();
+		getMemberWriter().writeMember(member);
+		if(head.bloomBits != null) {
+			bloomWriter.writeBlock(start, head.bloomBits);
+		}
+		writeManifest(start, member.length, head.firstLine);
+	}
+
+	private void writeManifest(long start, long len, byte[] firstLine) throws IOException {
 		StringBuilder sb = new StringBuilder();
 		sb.append(start);
 		sb.append(delimiter);
 		sb.append(len);
 		sb.append(delimiter);
 		manifestOut.write(sb.toString().getBytes(UTF8));
-		manifestBuffer.writeTo(manifestOut);
+		manifestOut.write(firstLine);
 		manifestOut.flush();
-		count = 0;
-		manifestBuffer.reset();
 	}
 }
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.URL;
 
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.archive.format.gzip.GZIPMemberIndex;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.resource.ResourceFactory;
 import org.archive.resource.ResourceProducer;
@@ -32,7 +33,13 @@ public class EnvelopedResourceFile {
 	}
 
 	private ResourceProducer getGZProducer(Stream stream, String name) {
+		return getGZProducer(stream, name, null);
+	}
+
+	private ResourceProducer getGZProducer(Stream stream, String name, 
+			GZIPMemberIndex index) {
 		GZIPMemberSeries series = new GZIPMemberSeries(stream, name, startOffset, strict);
+		series.setIndex(index);
 		GZIPResourceContainer producer = new GZIPResourceContainer(series);
 		if(factory == null) {
 			return producer;
@@ -63,7 +70,13 @@ public class EnvelopedResourceFile {
 		if(offset > 0) {
 			stream.setOffset(offset);
 		}
-		return getGZProducer(stream, file.getName());
+		// skips unread members by the sidecar index, if there is one, and
+		// the series counts offsets from the start of the file
+		GZIPMemberIndex index = null;
+		if(offset == startOffset) {
+			index = GZIPMemberIndex.forFile(file);
+		}
+		return getGZProducer(stream, file.getName(), index);
 	}
 
 	public ResourceProducer getGZResourceProducer(FSDataInputStream fsdis, 
@@ -49,6 +49,33 @@ public class ByteOp {
 		return true;
 	}
 
+	/**
+	 * Unsigned lexicographic comparison, which for UTF-8 is code point order
+	 * (and "LC_ALL=C sort" order)
+	 */
+	public static int compare(byte[] b1, int off1, int len1, byte[] b2, int off2, int len2) {
+		int n = Math.min(len1, len2);
+		for(int i = 0; i < n; i++) {
+			int diff = (b1[off1 + i] & 0xff) - (b2[off2 + i] & 0xff);
+			if(diff != 0) {
+				return diff;
+			}
+		}
+		return len1 - len2;
+	}
+
+	public static int compare(byte[] b1, byte[] b2) {
+		return compare(b1, 0, b1.length, b2, 0, b2.length);
+	}
+
+	public static boolean startsWith(byte[] b, int off, int len, byte[] prefix) {
+		return (len >= prefix.length) && cmp(b, off, prefix, 0, prefix.length);
+	}
+
+	public static boolean startsWith(byte[] b, byte[] prefix) {
+		return startsWith(b, 0, b.length, prefix);
+	}
+
 	public static byte[] append(byte a[], byte b[]) {
 		byte n[] = new byte[a.length + b.length];
 		System.arraycopy(a, 0, n, 0, a.length);
@@ -95,11 +95,30 @@ public class GeneralURIStreamFactory {
 	}
 	
 	public static SeekableLineReaderFactory createSeekableStreamFactory(String uri, boolean useNio) throws IOException
+	{
+		return createSeekableStreamFactory(uri, useNio, false);
+	}
+	
+	/**
+	 * @param useMMap for local files, map the whole file once, see MappedFile
+	 */
+	public static SeekableLineReaderFactory createSeekableStreamFactory(String uri, boolean useNio, boolean useMMap) throws IOException
+	{
+		return createSeekableStreamFactory(uri, useNio, useMMap, false);
+	}
+	
+	/**
+	 * @param positionalRead for HDFS files, share one open stream between
+	 * readers, read with positional reads, see HDFSSeekableLineReaderFactory
+	 */
+	public static SeekableLineReaderFactory createSeekableStreamFactory(String uri, boolean useNio, boolean useMMap, boolean positionalRead) throws IOException
 	{
 		if (isHttp(uri)) {
 			return HTTPSeekableLineReaderFactory.getHttpFactory(uri);
 		} else if (isHdfs(uri)) {
-			return new HDFSSeekableLineReaderFactory(initHdfs(), new Path(uri));			
+			return new HDFSSeekableLineReaderFactory(initHdfs(), new Path(uri), positionalRead);
+		} else if (useMMap) {
+			return new NIOSeekableLineReaderFactory(new File(uri), SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE, true);
 		} else if (useNio) {
 			return new NIOSeekableLineReaderFactory(new File(uri));
 		} else {
@@ -0,0 +1,338 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.archive.util.ByteOp;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+/**
+ * Looks up many keys in sorted text files at once: the keys are sorted and
+ * answered in one forward scan of each file, rather than a binary search
+ * per key. The scan only seeks again, galloping then bisecting, when the
+ * next key is over maxScanLines lines ahead.
+ *
+ * Each key is answered with the lines starting with it, from all files,
+ * in sorted order. Results come in key order as the scan goes, or in input
+ * order once all keys are done, which holds every result in memory.
+ */
+public class BatchSearch {
+	private final static Logger LOGGER =
+		Logger.getLogger(BatchSearch.class.getName());
+
+	public final static int DEFAULT_MAX_SCAN_LINES = 1024;
+
+	protected List<SortedTextFile> files;
+	protected int maxScanLines = DEFAULT_MAX_SCAN_LINES;
+
+	public static class Result
+	{
+		protected int index;
+		protected byte[] key;
+		protected List<byte[]> lines;
+
+		protected Result(int index, byte[] key, List<byte[]> lines)
+		{
+			this.index = index;
+			this.key = key;
+			this.lines = lines;
+		}
+
+		/**
+		 * @return the position of the key in the input
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		public byte[] getKey() {
+			return key;
+		}
+
+		/**
+		 * @return the lines starting with the key, possibly none
+		 */
+		public List<byte[]> getLines() {
+			return lines;
+		}
+	}
+
+	public BatchSearch(SortedTextFile file)
+	{
+		this(Collections.singletonList(file));
+	}
+
+	public BatchSearch(List<SortedTextFile> files)
+	{
+		this.files = files;
+	}
+
+	/**
+	 * @param keys UTF-8 keys, in any order, possibly repeated
+	 * @param sortedOrder results in key order, as found, rather than in the
+	 * order of keys
+	 * @return a Result for every key
+	 */
+	public CloseableIterator<Result> lookup(final List<byte[]> keys, boolean sortedOrder) throws IOException
+	{
+		Integer[] order = new Integer[keys.size()];
+
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+		}
+
+		// Stable, so equal keys keep input order
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return ByteOp.compare(keys.get(a), keys.get(b));
+			}
+		});
+
+		ResultIterator results = new ResultIterator(keys, order);
+
+		if (sortedOrder) {
+			return results;
+		}
+
+		Result[] byIndex = new Result[keys.size()];
+
+		try {
+			while (results.hasNext()) {
+				Result result = results.next();
+				byIndex[result.getIndex()] = result;
+			}
+		} finally {
+			results.close();
+		}
+
+		return AbstractPeekableIterator.wrap(Arrays.asList(byIndex).iterator());
+	}
+
+	protected class ResultIterator extends AbstractPeekableIterator<Result>
+	{
+		protected List<byte[]> keys;
+		protected Integer[] order;
+		protected int next = 0;
+		protected List<Cursor> cursors = new ArrayList<Cursor>();
+
+		protected ResultIterator(List<byte[]> keys, Integer[] order) throws IOException
+		{
+			this.keys = keys;
+			this.order = order;
+
+			try {
+				for (SortedTextFile file : files) {
+					cursors.add(new Cursor(file.getSLR()));
+				}
+			} catch (IOException io) {
+				close();
+				throw io;
+			}
+		}
+
+		@Override
+		public Result getNextInner() {
+			if (next >= order.length) {
+				return null;
+			}
+
+			int index = order[next++];
+			byte[] key = keys.get(index);
+			List<byte[]> lines = new ArrayList<byte[]>();
+
+			try {
+				for (Cursor cursor : cursors) {
+					cursor.find(key, lines);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+
+			if (cursors.size() > 1) {
+				Collections.sort(lines, new Comparator<byte[]>() {
+					public int compare(byte[] a, byte[] b) {
+						return ByteOp.compare(a, b);
+					}
+				});
+			}
+
+			return new Result(index, key, lines);
+		}
+
+		@Override
+		public void close() throws IOException {
+			for (Cursor cursor : cursors) {
+				cursor.slr.close();
+			}
+			cursors.clear();
+		}
+	}
+
+	/**
+	 * A forward scan of one file. Lines at or after the last key that have
+	 * been read past are kept in replay, for the following keys they may
+	 * also start with.
+	 */
+	protected class Cursor
+	{
+		protected SeekableLineReader slr;
+		protected long size;
+		protected ByteLineReader lines;
+
+		// The current line, null at the end, and where it starts, or a bit
+		// before for "\r\n" lines, which is all galloping needs
+		protected byte[] cur;
+		protected long curOffset;
+		protected long nextOffset;
+
+		protected Deque<byte[]> replay = new ArrayDeque<byte[]>();
+
+		protected Cursor(SeekableLineReader slr) throws IOException
+		{
+			this.slr = slr;
+			this.size = slr.getSize();
+			seekLine(0);
+		}
+
+		// Reads from the first line starting after offset, or at 0
+		protected void seekLine(long offset) throws IOException
+		{
+			slr.seek(offset);
+			lines = slr.getByteLineReader();
+			nextOffset = offset;
+
+			if (offset > 0) {
+				int partial = lines.readLine();
+				nextOffset += ((partial >= 0) ? partial + 1 : 0);
+			}
+
+			readNext();
+		}
+
+		protected void readNext() throws IOException
+		{
+			int length = lines.readLine();
+			curOffset = nextOffset;
+
+			if (length < 0) {
+				cur = null;
+				return;
+			}
+
+			cur = lines.copyLine();
+			nextOffset += length + 1;
+		}
+
+		// The first full line after offset, as seekLine() would find
+		protected byte[] probe(long offset) throws IOException
+		{
+			slr.seek(offset);
+			ByteLineReader probeLines = slr.getByteLineReader();
+			probeLines.readLine();
+			return probeLines.readLineBytes();
+		}
+
+		/**
+		 * Adds the lines starting with key to matches. Keys must come in
+		 * sorted order.
+		 */
+		protected void find(byte[] key, List<byte[]> matches) throws IOException
+		{
+			while (!replay.isEmpty() && (ByteOp.compare(replay.peekFirst(), key) < 0)) {
+				replay.pollFirst();
+			}
+
+			for (byte[] line : replay) {
+				if (!startsWith(line, key)) {
+					// Past the lines with this prefix
+					return;
+				}
+				matches.add(line);
+			}
+
+			int scanned = 0;
+
+			while ((cur != null) && (ByteOp.compare(cur, key) < 0)) {
+				if (++scanned == maxScanLines) {
+					gallop(key);
+				} else {
+					readNext();
+				}
+			}
+
+			while ((cur != null) && startsWith(cur, key)) {
+				matches.add(cur);
+				replay.addLast(cur);
+				readNext();
+			}
+		}
+
+		// Moves to around the first line >= key: cur is < key
+		protected void gallop(byte[] key) throws IOException
+		{
+			long lo = curOffset;
+			long hi = size;
+			long step = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
+			int numProbes = 0;
+
+			while (lo + step < size) {
+				byte[] line = probe(lo + step);
+				numProbes++;
+
+				if ((line == null) || (ByteOp.compare(line, key) >= 0)) {
+					hi = lo + step;
+					break;
+				}
+
+				lo += step;
+				step *= 2;
+			}
+
+			while (hi - lo > SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE) {
+				long mid = lo + ((hi - lo) / 2);
+				byte[] line = probe(mid);
+				numProbes++;
+
+				if ((line == null) || (ByteOp.compare(line, key) >= 0)) {
+					hi = mid;
+				} else {
+					lo = mid;
+				}
+			}
+
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine(String.format("Gallop from %d to %d in %d probes", curOffset, lo, numProbes));
+			}
+
+			// The line at, or just after, lo is < key
+			seekLine(lo);
+		}
+	}
+
+	protected static boolean startsWith(byte[] line, byte[] prefix)
+	{
+		return (line.length >= prefix.length) &&
+			(ByteOp.compare(line, 0, prefix.length, prefix, 0, prefix.length) == 0);
+	}
+
+	public int getMaxScanLines() {
+		return maxScanLines;
+	}
+
+	/**
+	 * @param maxScanLines lines read past, looking for a key, before seeking
+	 * ahead instead
+	 */
+	public void setMaxScanLines(int maxScanLines) {
+		this.maxScanLines = maxScanLines;
+	}
+}
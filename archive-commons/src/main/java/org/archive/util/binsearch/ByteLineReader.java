@@ -0,0 +1,147 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads '\n' terminated lines from a stream as slices of its own buffer, with
+ * no charset decoding and no allocation per line. A trailing '\r' is dropped,
+ * as BufferedReader does for "\r\n".
+ *
+ * After readLine(), the line is getBuffer()[getLineStart(), getLineStart() +
+ * length), valid until the next call.
+ */
+public class ByteLineReader {
+
+	protected InputStream in;
+	protected byte[] buf;
+	protected int pos = 0;
+	protected int limit = 0;
+	protected boolean eof = false;
+
+	protected int lineStart = 0;
+	protected int lineLength = -1;
+
+	public ByteLineReader(InputStream in, int bufferSize)
+	{
+		this.in = in;
+		this.buf = new byte[Math.max(bufferSize, 256)];
+	}
+
+	/**
+	 * Reads from in, from scratch, keeping the buffer
+	 */
+	public void reset(InputStream in)
+	{
+		this.in = in;
+		pos = 0;
+		limit = 0;
+		eof = false;
+		lineStart = 0;
+		lineLength = -1;
+	}
+
+	/**
+	 * @return the length of the next line, without the line terminator, or
+	 * -1 at the end of the stream
+	 */
+	public int readLine() throws IOException
+	{
+		int scan = pos;
+
+		while (true) {
+			for (int i = scan; i < limit; i++) {
+				if (buf[i] == '\n') {
+					return setLine(i, i + 1);
+				}
+			}
+
+			if (eof) {
+				if (pos < limit) {
+					return setLine(limit, limit);
+				}
+				lineLength = -1;
+				return -1;
+			}
+
+			scan = fill();
+		}
+	}
+
+	protected int setLine(int end, int next)
+	{
+		lineStart = pos;
+		lineLength = end - pos;
+
+		if ((lineLength > 0) && (buf[end - 1] == '\r')) {
+			lineLength--;
+		}
+
+		pos = next;
+		return lineLength;
+	}
+
+	// Reads more, keeping the partial line: returns where to resume scanning
+	protected int fill() throws IOException
+	{
+		int partial = limit - pos;
+
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, partial);
+		} else if (partial == buf.length) {
+			byte[] bigger = new byte[buf.length * 2];
+			System.arraycopy(buf, 0, bigger, 0, partial);
+			buf = bigger;
+		}
+
+		pos = 0;
+		limit = partial;
+
+		int amt = in.read(buf, limit, buf.length - limit);
+
+		if (amt < 0) {
+			eof = true;
+		} else {
+			limit += amt;
+		}
+
+		return partial;
+	}
+
+	/**
+	 * @return a copy of the next line, or null at the end of the stream
+	 */
+	public byte[] readLineBytes() throws IOException
+	{
+		if (readLine() < 0) {
+			return null;
+		}
+
+		return copyLine();
+	}
+
+	/**
+	 * @return a copy of the current line
+	 */
+	public byte[] copyLine()
+	{
+		byte[] line = new byte[lineLength];
+		System.arraycopy(buf, lineStart, line, 0, lineLength);
+		return line;
+	}
+
+	public byte[] getBuffer()
+	{
+		return buf;
+	}
+
+	public int getLineStart()
+	{
+		return lineStart;
+	}
+
+	public int getLineLength()
+	{
+		return lineLength;
+	}
+}
@@ -1,8 +1,14 @@
 package org.archive.util.binsearch;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -14,7 +20,8 @@ import org.apache.hadoop.util.ToolRunner;
 import org.archive.util.binsearch.impl.HDFSSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
-import org.archive.util.iterator.SortedCompositeIterator;
+import org.archive.util.iterator.CloseableIterator;
+import org.archive.util.iterator.LoserTreeMergeIterator;
 
 public class FileSearchTool implements Tool {
 	private final static Logger LOGGER =
@@ -29,10 +36,14 @@ public class FileSearchTool implements Tool {
 	
 	private static int USAGE(int code) {
 		System.err.println("USAGE: " + TOOL_NAME + " [OPTIONS] PREFIX PATH ...");
+		System.err.println("USAGE: " + TOOL_NAME + " [OPTIONS] --batch KEYS PATH ...");
 		System.err.println("\tOPTIONS can be one of:");
 		System.err.println("\t\t--less-than  return records starting at the largest record smaller than PREFIX");
+		System.err.println("\t\t--interpolate  estimate where PREFIX is from the keys around it, rather than bisect");
+		System.err.println("\t\t--sorted-output  in batch mode, return records in key order as found, not in KEYS order");
 		System.err.println();
 		System.err.println("PREFIX is the key to search for");
+		System.err.println("KEYS is a file of keys, one per line, or - for stdin: the records starting with each are returned, all keys answered in one scan");
 		System.err.println("PATH can be a path to a local file, or a path in an HDFS filesystem");
 		System.err.println("if multiple PATHs are presented, they are all searched, and the matching records are merged together.");
 		
@@ -45,10 +56,22 @@ public class FileSearchTool implements Tool {
 		}
 		int arg = 0;
 		boolean lessThan = false;
+		String batchKeys = null;
+		boolean sortedOutput = false;
+		boolean interpolate = false;
 		while(arg < args.length){
 			if(args[arg].equals("--less-than")) {
 				lessThan = true;
 				arg++;
+			} else if(args[arg].equals("--batch") && (arg + 1 < args.length)) {
+				batchKeys = args[arg + 1];
+				arg += 2;
+			} else if(args[arg].equals("--interpolate")) {
+				interpolate = true;
+				arg++;
+			} else if(args[arg].equals("--sorted-output")) {
+				sortedOutput = true;
+				arg++;
 			} else if(args[arg].equals("-v")) {
 				Logger.getLogger(SortedTextFile.class.getName()).setLevel(Level.FINE);
 				arg++;
@@ -56,48 +79,103 @@ public class FileSearchTool implements Tool {
 				break;
 			}
 		}
-		String key = args[arg++];
+		String key = null;
+		if(batchKeys == null) {
+			key = args[arg++];
+		}
 		if(arg == args.length){
 			return USAGE(1);
 		}
 
-		Comparator<String> comparator = new Comparator<String>() {
-			public int compare(String s1, String s2) {
-				return s1.compareTo(s2);
-			}
-		};
-		SortedCompositeIterator<String> mergeItr = 
-			new SortedCompositeIterator<String>(comparator);
-
+		List<SortedTextFile> files = new ArrayList<SortedTextFile>();
 		for(int i = arg; i < args.length; i++) {
-			String spec = args[i];
-			SeekableLineReaderFactory factory;
-			if(spec.startsWith("hdfs://")) {
-				Configuration conf = new Configuration();
-				FileSystem fs = FileSystem.get(new URI(spec),conf);
-				Path path = new Path(spec);
-				factory = new HDFSSeekableLineReaderFactory(fs, path);
-				LOGGER.warning("Added HDFS file: " + spec);
-			} else if(spec.startsWith("http://")) {
-				factory = HTTPSeekableLineReaderFactory.getHttpFactory(spec);
-				LOGGER.warning("Added HTTP file: " + spec);
-			} else {
-				File file = new File(spec);
-				factory = new RandomAccessFileSeekableLineReaderFactory(file);
-				LOGGER.warning("Added file: " + spec);
-			}
-			SortedTextFile stf = new SortedTextFile(factory);
-			mergeItr.addIterator(stf.getRecordIterator(key, lessThan));
+			SortedTextFile stf = new SortedTextFile(getFactory(args[i]));
+			stf.setInterpolationSearch(interpolate);
+			files.add(stf);
+		}
+
+		OutputStream out = new BufferedOutputStream(System.out, 64 * 1024);
+
+		if(batchKeys != null) {
+			int numKeys = batchSearch(files, batchKeys, sortedOutput, out);
+			out.flush();
+			LOGGER.info("Answered " + numKeys + " keys");
+			return 0;
+		}
+
+		// Lines stay UTF-8 bytes from file to stdout
+		byte[] keyBytes = key.getBytes(SeekableLineReader.UTF8);
+		LoserTreeMergeIterator<byte[]> mergeItr = 
+			new LoserTreeMergeIterator<byte[]>(LoserTreeMergeIterator.BYTE_ARRAY_COMPARATOR);
+
+		for(SortedTextFile stf : files) {
+			mergeItr.addIterator(stf.getByteRecordIterator(keyBytes, lessThan));
 		}
 		
 		while(mergeItr.hasNext()) {
-			System.out.println(mergeItr.next());
+			out.write(mergeItr.next());
+			out.write('\n');
 		}
-		System.out.flush();
+		out.flush();
 		mergeItr.close();
+		
+		for(SortedTextFile stf : files) {
+			LOGGER.info("Searched in " + stf.getNumProbes() + " probes");
+		}
 
 		return 0;
 	}
+	
+	protected SeekableLineReaderFactory getFactory(String spec) throws Exception {
+		SeekableLineReaderFactory factory;
+		if(spec.startsWith("hdfs://")) {
+			Configuration conf = new Configuration();
+			FileSystem fs = FileSystem.get(new URI(spec),conf);
+			Path path = new Path(spec);
+			factory = new HDFSSeekableLineReaderFactory(fs, path);
+			LOGGER.warning("Added HDFS file: " + spec);
+		} else if(spec.startsWith("http://")) {
+			factory = HTTPSeekableLineReaderFactory.getHttpFactory(spec);
+			LOGGER.warning("Added HTTP file: " + spec);
+		} else {
+			File file = new File(spec);
+			factory = new RandomAccessFileSeekableLineReaderFactory(file);
+			LOGGER.warning("Added file: " + spec);
+		}
+		return factory;
+	}
+	
+	protected int batchSearch(List<SortedTextFile> files, String keysPath,
+			boolean sortedOutput, OutputStream out) throws IOException {
+		InputStream in = (keysPath.equals("-") ? System.in : new FileInputStream(keysPath));
+		List<byte[]> keys = new ArrayList<byte[]>();
+		
+		try {
+			ByteLineReader lines = new ByteLineReader(in, 64 * 1024);
+			byte[] key;
+			while((key = lines.readLineBytes()) != null) {
+				keys.add(key);
+			}
+		} finally {
+			in.close();
+		}
+		
+		CloseableIterator<BatchSearch.Result> results =
+			new BatchSearch(files).lookup(keys, sortedOutput);
+		
+		try {
+			while(results.hasNext()) {
+				for(byte[] line : results.next().getLines()) {
+					out.write(line);
+					out.write('\n');
+				}
+			}
+		} finally {
+			results.close();
+		}
+		
+		return keys.size();
+	}
 
 	public static void main(String[] args) throws Exception {
 		int res = ToolRunner.run(new Configuration(), new FileSearchTool(), args);
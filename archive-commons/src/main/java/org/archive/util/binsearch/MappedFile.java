@@ -0,0 +1,194 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A read-only file mapped whole, in 1GB chunks as a single buffer can't
+ * exceed 2GB. Lines are searched and compared in place in the mapping, and
+ * read through streams that copy straight from it, with no system calls.
+ *
+ * Safe to share between threads: only absolute gets and duplicates of the
+ * chunks are used.
+ */
+public class MappedFile {
+	public final static int DEFAULT_CHUNK_SHIFT = 30;
+
+	protected final int chunkShift;
+	protected final long chunkSize;
+	protected final int chunkMask;
+
+	protected final long size;
+	protected final MappedByteBuffer[] chunks;
+
+	public MappedFile(FileChannel fc) throws IOException
+	{
+		this(fc, DEFAULT_CHUNK_SHIFT);
+	}
+
+	/**
+	 * @param chunkShift log2 of the size of each mapped chunk, at most 30
+	 */
+	public MappedFile(FileChannel fc, int chunkShift) throws IOException
+	{
+		this.chunkShift = chunkShift;
+		this.chunkSize = 1L << chunkShift;
+		this.chunkMask = (int)(chunkSize - 1);
+
+		size = fc.size();
+		chunks = new MappedByteBuffer[(int)((size + chunkSize - 1) >>> chunkShift)];
+
+		for (int i = 0; i < chunks.length; i++) {
+			long start = (long)i << chunkShift;
+			chunks[i] = fc.map(MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+		}
+	}
+
+	public long size()
+	{
+		return size;
+	}
+
+	public byte get(long pos)
+	{
+		return chunks[(int)(pos >>> chunkShift)].get((int)pos & chunkMask);
+	}
+
+	/**
+	 * @return the start of the line holding pos, its '\n' included
+	 */
+	public long lineStart(long pos)
+	{
+		while ((pos > 0) && (get(pos - 1) != '\n')) {
+			pos--;
+		}
+
+		return pos;
+	}
+
+	/**
+	 * @return the start of the line after the one holding pos, or size()
+	 */
+	public long nextLine(long pos)
+	{
+		while (pos < size) {
+			if (get(pos++) == '\n') {
+				return pos;
+			}
+		}
+
+		return size;
+	}
+
+	/**
+	 * Compares the line starting at lineStart, without its '\n', to key as
+	 * unsigned bytes
+	 */
+	public int compareLine(long lineStart, byte[] key)
+	{
+		long pos = lineStart;
+
+		for (int i = 0; i < key.length; i++, pos++) {
+			if ((pos >= size) || (get(pos) == '\n')) {
+				return -1;
+			}
+
+			int diff = (get(pos) & 0xff) - (key[i] & 0xff);
+
+			if (diff != 0) {
+				return diff;
+			}
+		}
+
+		return ((pos >= size) || (get(pos) == '\n')) ? 0 : 1;
+	}
+
+	/**
+	 * Binary search over the lines of a sorted file
+	 * @return {start of the line before, or -1 if none; start of the first
+	 * line at or after key, or size() if none}
+	 */
+	public long[] search(byte[] key)
+	{
+		// The first line >= key starts in [min, max], min always a line start
+		long min = 0;
+		long max = size;
+
+		while (min < max) {
+			long line = lineStart((min + max) >>> 1);
+
+			if (compareLine(line, key) < 0) {
+				min = nextLine(line);
+			} else {
+				max = line;
+			}
+		}
+
+		return new long[]{((min > 0) ? lineStart(min - 1) : -1), min};
+	}
+
+	/**
+	 * @param maxLength bytes to read, or -1 for up to the end
+	 */
+	public MappedInputStream getInputStream(long offset, int maxLength)
+	{
+		long end = ((maxLength >= 0) ? Math.min(size, offset + maxLength) : size);
+		return new MappedInputStream(offset, end);
+	}
+
+	public class MappedInputStream extends InputStream
+	{
+		protected long pos;
+		protected long end;
+
+		protected MappedInputStream(long pos, long end)
+		{
+			this.pos = pos;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return ((pos < end) ? (get(pos++) & 0xff) : -1);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= end) {
+				return -1;
+			}
+
+			// Up to the end of the current chunk
+			int chunkOffset = (int)pos & chunkMask;
+			len = (int)Math.min(len, Math.min(end - pos, chunkSize - chunkOffset));
+
+			ByteBuffer chunk = chunks[(int)(pos >>> chunkShift)].duplicate();
+			chunk.position(chunkOffset);
+			chunk.get(b, off, len);
+
+			pos += len;
+			return len;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			n = Math.max(0, Math.min(n, end - pos));
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int)Math.min(Integer.MAX_VALUE, end - pos);
+		}
+
+		public long position()
+		{
+			return pos;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A sparse, in-memory sample of the first full line at evenly spaced
+ * block offsets of a sorted text file.
+ *
+ * The sample is built once, lazily, on the first search and then replaces
+ * the seek-per-probe bisection in SortedTextFile: a lookup goes straight to
+ * the largest sampled block whose key is smaller than the search key, and
+ * only the window up to the next sample has to be read.
+ *
+ * At most maxEntries samples are kept, so the window grows with the size of
+ * the file: (fileSize / maxEntries) rounded up to a BINSEARCH_BLOCK_SIZE.
+ * The index is dropped and rebuilt if the reported file size changes.
+ */
+public class MidpointIndex {
+	private final static Logger LOGGER =
+		Logger.getLogger(MidpointIndex.class.getName());
+
+	public final static int DEFAULT_MAX_ENTRIES = 64 * 1024;
+
+	protected final int blockSize;
+	protected final int maxEntries;
+
+	protected long fileSize = -1;
+	protected long numBlocks;
+	protected long stride;
+
+	// keys[i] is the first full line at block (i * stride), or null if past the last line
+	protected String[] keys;
+
+	// Set while a thread reads the samples for a new index
+	protected boolean building = false;
+
+	public MidpointIndex(int maxEntries)
+	{
+		this(maxEntries, SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE);
+	}
+
+	public MidpointIndex(int maxEntries, int blockSize)
+	{
+		this.maxEntries = Math.max(maxEntries, 1);
+		this.blockSize = blockSize;
+	}
+
+	public synchronized boolean isLoaded(long size)
+	{
+		return (keys != null) && (fileSize == size);
+	}
+
+	/**
+	 * Make sure the index matches a file of the given size, (re)building it
+	 * with the provided reader if needed. The reader is left at an arbitrary
+	 * position.
+	 *
+	 * The samples are read without holding the lock: while one thread builds,
+	 * others get false back and should search without the index.
+	 *
+	 * @return true if findOffset() can be used for the file
+	 */
+	public boolean ensureLoaded(SeekableLineReader slr, long size) throws IOException
+	{
+		synchronized (this) {
+			if (isLoaded(size)) {
+				return true;
+			}
+			if (building) {
+				return false;
+			}
+			building = true;
+		}
+
+		try {
+			long blocks = size / blockSize;
+			long step = (blocks + maxEntries - 1) / maxEntries;
+
+			if (step < 1) {
+				step = 1;
+			}
+
+			int count = (int)((blocks + step - 1) / step);
+			String[] newKeys = new String[count];
+
+			for (int i = 0; i < count; i++) {
+				newKeys[i] = readSample(slr, i * step * blockSize, size);
+
+				if (newKeys[i] == null) {
+					break;
+				}
+			}
+
+			if (LOGGER.isLoggable(Level.INFO)) {
+				LOGGER.info(String.format("Built midpoint index: %d samples, %d blocks per sample, %d bytes",
+						count, step, size));
+			}
+
+			synchronized (this) {
+				this.numBlocks = blocks;
+				this.stride = step;
+				this.keys = newKeys;
+				this.fileSize = size;
+			}
+			return true;
+		} finally {
+			synchronized (this) {
+				building = false;
+			}
+		}
+	}
+
+	// The first full line after offset, reading at most two blocks unless
+	// that line is longer
+	protected String readSample(SeekableLineReader slr, long offset, long size) throws IOException
+	{
+		long maxRead = Math.min(2L * blockSize, size - offset);
+		slr.seekWithMaxRead(offset, false, (int)maxRead);
+
+		if (offset > 0) {
+			slr.readLine(); // probably a partial line
+		}
+
+		String line = slr.readLine();
+
+		if ((offset + maxRead < size) && ((line == null) || (slr.readLine() == null))) {
+			// may have been cut off by the end of the read
+			slr.seek(offset);
+
+			if (offset > 0) {
+				slr.readLine();
+			}
+
+			line = slr.readLine();
+		}
+
+		return line;
+	}
+
+	/**
+	 * @return the block offset to start scanning from for key, in the same
+	 * terms as SortedTextFile.findOffset(): the first full line after the
+	 * returned offset is less than key, unless the offset is 0
+	 */
+	public synchronized long findOffset(String key)
+	{
+		int min = 0;
+		int max = keys.length;
+
+		// find the last sample that is strictly less than key
+		while (max - min > 1) {
+			int mid = (min + max) >>> 1;
+			String sample = keys[mid];
+
+			if ((sample != null) && (key.compareTo(sample) > 0)) {
+				min = mid;
+			} else {
+				max = mid;
+			}
+		}
+
+		return (min * stride) * blockSize;
+	}
+
+	/**
+	 * @return the number of bytes that may have to be scanned after the
+	 * offset returned by findOffset()
+	 */
+	public synchronized long getWindowSize()
+	{
+		return stride * blockSize;
+	}
+
+	public synchronized int getNumEntries()
+	{
+		return (keys != null ? keys.length : 0);
+	}
+
+	public int getMaxEntries()
+	{
+		return maxEntries;
+	}
+
+	public synchronized void clear()
+	{
+		keys = null;
+		fileSize = -1;
+	}
+}
@@ -0,0 +1,217 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Wraps a SeekableLineReaderFactory to reuse its readers: close() on a
+ * reader from get() hands it back, with its line buffer and open file, for
+ * the next get(), up to maxIdle readers. Readers that can't be reused (see
+ * SeekableLineReader.doRecycle()) are closed as usual.
+ *
+ * Readers that are never closed are counted as leaked when collected. With
+ * trackBorrows, logLeaks() also reports where readers still out were taken.
+ */
+public class PooledSeekableLineReaderFactory implements SeekableLineReaderFactory {
+	private final static Logger LOGGER = Logger.getLogger(PooledSeekableLineReaderFactory.class.getName());
+
+	public final static int DEFAULT_MAX_IDLE = 16;
+
+	protected SeekableLineReaderFactory factory;
+	protected int maxIdle = DEFAULT_MAX_IDLE;
+	protected boolean trackBorrows = false;
+
+	// Most recently used first, for warm buffers
+	protected Deque<SeekableLineReader> idle = new ArrayDeque<SeekableLineReader>();
+	protected boolean closed = false;
+
+	// Weak keys, compared by identity: a reader that is never closed must
+	// still be collected, to be counted as leaked
+	protected ConcurrentMap<SeekableLineReader, Borrow> borrows = new MapMaker().weakKeys().makeMap();
+
+	protected AtomicLong numCreated = new AtomicLong();
+	protected AtomicLong numReused = new AtomicLong();
+	protected AtomicLong numLeaked = new AtomicLong();
+	protected AtomicInteger numBorrowed = new AtomicInteger();
+
+	protected static class Borrow extends Exception
+	{
+		private static final long serialVersionUID = 1L;
+
+		long time = System.currentTimeMillis();
+
+		Borrow()
+		{
+			super("Reader taken here");
+		}
+	}
+
+	public PooledSeekableLineReaderFactory(SeekableLineReaderFactory factory)
+	{
+		this(factory, DEFAULT_MAX_IDLE);
+	}
+
+	public PooledSeekableLineReaderFactory(SeekableLineReaderFactory factory, int maxIdle)
+	{
+		this.factory = factory;
+		this.maxIdle = maxIdle;
+	}
+
+	public SeekableLineReader get() throws IOException {
+		SeekableLineReader reader;
+
+		synchronized (this) {
+			if (closed) {
+				throw new IOException("get() after close()");
+			}
+
+			reader = idle.pollFirst();
+		}
+
+		if (reader != null) {
+			reader.reopen();
+			numReused.incrementAndGet();
+		} else {
+			reader = factory.get();
+			reader.pool = this;
+			numCreated.incrementAndGet();
+		}
+
+		numBorrowed.incrementAndGet();
+
+		if (trackBorrows) {
+			borrows.put(reader, new Borrow());
+		}
+
+		return reader;
+	}
+
+	/**
+	 * @return false if reader should be closed instead
+	 */
+	boolean release(SeekableLineReader reader)
+	{
+		numBorrowed.decrementAndGet();
+
+		if (trackBorrows) {
+			borrows.remove(reader);
+		}
+
+		synchronized (this) {
+			if (closed || (idle.size() >= maxIdle)) {
+				return false;
+			}
+
+			idle.addFirst(reader);
+			return true;
+		}
+	}
+
+	// Collected without close()
+	void leaked(SeekableLineReader reader)
+	{
+		numBorrowed.decrementAndGet();
+		numLeaked.incrementAndGet();
+		borrows.remove(reader);
+		LOGGER.warning("Reader collected without close(), " + numLeaked.get() + " so far");
+	}
+
+	/**
+	 * Logs the readers taken over maxAgeMs ago and not closed yet, with
+	 * where they were taken. Needs trackBorrows.
+	 * @return the number of such readers
+	 */
+	public int logLeaks(long maxAgeMs)
+	{
+		List<Borrow> old = new ArrayList<Borrow>();
+		long now = System.currentTimeMillis();
+
+		for (Borrow borrow : borrows.values()) {
+			if ((now - borrow.time) > maxAgeMs) {
+				old.add(borrow);
+			}
+		}
+
+		for (Borrow borrow : old) {
+			LOGGER.log(Level.WARNING, "Reader not closed after " + (now - borrow.time) + "ms", borrow);
+		}
+
+		return old.size();
+	}
+
+	public void close() throws IOException {
+		List<SeekableLineReader> toClose;
+
+		synchronized (this) {
+			closed = true;
+			toClose = new ArrayList<SeekableLineReader>(idle);
+			idle.clear();
+		}
+
+		for (SeekableLineReader reader : toClose) {
+			reader.pool = null;
+			reader.reopen();
+			reader.close();
+		}
+
+		factory.close();
+	}
+
+	public long getModTime() {
+		return factory.getModTime();
+	}
+
+	public SeekableLineReaderFactory getFactory() {
+		return factory;
+	}
+
+	public int getMaxIdle() {
+		return maxIdle;
+	}
+
+	public void setMaxIdle(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	public boolean isTrackBorrows() {
+		return trackBorrows;
+	}
+
+	/**
+	 * @param trackBorrows record where each reader is taken, for logLeaks().
+	 * Costs a stack trace per get().
+	 */
+	public void setTrackBorrows(boolean trackBorrows) {
+		this.trackBorrows = trackBorrows;
+	}
+
+	public synchronized int getNumIdle() {
+		return idle.size();
+	}
+
+	public int getNumBorrowed() {
+		return numBorrowed.get();
+	}
+
+	public long getNumCreated() {
+		return numCreated.get();
+	}
+
+	public long getNumReused() {
+		return numReused.get();
+	}
+
+	public long getNumLeaked() {
+		return numLeaked.get();
+	}
+}
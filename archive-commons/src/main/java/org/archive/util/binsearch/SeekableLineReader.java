@@ -1,11 +1,9 @@
 package org.archive.util.binsearch;
 
-import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 
 import org.archive.util.zip.GZIPMembersInputStream;
@@ -21,9 +19,19 @@ public abstract class SeekableLineReader {
 	
 	protected boolean bufferFully = false;
 	
-	protected BufferedReader br;
+	protected byte[] deflateDictionary = null;
+	
+	// Kept across seeks, and across uses when pooled, with its buffer
+	protected ByteLineReader blr;
 	protected InputStream is;
 	
+	// Of the current gzip seek, ended once done with: dropping the stream
+	// does not free the inflater's native memory
+	protected GZIPMembersInputStream gzis;
+	
+	// Set when from a PooledSeekableLineReaderFactory
+	PooledSeekableLineReaderFactory pool = null;
+	
 	class SLRClosingInputStream extends FilterInputStream
 	{
 		protected SLRClosingInputStream(InputStream in) {
@@ -59,7 +67,7 @@ public abstract class SeekableLineReader {
 			throw new IOException("Seek after close()");
 		}
 		
-		br = null;
+		endGzip();
 		
 		try {
 			is = doSeekLoad(offset, maxLength);
@@ -73,7 +81,12 @@ public abstract class SeekableLineReader {
 			}
 		
 	    	if (gzip) {
-	    		is = new GZIPMembersInputStream(is, blockSize);
+	    		gzis = new GZIPMembersInputStream(is, blockSize, deflateDictionary);
+	    		is = gzis;
+	    	}
+	    	
+	    	if (blr != null) {
+	    		blr.reset(is);
 	    	}
 		} catch (IOException io) {
 			doClose();
@@ -81,6 +94,14 @@ public abstract class SeekableLineReader {
 		}
 	}
 	
+	private void endGzip()
+	{
+		if (gzis != null) {
+			gzis.getInflater().end();
+			gzis = null;
+		}
+	}
+	
 	abstract protected InputStream doSeekLoad(long offset, int maxLength) throws IOException; 	
 	
 	abstract protected void doClose() throws IOException;
@@ -91,16 +112,37 @@ public abstract class SeekableLineReader {
 	}
 	
 	public String readLine() throws IOException {		
+		ByteLineReader reader = getByteLineReader();
+		int length = reader.readLine();
+		
+		if (length < 0) {
+			return null;
+		}
+		
+		return new String(reader.getBuffer(), reader.getLineStart(), length, UTF8);
+	}
+	
+	/**
+	 * Byte level counterpart of readLine(): lines as UTF-8 slices, with no
+	 * decoding. Both read from the same buffer, so they can be mixed.
+	 */
+	public ByteLineReader getByteLineReader() throws IOException {
 		if (is == null) {
 			seek(0);
 		}
 		
-		if (br == null) {
-	    	InputStreamReader isr = new InputStreamReader(is, UTF8);
-	    	br = new BufferedReader(isr, blockSize);
+		if (blr == null) {
+			blr = new ByteLineReader(is, blockSize);
 		}
 		
-		return br.readLine();
+		return blr;
+	}
+	
+	/**
+	 * @return the next line as UTF-8 bytes, or null at the end
+	 */
+	public byte[] readLineBytes() throws IOException {
+		return getByteLineReader().readLineBytes();
 	}
 	
 	public final void close() throws IOException
@@ -109,18 +151,69 @@ public abstract class SeekableLineReader {
 			return;
 		}
 		
+		if ((pool != null) && recycle()) {
+			return;
+		}
+		
 		doClose();
 		
-		if (br != null) {
-			br.close();
-			br = null;
-		} else if (is != null) {
+		if (is != null) {
 			is.close();
 		}
 		
-		br = null;
+		endGzip();
+		blr = null;
+		is = null;
+		closed = true;
+	}
+	
+	// Ends the current read and hands this reader back to its pool
+	private boolean recycle()
+	{
+		try {
+			if (!doRecycle()) {
+				return false;
+			}
+		} catch (IOException io) {
+			return false;
+		}
+		
+		endGzip();
 		is = null;
+		
+		if (blr != null) {
+			blr.reset(null);
+		}
+		
 		closed = true;
+		
+		if (pool.release(this)) {
+			return true;
+		}
+		
+		closed = false;
+		return false;
+	}
+	
+	/**
+	 * Ends the current read, leaving the reader ready for another seek(),
+	 * for reuse by a PooledSeekableLineReaderFactory
+	 * @return false if the reader can't be reused, and must be closed
+	 */
+	protected boolean doRecycle() throws IOException
+	{
+		return false;
+	}
+	
+	// Handed out again by the pool
+	void reopen()
+	{
+		closed = false;
+	}
+	
+	public boolean isPooled()
+	{
+		return (pool != null);
 	}
 	
 	public boolean isClosed()
@@ -133,15 +226,36 @@ public abstract class SeekableLineReader {
 		return 0;
 	}
 	
+	/**
+	 * @return the whole file mapped in memory, to search in place, or null
+	 */
+	public MappedFile getMappedFile()
+	{
+		return null;
+	}
+	
 	public void setBufferFully(boolean fully)
 	{
 		this.bufferFully = fully;
 	}
 	
+	/**
+	 * @param dictionary preset dictionary for gzip members read with
+	 * seekWithMaxRead(offset, true, maxLength), or null for plain gzip
+	 */
+	public void setDeflateDictionary(byte[] dictionary)
+	{
+		this.deflateDictionary = dictionary;
+	}
+	
 	@Override
 	public void finalize()
 	{
 		if (!closed) {
+			if (pool != null) {
+				pool.leaked(this);
+				pool = null;
+			}
 			try {
 				close();
 			} catch (IOException e) {
@@ -0,0 +1,33 @@
+package org.archive.util.binsearch;
+
+import java.io.IOException;
+
+import org.archive.util.iterator.AbstractPeekableIterator;
+
+/**
+ * SeekableLineReaderIterator returning UTF-8 lines, undecoded
+ */
+public class SeekableLineReaderByteIterator extends AbstractPeekableIterator<byte[]> {
+	protected SeekableLineReader slr;
+	
+	public SeekableLineReaderByteIterator(SeekableLineReader slr) {
+		this.slr = slr;
+	}
+	
+	@Override
+	public byte[] getNextInner() {
+		byte[] next = null;
+		if(slr != null) {
+			try {
+				next = slr.readLineBytes();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return next;
+	}
+	@Override
+	public void close() throws IOException {
+		slr.close();
+	}
+}
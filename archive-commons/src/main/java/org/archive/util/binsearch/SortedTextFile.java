@@ -1,10 +1,14 @@
 package org.archive.util.binsearch;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.archive.util.ByteOp;
 import org.archive.util.GeneralURIStreamFactory;
+import org.archive.util.iterator.AbstractPeekableIterator;
 import org.archive.util.iterator.CloseableIterator;
 
 public class SortedTextFile {
@@ -13,6 +17,17 @@ public class SortedTextFile {
 	
 	protected SeekableLineReaderFactory factory;
 	
+	protected MidpointIndex midpointIndex = null;
+	
+	protected boolean interpolationSearch = false;
+	
+	protected final static int INTERPOLATE_BYTES = 8;
+	
+	protected volatile BoundaryLines boundaryLines = null;
+	
+	protected AtomicLong numSearches = new AtomicLong();
+	protected AtomicLong numProbes = new AtomicLong();
+	
 	public SortedTextFile(SeekableLineReaderFactory factory) {
 		setFactory(factory);
 	}
@@ -24,7 +39,23 @@ public class SortedTextFile {
 	
 	public SortedTextFile(String filename, boolean useNio) throws IOException
 	{
-		this.factory = GeneralURIStreamFactory.createSeekableStreamFactory(filename, useNio);
+		this(filename, useNio, false);
+	}
+	
+	/**
+	 * @param useMMap for local files, map the whole file and search it in place
+	 */
+	public SortedTextFile(String filename, boolean useNio, boolean useMMap) throws IOException
+	{
+		this(filename, useNio, useMMap, false);
+	}
+	
+	/**
+	 * @param positionalRead for HDFS files, read a shared stream at positions
+	 */
+	public SortedTextFile(String filename, boolean useNio, boolean useMMap, boolean positionalRead) throws IOException
+	{
+		this.factory = GeneralURIStreamFactory.createSeekableStreamFactory(filename, useNio, useMMap, positionalRead);
 	}
 	
 	protected SortedTextFile()
@@ -35,6 +66,78 @@ public class SortedTextFile {
 	protected void setFactory(SeekableLineReaderFactory factory)
 	{
 		this.factory = factory;
+		this.midpointIndex = null;
+	}
+	
+	/**
+	 * Enable an in-memory index of up to maxEntries sampled keys, built on
+	 * the first search, so lookups read a single window instead of doing a
+	 * seek per bisection step. 0 disables the index.
+	 */
+	public void setMidpointIndexSize(int maxEntries)
+	{
+		if (maxEntries > 0) {
+			this.midpointIndex = new MidpointIndex(maxEntries);
+		} else {
+			this.midpointIndex = null;
+		}
+	}
+	
+	/**
+	 * Reuse up to maxIdle closed readers, and their buffers, for later
+	 * searches. 0 disables pooling.
+	 */
+	public void setReaderPoolSize(int maxIdle)
+	{
+		SeekableLineReaderFactory inner = factory;
+		
+		if (inner instanceof PooledSeekableLineReaderFactory) {
+			inner = ((PooledSeekableLineReaderFactory)inner).getFactory();
+		}
+		
+		this.factory = ((maxIdle > 0) ? new PooledSeekableLineReaderFactory(inner, maxIdle) : inner);
+	}
+	
+	/**
+	 * Estimate where the key is from the bytes of the keys around it, rather
+	 * than always bisecting: fewer probes over evenly spread keys, and at
+	 * most about twice as many otherwise. Not used with a midpoint index.
+	 */
+	public void setInterpolationSearch(boolean interpolationSearch)
+	{
+		this.interpolationSearch = interpolationSearch;
+	}
+	
+	public boolean isInterpolationSearch()
+	{
+		return interpolationSearch;
+	}
+	
+	/**
+	 * @return the number of binary searches over the file, for comparison
+	 * with getNumProbes()
+	 */
+	public long getNumSearches()
+	{
+		return numSearches.get();
+	}
+	
+	/**
+	 * @return the number of seeks those searches made
+	 */
+	public long getNumProbes()
+	{
+		return numProbes.get();
+	}
+	
+	public int getMidpointIndexSize()
+	{
+		return (midpointIndex != null ? midpointIndex.getMaxEntries() : 0);
+	}
+	
+	public MidpointIndex getMidpointIndex()
+	{
+		return midpointIndex;
 	}
 
 	public CloseableIterator<String> getRecordIteratorLT(final String prefix) 
@@ -74,19 +177,64 @@ public class SortedTextFile {
 		}
 	}
 	
+	/**
+	 * getRecordIterator() over UTF-8 lines: after the binary search, lines
+	 * are compared and returned as bytes, never decoded
+	 */
+	public CloseableIterator<byte[]> getByteRecordIterator(final byte[] prefix, 
+			boolean lessThan) throws IOException {
+		
+		SeekableLineReader slr = factory.get();
+		
+		try {
+			return searchBytes(slr, prefix, lessThan);
+		} catch (IOException io) {
+			slr.close();
+			throw io;
+		}
+	}
+	
+	/**
+	 * Answers many keys in one forward scan of the file, see BatchSearch
+	 * @param sortedOrder results in key order, as found, rather than in the
+	 * order of keys
+	 */
+	public CloseableIterator<BatchSearch.Result> batchLookup(List<byte[]> keys,
+			boolean sortedOrder) throws IOException {
+		return new BatchSearch(this).lookup(keys, sortedOrder);
+	}
+	
 	protected long findOffset(SeekableLineReader slr, final String key) throws IOException
 	{
 		int blockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
 		long fileSize = slr.getSize();
+		
+		numSearches.incrementAndGet();
+		
+		MidpointIndex index = midpointIndex;
+		
+		if ((index != null) && index.ensureLoaded(slr, fileSize)) {
+			long offset = index.findOffset(key);
+			
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine(String.format("Search(%s) : Index window %d+%d",
+						key, offset, index.getWindowSize()));
+			}
+			return offset;
+		}
+		
+		if (interpolationSearch) {
+			return interpolateOffset(slr, key, fileSize);
+		}
+		
 		long min = 0;
 		long max = (long) fileSize / blockSize;
 		long mid;
 		String line;
 
-		// TODO: implement a cache of midpoints - will make a HUGE difference
-		//       on both HTTP and HDFS
 	    while (max - min > 1) {
 	    	mid = min + (long)((max - min) / 2);
+	    	numProbes.incrementAndGet();
 	    	slr.seek(mid * blockSize);
 	    	if(mid > 0) line = slr.readLine(); // probably a partial line
 	    	line = slr.readLine();
@@ -111,6 +259,185 @@ public class SortedTextFile {
 	    return min;
 	}
 	
+	/**
+	 * findOffset() by interpolation: each probe is placed by where key falls
+	 * between the lines at min and max, taken as numbers from their first
+	 * bytes past their common prefix. A probe that doesn't halve the range
+	 * is followed by a bisection one.
+	 */
+	protected long interpolateOffset(SeekableLineReader slr, final String key, long fileSize) throws IOException
+	{
+		int blockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
+		BoundaryLines bounds = getBoundaryLines(slr, fileSize);
+		
+		String loLine = bounds.first;
+		String hiLine = bounds.last;
+		
+		long min = 0;
+		long max = (long) fileSize / blockSize;
+		
+		if ((hiLine == null) || (key.compareTo(loLine) <= 0)) {
+			return 0;
+		}
+		
+		if ((key.compareTo(hiLine) > 0) && (max > 0)) {
+			// Past the last line
+			return (max - 1) * blockSize;
+		}
+		
+		byte[] keyBytes = key.getBytes(SeekableLineReader.UTF8);
+		boolean bisect = false;
+		int probes = 0;
+		
+		while (max - min > 1) {
+			long mid;
+			
+			if (bisect) {
+				mid = min + ((max - min) / 2);
+			} else {
+				double fraction = interpolate(loLine.getBytes(SeekableLineReader.UTF8), keyBytes,
+						hiLine.getBytes(SeekableLineReader.UTF8));
+				mid = min + (long)(fraction * (max - min));
+				mid = Math.max(min + 1, Math.min(max - 1, mid));
+			}
+			
+			long range = max - min;
+			
+			probes++;
+			slr.seek(mid * blockSize);
+			slr.readLine(); // probably a partial line
+			String line = slr.readLine();
+			
+			if ((line != null) && (key.compareTo(line) > 0)) {
+				min = mid;
+				loLine = line;
+			} else {
+				max = mid;
+				
+				if (line != null) {
+					hiLine = line;
+				}
+			}
+			
+			bisect = (!bisect && ((max - min) * 2 > range));
+		}
+		
+		numProbes.addAndGet(probes);
+		
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine(String.format("Search(%s) : Interpolated in %d probes", key, probes));
+		}
+		
+		return min * blockSize;
+	}
+	
+	/**
+	 * @return where key is between lo and hi, from 0 to 1
+	 */
+	protected static double interpolate(byte[] lo, byte[] key, byte[] hi)
+	{
+		int common = 0;
+		
+		while ((common < lo.length) && (common < hi.length) && (lo[common] == hi[common])) {
+			common++;
+		}
+		
+		// The next bytes as numbers in a mixed radix: base 10 where all three
+		// have digits, base 26 for lowercase letters, so that runs like
+		// "0999" to "1000" are one step apart, not hundreds
+		double loValue = 0;
+		double keyValue = 0;
+		double hiValue = 0;
+		
+		for (int i = common; i < common + INTERPOLATE_BYTES; i++) {
+			int l = byteAt(lo, i);
+			int k = byteAt(key, i);
+			int h = byteAt(hi, i);
+			
+			int radix = 257;
+			int base = -1;
+			
+			if (isIn(l, k, h, '0', '9')) {
+				radix = 10;
+				base = '0';
+			} else if (isIn(l, k, h, 'a', 'z')) {
+				radix = 26;
+				base = 'a';
+			}
+			
+			loValue = (loValue * radix) + (l - base);
+			keyValue = (keyValue * radix) + (k - base);
+			hiValue = (hiValue * radix) + (h - base);
+		}
+		
+		if (hiValue <= loValue) {
+			return 0.5;
+		}
+		
+		double fraction = (keyValue - loValue) / (hiValue - loValue);
+		return Math.max(0, Math.min(1, fraction));
+	}
+	
+	// -1 past the end, sorting first
+	protected static int byteAt(byte[] bytes, int i)
+	{
+		return ((i < bytes.length) ? (bytes[i] & 0xff) : -1);
+	}
+	
+	protected static boolean isIn(int a, int b, int c, char from, char to)
+	{
+		return (a >= from) && (a <= to) && (b >= from) && (b <= to) && (c >= from) && (c <= to);
+	}
+	
+	// First and last lines, and the file size they were read at
+	protected static class BoundaryLines
+	{
+		String first;
+		String last;
+		long fileSize;
+	}
+	
+	protected BoundaryLines getBoundaryLines(SeekableLineReader slr, long fileSize) throws IOException
+	{
+		BoundaryLines bounds = boundaryLines;
+		
+		if ((bounds != null) && (bounds.fileSize == fileSize)) {
+			return bounds;
+		}
+		
+		int blockSize = SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE;
+		
+		slr.seek(0);
+		String first = slr.readLine();
+		
+		long tail = Math.max(0, fileSize - blockSize);
+		slr.seek(tail);
+		
+		if (tail > 0) {
+			slr.readLine(); // probably a partial line
+		}
+		
+		String last = null;
+		String line;
+		
+		while ((line = slr.readLine()) != null) {
+			last = line;
+		}
+		
+		if (last == null) {
+			// A line longer than a block
+			last = first;
+		}
+		
+		numProbes.addAndGet(2);
+		bounds = new BoundaryLines();
+		bounds.first = first;
+		bounds.last = last;
+		bounds.fileSize = fileSize;
+		boundaryLines = bounds;
+		return bounds;
+	}
+	
 	public long[] getStartEndOffsets(SeekableLineReader slr, String start, String end) throws IOException
 	{
 		long endOffset = 0;
@@ -277,9 +604,32 @@ public class SortedTextFile {
 	    return (offset - 2);
 	}
 	
+	/**
+	 * Positions slr on the first line >= key, or the one before if lessThan,
+	 * comparing in the mapping of the file
+	 */
+	private void searchMapped(SeekableLineReader slr, MappedFile mapped,
+			final byte[] key, boolean lessThan) throws IOException {
+		
+		long[] found = mapped.search(key);
+		
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine(String.format("Mapped search: prev %d, line %d", found[0], found[1]));
+		}
+		
+		slr.seek((lessThan && (found[0] >= 0)) ? found[0] : found[1]);
+	}
+	
 	private CloseableIterator<String> search(SeekableLineReader slr, 
 			final String key, boolean lessThan) throws IOException {
 
+		MappedFile mapped = slr.getMappedFile();
+		
+		if (mapped != null) {
+			searchMapped(slr, mapped, key.getBytes(SeekableLineReader.UTF8), lessThan);
+			return new CachedStringIterator(slr, null, null);
+		}
+		
 		long min = findOffset(slr, key);
 
 		if (LOGGER.isLoggable(Level.FINE)) {
@@ -306,6 +656,74 @@ public class SortedTextFile {
     	return new CachedStringIterator(slr, prev, line);
 	}
 	
+	private CloseableIterator<byte[]> searchBytes(SeekableLineReader slr, 
+			final byte[] key, boolean lessThan) throws IOException {
+
+		MappedFile mapped = slr.getMappedFile();
+		
+		if (mapped != null) {
+			searchMapped(slr, mapped, key, lessThan);
+			return new CachedByteIterator(slr, null, null);
+		}
+		
+		long min = findOffset(slr, new String(key, SeekableLineReader.UTF8));
+
+	    slr.seek(min);
+	    
+	    ByteLineReader lines = slr.getByteLineReader();
+	    
+	    if(min > 0) lines.readLine();
+	    byte[] prev = null;
+	    byte[] line = null;
+	    int length;
+	    // compare in place, only copying lines that are kept
+	    while((length = lines.readLine()) >= 0) {
+	    	if(ByteOp.compare(lines.getBuffer(), lines.getLineStart(), length, key, 0, key.length) >= 0) {
+	    		line = lines.copyLine();
+	    		break;
+	    	}
+	    	if(lessThan) {
+	    		prev = lines.copyLine();
+	    	}
+	    }
+    
+    	return new CachedByteIterator(slr, prev, line);
+	}
+	
+	public static class CachedByteIterator extends AbstractPeekableIterator<byte[]> {
+		private byte[] first;
+		private byte[] second;
+		private SeekableLineReader slr;
+		public CachedByteIterator(SeekableLineReader slr, byte[] first, byte[] second) {
+			this.slr = slr;
+			this.first = first;
+			this.second = second;
+		}
+
+		@Override
+		public byte[] getNextInner() {
+			byte[] tmp;
+			if(first != null) {
+				tmp = first;
+				first = null;
+			} else if(second != null) {
+				tmp = second;
+				second = null;
+			} else {
+				try {
+					tmp = slr.readLineBytes();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+			return tmp;
+		}
+
+		public void close() throws IOException {
+			slr.close();
+		}
+	}
+	
 	public class CachedStringIterator implements CloseableIterator<String> {
 		private String first;
 		private String second;
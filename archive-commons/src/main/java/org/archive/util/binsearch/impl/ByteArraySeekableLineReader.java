@@ -0,0 +1,50 @@
+package org.archive.util.binsearch.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.archive.util.binsearch.SeekableLineReader;
+
+/**
+ * A SeekableLineReader over an in-memory byte array, eg. an already
+ * fetched and decompressed block.
+ */
+public class ByteArraySeekableLineReader extends SeekableLineReader {
+	private final static int MAX_BLOCK_SIZE = 128 * 1024;
+
+	private byte[] data;
+
+	public ByteArraySeekableLineReader(byte[] data) {
+		super(Math.max(1, Math.min(data.length, MAX_BLOCK_SIZE)));
+		this.data = data;
+	}
+
+	protected InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+		if (data == null) {
+			throw new IOException("Seek after close()");
+		}
+
+		int start = (int)Math.min(offset, data.length);
+		int length = data.length - start;
+
+		if (maxLength >= 0) {
+			length = Math.min(length, maxLength);
+		}
+
+		return new ByteArrayInputStream(data, start, length);
+	}
+
+	@Override
+	protected boolean doRecycle() throws IOException {
+		return true;
+	}
+
+	protected void doClose() throws IOException {
+		data = null;
+	}
+
+	public long getSize() throws IOException {
+		return (data != null ? data.length : 0);
+	}
+}
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 
 import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
 import org.archive.util.binsearch.SeekableLineReader;
 
 import com.google.common.io.LimitInputStream;
@@ -12,6 +14,13 @@ public class HDFSSeekableLineReader extends SeekableLineReader {
 	private FSDataInputStream fsdis;
 	private long length;
 	
+	// Positional read mode: bounded seeks read the shared stream at an
+	// offset, other seeks open a stream of their own
+	private FSDataInputStream shared;
+	private FileSystem fs;
+	private Path path;
+	private PositionalInputStream pis;
+	
 	public HDFSSeekableLineReader(FSDataInputStream fsdis, long length,
 			int blockSize) {
 		super(blockSize);
@@ -19,7 +28,31 @@ public class HDFSSeekableLineReader extends SeekableLineReader {
 		this.length = length;
 	}
 	
+	/**
+	 * @param shared stream read with positional reads only, which are safe
+	 * from many readers at once
+	 */
+	public HDFSSeekableLineReader(FSDataInputStream shared, long length,
+			int blockSize, FileSystem fs, Path path) {
+		super(blockSize);
+		this.shared = shared;
+		this.length = length;
+		this.fs = fs;
+		this.path = path;
+	}
+	
 	public InputStream doSeekLoad(long offset, int maxLength) throws IOException {
+		pis = null;
+		
+		if ((shared != null) && (maxLength >= 0)) {
+			pis = new PositionalInputStream(shared, offset, Math.min(length, offset + maxLength));
+			return pis;
+		}
+		
+		if (fsdis == null) {
+			fsdis = fs.open(path);
+		}
+		
 		fsdis.seek(offset);
 		
 		if (maxLength >= 0) {
@@ -30,16 +63,83 @@ public class HDFSSeekableLineReader extends SeekableLineReader {
     }
 	
 	public long getOffset() throws IOException {
+		if (pis != null) {
+			return pis.pos;
+		}
+		
 		return fsdis.getPos();
 	}
 
+	@Override
+	protected boolean doRecycle() throws IOException {
+		// Keeps the stream open, the next seek moves it
+		return true;
+	}
+
 	public void doClose() throws IOException {
-		//Superclass closes the input stream
+		//Superclass closes the input stream, but not our own stream
+		//if the last seek used the shared one
+		if ((shared != null) && (fsdis != null)) {
+			fsdis.close();
+		}
+		
 		fsdis = null;
+		pis = null;
 	}
 
 	public long getSize() throws IOException {
 		return length;
 	}
 	
+	protected static class PositionalInputStream extends InputStream
+	{
+		protected FSDataInputStream in;
+		protected long pos;
+		protected long end;
+		
+		protected PositionalInputStream(FSDataInputStream in, long pos, long end)
+		{
+			this.in = in;
+			this.pos = pos;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b = new byte[1];
+			return ((read(b, 0, 1) == 1) ? (b[0] & 0xff) : -1);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (pos >= end) {
+				return -1;
+			}
+			
+			int amt = in.read(pos, b, off, (int)Math.min(len, end - pos));
+			
+			if (amt > 0) {
+				pos += amt;
+			}
+			
+			return amt;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			n = Math.max(0, Math.min(n, end - pos));
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public int available() {
+			return (int)Math.min(Integer.MAX_VALUE, end - pos);
+		}
+		
+		@Override
+		public void close() {
+			// The stream is shared
+		}
+	}
 }
@@ -12,22 +12,59 @@ import org.archive.util.binsearch.SeekableLineReaderFactory;
 public class HDFSSeekableLineReaderFactory implements SeekableLineReaderFactory {
 	private FileSystem fs;
 	private Path path;
+	
+	private boolean positionalRead = false;
+	private FSDataInputStream shared = null;
+	private long sharedLength;
+	
 	public HDFSSeekableLineReaderFactory(FileSystem fs, Path path) {
+		this(fs, path, false);
+	}
+	
+	/**
+	 * @param positionalRead open the file once, for all readers: bounded
+	 * seeks then use positional reads of the shared stream, which don't
+	 * serialize on a stream position, rather than a stream per reader
+	 */
+	public HDFSSeekableLineReaderFactory(FileSystem fs, Path path, boolean positionalRead) {
 		this.fs = fs;
 		this.path = path;
+		this.positionalRead = positionalRead;
 	}
+	
 	public SeekableLineReader get() throws IOException {
+		if (positionalRead) {
+			synchronized (this) {
+				if (shared == null) {
+					sharedLength = getLength();
+					shared = fs.open(path);
+				}
+			}
+			return new HDFSSeekableLineReader(shared, sharedLength, 4096, fs, path);
+		}
+		
+		long length = getLength();
+		FSDataInputStream fsdis = fs.open(path);
+		return new HDFSSeekableLineReader(fsdis, length, 4096);
+	}
+	
+	protected long getLength() throws IOException {
 		FileStatus status = fs.getFileStatus(path);
 		if(status.isDir()) {
 			throw new IOException("Path:" + path.toUri().toASCIIString() + " is a directory!");
 		}
-		long length = status.getLen();
-		FSDataInputStream fsdis = fs.open(path);
-		return new HDFSSeekableLineReader(fsdis, length, 4096);
+		return status.getLen();
 	}
 	
 	public void close() throws IOException
 	{
+		synchronized (this) {
+			if (shared != null) {
+				shared.close();
+				shared = null;
+			}
+		}
+		
 		if (this.fs != null) {
 			fs.close();
 		}
@@ -41,4 +78,8 @@ public class HDFSSeekableLineReaderFactory implements SeekableLineReaderFactory
 			return 0;
 		}
 	}
+	
+	public boolean isPositionalRead() {
+		return positionalRead;
+	}
 }
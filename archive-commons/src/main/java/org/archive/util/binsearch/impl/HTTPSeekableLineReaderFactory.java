@@ -5,6 +5,7 @@ import java.io.IOException;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.http.ApacheHttp31SLRFactory;
 import org.archive.util.binsearch.impl.http.HTTPURLConnSLRFactory;
+import org.archive.util.binsearch.impl.http.PooledHttp31SLRFactory;
 
 public abstract class HTTPSeekableLineReaderFactory implements SeekableLineReaderFactory {
 
@@ -21,6 +22,7 @@ public abstract class HTTPSeekableLineReaderFactory implements SeekableLineReade
 	{
 		APACHE_31,
 		URLCONN,
+		POOLED,
 	}
 		
 	public static HTTPSeekableLineReaderFactory getHttpFactory()
@@ -50,6 +52,10 @@ public abstract class HTTPSeekableLineReaderFactory implements SeekableLineReade
 		case URLCONN:
 			factory = new HTTPURLConnSLRFactory();
 			break;
+			
+		case POOLED:
+			factory = new PooledHttp31SLRFactory();
+			break;
 		}
 		
 		if (factory == null) {
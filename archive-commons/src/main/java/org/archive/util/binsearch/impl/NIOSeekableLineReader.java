@@ -4,36 +4,40 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.FileChannel.MapMode;
 
+import org.archive.util.binsearch.MappedFile;
+import org.archive.util.binsearch.MappedFile.MappedInputStream;
 import org.archive.util.binsearch.SeekableLineReader;
 
-import com.google.common.io.LimitInputStream;
-
 public class NIOSeekableLineReader extends SeekableLineReader {
 	private FileChannel fc;
 	private long size;
 	
-	private boolean isMMap = false;
+	// Shared with the factory, null unless mmap is enabled
+	private MappedFile mapped;
 	
 	private FileChannelInputStream fcis;
-	private ByteBufferBackedInputStream bbis;
+	private MappedInputStream mis;
 	
 	public NIOSeekableLineReader(FileChannel fc, int blockSize) throws IOException {
+		this(fc, blockSize, null);
+	}
+	
+	public NIOSeekableLineReader(FileChannel fc, int blockSize, MappedFile mapped) throws IOException {
 		super(blockSize);
 		
 		this.fc = fc;
+		this.mapped = mapped;
 		size = fc.size();
 		fcis = null;
-		bbis = null;
+		mis = null;
 	}
 	
 	public InputStream doSeekLoad(long offset, int maxLength) throws IOException {
 		
-		if (isMMap && (maxLength >= 0)) {
-			ByteBuffer mapBuff = fc.map(MapMode.READ_ONLY, offset, maxLength);
-			bbis = new ByteBufferBackedInputStream(mapBuff, offset);	
-			return new LimitInputStream(bbis, maxLength);
+		if (mapped != null) {
+			mis = mapped.getInputStream(offset, maxLength);
+			return mis;
 			
 		} else {
 			fcis = new FileChannelInputStream(fc, offset, maxLength);
@@ -50,23 +54,34 @@ public class NIOSeekableLineReader extends SeekableLineReader {
 	{
 		if (fcis != null) {
 			return fcis.fcOffset;
-		} else if (bbis != null) {
-			return bbis.position();
+		} else if (mis != null) {
+			return mis.position();
 		} else {
 			return 0;
 		}
 	}
 
+	@Override
+	protected boolean doRecycle() throws IOException {
+		doClose();
+		return true;
+	}
+
 	public void doClose() throws IOException {
 		// Not closing the channel, shared with factory
 		fcis = null;
-		bbis = null;
+		mis = null;
 	}
 
 	public long getSize() throws IOException {
 		return size;
 	}
 	
+	@Override
+	public MappedFile getMappedFile() {
+		return mapped;
+	}
+	
 	//From
 	//http://stackoverflow.com/questions/4332264/wrapping-a-bytebuffer-with-an-inputstream/6603018#6603018
 	public static class ByteBufferBackedInputStream extends InputStream {
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
 
+import org.archive.util.binsearch.MappedFile;
 import org.archive.util.binsearch.SeekableLineReader;
 import org.archive.util.binsearch.SeekableLineReaderFactory;
 
@@ -22,14 +23,30 @@ public class NIOSeekableLineReaderFactory implements SeekableLineReaderFactory {
 	private FileChannel fc;
 	private RandomAccessFile raf;
 	private int blockSize;
+	private MappedFile mapped = null;
 	
 	//protected int lastModified;
 	
 	public NIOSeekableLineReaderFactory(File file, int blockSize) throws IOException {
+		this(file, blockSize, false);
+	}
+	/**
+	 * @param mmap map the whole file once, for all readers: searches then
+	 * compare in the mapping, and reads are memory copies
+	 */
+	public NIOSeekableLineReaderFactory(File file, int blockSize, boolean mmap) throws IOException {
 		this.file = file;
 		this.blockSize = blockSize;
 		this.raf = new RandomAccessFile(file,"r");
 		this.fc = raf.getChannel();
+		if (mmap) {
+			try {
+				this.mapped = new MappedFile(fc);
+			} catch (IOException io) {
+				raf.close();
+				throw io;
+			}
+		}
 	}
 	public NIOSeekableLineReaderFactory(File file) throws IOException {
 		this(file, BINSEARCH_BLOCK_SIZE);
@@ -44,10 +61,12 @@ public class NIOSeekableLineReaderFactory implements SeekableLineReaderFactory {
 //			}
 //		}
 		
-		return new NIOSeekableLineReader(fc, blockSize);
+		return new NIOSeekableLineReader(fc, blockSize, mapped);
 	}
 	public void close() throws IOException
 	{
+		// The mapping stays valid until collected
+		mapped = null;
 		if (raf != null) {
 			raf.close();
 		}
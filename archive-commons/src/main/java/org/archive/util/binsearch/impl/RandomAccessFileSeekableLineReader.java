@@ -39,6 +39,12 @@ public class RandomAccessFileSeekableLineReader extends SeekableLineReader {
 		return raf.getFilePointer();
 	}
 	
+	@Override
+	protected boolean doRecycle() throws IOException {
+		// Keeps the file open
+		return true;
+	}
+
 	public void doClose() throws IOException {
 		if (raf != null) {
 			raf.close();
@@ -13,6 +13,8 @@ import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.io.input.CountingInputStream;
 import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
 
+import com.google.common.io.ByteStreams;
+
 public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 	
 	private HttpClient http;
@@ -24,6 +26,8 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 	private GetMethod activeMethod;
 	
 	protected boolean noKeepAlive = false;
+	
+	protected int maxDrainBytes = 0;
 		
 	public ApacheHttp31SLR(HttpClient http, String url) {
 		this.http = http;
@@ -31,16 +35,7 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 	}
 	
 	private void acquireLength() throws URISyntaxException, HttpException, IOException {
-		HttpMethod head = new HeadMethod(url);
-		int code = http.executeMethod(head);
-		if(code != 200) {
-			throw new IOException("Unable to retrieve from " + url);
-		}
-		Header lengthHeader = head.getResponseHeader(CONTENT_LENGTH);
-		if(lengthHeader == null) {
-			throw new IOException("No Content-Length header for " + url);
-		}
-		String val = lengthHeader.getValue();
+		String val = getHeader(CONTENT_LENGTH);
 		try {
 			length = Long.parseLong(val);
 		} catch(NumberFormatException e) {
@@ -50,16 +45,20 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 	
 	protected String getHeader(String header) throws URISyntaxException, HttpException, IOException {
 		HttpMethod head = new HeadMethod(url);
-		int code = http.executeMethod(head);
-		if(code != 200) {
-			throw new IOException("Unable to retrieve from " + url);
-		}
-		Header theHeader = head.getResponseHeader(header);
-		if(theHeader == null) {
-			throw new IOException("No " + header + " header for " + url);
+		try {
+			int code = http.executeMethod(head);
+			if(code != 200) {
+				throw new IOException("Unable to retrieve from " + url);
+			}
+			Header theHeader = head.getResponseHeader(header);
+			if(theHeader == null) {
+				throw new IOException("No " + header + " header for " + url);
+			}
+			String val = theHeader.getValue();
+			return val;
+		} finally {
+			head.releaseConnection();
 		}
-		String val = theHeader.getValue();
-		return val;
 	}	
 	
 	/* (non-Javadoc)
@@ -106,8 +105,6 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 			doClose();
 		}
 		
-		br = null;
-		
 		try {
 		
 			activeMethod = new GetMethod(url);
@@ -143,6 +140,13 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 		return activeMethod;
 	}
 
+	@Override
+	protected boolean doRecycle() throws IOException {
+		// Only the connection is released
+		doClose();
+		return true;
+	}
+
 	public void doClose() throws IOException {
 		
 		if (activeMethod == null) {
@@ -154,13 +158,20 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 			
 			long bytesRead = (cin != null ? cin.getByteCount() : 0);
 			
-			// If fully read, close gracefully, otherwise abort
+			// If fully read, close gracefully, otherwise abort, unless
+			// reading the rest is cheaper than a new connection
 			if ((contentLength > 0) && (contentLength == bytesRead)) {
 //				try {
 //					cin.close();
 //				} catch (IOException e) {
 //					activeMethod.abort();
 //				}
+			} else if ((contentLength > 0) && (cin != null) && ((contentLength - bytesRead) <= maxDrainBytes)) {
+				try {
+					ByteStreams.skipFully(cin, contentLength - bytesRead);
+				} catch (IOException e) {
+					activeMethod.abort();
+				}
 			} else {
 				activeMethod.abort();
 			}
@@ -178,7 +189,6 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 		
 		cin = null;
 		is = null;
-		br = null;
 	}
 
 	/* (non-Javadoc)
@@ -209,6 +219,16 @@ public class ApacheHttp31SLR extends HTTPSeekableLineReader {
 		this.noKeepAlive = noKeepAlive;
 	}
 
+	/**
+	 * @param maxDrainBytes on a new seek or close, read and drop up to this
+	 * many unread bytes of the response, to keep the connection, rather than
+	 * abort it
+	 */
+	public void setMaxDrainBytes(int maxDrainBytes)
+	{
+		this.maxDrainBytes = maxDrainBytes;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.archive.util.binsearch.impl.HTTPSeekableLineReader#getHeaderValue(java.lang.String)
 	 */
@@ -16,9 +16,9 @@ import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory;
 public class ApacheHttp31SLRFactory extends HTTPSeekableLineReaderFactory {
 	private final static Logger LOGGER = Logger.getLogger(ApacheHttp31SLRFactory.class.getName());
 	
-	private MultiThreadedHttpConnectionManager connectionManager = null;
-    private HostConfiguration hostConfiguration = null;
-    private HttpClient http = null;
+	protected MultiThreadedHttpConnectionManager connectionManager = null;
+    protected HostConfiguration hostConfiguration = null;
+    protected HttpClient http = null;
     
     public ApacheHttp31SLRFactory(String uriString) {
     	this();
@@ -88,6 +88,12 @@ public class HTTPURLConnSLR extends HTTPSeekableLineReader {
 		return cin;
 	}
 
+	@Override
+	protected boolean doRecycle() throws IOException {
+		doClose();
+		return true;
+	}
+
 	@Override
 	protected void doClose() throws IOException {
 		
@@ -122,6 +128,5 @@ public class HTTPURLConnSLR extends HTTPSeekableLineReader {
 		
 		cin = null;
 		is = null;
-		br = null;
 	}
 }
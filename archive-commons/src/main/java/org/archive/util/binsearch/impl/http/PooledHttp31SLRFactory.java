@@ -0,0 +1,183 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.HostConfiguration;
+import org.apache.commons.httpclient.HttpConnection;
+import org.apache.commons.httpclient.URI;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+
+/**
+ * ApacheHttp31SLRFactory set up for persistent connections: readers keep
+ * their connection alive across seeks and hand it back to the pool, rather
+ * than closing it after every block.
+ *
+ * Connections are capped per host and in total, a get() waiting for a free
+ * connection past connectionTimeoutMS. Connections idle for idleTimeoutMS
+ * are closed in the background, before the server drops them, and
+ * warmUp() opens connections to a host ahead of the first queries. A
+ * request failing on a kept connection is retried once on a new one.
+ */
+public class PooledHttp31SLRFactory extends ApacheHttp31SLRFactory {
+	private final static Logger LOGGER = Logger.getLogger(PooledHttp31SLRFactory.class.getName());
+
+	public final static int DEFAULT_MAX_HOST_CONNECTIONS = 32;
+	public final static int DEFAULT_MAX_TOTAL_CONNECTIONS = 256;
+	public final static long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+	public final static long DEFAULT_EVICT_INTERVAL_MS = 5000;
+	public final static int DEFAULT_MAX_DRAIN_BYTES = 64 * 1024;
+
+	protected long idleTimeoutMS = DEFAULT_IDLE_TIMEOUT_MS;
+	protected long evictIntervalMS = DEFAULT_EVICT_INTERVAL_MS;
+	protected int maxDrainBytes = DEFAULT_MAX_DRAIN_BYTES;
+
+	protected IdleConnectionTimeoutThread evictor = null;
+
+	public PooledHttp31SLRFactory()
+	{
+		setMaxHostConnections(DEFAULT_MAX_HOST_CONNECTIONS);
+		setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+
+		// A kept connection may have been closed by the server just as it is
+		// reused: range GETs are safe to send again on a new one
+		http.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, new DefaultHttpMethodRetryHandler(1, true));
+	}
+
+	@Override
+	public HTTPSeekableLineReader get(String url) throws IOException {
+		startEviction();
+
+		ApacheHttp31SLR reader = new ApacheHttp31SLR(http, url);
+		reader.setMaxDrainBytes(maxDrainBytes);
+		return reader;
+	}
+
+	/**
+	 * Opens up to numConnections connections to the host of url, at most
+	 * maxHostConnections, and leaves them in the pool
+	 * @return the number of connections opened
+	 */
+	public int warmUp(String url, int numConnections) throws IOException
+	{
+		startEviction();
+
+		HostConfiguration hostConfig = (HostConfiguration)hostConfiguration.clone();
+		hostConfig.setHost(new URI(url, true));
+
+		numConnections = Math.min(numConnections, getMaxHostConnections());
+		long timeout = http.getParams().getConnectionManagerTimeout();
+
+		// All held at once, so none is handed out twice
+		List<HttpConnection> conns = new ArrayList<HttpConnection>();
+		int numOpened = 0;
+
+		try {
+			for (int i = 0; i < numConnections; i++) {
+				HttpConnection conn = connectionManager.getConnectionWithTimeout(hostConfig, timeout);
+				conns.add(conn);
+
+				if (!conn.isOpen()) {
+					conn.open();
+					numOpened++;
+				}
+			}
+		} catch (IOException io) {
+			LOGGER.warning("Warm up of " + url + " stopped at " + numOpened + " connections: " + io);
+		} finally {
+			for (HttpConnection conn : conns) {
+				conn.releaseConnection();
+			}
+		}
+
+		return numOpened;
+	}
+
+	protected synchronized void startEviction()
+	{
+		if ((evictor != null) || (idleTimeoutMS <= 0)) {
+			return;
+		}
+
+		evictor = new IdleConnectionTimeoutThread();
+		evictor.setName("PooledHttp31SLRFactory-evictor");
+		evictor.setConnectionTimeout(idleTimeoutMS);
+		evictor.setTimeoutInterval(evictIntervalMS);
+		evictor.addConnectionManager(connectionManager);
+		evictor.start();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		synchronized (this) {
+			if (evictor != null) {
+				evictor.shutdown();
+				evictor = null;
+			}
+		}
+
+		connectionManager.closeIdleConnections(0);
+		super.close();
+	}
+
+	/**
+	 * @return open and closed connections held by the pool, in use or not
+	 */
+	public int getConnectionsInPool()
+	{
+		return connectionManager.getConnectionsInPool();
+	}
+
+	public long getIdleTimeoutMS() {
+		return idleTimeoutMS;
+	}
+
+	/**
+	 * @param idleTimeoutMS close connections unused for this long, 0 to keep
+	 * them until the server closes them
+	 */
+	public synchronized void setIdleTimeoutMS(long idleTimeoutMS) {
+		this.idleTimeoutMS = idleTimeoutMS;
+
+		if (idleTimeoutMS <= 0) {
+			if (evictor != null) {
+				evictor.shutdown();
+				evictor = null;
+			}
+		} else if (evictor != null) {
+			evictor.setConnectionTimeout(idleTimeoutMS);
+		} else {
+			startEviction();
+		}
+	}
+
+	public long getEvictIntervalMS() {
+		return evictIntervalMS;
+	}
+
+	public synchronized void setEvictIntervalMS(long evictIntervalMS) {
+		this.evictIntervalMS = evictIntervalMS;
+
+		if (evictor != null) {
+			evictor.setTimeoutInterval(evictIntervalMS);
+		}
+	}
+
+	public int getMaxDrainBytes() {
+		return maxDrainBytes;
+	}
+
+	/**
+	 * @param maxDrainBytes unread response bytes a reader skips to keep its
+	 * connection on a new seek, beyond which the connection is dropped
+	 */
+	public void setMaxDrainBytes(int maxDrainBytes) {
+		this.maxDrainBytes = maxDrainBytes;
+	}
+}
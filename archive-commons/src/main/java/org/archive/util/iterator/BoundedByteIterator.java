@@ -0,0 +1,50 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.archive.util.ByteOp;
+
+/**
+ * BoundedStringIterator over UTF-8 lines: ends before the first line at or
+ * after boundary (or, inclusive, after the lines starting with boundary)
+ */
+public class BoundedByteIterator extends AbstractPeekableIterator<byte[]> 
+	implements CloseableIterator<byte[]> {
+
+	private Iterator<byte[]> inner;
+	private byte[] boundary;
+	private boolean inclusive;
+
+	public BoundedByteIterator(Iterator<byte[]> inner, byte[] boundary) {
+		this(inner, boundary, false);
+	}
+	
+	public BoundedByteIterator(Iterator<byte[]> inner, byte[] boundary, boolean inclusive) {
+		this.inner = inner;
+		this.boundary = boundary;
+		this.inclusive = inclusive;
+	}
+
+	@Override
+	public byte[] getNextInner() {
+		byte[] tmp = null;
+		if(inner.hasNext()) {
+			tmp = inner.next();
+			if(ByteOp.compare(tmp, boundary) >= 0 && (!inclusive || !ByteOp.startsWith(tmp, boundary))) {
+				tmp = null;
+				try {
+					close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		return tmp;
+	}
+
+	public void close() throws IOException {
+		CloseableIteratorUtil.attemptClose(inner);
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.logging.Logger;
+
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * K-way merge of sorted iterators through a tournament (loser) tree: each
+ * element costs log2(k) comparisons, one per level on the path from the
+ * winner's leaf to the root, and nothing is allocated per element.
+ *
+ * A drop-in for SortedCompositeIterator. Equal elements come out in the
+ * order their iterators were added. Iterators are closed once exhausted,
+ * and the rest by close().
+ */
+public class LoserTreeMergeIterator<E> implements CloseableIterator<E> {
+
+	private final static Logger LOGGER = Logger.getLogger(LoserTreeMergeIterator.class.getName());
+
+	/**
+	 * Unsigned lexicographic order, the order of "LC_ALL=C sort" over UTF-8
+	 * lines, for merging raw lines without decoding them
+	 */
+	public final static Comparator<byte[]> BYTE_ARRAY_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+	protected Comparator<? super E> comparator;
+
+	protected ArrayList<Iterator<E>> sources = new ArrayList<Iterator<E>>();
+
+	// Current head of each source, valid unless done
+	protected Object[] heads;
+	protected boolean[] done;
+
+	// tree[0] is the winner, tree[1..k-1] the loser at each internal node.
+	// Leaf i sits at position k + i.
+	protected int[] tree;
+	protected int k = 0;
+
+	public LoserTreeMergeIterator(Comparator<? super E> comparator) {
+		this.comparator = comparator;
+	}
+
+	public void addAll(Collection<Iterator<E>> toAdd) {
+		for (Iterator<E> e : toAdd) {
+			addIterator(e);
+		}
+	}
+
+	/**
+	 * Adding after iteration has started rebuilds the tree on the next call
+	 */
+	public void addIterator(Iterator<E> itr) {
+		if (tree != null) {
+			compact();
+		}
+		sources.add(itr);
+	}
+
+	// Keeps unread heads by moving them back in front of their sources
+	protected void compact() {
+		ArrayList<Iterator<E>> remaining = new ArrayList<Iterator<E>>(k);
+
+		for (int i = 0; i < k; i++) {
+			if (!done[i]) {
+				remaining.add(new HeadIterator<E>(elementAt(i), sources.get(i)));
+			}
+		}
+
+		sources = remaining;
+		tree = null;
+	}
+
+	protected void build() {
+		k = sources.size();
+		heads = new Object[k];
+		done = new boolean[k];
+		tree = new int[Math.max(1, k)];
+
+		for (int i = 0; i < k; i++) {
+			fill(i);
+		}
+
+		if (k == 0) {
+			return;
+		}
+
+		// Play the initial tournament bottom up, keeping the losers
+		int[] winners = new int[2 * k];
+
+		for (int i = 0; i < k; i++) {
+			winners[k + i] = i;
+		}
+
+		for (int node = k - 1; node > 0; node--) {
+			int a = winners[2 * node];
+			int b = winners[(2 * node) + 1];
+
+			if (beats(b, a)) {
+				winners[node] = b;
+				tree[node] = a;
+			} else {
+				winners[node] = a;
+				tree[node] = b;
+			}
+		}
+
+		tree[0] = winners[1];
+	}
+
+	protected void fill(int i) {
+		Iterator<E> itr = sources.get(i);
+
+		if (itr.hasNext()) {
+			heads[i] = itr.next();
+			return;
+		}
+
+		heads[i] = null;
+		done[i] = true;
+
+		try {
+			CloseableIteratorUtil.attemptClose(itr);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	protected E elementAt(int i) {
+		return (E)heads[i];
+	}
+
+	// Exhausted sources lose to everything, ties go to the earlier source
+	protected boolean beats(int a, int b) {
+		if (done[a]) {
+			return false;
+		}
+		if (done[b]) {
+			return true;
+		}
+
+		int cmp = comparator.compare(elementAt(a), elementAt(b));
+		return (cmp < 0) || ((cmp == 0) && (a < b));
+	}
+
+	public boolean hasNext() {
+		if (tree == null) {
+			build();
+		}
+
+		return (k > 0) && !done[tree[0]];
+	}
+
+	public E next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("Call hasNext!");
+		}
+
+		int winner = tree[0];
+		E result = elementAt(winner);
+
+		fill(winner);
+
+		// Replay the winner's path: it plays each stored loser on the way up
+		for (int node = (winner + k) >> 1; node > 0; node >>= 1) {
+			int loser = tree[node];
+
+			if (beats(loser, winner)) {
+				tree[node] = winner;
+				winner = loser;
+			}
+		}
+
+		tree[0] = winner;
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No remove");
+	}
+
+	public void close() throws IOException {
+		for (int i = 0; i < sources.size(); i++) {
+			if ((tree != null) && (i < k) && done[i]) {
+				continue;
+			}
+
+			try {
+				CloseableIteratorUtil.attemptClose(sources.get(i));
+			} catch (IOException io) {
+				LOGGER.warning(io.toString());
+			}
+		}
+	}
+
+	// An already read head followed by the rest of its source
+	protected static class HeadIterator<E> implements CloseableIterator<E> {
+		protected E head;
+		protected boolean hasHead = true;
+		protected Iterator<E> rest;
+
+		public HeadIterator(E head, Iterator<E> rest) {
+			this.head = head;
+			this.rest = rest;
+		}
+
+		public boolean hasNext() {
+			return hasHead || rest.hasNext();
+		}
+
+		public E next() {
+			if (hasHead) {
+				hasHead = false;
+				E result = head;
+				head = null;
+				return result;
+			}
+			return rest.next();
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException("No remove");
+		}
+
+		public void close() throws IOException {
+			CloseableIteratorUtil.attemptClose(rest);
+		}
+	}
+}
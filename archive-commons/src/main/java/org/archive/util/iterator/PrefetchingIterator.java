@@ -0,0 +1,131 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Reads ahead up to chunkSize elements of an iterator on an executor, so a
+ * consumer that pulls from several sources (eg. a merge) finds the next
+ * elements of a slow source already there.
+ *
+ * Only one chunk task per iterator runs at a time, and tasks never block
+ * waiting for the consumer, so many of these can share a small pool.
+ */
+public class PrefetchingIterator<E> implements CloseableIterator<E> {
+
+	private final static Logger LOGGER = Logger.getLogger(PrefetchingIterator.class.getName());
+
+	protected Iterator<E> inner;
+	protected ExecutorService executor;
+	protected int chunkSize;
+
+	protected List<E> chunk = null;
+	protected int chunkIndex = 0;
+	protected Future<List<E>> pending = null;
+	protected boolean innerDone = false;
+
+	public PrefetchingIterator(Iterator<E> inner, ExecutorService executor, int chunkSize) {
+		this.inner = inner;
+		this.executor = executor;
+		this.chunkSize = Math.max(1, chunkSize);
+		submitNext();
+	}
+
+	protected void submitNext() {
+		pending = executor.submit(new Callable<List<E>>() {
+			public List<E> call() {
+				return readChunk();
+			}
+		});
+	}
+
+	/**
+	 * Runs on the executor
+	 * @return up to chunkSize elements, fewer only at the end of inner
+	 */
+	protected List<E> readChunk() {
+		List<E> next = new ArrayList<E>(chunkSize);
+		while ((next.size() < chunkSize) && inner.hasNext()) {
+			next.add(inner.next());
+		}
+		return next;
+	}
+
+	public boolean hasNext() {
+		if ((chunk != null) && (chunkIndex < chunk.size())) {
+			return true;
+		}
+
+		if (innerDone) {
+			return false;
+		}
+
+		try {
+			chunk = pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			innerDone = true;
+			pending = null;
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+
+		chunkIndex = 0;
+
+		// A short chunk means the source ran out
+		if (chunk.size() < chunkSize) {
+			innerDone = true;
+			pending = null;
+		} else {
+			submitNext();
+		}
+
+		return (chunkIndex < chunk.size());
+	}
+
+	public E next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException("Call hasNext!");
+		}
+		E result = chunk.get(chunkIndex);
+		chunk.set(chunkIndex++, null);
+		return result;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("No remove");
+	}
+
+	public void close() throws IOException {
+		// Never close the source under a running read
+		if ((pending != null) && !pending.cancel(false)) {
+			try {
+				pending.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				LOGGER.warning(e.getCause().toString());
+			} catch (CancellationException e) {
+
+			}
+		}
+		pending = null;
+		innerDone = true;
+		chunk = null;
+
+		CloseableIteratorUtil.attemptClose(inner);
+	}
+}
@@ -0,0 +1,54 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import org.archive.util.ByteOp;
+
+/**
+ * StartBoundedStringIterator over UTF-8 lines: skips lines before boundary
+ */
+public class StartBoundedByteIterator extends AbstractPeekableIterator<byte[]> {
+
+	private Iterator<byte[]> inner;
+	private byte[] boundary;
+	private boolean done = false;
+	private boolean started = false;
+
+	public StartBoundedByteIterator(Iterator<byte[]> inner, byte[] boundary) {
+		this.inner = inner;
+		this.boundary = boundary;
+	}
+
+	@Override
+	public byte[] getNextInner() {
+		if(done) {
+			return null;
+		}
+		if(started) {
+			if(inner.hasNext()) {
+				return inner.next();
+			}
+		} else {
+			while(inner.hasNext()) {
+				byte[] tmp = inner.next();
+				if(ByteOp.compare(boundary, tmp) <= 0) {
+					started = true;
+					return tmp;
+				}
+			}
+		}
+		try {
+			close();
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+		done = true;
+		return null;
+	}
+
+	public void close() throws IOException {
+		CloseableIteratorUtil.attemptClose(inner);
+	}
+
+}
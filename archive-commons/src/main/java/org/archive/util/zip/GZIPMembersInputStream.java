@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.zip.Adler32;
 import java.util.zip.Inflater;
 import java.util.zip.ZipException;
 
@@ -69,6 +70,18 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     protected long currentMemberStart = 0;
     protected long currentMemberEnd = -1; 
     protected InputStream originalIn;
+    protected byte[] dictionary;
+    
+    /**
+     * FEXTRA subfield holding the id (see getDictionaryId()) of the preset
+     * dictionary a member was compressed with
+     */
+    public final static byte[] DICTIONARY_ID_SUBFIELD = {'D','I'};
+    
+    // From the current member's header. No initializers: the first header
+    // is read by the superclass constructor.
+    protected boolean memberHasDictionaryId;
+    protected long memberDictionaryId;
     
     public GZIPMembersInputStream(InputStream in) throws IOException {
         this(in,512);
@@ -76,8 +89,84 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     
     public GZIPMembersInputStream(InputStream in, int size)
             throws IOException {
+        this(in, size, null);
+    }
+    
+    /**
+     * @param dictionary preset deflate dictionary every member was
+     * compressed with (see GZIPMemberWriter.setDictionary()), or null
+     */
+    public GZIPMembersInputStream(InputStream in, int size, byte[] dictionary)
+            throws IOException {
         super(countingStream(in,size), size);
         originalIn = in;
+        this.dictionary = dictionary;
+        applyDictionary();
+    }
+    
+    protected void applyDictionary() throws ZipException {
+        if(memberHasDictionaryId) {
+            if(dictionary == null) {
+                throw new ZipException("GZIP member needs preset dictionary "
+                        + Long.toHexString(memberDictionaryId) + ", none given");
+            }
+            long id = getDictionaryId(dictionary);
+            if(id != memberDictionaryId) {
+                throw new ZipException("GZIP member needs preset dictionary "
+                        + Long.toHexString(memberDictionaryId) + ", not "
+                        + Long.toHexString(id));
+            }
+        }
+        if(dictionary != null) {
+            inf.setDictionary(dictionary);
+        }
+    }
+    
+    /**
+     * @return the id recorded for a preset dictionary: its Adler-32, as
+     * zlib's DICTID
+     */
+    public static long getDictionaryId(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return adler.getValue();
+    }
+    
+    @Override
+    protected int readHeader(InputStream this_in) throws IOException {
+        memberHasDictionaryId = false;
+        return super.readHeader(this_in);
+    }
+    
+    @Override
+    protected void readExtraField(InputStream in, int length) throws IOException {
+        byte[] extra = new byte[length];
+        for(int i = 0; i < length; i++) {
+            extra[i] = (byte)readUByte(in);
+        }
+        findDictionaryId(extra);
+    }
+    
+    /**
+     * Looks for the dictionary id among the subfields of an extra field:
+     * SI1, SI2, LEN (2 bytes, little endian), then LEN bytes of data
+     */
+    protected void findDictionaryId(byte[] extra) {
+        int pos = 0;
+        while((extra != null) && (pos + 4 <= extra.length)) {
+            int len = (extra[pos + 2] & 0xff) | ((extra[pos + 3] & 0xff) << 8);
+            if((extra[pos] == DICTIONARY_ID_SUBFIELD[0])
+                    && (extra[pos + 1] == DICTIONARY_ID_SUBFIELD[1])
+                    && (len == 4) && (pos + 8 <= extra.length)) {
+                memberDictionaryId = (extra[pos + 4] & 0xffL)
+                    | ((extra[pos + 5] & 0xffL) << 8)
+                    | ((extra[pos + 6] & 0xffL) << 16)
+                    | ((extra[pos + 7] & 0xffL) << 24);
+                memberHasDictionaryId = true;
+                return;
+            }
+            pos += 4 + len;
+        }
     }
 
     /**
@@ -140,6 +229,7 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
             return true;  // ignore any malformed, do nothing
         }
         inf.reset();
+        applyDictionary();
         if (n > m)
             inf.setInput(buf, len - n + m, n - m);
         return false;
@@ -181,8 +271,11 @@ public class GZIPMembersInputStream extends OpenJDK7GZIPInputStream {
     }
     
     protected void startNewMember() throws IOException {
-        new GzipHeader(in); // consume header
+        GzipHeader header = new GzipHeader(in); // consume header
+        memberHasDictionaryId = false;
+        findDictionaryId(header.getFextra());
         inf.reset(); 
+        applyDictionary();
         crc.reset(); 
         eos = false;
     }
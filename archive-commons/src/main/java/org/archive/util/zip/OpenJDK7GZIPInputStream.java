@@ -181,7 +181,7 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
         // Skip optional extra field
         if ((flg & FEXTRA) == FEXTRA) {
             int m = readUShort(in);
-            skipBytes(in, m);
+            readExtraField(in, m); // IA CHANGE: WAS skipBytes(in, m)
             n += m + 2;
         }
         // Skip optional file name
@@ -208,6 +208,13 @@ class OpenJDK7GZIPInputStream extends OpenJDK7InflaterInputStream { // IA RENAMI
         return n;
     }
 
+    /*
+     * Reads past the optional extra field of a member header
+     */
+    protected void readExtraField(InputStream in, int length) throws IOException { // IA ADDED FOR OVERRIDING
+        skipBytes(in, length);
+    }
+
     /*
      * Reads GZIP member trailer and returns true if the eos
      * reached, false if there are more (concatenated gzip
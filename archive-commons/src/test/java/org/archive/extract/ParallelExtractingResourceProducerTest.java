@@ -0,0 +1,161 @@
+package org.archive.extract;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.format.gzip.GZIPMemberIndex;
+import org.archive.resource.Resource;
+import org.archive.resource.ResourceParseException;
+import org.archive.resource.ResourceProducer;
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.util.StreamCopy;
+
+import junit.framework.TestCase;
+
+public class ParallelExtractingResourceProducerTest extends TestCase {
+
+	File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("test-parallel", ".warc.gz");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		GZIPMemberIndex.getIndexFile(file).delete();
+	}
+
+	static byte[] record(int i, String body) throws IOException {
+		String http = "HTTP/1.1 200 OK\r\nContent-Type: text/html\r\n\r\n" +
+			"<html><head><title>" + i + "</title></head><body><a href=\"/" + i + "\">" + body + "</a></body></html>";
+		byte[] block = http.getBytes("ISO-8859-1");
+		String warc = "WARC/1.0\r\n" +
+			"WARC-Type: response\r\n" +
+			"WARC-Target-URI: http://example.com/" + i + "\r\n" +
+			"WARC-Date: 2012-01-01T00:00:00Z\r\n" +
+			"WARC-Record-ID: <urn:uuid:" + i + ">\r\n" +
+			"Content-Type: application/http; msgtype=response\r\n" +
+			"Content-Length: " + block.length + "\r\n\r\n";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(warc.getBytes("ISO-8859-1"));
+		out.write(block);
+		out.write("\r\n\r\n".getBytes("ISO-8859-1"));
+		return out.toByteArray();
+	}
+
+	static void writeMember(OutputStream out, byte[] data, final boolean stored) throws IOException {
+		GZIPOutputStream gz = new GZIPOutputStream(out) {
+			{
+				if (stored) {
+					def.setLevel(Deflater.NO_COMPRESSION);
+				}
+			}
+			@Override
+			public void close() throws IOException {
+				finish();
+			}
+		};
+		gz.write(data);
+		gz.close();
+	}
+
+	// Top level metadata after reading each Resource
+	static List<String> readAll(ResourceProducer producer) throws IOException {
+		List<String> results = new ArrayList<String>();
+		while (true) {
+			Resource resource;
+			try {
+				resource = producer.getNext();
+			} catch (ResourceParseException e) {
+				results.add("error");
+				continue;
+			}
+			if (resource == null) {
+				break;
+			}
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			StreamCopy.copy(resource.getInputStream(), data);
+			results.add(resource.getMetaData().getTopMetaData().toString() + data.toString("ISO-8859-1"));
+		}
+		producer.close();
+		return results;
+	}
+
+	public void testSameAsSequential() throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			big.append("big ").append(i);
+		}
+		for (int i = 0; i < 200; i++) {
+			if (i % 50 == 7) {
+				// gzip magic inside a stored member
+				writeMember(out, record(i, "\u001f\u008b\u0008\u0000 magic"), true);
+			} else if (i % 50 == 13) {
+				writeMember(out, record(i, big.toString()), false);
+			} else {
+				writeMember(out, record(i, "link " + i), false);
+			}
+		}
+		out.close();
+
+		ExtractingResourceProducer sequential = new ExtractingResourceProducer(
+				ProducerUtils.getProducer(file.getAbsolutePath()), new ExtractingResourceFactoryMapper());
+		List<String> expected = readAll(sequential);
+		assertEquals(200, expected.size());
+
+		ParallelExtractingResourceProducer parallel = new ParallelExtractingResourceProducer(file, 4);
+		parallel.setMaxBufferBytes(4096);
+		assertEquals(expected, readAll(parallel));
+
+		// As plugged in by ResourceExtractor
+		assertEquals(expected, readAll(new ExtractingResourceProducer(
+				ProducerUtils.getParallelProducer(file.getAbsolutePath(), 2), new ExtractingResourceFactoryMapper())));
+
+		// Member starts from the sidecar index, rather than a scan
+		RandomAccessFileStream stream = new RandomAccessFileStream(file);
+		GZIPMemberIndex.build(stream, file.getName(), true).write(GZIPMemberIndex.getIndexFile(file));
+		stream.close();
+		parallel = new ParallelExtractingResourceProducer(file, 3);
+		parallel.setMaxBufferBytes(4096);
+		assertEquals(expected, readAll(parallel));
+	}
+
+	public void testBytesBetweenMembers() throws Exception {
+		FileOutputStream out = new FileOutputStream(file);
+		for (int i = 0; i < 20; i++) {
+			writeMember(out, record(i, "link " + i), false);
+			if (i == 5) {
+				out.write("junk".getBytes("ISO-8859-1"));
+			}
+		}
+		out.close();
+
+		ParallelExtractingResourceProducer parallel = new ParallelExtractingResourceProducer(file, 2);
+		assertEquals(20, readAll(parallel).size());
+
+		parallel = new ParallelExtractingResourceProducer(file, 2);
+		parallel.setStrict(true);
+		int count = 0;
+		try {
+			while (parallel.getNext() != null) {
+				count++;
+			}
+			fail();
+		} catch (IOException e) {
+			assertEquals(6, count);
+		}
+		// then carries on with the next member
+		assertNotNull(parallel.getNext());
+		parallel.close();
+	}
+}
@@ -0,0 +1,163 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.archive.format.gzip.zipnum.ZipNumParams;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import junit.framework.TestCase;
+
+public class AsyncCDXInputSourceTest extends TestCase {
+
+	public void testManyQueries() throws Exception {
+		File file = File.createTempFile("test-async", ".cdx");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for (int i = 0; i < 10000; i++) {
+			pw.print(String.format("%05d %d\n", i, i % 3));
+		}
+		pw.close();
+
+		AsyncCDXInputSource async = new AsyncCDXInputSource(new CDXFile(file.getAbsolutePath()), 2, 1000);
+
+		List<ListenableFuture<List<String>>> futures = new ArrayList<ListenableFuture<List<String>>>();
+		for (int i = 0; i < 500; i++) {
+			// from the line before the key
+			String key = String.format("%05d", i * 20 + 1);
+			futures.add(async.query(key, key, false, new ZipNumParams(), 2));
+		}
+
+		for (int i = 0; i < 500; i++) {
+			assertEquals(Arrays.asList(String.format("%05d %d", i * 20, (i * 20) % 3),
+					String.format("%05d %d", i * 20 + 1, (i * 20 + 1) % 3)), futures.get(i).get());
+		}
+
+		assertEquals(500, async.getNumQueries());
+		assertEquals(0, async.getNumRejected());
+		async.close();
+		file.delete();
+	}
+
+	public void testHandlerAndRejection() throws Exception {
+		MultiCDXInputSourceTest.ListSource source = new MultiCDXInputSourceTest.ListSource("a", "b", "c", "d");
+		AsyncCDXInputSource async = new AsyncCDXInputSource(source, 1, 1);
+
+		final List<String> handled = new ArrayList<String>();
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+
+		ListenableFuture<Integer> first = async.query("a", "a", false, new ZipNumParams(), new AsyncCDXInputSource.LineHandler() {
+			public boolean handle(String line) throws IOException {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				handled.add(line);
+				return !line.equals("b");
+			}
+		});
+
+		started.await();
+		ListenableFuture<List<String>> queued = async.query("a", "a", false, new ZipNumParams(), 0);
+
+		// one running, one queued
+		ListenableFuture<List<String>> rejected = async.query("a", "a", false, new ZipNumParams(), 0);
+		try {
+			rejected.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof RejectedExecutionException);
+		}
+		assertEquals(1, async.getNumRejected());
+
+		release.countDown();
+		assertEquals(2, first.get().intValue());
+		assertEquals(Arrays.asList("a", "b"), handled);
+		assertEquals(Arrays.asList("a", "b", "c", "d"), queued.get());
+		assertEquals(2, source.numClosed);
+		async.close();
+	}
+
+	public void testTakeTurns() throws Exception {
+		String[] lines = new String[10];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = "line" + i;
+		}
+		MultiCDXInputSourceTest.ListSource source = new MultiCDXInputSourceTest.ListSource(lines);
+		AsyncCDXInputSource async = new AsyncCDXInputSource(source, 1, 10);
+		async.setLinesPerTask(2);
+
+		final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+		final CountDownLatch submitted = new CountDownLatch(1);
+
+		ListenableFuture<Integer> first = async.query("a", "a", false, new ZipNumParams(), new AsyncCDXInputSource.LineHandler() {
+			public boolean handle(String line) throws IOException {
+				try {
+					submitted.await();
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				handled.add("first " + line);
+				return true;
+			}
+		});
+		ListenableFuture<Integer> second = async.query("a", "a", false, new ZipNumParams(), new AsyncCDXInputSource.LineHandler() {
+			public boolean handle(String line) {
+				handled.add("second " + line);
+				return true;
+			}
+		});
+		submitted.countDown();
+
+		assertEquals(10, first.get().intValue());
+		assertEquals(10, second.get().intValue());
+		assertEquals(20, handled.size());
+
+		// one thread, yet the second query ran before the first was done
+		assertTrue(handled.indexOf("second line0") < handled.indexOf("first line9"));
+		assertEquals(2, source.numClosed);
+		async.close();
+	}
+
+	public void testCancel() throws Exception {
+		MultiCDXInputSourceTest.ListSource source = new MultiCDXInputSourceTest.ListSource("a", "b");
+		AsyncCDXInputSource async = new AsyncCDXInputSource(source, 1, 10);
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch stopped = new CountDownLatch(1);
+
+		ListenableFuture<Integer> future = async.query("a", "a", false, new ZipNumParams(), new AsyncCDXInputSource.LineHandler() {
+			public boolean handle(String line) throws IOException {
+				started.countDown();
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException e) {
+					stopped.countDown();
+					throw new IOException(e);
+				}
+				return true;
+			}
+		});
+
+		started.await();
+		assertTrue(future.cancel(true));
+		stopped.await();
+		assertTrue(future.isCancelled());
+
+		// the thread is free again
+		assertEquals(Arrays.asList("a", "b"), async.query("a", "a", false, new ZipNumParams(), 0).get());
+		assertEquals(2, source.numClosed);
+		async.close();
+	}
+}
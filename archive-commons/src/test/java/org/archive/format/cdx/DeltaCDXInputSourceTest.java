@@ -0,0 +1,243 @@
+package org.archive.format.cdx;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.archive.format.gzip.zipnum.LocalClusterBuilder;
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class DeltaCDXInputSourceTest extends TestCase {
+
+	File dir;
+	LocalClusterBuilder builder;
+	int numInputs = 0;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("test-delta", "");
+		dir.delete();
+		dir.mkdirs();
+		builder = new LocalClusterBuilder();
+		builder.setNumThreads(2);
+		builder.setLinesPerBlock(10);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		DeltaCompactor.delete(dir);
+	}
+
+	static String formatLine(int i) {
+		return String.format("%06d 20100101000000 text/html 200", i);
+	}
+
+	File createInput(int... lines) throws IOException {
+		File input = new File(dir, "input-" + (numInputs++) + ".cdx");
+		PrintWriter pw = new PrintWriter(input, "UTF-8");
+		for (int i : lines) {
+			pw.print(formatLine(i) + "\n");
+		}
+		pw.close();
+		return input;
+	}
+
+	static int[] range(int start, int end, int step) {
+		int[] lines = new int[(end - start + step - 1) / step];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = start + (i * step);
+		}
+		return lines;
+	}
+
+	static List<String> query(CDXInputSource source) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		CloseableIterator<String> itr = source.getCDXIterator("", "", false, new ZipNumParams());
+		while (itr.hasNext()) {
+			lines.add(itr.next());
+		}
+		itr.close();
+		return lines;
+	}
+
+	static List<String> expected(int... lines) {
+		Arrays.sort(lines);
+		List<String> expected = new ArrayList<String>();
+		for (int i : lines) {
+			expected.add(formatLine(i));
+		}
+		return expected;
+	}
+
+	static int[] concat(int[]... arrays) {
+		List<Integer> all = new ArrayList<Integer>();
+		for (int[] array : arrays) {
+			for (int i : array) {
+				all.add(i);
+			}
+		}
+		int[] lines = new int[all.size()];
+		for (int i = 0; i < lines.length; i++) {
+			lines[i] = all.get(i);
+		}
+		return lines;
+	}
+
+	public void testDeltas() throws IOException {
+		File baseDir = new File(dir, "base");
+		builder.build(Arrays.asList(createInput(range(0, 200, 2))), baseDir);
+		ZipNumCluster base = new ZipNumCluster();
+		base.setSummaryFile(new File(baseDir, LocalClusterBuilder.SUMMARY_NAME).getAbsolutePath());
+		base.init();
+
+		DeltaCDXInputSource source = new DeltaCDXInputSource(base, new File(dir, "deltas"));
+		source.setRefreshIntervalMs(0);
+
+		assertEquals(expected(range(0, 200, 2)), query(source));
+
+		// new and repeated lines
+		assertEquals(1, source.addDelta(Arrays.asList(createInput(range(1, 50, 2)), createInput(4, 6)), builder));
+		assertEquals(expected(concat(range(0, 200, 2), range(1, 50, 2))), query(source));
+
+		// delete 000010 everywhere, and one capture of 000011
+		assertEquals(2, source.addTombstones(Arrays.asList("000010", formatLine(11))));
+		int[] remaining = concat(range(12, 200, 2), range(13, 50, 2), range(0, 10, 2), range(1, 11, 2));
+		assertEquals(expected(remaining), query(source));
+
+		// added again after the tombstone
+		assertEquals(3, source.addDelta(Arrays.asList(createInput(10)), builder));
+		remaining = concat(remaining, new int[]{10});
+		assertEquals(expected(remaining), query(source));
+
+		assertEquals(4, source.addDelta(Arrays.asList(createInput(range(201, 220, 1))), builder));
+		remaining = concat(remaining, range(201, 220, 1));
+		assertEquals(3, source.getDeltas().size());
+
+		DeltaCompactor compactor = new DeltaCompactor(source);
+		compactor.setBuilder(builder);
+		compactor.setDeleteDelayMs(0);
+
+		// not enough deltas yet
+		assertNull(compactor.compact(false));
+
+		File compacted = compactor.compact(true);
+		assertEquals(DeltaCDXInputSource.getEntryName(1, 4), compacted.getName());
+		assertEquals(1, source.getDeltas().size());
+		assertEquals(3, source.getSupersededDeltas().size());
+		assertEquals(expected(remaining), query(source));
+
+		compactor.deleteSuperseded();
+		source.refresh();
+		assertEquals(0, source.getSupersededDeltas().size());
+		assertEquals(expected(remaining), query(source));
+
+		// a new source over the same directory sees the same
+		DeltaCDXInputSource reopened = new DeltaCDXInputSource(base, new File(dir, "deltas"));
+		assertEquals(expected(remaining), query(reopened));
+		assertEquals(5, reopened.nextGeneration());
+
+		reopened.close();
+		source.close();
+	}
+
+	public void testPendingGenerations() throws IOException {
+		DeltaCDXInputSource source = new DeltaCDXInputSource(null, new File(dir, "deltas"));
+		source.setRefreshIntervalMs(0);
+		DeltaCompactor compactor = new DeltaCompactor(source);
+		compactor.setBuilder(builder);
+		compactor.setDeleteDelayMs(0);
+
+		assertEquals(1, source.addDelta(Arrays.asList(createInput(range(0, 20, 1))), builder));
+		assertEquals(2, source.addDelta(Arrays.asList(createInput(range(20, 40, 1))), builder));
+
+		// 3 is reserved, and still being built when 4 is committed
+		long slow = source.nextGeneration();
+		assertEquals(3, slow);
+		assertEquals(4, source.addDelta(Arrays.asList(createInput(range(60, 80, 1))), builder));
+		assertTrue(source.getPendingGenerations().contains(slow));
+
+		// 1 and 2 only: 3 may not end up inside a compacted range
+		assertEquals(DeltaCDXInputSource.getEntryName(1, 2), compactor.compact(true).getName());
+
+		File tmp = new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(slow) + DeltaCDXInputSource.TMP_SUFFIX);
+		builder.build(Arrays.asList(createInput(range(40, 60, 1))), tmp);
+		source.commitEntry(tmp, new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(slow)));
+		assertTrue(source.getPendingGenerations().isEmpty());
+		assertEquals(expected(range(0, 80, 1)), query(source));
+
+		assertEquals(DeltaCDXInputSource.getEntryName(1, 4), compactor.compact(true).getName());
+		compactor.deleteSuperseded();
+		source.refresh();
+		assertEquals(1, source.getDeltas().size());
+		assertEquals(expected(range(0, 80, 1)), query(source));
+
+		// An uncommitted .tmp of another writer is pending too
+		assertEquals(5, source.addDelta(Arrays.asList(createInput(range(80, 90, 1))), builder));
+		new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(6) + DeltaCDXInputSource.TOMBSTONE_SUFFIX + DeltaCDXInputSource.TMP_SUFFIX).createNewFile();
+		assertEquals(7, source.addDelta(Arrays.asList(createInput(range(90, 100, 1))), builder));
+		assertEquals(Arrays.asList(6L), new ArrayList<Long>(source.getPendingGenerations()));
+		assertEquals(DeltaCDXInputSource.getEntryName(1, 5), compactor.compact(true).getName());
+		source.close();
+	}
+
+	public void testCommitInsideCompactedRange() throws IOException {
+		DeltaCDXInputSource source = new DeltaCDXInputSource(null, new File(dir, "deltas"));
+		source.setRefreshIntervalMs(0);
+		DeltaCompactor compactor = new DeltaCompactor(source);
+		compactor.setBuilder(builder);
+		compactor.setDeleteDelayMs(0);
+
+		assertEquals(1, source.addDelta(Arrays.asList(createInput(range(0, 20, 1))), builder));
+		assertEquals(2, source.addDelta(Arrays.asList(createInput(range(20, 40, 1))), builder));
+		long late = source.nextGeneration();
+		assertEquals(4, source.addDelta(Arrays.asList(createInput(range(60, 80, 1))), builder));
+
+		// As a compactor that ignored the pending generation would have done
+		List<DeltaCDXInputSource.Delta> deltas = source.getDeltas();
+		File tmp = new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(1, 4) + DeltaCDXInputSource.TMP_SUFFIX);
+		CloseableIterator<String> lines = source.getDeltaIterator(deltas);
+		builder.buildSorted(new DeltaCompactor.BytesIterator(lines), tmp);
+		lines.close();
+		DeltaCDXInputSource.writeInputs(tmp, deltas);
+		source.commitEntry(tmp, new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(1, 4)));
+		assertEquals(3, source.getSupersededDeltas().size());
+
+		tmp = new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(late) + DeltaCDXInputSource.TMP_SUFFIX);
+		builder.build(Arrays.asList(createInput(range(40, 60, 1))), tmp);
+		source.commitEntry(tmp, new File(source.getDeltaDir(), DeltaCDXInputSource.getEntryName(late)));
+
+		// Not one of the inputs, so neither superseded nor deleted
+		assertEquals(2, source.getDeltas().size());
+		assertEquals(3, source.getSupersededDeltas().size());
+		compactor.deleteSuperseded();
+		source.refresh();
+		assertEquals(0, source.getSupersededDeltas().size());
+		assertEquals(expected(range(0, 80, 1)), query(source));
+
+		// and overlaps the compacted delta, so is not compacted with it
+		assertNull(compactor.compact(true));
+		assertEquals(expected(range(0, 80, 1)), query(source));
+		source.close();
+	}
+
+	public void testIsDeleted() {
+		Map<String, Long> tombstones = new HashMap<String, Long>();
+		tombstones.put("com,example)/", 5L);
+		tombstones.put("org,example)/ 2010", 5L);
+
+		assertTrue(DeltaCDXInputSource.isDeleted(tombstones, "com,example)/ 2010 text/html", 4));
+		assertFalse(DeltaCDXInputSource.isDeleted(tombstones, "com,example)/ 2010 text/html", 5));
+		assertFalse(DeltaCDXInputSource.isDeleted(tombstones, "com,example)/a 2010 text/html", 0));
+		assertTrue(DeltaCDXInputSource.isDeleted(tombstones, "org,example)/ 2010 text/html", 0));
+		assertFalse(DeltaCDXInputSource.isDeleted(tombstones, "org,example)/ 20101 text/html", 0));
+	}
+}
@@ -0,0 +1,29 @@
+package org.archive.format.cdx;
+
+import junit.framework.TestCase;
+
+public class FieldPredicateTest extends TestCase {
+	final static String LINE = "com,example)/ 20100315120000 http://example.com/ text/html 200 ABCD - - 1043 333 file.warc.gz";
+
+	public void testPredicates() {
+		assertTrue(FieldPredicate.equalTo(4, "200").matches(LINE));
+		assertFalse(FieldPredicate.equalTo(4, "20").matches(LINE));
+		assertFalse(FieldPredicate.equalTo(4, "2000").matches(LINE));
+		assertTrue(FieldPredicate.equalTo(10, "file.warc.gz").matches(LINE));
+		assertFalse(FieldPredicate.equalTo(11, "").matches(LINE));
+
+		assertTrue(FieldPredicate.prefix(3, "text/").matches(LINE));
+		assertFalse(FieldPredicate.prefix(3, "image/").matches(LINE));
+
+		assertTrue(FieldPredicate.range(1, "2010", "2011").matches(LINE));
+		assertTrue(FieldPredicate.range(1, "20100315120000", null).matches(LINE));
+		assertFalse(FieldPredicate.range(1, "2010", "20100315120000").matches(LINE));
+		assertFalse(FieldPredicate.range(1, null, "2009").matches(LINE));
+
+		assertTrue(FieldPredicate.regex(2, "http://[^/]+/").matches(LINE));
+		assertFalse(FieldPredicate.regex(2, "example").matches(LINE));
+
+		assertTrue(FieldPredicate.not(FieldPredicate.equalTo(4, "404")).matches(LINE));
+		assertFalse(FieldPredicate.not(FieldPredicate.equalTo(4, "200")).matches(LINE));
+	}
+}
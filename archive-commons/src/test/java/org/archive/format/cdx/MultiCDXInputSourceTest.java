@@ -0,0 +1,116 @@
+package org.archive.format.cdx;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.archive.format.gzip.zipnum.ZipNumParams;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class MultiCDXInputSourceTest extends TestCase {
+
+	// Lines from a list, once opening is released
+	static class ListSource implements CDXInputSource {
+		List<String> lines;
+		CountDownLatch opening;
+		CountDownLatch release;
+		int numClosed = 0;
+
+		// Opens at once
+		ListSource(String... lines) {
+			this(new CountDownLatch(1), new CountDownLatch(0), lines);
+		}
+
+		ListSource(CountDownLatch opening, CountDownLatch release, String... lines) {
+			this.opening = opening;
+			this.release = release;
+			this.lines = Arrays.asList(lines);
+		}
+
+		public CloseableIterator<String> getCDXIterator(String key, String start, boolean exact, ZipNumParams params) throws IOException {
+			opening.countDown();
+			try {
+				if (!release.await(10, TimeUnit.SECONDS)) {
+					throw new IOException("Not released");
+				}
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return new AbstractPeekableIterator<String>() {
+				int i = 0;
+				public String getNextInner() {
+					return (i < lines.size() ? lines.get(i++) : null);
+				}
+				public void close() {
+					numClosed++;
+				}
+			};
+		}
+	}
+
+	static List<String> drain(CloseableIterator<String> itr) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		while (itr.hasNext()) {
+			lines.add(itr.next());
+		}
+		itr.close();
+		return lines;
+	}
+
+	public void testParallelOpen() throws IOException {
+		// Each open waits for all 4 to have started, so none opens unless
+		// they all run at once
+		CountDownLatch opening = new CountDownLatch(4);
+		List<CDXInputSource> sources = new ArrayList<CDXInputSource>();
+		for (int i = 0; i < 4; i++) {
+			sources.add(new ListSource(opening, opening, "a" + i, "b" + i, "c" + i));
+		}
+
+		MultiCDXInputSource multi = new MultiCDXInputSource();
+		multi.setCdx(sources);
+		assertEquals(0, multi.getPrefetchLines());
+
+		List<String> expected = Arrays.asList("a0", "a1", "a2", "a3", "b0", "b1", "b2", "b3", "c0", "c1", "c2", "c3");
+		assertEquals(expected, drain(multi.getCDXIterator("a", "a", false, new ZipNumParams())));
+		for (CDXInputSource source : sources) {
+			assertEquals(1, ((ListSource)source).numClosed);
+		}
+
+		opening = new CountDownLatch(4);
+		sources.clear();
+		for (int i = 0; i < 4; i++) {
+			sources.add(new ListSource(opening, opening, "a" + i, "b" + i, "c" + i));
+		}
+		multi.setPrefetchLines(2);
+		assertEquals(expected, drain(multi.getCDXIterator("a", "a", false, new ZipNumParams())));
+		for (CDXInputSource source : sources) {
+			assertEquals(1, ((ListSource)source).numClosed);
+		}
+		multi.close();
+	}
+
+	public void testTimeout() throws IOException, InterruptedException {
+		CountDownLatch slowOpening = new CountDownLatch(1);
+		CountDownLatch slowRelease = new CountDownLatch(1);
+		ListSource slow = new ListSource(slowOpening, slowRelease, "b");
+		List<CDXInputSource> sources = new ArrayList<CDXInputSource>();
+		sources.add(new ListSource("a", "c"));
+		sources.add(slow);
+
+		MultiCDXInputSource multi = new MultiCDXInputSource();
+		multi.setCdx(sources);
+		multi.setOpenTimeoutMs(100);
+
+		// The slow source cannot open until after the query
+		assertEquals(Arrays.asList("a", "c"), drain(multi.getCDXIterator("a", "a", false, new ZipNumParams())));
+		assertEquals(0, slow.numClosed);
+		slowRelease.countDown();
+		multi.close();
+	}
+}
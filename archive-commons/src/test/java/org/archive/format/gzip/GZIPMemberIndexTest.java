@@ -0,0 +1,123 @@
+package org.archive.format.gzip;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.util.IAUtils;
+
+import com.google.common.io.ByteStreams;
+
+import junit.framework.TestCase;
+
+public class GZIPMemberIndexTest extends TestCase {
+
+	File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("test-gzi", ".gz");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+		GZIPMemberIndex.getIndexFile(file).delete();
+	}
+
+	static byte[] record(int i) {
+		StringBuilder sb = new StringBuilder();
+		for (int j = 0; j <= i * 10; j++) {
+			sb.append("record ").append(i).append(' ').append(j).append('\n');
+		}
+		return sb.toString().getBytes(IAUtils.UTF8);
+	}
+
+	static void assertSameIndex(GZIPMemberIndex expected, GZIPMemberIndex got) {
+		assertEquals(expected.size(), got.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.getStart(i), got.getStart(i));
+			assertEquals(expected.getCompressedLength(i), got.getCompressedLength(i));
+			assertEquals(expected.getUncompressedLength(i), got.getUncompressedLength(i));
+		}
+	}
+
+	public void testWriteAndBuild() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		GZIPMemberWriter writer = new GZIPMemberWriter(out);
+		writer.setIndex(new GZIPMemberIndex(4));
+		for (int i = 0; i < 100; i++) {
+			if (i % 2 == 0) {
+				writer.write(new ByteArrayInputStream(record(i)));
+			} else {
+				writer.writeMember(GZIPMemberWriter.compressMember(record(i)));
+			}
+		}
+		out.close();
+
+		GZIPMemberIndex written = writer.getIndex();
+		assertEquals(100, written.size());
+		assertEquals(0, written.getStart(0));
+		assertEquals(file.length(), written.getEnd(99));
+		assertEquals(record(57).length, written.getUncompressedLength(57));
+		written.write(GZIPMemberIndex.getIndexFile(file));
+
+		RandomAccessFileStream stream = new RandomAccessFileStream(file);
+		assertSameIndex(written, GZIPMemberIndex.build(stream, file.getName(), true));
+		stream.close();
+
+		GZIPMemberIndex read = GZIPMemberIndex.forFile(file);
+		assertSameIndex(written, read);
+		assertTrue(GZIPMemberIndex.getIndexFile(file).length() < 100 * 8);
+
+		assertEquals(written.getCompressedLength(3), read.getCompressedLength(read.getStart(3)));
+		assertEquals(-1, read.getCompressedLength(read.getStart(3) + 1));
+		assertEquals(4, read.ceiling(read.getStart(3) + 1));
+		assertEquals(100, read.ceiling(file.length()));
+	}
+
+	public void testGapsAndSeries() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		for (int i = 0; i < 10; i++) {
+			out.write(GZIPMemberWriter.compressMember(record(i)));
+			if (i == 4) {
+				out.write("junk".getBytes(IAUtils.UTF8));
+			}
+		}
+		out.close();
+
+		RandomAccessFileStream stream = new RandomAccessFileStream(file);
+		GZIPMemberIndex index = GZIPMemberIndex.build(stream, file.getName(), false);
+		stream.close();
+		assertEquals(10, index.size());
+		assertEquals(index.getEnd(4) + 4, index.getStart(5));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		index.write(bytes);
+		assertSameIndex(index, GZIPMemberIndex.read(new ByteArrayInputStream(bytes.toByteArray())));
+
+		// partly read members are skipped by the index
+		stream = new RandomAccessFileStream(file);
+		GZIPMemberSeries series = new GZIPMemberSeries(stream, file.getName(), 0, false);
+		series.setIndex(index);
+		for (int i = 0; i < 10; i++) {
+			GZIPSeriesMember member = series.getNextMember();
+			assertEquals(index.getStart(i), member.getRecordStartOffset());
+			byte[] head = new byte[10];
+			ByteStreams.readFully(member, head);
+			assertEquals(new String(record(i), 0, 10, IAUtils.UTF8), new String(head, IAUtils.UTF8));
+		}
+		assertNull(series.getNextMember());
+
+		assertTrue(series.seekToMember(index.getStart(6) - 1));
+		GZIPSeriesMember member = series.getNextMember();
+		assertEquals(index.getStart(6), member.getRecordStartOffset());
+		assertTrue(java.util.Arrays.equals(record(6), ByteStreams.toByteArray(member)));
+		assertFalse(series.seekToMember(index.getStart(9) + 1));
+		assertNull(series.getNextMember());
+		series.close();
+	}
+}
@@ -0,0 +1,139 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class LocalClusterBuilderTest extends TestCase {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static int NUM_LINES = 10000;
+
+	File dir;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("test-local-cluster", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(dir);
+	}
+
+	static void delete(File file) {
+		if (file.isDirectory()) {
+			for (File child : file.listFiles()) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	// Shuffled lines in numFiles inputs, the last one gzipped
+	List<File> createInputs(int numFiles) throws IOException {
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < NUM_LINES; i++) {
+			order.add(i);
+		}
+		Collections.shuffle(order, new Random(0));
+
+		List<File> inputs = new ArrayList<File>();
+		for (int f = 0; f < numFiles; f++) {
+			boolean gz = (f == numFiles - 1);
+			File input = new File(dir, "input-" + f + (gz ? ".cdx.gz" : ".cdx"));
+			OutputStream out = new FileOutputStream(input);
+			if (gz) {
+				out = new GZIPOutputStream(out);
+			}
+			for (int i = f; i < NUM_LINES; i += numFiles) {
+				out.write((ZipNumClusterTest.formatLine(order.get(i)) + "\n").getBytes(UTF8));
+			}
+			out.close();
+			inputs.add(input);
+		}
+		return inputs;
+	}
+
+	public void testBuild() throws IOException {
+		List<File> inputs = createInputs(3);
+
+		File split = new File(dir, "split.txt");
+		PrintWriter pw = new PrintWriter(split, "UTF-8");
+		pw.print("000000\n003000\n007000\n");
+		pw.close();
+
+		File outDir = new File(dir, "cluster");
+
+		LocalClusterBuilder builder = new LocalClusterBuilder();
+		builder.setSplitFile(split);
+		builder.setNumThreads(4);
+		builder.setLinesPerBlock(100);
+		// several runs per input
+		builder.setChunkBytes(64 * 1024);
+		builder.build(inputs, outDir);
+
+		assertEquals(3, builder.getNumPartitions());
+		for (int i = 0; i < 3; i++) {
+			assertTrue(new File(outDir, LocalClusterBuilder.getPartName(i) + ".gz").exists());
+		}
+		// no spill runs left behind
+		assertEquals(7, outDir.listFiles().length);
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(outDir, LocalClusterBuilder.SUMMARY_NAME).getAbsolutePath());
+		cluster.init();
+
+		CloseableIterator<String> itr = cluster.getCDXIterator("", "", false, new ZipNumParams());
+		int count = 0;
+		while (itr.hasNext()) {
+			assertEquals(ZipNumClusterTest.formatLine(count++), itr.next());
+		}
+		itr.close();
+		assertEquals(NUM_LINES, count);
+
+		// lookups across the part boundaries
+		assertEquals(1, ZipNumClusterTest.checkRange(cluster, new ZipNumParams(), 2999, "002999", true));
+		assertEquals(1, ZipNumClusterTest.checkRange(cluster, new ZipNumParams(), 7000, "007000", true));
+
+		// cumulative counts of a block every 100 lines
+		CloseableIterator<String> summary = cluster.getSummaryIterator("", true);
+		count = 0;
+		while (summary.hasNext()) {
+			assertEquals(count * 100, ZipNumCluster.extractLongField(summary.next(), 4));
+			count++;
+		}
+		summary.close();
+		assertEquals(NUM_LINES / 100, count);
+	}
+
+	public void testSinglePart() throws IOException {
+		File outDir = new File(dir, "cluster");
+
+		LocalClusterBuilder builder = new LocalClusterBuilder();
+		builder.setLinesPerBlock(100);
+		builder.build(createInputs(2), outDir);
+
+		assertEquals(1, builder.getNumPartitions());
+
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(outDir, LocalClusterBuilder.SUMMARY_NAME).getAbsolutePath());
+		cluster.init();
+
+		assertEquals(10, ZipNumClusterTest.checkRange(cluster, new ZipNumParams(), 5120, "00512", false));
+	}
+}
@@ -0,0 +1,589 @@
+package org.archive.format.gzip.zipnum;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import org.archive.format.cdx.FieldPredicate;
+import org.archive.util.binsearch.impl.HTTPSeekableLineReaderFactory.HttpLibs;
+import org.archive.util.binsearch.impl.http.LocalRangeServer;
+import org.archive.util.iterator.AbstractPeekableIterator;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class ZipNumClusterTest extends TestCase {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static int NUM_LINES = 10000;
+	final static int LINES_PER_BLOCK = 100;
+
+	File clusterDir;
+
+	static String formatLine(int i) {
+		return String.format("%06d 20100101000000 text/html 200", i);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		clusterDir = File.createTempFile("test-zipnum", "");
+		clusterDir.delete();
+		clusterDir.mkdirs();
+		createCluster(clusterDir, "part-00000", NUM_LINES, LINES_PER_BLOCK);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (File file : clusterDir.listFiles()) {
+			file.delete();
+		}
+		clusterDir.delete();
+	}
+
+	// Writes PART.gz and an ALL.summary pointing at its blocks
+	static void createCluster(File dir, String part, int numLines, int limit) throws IOException {
+		createCluster(dir, part, numLines, limit, false);
+	}
+
+	static void createCluster(File dir, String part, int numLines, int limit, boolean bloom) throws IOException {
+		createCluster(dir, part, numLines, limit, bloom, null);
+	}
+
+	static void createCluster(File dir, String part, int numLines, int limit, boolean bloom, byte[] dictionary) throws IOException {
+		File main = new File(dir, part + ".gz");
+		File manifest = new File(dir, part + ".summary");
+		ZipNumWriter znw = new ZipNumWriter(new FileOutputStream(main, false),
+				new FileOutputStream(manifest, false), limit);
+		if (bloom) {
+			File bloomFile = new File(dir, part + BlockBloomFilter.SUFFIX);
+			znw.setBloomFilterWriter(new BlockBloomFilterWriter(new FileOutputStream(bloomFile, false), limit));
+		}
+		if (dictionary != null) {
+			znw.setDictionary(dictionary);
+		}
+		for (int i = 0; i < numLines; i++) {
+			znw.addRecord((formatLine(i) + "\n").getBytes(UTF8));
+		}
+		znw.close();
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(manifest), UTF8));
+		PrintWriter pw = new PrintWriter(new File(dir, "ALL.summary"), "UTF-8");
+		String line;
+		int lineCount = 0;
+		while ((line = br.readLine()) != null) {
+			String[] parts = line.split("\t");
+			pw.format("%s\t%s\t%s\t%s\t%d\n", parts[2], part, parts[0], parts[1], lineCount);
+			lineCount += limit;
+		}
+		pw.close();
+		br.close();
+	}
+
+	ZipNumCluster openCluster() throws IOException {
+		return openCluster(false);
+	}
+
+	ZipNumCluster openCluster(boolean useBinarySummary) throws IOException {
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(new File(clusterDir, "ALL.summary").getAbsolutePath());
+		cluster.setUseBinarySummary(useBinarySummary);
+		cluster.init();
+		return cluster;
+	}
+
+	static int checkRange(ZipNumCluster cluster, ZipNumParams params, int first, String prefix, boolean exact) throws IOException {
+		String key = String.format("%06d", first);
+		CloseableIterator<String> itr = cluster.getCDXIterator(key, prefix, exact, params);
+		String match = (exact ? prefix + " " : prefix);
+		int count = 0;
+		// blocks are bounded by the query, but lines past the end of the range are left to the caller
+		while (itr.hasNext()) {
+			String line = itr.next();
+			if (!line.startsWith(match)) {
+				break;
+			}
+			assertEquals(formatLine(first + count), line);
+			count++;
+		}
+		itr.close();
+		return count;
+	}
+
+	public void testExactLookup() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		ZipNumParams params = new ZipNumParams();
+
+		assertEquals(1, checkRange(cluster, params, 0, "000000", true));
+		assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+		assertEquals(1, checkRange(cluster, params, NUM_LINES - 1, String.format("%06d", NUM_LINES - 1), true));
+		assertEquals(0, checkRange(cluster, params, NUM_LINES, String.format("%06d", NUM_LINES), true));
+	}
+
+	public void testPrefixLookup() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		ZipNumParams params = new ZipNumParams();
+
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+		assertEquals(10, checkRange(cluster, params, 4990, "00499", false));
+	}
+
+	public void testByteIterator() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		ZipNumParams params = new ZipNumParams();
+
+		CloseableIterator<byte[]> itr = cluster.getCDXByteIterator("00312", "00312", false, params);
+		for (int i = 3120; i < 3130; i++) {
+			assertEquals(formatLine(i), new String(itr.next(), UTF8));
+		}
+		itr.close();
+
+		itr = cluster.getCDXByteIterator("005123", "005123", true, params);
+		assertEquals(formatLine(5123), new String(itr.next(), UTF8));
+		itr.close();
+	}
+
+	public void testPredicates() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		ZipNumParams params = new ZipNumParams();
+		params.addPredicate(FieldPredicate.regex(0, "\\d+7"));
+		params.addPredicate(FieldPredicate.equalTo(3, "200"));
+
+		// Two queries sharing params count their lines apart
+		ZipNumScanStats stats = new ZipNumScanStats();
+		ZipNumScanStats otherStats = new ZipNumScanStats();
+		CloseableIterator<String> itr = cluster.getCDXIterator("003", "003", false, params, stats);
+		CloseableIterator<String> other = cluster.getCDXIterator("008", "008", false, params, otherStats);
+		assertEquals(formatLine(8007), other.next());
+		long otherScanned = otherStats.getLinesScanned();
+		int count = 0;
+		while (itr.hasNext()) {
+			String line = itr.next();
+			if (!line.startsWith("003")) {
+				break;
+			}
+			assertEquals(formatLine(3007 + (count * 10)), line);
+			count++;
+		}
+		itr.close();
+		assertEquals(100, count);
+		assertTrue(stats.getLinesScanned() >= 1000);
+		assertEquals(stats.getLinesScanned(), stats.getLinesMatched() * 10, 10);
+		assertEquals(otherScanned, otherStats.getLinesScanned());
+		assertTrue(otherScanned < stats.getLinesScanned());
+		other.close();
+
+		try {
+			params.addPredicate(FieldPredicate.prefix(2, "image/"));
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(2, params.getPredicates().size());
+		}
+
+		params = new ZipNumParams();
+		params.addPredicate(FieldPredicate.prefix(2, "image/"));
+		stats = new ZipNumScanStats();
+		CloseableIterator<byte[]> bytes = cluster.getCDXByteIterator("003", "003", false, params, stats);
+		assertFalse(bytes.hasNext());
+		bytes.close();
+		assertEquals(0, stats.getLinesMatched());
+		assertTrue(stats.getLinesScanned() > 0);
+	}
+
+	public void testSplitPlanner() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		ZipNumSplitPlanner planner = new ZipNumSplitPlanner(cluster);
+
+		List<ZipNumSplitPlanner.Split> splits = planner.plan("", "", 4, ZipNumSplitPlanner.Balance.LINES);
+		assertEquals(4, splits.size());
+		assertEquals("", splits.get(0).getStart());
+		assertEquals("", splits.get(3).getEnd());
+
+		int total = 0;
+		for (int i = 0; i < splits.size(); i++) {
+			ZipNumSplitPlanner.Split split = splits.get(i);
+			assertEquals(2500, split.getNumLines());
+			if (i > 0) {
+				assertEquals(splits.get(i - 1).getEnd(), split.getStart());
+			}
+			CloseableIterator<String> itr = cluster.getCDXIterator(
+					cluster.getClusterRange(split.getStart(), split.getEnd(), false, true),
+					split.getStart(), split.getEnd(), 0, 1);
+			while (itr.hasNext()) {
+				assertEquals(formatLine(total), itr.next());
+				total++;
+			}
+			itr.close();
+		}
+		assertEquals(NUM_LINES, total);
+
+		long bytes = 0;
+		for (ZipNumSplitPlanner.Split split : planner.plan("", "", 3, ZipNumSplitPlanner.Balance.BYTES)) {
+			bytes += split.getNumBytes();
+		}
+		assertEquals(new File(clusterDir, "part-00000.gz").length(), bytes);
+
+		// a sub range, and more splits than blocks
+		splits = planner.plan("001000", "001300", 10, ZipNumSplitPlanner.Balance.LINES);
+		assertEquals(4, splits.size());
+		assertEquals("001000", splits.get(0).getStart());
+		assertEquals("001300", splits.get(3).getEnd());
+	}
+
+	public void testBinarySummary() throws IOException {
+		File summary = new File(clusterDir, "ALL.summary");
+		assertNull(openCluster(true).getBinarySummary());
+
+		int numEntries = BinarySummaryWriter.convert(summary, new File(clusterDir, "ALL.summary.bin"));
+		assertEquals(NUM_LINES / LINES_PER_BLOCK, numEntries);
+
+		ZipNumCluster text = openCluster(false);
+		ZipNumCluster binary = openCluster(true);
+		BinarySummary index = binary.getBinarySummary();
+		assertNotNull(index);
+		assertEquals(numEntries, index.getNumEntries());
+		assertTrue(index.hasLineCounts());
+
+		String[] keys = {"", "000000", "000050", "000100", "003000", "0042", "005123", "009999", "01", "~"};
+
+		for (String key : keys) {
+			for (boolean lessThan : new boolean[]{true, false}) {
+				CloseableIterator<String> expected = text.getSummary().getRecordIterator(key, lessThan);
+				CloseableIterator<String> actual = index.getRecordIterator(key, lessThan);
+				while (expected.hasNext()) {
+					assertTrue(actual.hasNext());
+					assertEquals(expected.next(), actual.next());
+				}
+				assertFalse(actual.hasNext());
+				expected.close();
+				actual.close();
+			}
+		}
+
+		assertEquals(text.getNumLines("003000", "004000"), binary.getNumLines("003000", "004000"));
+		assertEquals(text.getNumLines("0031", "0072"), binary.getNumLines("0031", "0072"));
+		assertEquals(text.getNumLines("", "005"), binary.getNumLines("", "005"));
+		// counted in whole blocks: 003000 up to 004100
+		assertEquals(1100, binary.getNumLines("003050", "004050"));
+
+		// entries read from the arrays match the summary lines
+		BinarySummary.EntryIterator entries = index.getEntryIterator(index.searchIndex("0042", true), "005", true);
+		CloseableIterator<String> lines = ZipNumCluster.wrapEndIterator(
+				text.getSummary().getRecordIterator("0042", true), "005", true);
+		while (lines.hasNext()) {
+			String[] parts = lines.next().split("\t");
+			assertTrue(entries.next());
+			assertEquals(parts[0], entries.getKey());
+			assertEquals(parts[1], entries.getPartId());
+			assertEquals(Long.parseLong(parts[2]), entries.getOffset());
+			assertEquals(Integer.parseInt(parts[3]), entries.getLength());
+		}
+		assertFalse(entries.next());
+		lines.close();
+
+		// the key block fails clearly at its limit, rather than overflow
+		BinarySummaryWriter writer = new BinarySummaryWriter();
+		writer.maxKeyBlockLength = 40;
+		writer.add("000000", "part-00000", 0, 10, -1);
+		writer.add("000100", "part-00000", 10, 10, -1);
+		try {
+			writer.add("000200 a much longer key", "part-00000", 20, 10, -1);
+			fail();
+		} catch (IllegalStateException e) {
+			assertEquals(2, writer.getNumEntries());
+		}
+
+		ZipNumParams params = new ZipNumParams();
+		assertEquals(1, checkRange(binary, params, 0, "000000", true));
+		assertEquals(1, checkRange(binary, params, 5123, "005123", true));
+		assertEquals(1000, checkRange(binary, params, 3000, "003", false));
+		assertEquals(0, checkRange(binary, params, NUM_LINES, String.format("%06d", NUM_LINES), true));
+
+		CloseableIterator<byte[]> itr = binary.getCDXByteIterator("00312", "00312", false, params);
+		for (int i = 3120; i < 3130; i++) {
+			assertEquals(formatLine(i), new String(itr.next(), UTF8));
+		}
+		itr.close();
+
+		// the block before the key counts against maxBlocks
+		params.setMaxBlocks(3);
+		assertEquals(checkRange(text, params, 3000, "003", false), checkRange(binary, params, 3000, "003", false));
+		assertEquals(200, checkRange(binary, params, 3000, "003", false));
+	}
+
+	public void testParseLong() {
+		String[] values = {"0", "12345", "-12345", String.valueOf(Long.MAX_VALUE), String.valueOf(Long.MIN_VALUE)};
+		for (String value : values) {
+			String line = "a\t" + value + "\tb";
+			assertEquals(Long.parseLong(value), ZipNumCluster.parseLong(line, 2, 2 + value.length()));
+		}
+		String[] bad = {"", "-", "12a", "9223372036854775808", "-9223372036854775809", "99999999999999999999"};
+		for (String value : bad) {
+			assertEquals(-1, ZipNumCluster.parseLong(value, 0, value.length()));
+		}
+	}
+
+	public void testBloomFilter() throws IOException {
+		createCluster(clusterDir, "part-00000", NUM_LINES, LINES_PER_BLOCK, true);
+
+		ZipNumCluster cluster = openCluster();
+		cluster.setBloomFilterDir(clusterDir.getAbsolutePath());
+		ZipNumParams params = new ZipNumParams();
+
+		BlockBloomFilter filter = cluster.getBloomFilter("part-00000");
+		assertEquals(NUM_LINES / LINES_PER_BLOCK, filter.getNumBlocks());
+
+		for (int i = 4000; i < 4500; i++) {
+			assertEquals(1, checkRange(cluster, params, i, String.format("%06d", i), true));
+		}
+		assertEquals(0, cluster.getBloomFilterSkips());
+
+		// urls between the captured ones, all in blocks with a filter
+		int numMissing = 500;
+		for (int i = 4000; i < 4000 + numMissing; i++) {
+			assertEquals(0, checkRange(cluster, params, i, String.format("%06dx", i), true));
+		}
+		assertTrue(cluster.getBloomFilterSkips() > (numMissing * 9 / 10));
+
+		// the same from the binary summary entries
+		BinarySummaryWriter.convert(new File(clusterDir, "ALL.summary"), new File(clusterDir, "ALL.summary.bin"));
+		ZipNumCluster binary = openCluster(true);
+		binary.setBloomFilterDir(clusterDir.getAbsolutePath());
+		for (int i = 4000; i < 4100; i++) {
+			assertEquals(1, checkRange(binary, params, i, String.format("%06d", i), true));
+			assertEquals(0, checkRange(binary, params, i, String.format("%06dx", i), true));
+		}
+		assertTrue(binary.getBloomFilterSkips() > 90);
+
+		// unknown part: no filter, lookups still work
+		assertEquals(0, cluster.getBloomFilter("part-00001").getNumBlocks());
+		assertTrue(cluster.getBloomFilter("part-00001").mightContain(0, "000000".getBytes(UTF8)));
+	}
+
+	public void testDictionary() throws IOException {
+		ZipNumDictionaryTrainer trainer = new ZipNumDictionaryTrainer();
+		for (int i = 0; i < NUM_LINES; i += 7) {
+			trainer.addSample(formatLine(i));
+		}
+		byte[] dictionary = trainer.train();
+		assertTrue(dictionary.length > 0);
+		assertTrue(dictionary.length <= ZipNumDictionaryTrainer.MAX_DICTIONARY_SIZE);
+
+		long plainSize = new File(clusterDir, "part-00000.gz").length();
+		createCluster(clusterDir, "part-00000", NUM_LINES, LINES_PER_BLOCK, false, dictionary);
+		assertTrue(new File(clusterDir, "part-00000.gz").length() < plainSize);
+
+		// without the dictionary, blocks fail to load rather than inflate to garbage
+		ZipNumCluster missing = openCluster();
+		assertNull(missing.getBlockLoader().getDeflateDictionary());
+		assertEquals(0, checkRange(missing, new ZipNumParams(), 5123, "005123", true));
+
+		// picked up from next to the summary
+		ZipNumDictionaryTrainer.writeDictionary(new File(clusterDir, ZipNumDictionaryTrainer.DICTIONARY_NAME), dictionary);
+		ZipNumCluster cluster = openCluster();
+		assertNotNull(cluster.getBlockLoader().getDeflateDictionary());
+
+		ZipNumParams params = new ZipNumParams();
+		assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+		assertEquals(NUM_LINES, checkRange(cluster, params, 0, "0", false));
+
+		cluster.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+		params.setMaxCoalesceGap(64 * 1024);
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+	}
+
+	public void testBlockCache() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		cluster.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+		ZipNumBlockCache cache = cluster.getBlockLoader().getBlockCache();
+		ZipNumParams params = new ZipNumParams();
+
+		assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+		long misses = cache.getMissCount();
+		assertTrue(misses > 0);
+		assertEquals(0, cache.getHitCount());
+
+		assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+		assertEquals(misses, cache.getMissCount());
+		assertEquals(misses, cache.getHitCount());
+
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+		assertTrue(cache.getHitCount() > misses);
+	}
+
+	public void testPrefetch() throws IOException {
+		ZipNumCluster cluster = openCluster();
+		cluster.getBlockLoader().setPrefetchThreads(1);
+		ZipNumParams params = new ZipNumParams();
+		params.setPrefetchBlocks(4);
+
+		assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+		assertEquals(1000, checkRange(cluster, params, 3000, "003", false));
+		assertEquals(NUM_LINES, checkRange(cluster, params, 0, "0", false));
+
+		// more in flight than the executor queues: the rest load inline
+		params.setPrefetchBlocks(ZipNumBlockLoader.PREFETCH_QUEUE_PER_THREAD * 4);
+		assertEquals(NUM_LINES, checkRange(cluster, params, 0, "0", false));
+
+		// close early, with loads still pending
+		CloseableIterator<String> itr = cluster.getCDXIterator("000000", "0", false, params);
+		assertEquals(formatLine(0), itr.next());
+		itr.close();
+		
+		// nothing left open on the (single) prefetch thread
+		Future<Integer> tracked = cluster.getBlockLoader().getPrefetchExecutor().submit(new Callable<Integer>() {
+			public Integer call() {
+				return ZipNumBlockLoader.getNumTrackedReaders();
+			}
+		});
+		try {
+			assertEquals(0, tracked.get().intValue());
+		} catch (Exception e) {
+			fail(e.toString());
+		}
+		ZipNumBlockLoader.closeAllReaders();
+		
+		cluster.getBlockLoader().close();
+	}
+
+	public void testCoalescedHttpRead() throws IOException {
+		LocalRangeServer server = new LocalRangeServer(clusterDir);
+
+		try {
+			for (HttpLibs lib : HttpLibs.values()) {
+				checkCoalescedRead(server, lib);
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	void checkCoalescedRead(LocalRangeServer server, HttpLibs lib) throws IOException {
+		ZipNumCluster cluster = new ZipNumCluster(server.getUrl(""));
+		cluster.setSummaryFile(new File(clusterDir, "ALL.summary").getAbsolutePath());
+		cluster.init();
+		cluster.getBlockLoader().setHttpLib(lib.name());
+
+		// every other block of the first 20, as left by a sparse or deduped query
+		List<String> summaryLines = new ArrayList<String>();
+		CloseableIterator<String> summaryItr = cluster.getSummary().getRecordIterator("");
+		for (int i = 0; i < 20; i++) {
+			String line = summaryItr.next();
+			if ((i % 2) == 0) {
+				summaryLines.add(line);
+			}
+		}
+		summaryItr.close();
+
+		ZipNumParams params = new ZipNumParams();
+		params.setMaxAggregateBlocks(0);
+
+		server.resetCounts();
+		assertEquals(1000, countSparseLines(cluster, summaryLines, params));
+		assertEquals(10, server.getNumRangeRequests());
+
+		params.setMaxCoalesceGap(64 * 1024);
+
+		server.resetCounts();
+		assertEquals(1000, countSparseLines(cluster, summaryLines, params));
+		assertEquals(1, server.getNumRangeRequests());
+
+		cluster.getBlockLoader().setBlockCacheMaxBytes(1024 * 1024);
+		assertEquals(1000, countSparseLines(cluster, summaryLines, params));
+
+		server.resetCounts();
+		assertEquals(1000, countSparseLines(cluster, summaryLines, params));
+		assertEquals(0, server.getNumRequests());
+
+		cluster.getBlockLoader().close();
+	}
+
+	public void testReplicaSelection() throws IOException {
+		LocalRangeServer slow = new LocalRangeServer(clusterDir);
+		LocalRangeServer fast = new LocalRangeServer(clusterDir);
+		CountDownLatch hold = new CountDownLatch(1);
+
+		try {
+			File locFile = new File(clusterDir, "ALL.loc");
+			PrintWriter pw = new PrintWriter(locFile, "UTF-8");
+			pw.format("part-00000\t%s\t%s\n", slow.getUrl("part-00000.gz"), fast.getUrl("part-00000.gz"));
+			pw.close();
+
+			ZipNumCluster cluster = new ZipNumCluster();
+			cluster.setSummaryFile(new File(clusterDir, "ALL.summary").getAbsolutePath());
+			cluster.setLocFile(locFile.getAbsolutePath());
+			cluster.init();
+
+			// as if both had been measured
+			LocationStats stats = cluster.getLocationUpdater().getLocationStats();
+			stats.recordSuccess(slow.getUrl("part-00000.gz"), 200);
+			stats.recordSuccess(fast.getUrl("part-00000.gz"), 1);
+
+			ZipNumParams params = new ZipNumParams();
+
+			for (int i = 0; i < 30; i++) {
+				assertEquals(1, checkRange(cluster, params, i * 100, String.format("%06d", i * 100), true));
+			}
+			assertEquals(0, slow.getNumRangeRequests());
+			assertTrue(fast.getNumRangeRequests() >= 30);
+
+			// the preferred replica stops answering: hedge to the other one
+			cluster.setHedgePercentile(0.9);
+			assertTrue(cluster.getLocationUpdater().getHedgeDelayMs() < 1000);
+			fast.setHold(hold);
+
+			assertEquals(1, checkRange(cluster, params, 5123, "005123", true));
+			assertEquals(1, slow.getNumRangeRequests());
+			assertEquals(1, cluster.getLocationUpdater().getNumHedgedReads());
+
+			cluster.getBlockLoader().close();
+		} finally {
+			hold.countDown();
+			slow.stop();
+			fast.stop();
+		}
+	}
+
+	public void testLatencyPercentile() {
+		LocationStats stats = new LocationStats();
+		for (int i = 0; i < LocationStats.MIN_SAMPLES - 1; i++) {
+			stats.recordSuccess("a", 10);
+		}
+		assertEquals(-1, stats.getLatencyPercentileMs(0.5));
+		stats.recordSuccess("a", 10);
+		assertEquals(10, stats.getLatencyPercentileMs(0.5));
+
+		// reused until enough new samples
+		for (int i = 1; i < LocationStats.PERCENTILE_REFRESH_SAMPLES; i++) {
+			stats.recordSuccess("a", 1000);
+		}
+		assertEquals(10, stats.getLatencyPercentileMs(0.5));
+		stats.recordSuccess("a", 1000);
+		assertEquals(1000, stats.getLatencyPercentileMs(0.5));
+		assertEquals(10, stats.getLatencyPercentileMs(0.1));
+	}
+
+	int countSparseLines(ZipNumCluster cluster, List<String> summaryLines, ZipNumParams params) throws IOException {
+		CloseableIterator<String> itr = 
+			cluster.getCDXIterator(AbstractPeekableIterator.wrap(summaryLines.iterator()), params);
+		int count = 0;
+		while (itr.hasNext()) {
+			int block = (count / LINES_PER_BLOCK) * 2;
+			assertEquals(formatLine((block * LINES_PER_BLOCK) + (count % LINES_PER_BLOCK)), itr.next());
+			count++;
+		}
+		itr.close();
+		return count;
+	}
+}
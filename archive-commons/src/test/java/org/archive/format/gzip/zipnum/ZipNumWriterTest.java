@@ -2,6 +2,7 @@ package org.archive.format.gzip.zipnum;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -11,6 +12,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.format.gzip.GZIPSeriesMember;
@@ -63,5 +65,31 @@ public class ZipNumWriterTest extends TestCase {
 		br.close();
 		
 	}
+
+	public void testParallelSameOutput() throws IOException {
+		Charset UTF8 = Charset.forName("UTF-8");
+		ByteArrayOutputStream main1 = new ByteArrayOutputStream();
+		ByteArrayOutputStream summ1 = new ByteArrayOutputStream();
+		ByteArrayOutputStream main4 = new ByteArrayOutputStream();
+		ByteArrayOutputStream summ4 = new ByteArrayOutputStream();
+		ZipNumWriter znw1 = new ZipNumWriter(main1, summ1, 100);
+		ZipNumWriter znw4 = new ZipNumWriter(main4, summ4, 100, 4);
+		ByteArrayOutputStream bloom1 = new ByteArrayOutputStream();
+		ByteArrayOutputStream bloom4 = new ByteArrayOutputStream();
+		znw1.setBloomFilterWriter(new BlockBloomFilterWriter(bloom1, 100));
+		znw4.setBloomFilterWriter(new BlockBloomFilterWriter(bloom4, 100));
+		for(int i = 0; i < 10050; i++) {
+			byte[] line = String.format("%06d 20100101000000 text/html\n",i).getBytes(UTF8);
+			znw1.addRecord(line);
+			znw4.addRecord(line);
+		}
+		znw1.close();
+		znw4.close();
+		assertTrue(main1.size() > 0);
+		assertTrue(Arrays.equals(main1.toByteArray(), main4.toByteArray()));
+		assertEquals(summ1.toString("UTF-8"), summ4.toString("UTF-8"));
+		assertTrue(Arrays.equals(bloom1.toByteArray(), bloom4.toByteArray()));
+		assertEquals(101, summ4.toString("UTF-8").split("\n").length);
+	}
 	
 }
@@ -0,0 +1,149 @@
+package org.archive.util.binsearch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class BatchSearchTest extends TestCase {
+
+	File even;
+	File odd;
+	List<String> evenLines = new ArrayList<String>();
+	List<String> oddLines = new ArrayList<String>();
+
+	@Override
+	protected void setUp() throws Exception {
+		even = File.createTempFile("test-batch-even", ".txt");
+		odd = File.createTempFile("test-batch-odd", ".txt");
+		PrintWriter evenOut = new PrintWriter(even, "UTF-8");
+		PrintWriter oddOut = new PrintWriter(odd, "UTF-8");
+		for (int i = 0; i < 50000; i++) {
+			String line = String.format("%05d %d", i, i % 7);
+			if ((i % 2) == 0) {
+				evenOut.print(line + "\n");
+				evenLines.add(line);
+			} else {
+				// CRLF lines in one file
+				oddOut.print(line + "\r\n");
+				oddLines.add(line);
+			}
+		}
+		evenOut.close();
+		oddOut.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		even.delete();
+		odd.delete();
+	}
+
+	List<String> expected(List<String> lines, String key) {
+		List<String> matches = new ArrayList<String>();
+		for (String line : lines) {
+			if (line.startsWith(key)) {
+				matches.add(line);
+			}
+		}
+		return matches;
+	}
+
+	List<String> toStrings(List<byte[]> lines) {
+		List<String> strings = new ArrayList<String>();
+		for (byte[] line : lines) {
+			strings.add(new String(line, SeekableLineReader.UTF8));
+		}
+		return strings;
+	}
+
+	public void testLookup() throws IOException {
+		Random random = new Random(11);
+		List<String> keys = new ArrayList<String>();
+		for (int i = 0; i < 300; i++) {
+			// exact lines, prefixes of a few lengths, misses
+			String line = String.format("%05d", random.nextInt(50000));
+			keys.add(line.substring(0, 2 + random.nextInt(4)));
+		}
+		keys.add("00000 0");
+		keys.add("00000");
+		keys.add("00000");
+		keys.add("49999 1");
+		keys.add("5");
+		keys.add("");
+		keys.add("0123x");
+
+		List<byte[]> keyBytes = new ArrayList<byte[]>();
+		for (String key : keys) {
+			keyBytes.add(key.getBytes(SeekableLineReader.UTF8));
+		}
+
+		SortedTextFile file = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(even));
+
+		for (int maxScanLines : new int[]{4, 1024}) {
+			BatchSearch batch = new BatchSearch(file);
+			batch.setMaxScanLines(maxScanLines);
+
+			CloseableIterator<BatchSearch.Result> results = batch.lookup(keyBytes, false);
+			for (int i = 0; i < keys.size(); i++) {
+				BatchSearch.Result result = results.next();
+				assertEquals(i, result.getIndex());
+				assertEquals(keys.get(i), expected(evenLines, keys.get(i)), toStrings(result.getLines()));
+			}
+			assertFalse(results.hasNext());
+			results.close();
+
+			results = batch.lookup(keyBytes, true);
+			String prev = null;
+			int count = 0;
+			while (results.hasNext()) {
+				BatchSearch.Result result = results.next();
+				String key = new String(result.getKey(), SeekableLineReader.UTF8);
+				assertTrue((prev == null) || (prev.compareTo(key) <= 0));
+				assertEquals(expected(evenLines, key), toStrings(result.getLines()));
+				prev = key;
+				count++;
+			}
+			assertEquals(keys.size(), count);
+			results.close();
+		}
+	}
+
+	public void testMultipleFiles() throws IOException {
+		List<SortedTextFile> files = new ArrayList<SortedTextFile>();
+		files.add(new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(even)));
+		files.add(new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(odd)));
+
+		BatchSearch batch = new BatchSearch(files);
+		batch.setMaxScanLines(8);
+
+		List<String> keys = Arrays.asList("4999", "0001", "2", "31415", "00019", "0001");
+		List<byte[]> keyBytes = new ArrayList<byte[]>();
+		for (String key : keys) {
+			keyBytes.add(key.getBytes(SeekableLineReader.UTF8));
+		}
+
+		List<String> all = new ArrayList<String>(evenLines);
+		all.addAll(oddLines);
+		java.util.Collections.sort(all);
+
+		CloseableIterator<BatchSearch.Result> results = batch.lookup(keyBytes, false);
+		for (String key : keys) {
+			assertEquals(key, expected(all, key), toStrings(results.next().getLines()));
+		}
+		results.close();
+
+		// one key, as in SortedTextFile
+		results = files.get(1).batchLookup(Arrays.asList("31415".getBytes(SeekableLineReader.UTF8)), true);
+		assertEquals(Arrays.asList("31415 6"), toStrings(results.next().getLines()));
+		results.close();
+	}
+}
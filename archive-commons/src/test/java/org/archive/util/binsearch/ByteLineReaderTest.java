@@ -0,0 +1,32 @@
+package org.archive.util.binsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+public class ByteLineReaderTest extends TestCase {
+
+	private static String next(ByteLineReader reader) throws IOException {
+		byte[] line = reader.readLineBytes();
+		return (line == null ? null : new String(line, SeekableLineReader.UTF8));
+	}
+
+	public void testReadLine() throws IOException {
+		StringBuilder longLine = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			longLine.append((char)('a' + (i % 26)));
+		}
+		String text = "one\ntwo\r\n\n" + longLine + "\nlast é";
+		ByteLineReader reader = new ByteLineReader(
+				new ByteArrayInputStream(text.getBytes(SeekableLineReader.UTF8)), 16);
+
+		assertEquals("one", next(reader));
+		assertEquals("two", next(reader));
+		assertEquals("", next(reader));
+		assertEquals(longLine.toString(), next(reader));
+		assertEquals("last é", next(reader));
+		assertNull(next(reader));
+		assertEquals(-1, reader.readLine());
+	}
+}
@@ -0,0 +1,159 @@
+package org.archive.util.binsearch;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
+import org.archive.util.iterator.CloseableIterator;
+
+import junit.framework.TestCase;
+
+public class PooledSeekableLineReaderFactoryTest extends TestCase {
+
+	File file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("test-pool", ".txt");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for (int i = 0; i < 1000; i++) {
+			pw.print(String.format("%04d\n", i));
+		}
+		pw.close();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testReuse() throws IOException {
+		PooledSeekableLineReaderFactory pool =
+			new PooledSeekableLineReaderFactory(new RandomAccessFileSeekableLineReaderFactory(file), 2);
+
+		SeekableLineReader slr = pool.get();
+		slr.seek(50);
+		assertEquals("0010", slr.readLine());
+		ByteLineReader buffer = slr.getByteLineReader();
+		slr.close();
+		assertTrue(slr.isClosed());
+		assertEquals(1, pool.getNumIdle());
+
+		try {
+			slr.seek(0);
+			fail("seek after close");
+		} catch (IOException io) {
+			// expected
+		}
+
+		SeekableLineReader again = pool.get();
+		assertSame(slr, again);
+		assertFalse(again.isClosed());
+		again.seek(100);
+		assertEquals("0020", new String(again.readLineBytes(), SeekableLineReader.UTF8));
+		assertEquals("0021", again.readLine());
+		assertSame(buffer, again.getByteLineReader());
+
+		// only maxIdle are kept
+		SeekableLineReader second = pool.get();
+		SeekableLineReader third = pool.get();
+		assertEquals(3, pool.getNumBorrowed());
+		again.close();
+		second.close();
+		third.close();
+		assertEquals(2, pool.getNumIdle());
+		assertEquals(0, pool.getNumBorrowed());
+		assertEquals(3, pool.getNumCreated());
+		assertEquals(1, pool.getNumReused());
+
+		pool.close();
+		assertEquals(0, pool.getNumIdle());
+	}
+
+	public void testLeaks() throws IOException {
+		PooledSeekableLineReaderFactory pool =
+			new PooledSeekableLineReaderFactory(new RandomAccessFileSeekableLineReaderFactory(file));
+		pool.setTrackBorrows(true);
+
+		SeekableLineReader kept = pool.get();
+		pool.get().close();
+		assertEquals(1, pool.logLeaks(-1));
+		kept.close();
+		kept = null;
+		assertEquals(0, pool.logLeaks(-1));
+
+		// A reader collected without close() is counted, as its finalizer
+		// would on collection
+		SeekableLineReader lost = pool.get();
+		assertEquals(1, pool.getNumBorrowed());
+		lost.finalize();
+		assertTrue(lost.isClosed());
+		assertEquals(1, pool.getNumLeaked());
+		assertEquals(0, pool.getNumBorrowed());
+		assertEquals(0, pool.logLeaks(-1));
+		pool.close();
+	}
+
+	public void testGzipRecycle() throws IOException {
+		File gz = File.createTempFile("test-pool", ".gz");
+		GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(gz));
+		out.write("0000\n0001\n".getBytes(SeekableLineReader.UTF8));
+		out.close();
+
+		PooledSeekableLineReaderFactory pool =
+			new PooledSeekableLineReaderFactory(new RandomAccessFileSeekableLineReaderFactory(gz));
+		SeekableLineReader slr = pool.get();
+		slr.seekWithMaxRead(0, true, (int)gz.length());
+		assertEquals("0000", slr.readLine());
+		Inflater inflater = slr.gzis.getInflater();
+
+		// the next seek ends the last one's inflater
+		slr.seekWithMaxRead(0, true, (int)gz.length());
+		assertEnded(inflater);
+		assertEquals("0000", slr.readLine());
+		inflater = slr.gzis.getInflater();
+
+		// and so does handing the reader back to the pool
+		slr.close();
+		assertEquals(1, pool.getNumIdle());
+		assertNull(slr.gzis);
+		assertEnded(inflater);
+
+		slr = pool.get();
+		slr.seekWithMaxRead(0, true, (int)gz.length());
+		assertEquals("0000", slr.readLine());
+		assertEquals("0001", slr.readLine());
+		slr.close();
+		pool.close();
+		gz.delete();
+	}
+
+	static void assertEnded(Inflater inflater) {
+		try {
+			inflater.getBytesRead();
+			fail("inflater not ended");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+
+	public void testSortedTextFile() throws IOException {
+		SortedTextFile stf = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(file));
+		stf.setReaderPoolSize(4);
+
+		for (int i = 0; i < 990; i += 37) {
+			CloseableIterator<String> itr = stf.getRecordIterator(String.format("%04d", i));
+			assertEquals(String.format("%04d", i), itr.next());
+			assertEquals(String.format("%04d", i + 1), itr.next());
+			itr.close();
+		}
+
+		PooledSeekableLineReaderFactory pool = (PooledSeekableLineReaderFactory)stf.factory;
+		assertEquals(1, pool.getNumCreated());
+		assertEquals(0, pool.getNumBorrowed());
+	}
+}
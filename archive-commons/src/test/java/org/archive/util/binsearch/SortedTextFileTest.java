@@ -4,10 +4,15 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.RandomAccessFile;
 
+import org.archive.util.binsearch.impl.ByteArraySeekableLineReader;
+import org.archive.util.binsearch.impl.NIOSeekableLineReaderFactory;
 import org.archive.util.binsearch.impl.RandomAccessFileSeekableLineReaderFactory;
 import org.archive.util.iterator.CloseableIterator;
 
+import com.google.common.io.ByteStreams;
+
 import junit.framework.TestCase;
 
 public class SortedTextFileTest extends TestCase {
@@ -55,6 +60,174 @@ public class SortedTextFileTest extends TestCase {
 //		test.delete();
 	}
 
+	public void testMidpointIndex() throws IOException {
+		File test = File.createTempFile("test-midpoint", ".tmp");
+		test.deleteOnExit();
+		int max = 1000000;
+		createFile(test,max);
+		RandomAccessFileSeekableLineReaderFactory factory = 
+			new RandomAccessFileSeekableLineReaderFactory(test);
+		SortedTextFile ff = new SortedTextFile(factory);
+		ff.setMidpointIndexSize(100);
+		
+		checkFirst(ff,true,formatS(0),formatS(0));
+		checkFirst(ff,false,formatS(0),formatS(0));
+		checkFirst(ff,true,formatS(1),formatS(0));
+		checkFirst(ff,false,formatS(1),formatS(1));
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		checkFirst(ff,false,formatS(500000),formatS(500000));
+
+		checkFirst(ff,true,formatS(max-1),formatS(max-2));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		
+		checkFirst(ff,false,formatS(max),null);
+		checkFirst(ff,true,formatS(max),formatS(max-1));
+		
+		MidpointIndex index = ff.getMidpointIndex();
+		assertTrue(index.getNumEntries() <= 100);
+		assertTrue(index.getWindowSize() * index.getNumEntries() >= test.length());
+		
+		// every sample boundary
+		for (int i = 0; i < max; i += 7919) {
+			checkFirst(ff,false,formatS(i),formatS(i));
+			if (i > 0) {
+				checkFirst(ff,true,formatS(i),formatS(i-1));
+			}
+		}
+		assertTrue(ff.getNumSearches() > 0);
+		assertEquals(0, ff.getNumProbes());
+		test.delete();
+	}
+
+	public void testMidpointIndexLongLines() throws IOException {
+		// lines much longer than the two blocks read per sample
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 50; i++) {
+			sb.append(formatS(i));
+			for (int j = 0; j < 100; j++) {
+				sb.append('x');
+			}
+			sb.append('\n');
+		}
+		byte[] data = sb.toString().getBytes("UTF-8");
+		MidpointIndex index = new MidpointIndex(20, 16);
+		SeekableLineReader slr = new ByteArraySeekableLineReader(data);
+		assertTrue(index.ensureLoaded(slr, data.length));
+		assertTrue(index.isLoaded(data.length));
+		for (int i = 1; i < 50; i++) {
+			long offset = index.findOffset(formatS(i));
+			slr.seek(offset);
+			if (offset > 0) {
+				slr.readLine();
+			}
+			assertTrue(slr.readLine().compareTo(formatS(i)) < 0);
+			// and key is within the window
+			slr.seek(offset + index.getWindowSize());
+			slr.readLine();
+			String after = slr.readLine();
+			assertTrue((after == null) || (after.compareTo(formatS(i)) >= 0));
+		}
+		slr.close();
+	}
+
+	public void testInterpolationSearch() throws IOException {
+		File test = File.createTempFile("test-interpolate", ".tmp");
+		test.deleteOnExit();
+		int max = 1000000;
+		createFile(test,max);
+		SortedTextFile bisect = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(test));
+		SortedTextFile ff = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(test));
+		ff.setInterpolationSearch(true);
+		
+		checkFirst(ff,true,formatS(0),formatS(0));
+		checkFirst(ff,false,formatS(1),formatS(1));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		checkFirst(ff,true,formatS(max),formatS(max-1));
+		checkFirst(ff,false,formatS(max+1),null);
+		checkFirst(ff,false,"",formatS(0));
+		
+		java.util.Random random = new java.util.Random(3);
+		for (int i = 0; i < 100; i++) {
+			int key = random.nextInt(max);
+			checkFirst(ff,false,formatS(key),formatS(key));
+			checkFirst(bisect,false,formatS(key),formatS(key));
+		}
+		// evenly spread keys: a few probes rather than ~log2(blocks)
+		assertTrue(ff.getNumProbes() * 2 < bisect.getNumProbes());
+		test.delete();
+		
+		// very uneven keys, still found
+		PrintWriter pw = new PrintWriter(test);
+		for (long i = 0; i < 200000; i++) {
+			pw.println(String.format("%016d", i * i * i));
+		}
+		pw.close();
+		ff = new SortedTextFile(new RandomAccessFileSeekableLineReaderFactory(test));
+		ff.setInterpolationSearch(true);
+		for (int i = 0; i < 100; i++) {
+			long key = random.nextInt(200000);
+			checkFirst(ff,false,String.format("%016d", key * key * key),String.format("%016d", key * key * key));
+			checkFirst(ff,false,String.format("%016d", key * key * key + 1),String.format("%016d", (key + 1) * (key + 1) * (key + 1)));
+		}
+		test.delete();
+	}
+
+	public void testMMap() throws IOException {
+		File test = File.createTempFile("test-mmap", ".tmp");
+		test.deleteOnExit();
+		int max = 1000000;
+		createFile(test,max);
+		NIOSeekableLineReaderFactory factory = 
+			new NIOSeekableLineReaderFactory(test, SeekableLineReaderFactory.BINSEARCH_BLOCK_SIZE, true);
+		SortedTextFile ff = new SortedTextFile(factory);
+		
+		checkFirst(ff,true,formatS(0),formatS(0));
+		checkFirst(ff,false,formatS(0),formatS(0));
+		checkFirst(ff,true,formatS(1),formatS(0));
+		checkFirst(ff,false,formatS(12355),formatS(12355));
+		checkFirst(ff,true,formatS(12355),formatS(12354));
+		checkFirst(ff,false,"00123555",formatS(12356));
+		checkFirst(ff,true,"00123555",formatS(12355));
+
+		checkFirst(ff,true,formatS(max-1),formatS(max-2));
+		checkFirst(ff,false,formatS(max-1),formatS(max-1));
+		
+		checkFirst(ff,false,formatS(max),null);
+		checkFirst(ff,true,formatS(max),formatS(max-1));
+		factory.close();
+		test.delete();
+	}
+	
+	public void testMappedChunks() throws IOException {
+		File test = File.createTempFile("test-mmap", ".tmp");
+		test.deleteOnExit();
+		int max = 10000;
+		createFile(test,max);
+		RandomAccessFile raf = new RandomAccessFile(test, "r");
+		
+		// 4KB chunks: lines span chunks
+		MappedFile mapped = new MappedFile(raf.getChannel(), 12);
+		
+		for (int i = 0; i < max; i += 97) {
+			long[] found = mapped.search(formatS(i).getBytes(SeekableLineReader.UTF8));
+			assertEquals(i * 8L, found[1]);
+			assertEquals((i > 0) ? ((i - 1) * 8L) : -1, found[0]);
+			assertEquals(0, mapped.compareLine(found[1], formatS(i).getBytes(SeekableLineReader.UTF8)));
+		}
+		
+		byte[] all = new byte[(int)test.length()];
+		ByteStreams.readFully(mapped.getInputStream(0, -1), all);
+		assertEquals(formatS(max - 1) + "\n", new String(all, (max - 1) * 8, 8, SeekableLineReader.UTF8));
+		
+		byte[] some = new byte[16];
+		ByteStreams.readFully(mapped.getInputStream(4090, 16), some);
+		assertEquals(new String(all, 4090, 16, SeekableLineReader.UTF8), new String(some, SeekableLineReader.UTF8));
+		raf.close();
+		test.delete();
+	}
+
 	private void checkFirst(SortedTextFile stf, boolean lt, String key, String want) throws IOException {
 		CloseableIterator<String> itr = stf.getRecordIterator(key, lt);
 		if(want == null) {
@@ -63,6 +236,15 @@ public class SortedTextFileTest extends TestCase {
 			String got = itr.next();
 			assertEquals(want,got);
 		}
+		itr.close();
+		
+		CloseableIterator<byte[]> bytes = stf.getByteRecordIterator(key.getBytes(SeekableLineReader.UTF8), lt);
+		if(want == null) {
+			assertFalse(bytes.hasNext());
+		} else {
+			assertEquals(want, new String(bytes.next(), SeekableLineReader.UTF8));
+		}
+		bytes.close();
 	}
 
 }
@@ -0,0 +1,91 @@
+package org.archive.util.binsearch.impl;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RawLocalFileSystem;
+import org.archive.util.binsearch.SeekableLineReader;
+
+import junit.framework.TestCase;
+
+public class HDFSSeekableLineReaderTest extends TestCase {
+
+	File file;
+	FileSystem fs;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("test-hdfs-slr", ".txt");
+		PrintWriter pw = new PrintWriter(file, "UTF-8");
+		for (int i = 0; i < 10000; i++) {
+			pw.print(String.format("%05d\n", i));
+		}
+		pw.close();
+
+		fs = new RawLocalFileSystem();
+		fs.initialize(URI.create("file:///"), new Configuration());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.delete();
+	}
+
+	public void testPositionalRead() throws Exception {
+		final HDFSSeekableLineReaderFactory factory =
+			new HDFSSeekableLineReaderFactory(fs, new Path(file.getAbsolutePath()), true);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						SeekableLineReader reader = factory.get();
+						Random random = new Random(seed);
+						for (int i = 0; i < 200; i++) {
+							int line = random.nextInt(9990);
+							reader.seekWithMaxRead(line * 6, false, 60);
+							for (int j = 0; j < 10; j++) {
+								assertEquals(String.format("%05d", line + j), reader.readLine());
+							}
+							assertNull(reader.readLine());
+						}
+						reader.close();
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(error.get());
+
+		// unbounded seeks read a stream of their own
+		SeekableLineReader reader = factory.get();
+		reader.seek(59988);
+		assertEquals("09998", reader.readLine());
+		assertEquals("09999", reader.readLine());
+		assertNull(reader.readLine());
+		reader.seekWithMaxRead(12, false, 12);
+		assertEquals("00002", reader.readLine());
+		reader.close();
+		factory.close();
+	}
+}
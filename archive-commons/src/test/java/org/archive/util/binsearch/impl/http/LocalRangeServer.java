@@ -0,0 +1,160 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Minimal HTTP/1.1 file server for tests: serves files under a directory,
+ * supports HEAD and single "Range: bytes=a-b" / "bytes=a-" requests, and
+ * counts the requests and connections it sees.
+ */
+public class LocalRangeServer implements HttpHandler {
+	protected File root;
+	protected HttpServer server;
+
+	protected AtomicInteger numRequests = new AtomicInteger();
+	protected AtomicInteger numRangeRequests = new AtomicInteger();
+	protected Set<InetSocketAddress> connections = Collections.synchronizedSet(new HashSet<InetSocketAddress>());
+	protected volatile long delayMs = 0;
+	protected volatile CountDownLatch hold = null;
+
+	public LocalRangeServer(File root) throws IOException {
+		this.root = root;
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", this);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+	}
+
+	public String getUrl(String name) {
+		return "http://localhost:" + server.getAddress().getPort() + "/" + name;
+	}
+
+	public int getNumRequests() {
+		return numRequests.get();
+	}
+
+	public int getNumRangeRequests() {
+		return numRangeRequests.get();
+	}
+
+	// Distinct client sockets that sent requests
+	public int getNumConnections() {
+		return connections.size();
+	}
+
+	public void resetCounts() {
+		numRequests.set(0);
+		numRangeRequests.set(0);
+		connections.clear();
+	}
+
+	// Delay before every response, to simulate a slow replica
+	public void setDelayMs(long delayMs) {
+		this.delayMs = delayMs;
+	}
+
+	// Hold every response until the latch is released, or null
+	public void setHold(CountDownLatch hold) {
+		this.hold = hold;
+	}
+
+	public void stop() {
+		server.stop(0);
+	}
+
+	public void handle(HttpExchange exchange) throws IOException {
+		numRequests.incrementAndGet();
+		connections.add(exchange.getRemoteAddress());
+
+		if (delayMs > 0) {
+			try {
+				Thread.sleep(delayMs);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		CountDownLatch latch = hold;
+
+		if (latch != null) {
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		File file = new File(root, exchange.getRequestURI().getPath().substring(1));
+
+		if (!file.isFile()) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+
+		long length = file.length();
+		long start = 0;
+		long end = length - 1;
+		int code = 200;
+
+		String range = exchange.getRequestHeaders().getFirst("Range");
+
+		if (range != null && range.startsWith("bytes=")) {
+			numRangeRequests.incrementAndGet();
+			String[] parts = range.substring("bytes=".length()).split("-", -1);
+			start = Long.parseLong(parts[0]);
+			if (parts[1].length() > 0) {
+				end = Math.min(end, Long.parseLong(parts[1]));
+			}
+			code = 206;
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + length);
+		}
+
+		long count = Math.max(0, end - start + 1);
+		exchange.getResponseHeaders().set("Accept-Ranges", "bytes");
+
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.getResponseHeaders().set("Content-Length", String.valueOf(count));
+			exchange.sendResponseHeaders(code, -1);
+			exchange.close();
+			return;
+		}
+
+		exchange.sendResponseHeaders(code, count);
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		OutputStream out = exchange.getResponseBody();
+
+		try {
+			raf.seek(start);
+			byte[] buffer = new byte[8192];
+			while (count > 0) {
+				int amt = raf.read(buffer, 0, (int)Math.min(buffer.length, count));
+				if (amt < 0) {
+					break;
+				}
+				out.write(buffer, 0, amt);
+				count -= amt;
+			}
+		} catch (IOException io) {
+			// client went away
+		} finally {
+			raf.close();
+			exchange.close();
+		}
+	}
+}
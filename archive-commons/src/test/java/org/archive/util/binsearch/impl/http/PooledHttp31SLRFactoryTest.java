@@ -0,0 +1,161 @@
+package org.archive.util.binsearch.impl.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.archive.util.binsearch.impl.HTTPSeekableLineReader;
+
+import junit.framework.TestCase;
+
+public class PooledHttp31SLRFactoryTest extends TestCase {
+
+	File dir;
+	LocalRangeServer server;
+	String url;
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("test-pooled-http", "");
+		dir.delete();
+		dir.mkdir();
+
+		PrintWriter pw = new PrintWriter(new File(dir, "lines.txt"), "UTF-8");
+		for (int i = 0; i < 100000; i++) {
+			pw.print(String.format("%06d\n", i));
+		}
+		pw.close();
+
+		server = new LocalRangeServer(dir);
+		url = server.getUrl("lines.txt");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		server.stop();
+		new File(dir, "lines.txt").delete();
+		dir.delete();
+	}
+
+	public void testManySeeks() throws IOException {
+		PooledHttp31SLRFactory factory = new PooledHttp31SLRFactory();
+		factory.setMaxDrainBytes(256 * 1024);
+		HTTPSeekableLineReader reader = factory.get(url);
+		assertEquals(700000, reader.getSize());
+
+		Random random = new Random(7);
+
+		// partial reads, the rest of each response is drained
+		reader.setBufferFully(false);
+		for (int i = 0; i < 200; i++) {
+			int line = random.nextInt(99000);
+			reader.seekWithMaxRead(line * 7, false, 200000);
+			assertEquals(String.format("%06d", line), reader.readLine());
+			assertEquals(String.format("%06d", line + 1), reader.readLine());
+		}
+
+		reader.setBufferFully(true);
+		for (int i = 0; i < 100; i++) {
+			int line = random.nextInt(99000);
+			reader.seekWithMaxRead(line * 7, false, 70);
+			assertEquals(String.format("%06d", line), reader.readLine());
+		}
+
+		reader.close();
+		// the test server drops the connection after a HEAD
+		assertEquals(301, server.getNumRequests());
+		assertEquals(2, server.getNumConnections());
+		factory.close();
+
+		// past maxDrainBytes, every seek costs a connection
+		server.resetCounts();
+		factory = new PooledHttp31SLRFactory();
+		reader = factory.get(url);
+		reader.setBufferFully(false);
+		for (int i = 0; i < 10; i++) {
+			reader.seekWithMaxRead(i * 700, false, 200000);
+			assertEquals(String.format("%06d", i * 100), reader.readLine());
+		}
+		reader.close();
+		assertEquals(10, server.getNumConnections());
+		factory.close();
+	}
+
+	public void testHostLimit() throws Exception {
+		final PooledHttp31SLRFactory factory = new PooledHttp31SLRFactory();
+		factory.setMaxHostConnections(2);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 8; t++) {
+			final int seed = t;
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						Random random = new Random(seed);
+						for (int i = 0; i < 20; i++) {
+							int line = random.nextInt(99000);
+							HTTPSeekableLineReader reader = factory.get(url);
+							reader.seekWithMaxRead(line * 7, false, 140);
+							assertEquals(String.format("%06d", line), reader.readLine());
+							reader.close();
+						}
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			};
+			threads.add(thread);
+			thread.start();
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertNull(error.get());
+		assertEquals(160, server.getNumRequests());
+		assertTrue(server.getNumConnections() <= 2);
+		assertTrue(factory.getConnectionsInPool() <= 2);
+		factory.close();
+	}
+
+	public void testWarmUpAndEviction() throws Exception {
+		PooledHttp31SLRFactory factory = new PooledHttp31SLRFactory();
+		factory.setMaxHostConnections(3);
+		factory.setIdleTimeoutMS(0);
+
+		// capped at maxHostConnections
+		assertEquals(3, factory.warmUp(url, 4));
+		assertEquals(3, factory.getConnectionsInPool());
+		assertEquals(0, factory.warmUp(url, 3));
+
+		HTTPSeekableLineReader reader = factory.get(url);
+		reader.seekWithMaxRead(700, false, 70);
+		assertEquals("000100", reader.readLine());
+		reader.close();
+		assertEquals(3, factory.getConnectionsInPool());
+		assertEquals(1, server.getNumConnections());
+
+		factory.setEvictIntervalMS(50);
+		factory.setIdleTimeoutMS(200);
+		long start = System.currentTimeMillis();
+		while ((factory.getConnectionsInPool() > 0) && (System.currentTimeMillis() - start < 5000)) {
+			Thread.sleep(50);
+		}
+		assertEquals(0, factory.getConnectionsInPool());
+
+		// a fresh connection after eviction
+		reader = factory.get(url);
+		reader.seekWithMaxRead(0, false, 70);
+		assertEquals("000000", reader.readLine());
+		reader.close();
+		assertEquals(2, server.getNumConnections());
+		factory.close();
+	}
+}
@@ -0,0 +1,120 @@
+package org.archive.util.iterator;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class LoserTreeMergeIteratorTest extends TestCase {
+	final static Charset UTF8 = Charset.forName("UTF-8");
+
+	final static Comparator<String> STRING_COMPARATOR = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	static List<List<String>> randomLists(Random random, int k, int maxSize) {
+		List<List<String>> lists = new ArrayList<List<String>>();
+		for (int i = 0; i < k; i++) {
+			List<String> list = new ArrayList<String>();
+			int size = random.nextInt(maxSize + 1);
+			for (int j = 0; j < size; j++) {
+				list.add(String.format("%04d", random.nextInt(1000)));
+			}
+			Collections.sort(list);
+			lists.add(list);
+		}
+		return lists;
+	}
+
+	public void testMerge() {
+		Random random = new Random(1);
+
+		for (int k = 0; k <= 33; k++) {
+			List<List<String>> lists = randomLists(random, k, 50);
+			List<String> expected = new ArrayList<String>();
+			LoserTreeMergeIterator<String> merged = new LoserTreeMergeIterator<String>(STRING_COMPARATOR);
+
+			for (List<String> list : lists) {
+				expected.addAll(list);
+				merged.addIterator(list.iterator());
+			}
+			Collections.sort(expected);
+
+			List<String> actual = new ArrayList<String>();
+			while (merged.hasNext()) {
+				actual.add(merged.next());
+			}
+			assertEquals("k=" + k, expected, actual);
+		}
+	}
+
+	public void testStableAndClosed() throws IOException {
+		final int[] closed = new int[1];
+		LoserTreeMergeIterator<String[]> merged = new LoserTreeMergeIterator<String[]>(new Comparator<String[]>() {
+			public int compare(String[] o1, String[] o2) {
+				return o1[0].compareTo(o2[0]);
+			}
+		});
+
+		for (int i = 0; i < 3; i++) {
+			final int source = i;
+			merged.addIterator(new AbstractPeekableIterator<String[]>() {
+				int n = 0;
+				public String[] getNextInner() {
+					return (n < 2 ? new String[]{"k" + (n++), String.valueOf(source)} : null);
+				}
+				public void close() {
+					closed[0]++;
+				}
+			});
+		}
+
+		for (int n = 0; n < 2; n++) {
+			for (int i = 0; i < 3; i++) {
+				String[] next = merged.next();
+				assertEquals("k" + n, next[0]);
+				assertEquals(String.valueOf(i), next[1]);
+			}
+		}
+		assertFalse(merged.hasNext());
+		assertEquals(3, closed[0]);
+		merged.close();
+		assertEquals(3, closed[0]);
+	}
+
+	public void testAddAfterStart() {
+		LoserTreeMergeIterator<String> merged = new LoserTreeMergeIterator<String>(STRING_COMPARATOR);
+		merged.addIterator(Arrays.asList("a", "c", "e").iterator());
+		assertEquals("a", merged.next());
+		merged.addIterator(Arrays.asList("b", "d").iterator());
+		StringBuilder sb = new StringBuilder();
+		while (merged.hasNext()) {
+			sb.append(merged.next());
+		}
+		assertEquals("bcde", sb.toString());
+	}
+
+	public void testByteArrays() {
+		LoserTreeMergeIterator<byte[]> merged =
+			new LoserTreeMergeIterator<byte[]>(LoserTreeMergeIterator.BYTE_ARRAY_COMPARATOR);
+		List<byte[]> a = new ArrayList<byte[]>();
+		List<byte[]> b = new ArrayList<byte[]>();
+		a.add("com,example)/ 1".getBytes(UTF8));
+		a.add("com,example)/é 1".getBytes(UTF8));
+		b.add("com,example)/a 1".getBytes(UTF8));
+		merged.addIterator(a.iterator());
+		merged.addIterator(b.iterator());
+		assertEquals("com,example)/ 1", new String(merged.next(), UTF8));
+		assertEquals("com,example)/a 1", new String(merged.next(), UTF8));
+		assertEquals("com,example)/é 1", new String(merged.next(), UTF8));
+		assertFalse(merged.hasNext());
+	}
+}
@@ -0,0 +1,78 @@
+package org.archive.util.iterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Rough throughput comparison of SortedCompositeIterator and
+ * LoserTreeMergeIterator, merging 1M lines from k = 2..256 sorted lists.
+ * Run from the test classpath, it is not named *Test so surefire skips it.
+ *
+ * USAGE: java org.archive.util.iterator.MergeIteratorBenchmark [TOTAL]
+ */
+public class MergeIteratorBenchmark {
+
+	final static Comparator<String> STRING_COMPARATOR = new Comparator<String>() {
+		public int compare(String o1, String o2) {
+			return o1.compareTo(o2);
+		}
+	};
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		int total = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+		for (int k = 2; k <= 256; k *= 2) {
+			List<List<String>> lists = new ArrayList<List<String>>();
+			for (int i = 0; i < k; i++) {
+				List<String> list = new ArrayList<String>();
+				for (int j = 0; j < total / k; j++) {
+					list.add(String.format("com,example)/%08d", random.nextInt(100000000)));
+				}
+				Collections.sort(list);
+				lists.add(list);
+			}
+
+			long queueNanos = Long.MAX_VALUE;
+			long treeNanos = Long.MAX_VALUE;
+			long checksum = 0;
+
+			for (int run = 0; run < 5; run++) {
+				SortedCompositeIterator<String> queue = new SortedCompositeIterator<String>(k, STRING_COMPARATOR);
+				LoserTreeMergeIterator<String> tree = new LoserTreeMergeIterator<String>(STRING_COMPARATOR);
+				for (List<String> list : lists) {
+					queue.addIterator(list.iterator());
+					tree.addIterator(list.iterator());
+				}
+
+				long start = System.nanoTime();
+				checksum += drain(queue);
+				queueNanos = Math.min(queueNanos, System.nanoTime() - start);
+
+				start = System.nanoTime();
+				checksum -= drain(tree);
+				treeNanos = Math.min(treeNanos, System.nanoTime() - start);
+			}
+
+			// checksum is 0 when both merges gave the same lines
+			System.out.format("k=%3d queue %6.1f ns/elem, loser tree %6.1f ns/elem, checksum %d\n",
+					k, (double)queueNanos / total, (double)treeNanos / total, checksum);
+		}
+	}
+
+	/**
+	 * @return a hash of the merged lines, in order, so the merge cannot be
+	 * optimized away
+	 */
+	static long drain(Iterator<String> itr) {
+		long hash = 0;
+		while (itr.hasNext()) {
+			hash = 31 * hash + itr.next().hashCode();
+		}
+		return hash;
+	}
+}
@@ -23,10 +23,12 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.zip.ZipException;
 
 import junit.framework.TestCase;
 
 import org.apache.commons.io.IOUtils;
+import org.archive.format.gzip.GZIPMemberWriter;
 import org.archive.util.ArchiveUtils;
 import org.archive.util.zip.GZIPMembersInputStream;
 
@@ -228,4 +230,46 @@ public class GZIPMembersInputStreamTest extends TestCase {
         assertFalse(iter.hasNext());
     }
     
+    public void testDictionaryId() throws IOException {
+        byte[] data = "hello hello hello dictionary".getBytes("ASCII");
+        byte[] dictionary = "hello dictionary".getBytes("ASCII");
+        byte[] other = "something else".getBytes("ASCII");
+        // a plain member, then one with the dictionary
+        byte[] members = Bytes.concat(a_gz, GZIPMemberWriter.compressMember(data, dictionary));
+        
+        GZIPMembersInputStream gzin = new GZIPMembersInputStream(
+                new ByteArrayInputStream(members), 512, dictionary);
+        assertEquals("a" + new String(data, "ASCII"), IOUtils.toString(gzin, "ASCII"));
+        
+        // first member needs the dictionary
+        byte[] member = GZIPMemberWriter.compressMember(data, dictionary);
+        for (byte[] wrong : new byte[][] {null, other}) {
+            try {
+                new GZIPMembersInputStream(new ByteArrayInputStream(member), 512, wrong);
+                fail();
+            } catch (ZipException e) {
+                assertTrue(e.getMessage().contains(
+                        Long.toHexString(GZIPMembersInputStream.getDictionaryId(dictionary))));
+            }
+        }
+        
+        // a later member needs it
+        gzin = new GZIPMembersInputStream(new ByteArrayInputStream(members), 512, null);
+        try {
+            IOUtils.toString(gzin, "ASCII");
+            fail();
+        } catch (ZipException e) {
+            assertTrue(e.getMessage().contains("preset dictionary"));
+        }
+        
+        // and when skipped to
+        gzin = new GZIPMembersInputStream(new ByteArrayInputStream(members), 512, other);
+        try {
+            gzin.compressedSeek(a_gz.length);
+            fail();
+        } catch (ZipException e) {
+            assertTrue(e.getMessage().contains("preset dictionary"));
+        }
+    }
+    
 }
\ No newline at end of file
@@ -11,6 +11,12 @@ import org.archive.hadoop.cdx.SummaryGenerator;
 import org.archive.hadoop.util.HDFSMove;
 import org.archive.hadoop.util.HDFSSync;
 import org.archive.hadoop.util.HDFSeeko;
+import org.archive.io.BinarySummaryTool;
+import org.archive.io.DeltaClusterTool;
+import org.archive.io.GZIPIndexTool;
+import org.archive.io.LocalClusterBuildTool;
+import org.archive.io.ZipNumDictionaryTool;
+import org.archive.io.ZipNumSplitTool;
 import org.archive.io.ZipNumWriterTool;
 import org.archive.server.GZRangeClientTool;
 import org.archive.server.GZRangeServer;
@@ -54,6 +60,28 @@ public class JobDriver {
 					ZipNumWriterTool.class,
 					ZipNumWriterTool.TOOL_DESCRIPTION);
 
+			pgd.addClass(ZipNumDictionaryTool.TOOL_NAME, 
+					ZipNumDictionaryTool.class,
+					ZipNumDictionaryTool.TOOL_DESCRIPTION);
+
+			pgd.addClass(BinarySummaryTool.TOOL_NAME, 
+					BinarySummaryTool.class,
+					BinarySummaryTool.TOOL_DESCRIPTION);
+
+			pgd.addClass(GZIPIndexTool.TOOL_NAME, 
+					GZIPIndexTool.class,
+					GZIPIndexTool.TOOL_DESCRIPTION);
+
+			pgd.addClass(ZipNumSplitTool.TOOL_NAME, 
+					ZipNumSplitTool.class,
+					ZipNumSplitTool.TOOL_DESCRIPTION);
+			pgd.addClass(LocalClusterBuildTool.TOOL_NAME, 
+					LocalClusterBuildTool.class,
+					LocalClusterBuildTool.TOOL_DESCRIPTION);
+			pgd.addClass(DeltaClusterTool.TOOL_NAME, 
+					DeltaClusterTool.class,
+					DeltaClusterTool.TOOL_DESCRIPTION);
+
 			pgd.addClass(ManifestAggregator.TOOL_NAME,
 					ManifestAggregator.class,
 					ManifestAggregator.TOOL_DESCRIPTION);
@@ -11,7 +11,12 @@ public class OvercrawlZipNumRecordWriter extends ZipNumRecordWriter {
 	private String lastDay = null;
 	public OvercrawlZipNumRecordWriter(int limit, int dayLimit,
 			DataOutputStream outMain, DataOutputStream outSummary) {
-		super(limit, outMain, outSummary);
+		this(limit, dayLimit, outMain, outSummary, 1);
+	}
+
+	public OvercrawlZipNumRecordWriter(int limit, int dayLimit,
+			DataOutputStream outMain, DataOutputStream outSummary, int numThreads) {
+		super(limit, outMain, outSummary, numThreads);
 		this.dayLimit = dayLimit;
 		lastDay = null;
 		curDayCount = 0;
@@ -3,6 +3,7 @@ package org.archive.hadoop.mapreduce;
 import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -12,13 +13,20 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.TaskID;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.archive.format.gzip.zipnum.BlockBloomFilter;
+import org.archive.format.gzip.zipnum.BlockBloomFilterWriter;
 import org.archive.hadoop.util.PartitionName;
 
+import com.google.common.io.ByteStreams;
+
 public class ZipNumOutputFormat extends FileOutputFormat<Text, Text> {
 	private int count;
 	private static final int DEFAULT_ZIP_NUM_LINES = 5000;
 	private static final String ZIP_NUM_LINES_CONFIGURATION = "conf.zipnum.count";
 	private static final String ZIP_NUM_OVERCRAWL_CONFIGURATION = "conf.zipnum.overcrawl.daycount";
+	private static final String ZIP_NUM_BLOOM_FPP_CONFIGURATION = "conf.zipnum.bloom.fpp";
+	private static final String ZIP_NUM_THREADS_CONFIGURATION = "conf.zipnum.threads";
+	private static final String ZIP_NUM_DICTIONARY_CONFIGURATION = "conf.zipnum.dictionary";
 
 	public ZipNumOutputFormat() {
 		this(DEFAULT_ZIP_NUM_LINES);
@@ -36,6 +44,31 @@ public class ZipNumOutputFormat extends FileOutputFormat<Text, Text> {
 		conf.setInt(ZIP_NUM_OVERCRAWL_CONFIGURATION, count);
 	}
 
+	/**
+	 * Deflate blocks on count threads in each reducer. The output is the
+	 * same as with a single thread.
+	 */
+	public static void setZipNumThreads(Configuration conf, int count) {
+		conf.setInt(ZIP_NUM_THREADS_CONFIGURATION, count);
+	}
+
+	/**
+	 * Compress every block with the preset deflate dictionary at path (see
+	 * ZipNumDictionaryTrainer). Copy it to ALL.dict in the cluster, readers
+	 * need it.
+	 */
+	public static void setZipNumDictionary(Configuration conf, String path) {
+		conf.set(ZIP_NUM_DICTIONARY_CONFIGURATION, path);
+	}
+
+	/**
+	 * Write a .bloom file of per-block url key Bloom filters next to each
+	 * part, with false positive rate fpp. 0 (the default) disables them.
+	 */
+	public static void setZipNumBloomFilterFpp(Configuration conf, float fpp) {
+		conf.setFloat(ZIP_NUM_BLOOM_FPP_CONFIGURATION, fpp);
+	}
+
 	@Override
 	public RecordWriter<Text, Text> getRecordWriter(TaskAttemptContext context)
 			throws IOException, InterruptedException {
@@ -43,6 +76,7 @@ public class ZipNumOutputFormat extends FileOutputFormat<Text, Text> {
 		Configuration conf = context.getConfiguration();
 		count = conf.getInt(ZIP_NUM_LINES_CONFIGURATION, DEFAULT_ZIP_NUM_LINES);
 		int dayLimit = conf.getInt(ZIP_NUM_OVERCRAWL_CONFIGURATION, -1);
+		int numThreads = conf.getInt(ZIP_NUM_THREADS_CONFIGURATION, 1);
 
 		Path mainFile = getWorkFile(context, ".gz");
 		Path summaryFile = getWorkFile(context, ".summary");
@@ -50,13 +84,46 @@ public class ZipNumOutputFormat extends FileOutputFormat<Text, Text> {
 		FileSystem summaryFs = summaryFile.getFileSystem(conf);
 		FSDataOutputStream mainOut = mainFs.create(mainFile, false);
 		FSDataOutputStream summaryOut = summaryFs.create(summaryFile, false);
-		if(dayLimit == -1) {
+		BlockBloomFilterWriter bloomWriter = null;
+		float bloomFpp = conf.getFloat(ZIP_NUM_BLOOM_FPP_CONFIGURATION, 0);
+		if(bloomFpp > 0) {
+			Path bloomFile = getWorkFile(context, BlockBloomFilter.SUFFIX);
+			FSDataOutputStream bloomOut = bloomFile.getFileSystem(conf).create(bloomFile, false);
+			bloomWriter = new BlockBloomFilterWriter(bloomOut, count, bloomFpp);
+		}
+		byte[] dictionary = null;
+		String dictionaryPath = conf.get(ZIP_NUM_DICTIONARY_CONFIGURATION);
+		if(dictionaryPath != null) {
+			dictionary = readDictionary(new Path(dictionaryPath), conf);
+		}
+		if((dayLimit == -1) && (numThreads > 1)) {
+			ZipNumRecordWriter writer = new ZipNumRecordWriter(count, mainOut, summaryOut, numThreads);
+			writer.setBloomFilterWriter(bloomWriter);
+			writer.setDictionary(dictionary);
+			return writer;
+		} else if(dayLimit == -1) {
 			// This (should be) a better implementation, but appears to have a 
 			// bug - summary files are empty in some cases.. Should track it down
 //			return new ZipNumRecordWriter(count, mainOut, summaryOut);
-			return new ZipNumRecordWriterOld(count, mainOut, summaryOut);
+			ZipNumRecordWriterOld writer = new ZipNumRecordWriterOld(count, mainOut, summaryOut);
+			writer.setBloomFilterWriter(bloomWriter);
+			writer.setDictionary(dictionary);
+			return writer;
 		} else {
-			return new OvercrawlZipNumRecordWriter(count,dayLimit, mainOut, summaryOut);
+			OvercrawlZipNumRecordWriter writer = new OvercrawlZipNumRecordWriter(count,dayLimit, mainOut, summaryOut, numThreads);
+			writer.setBloomFilterWriter(bloomWriter);
+			writer.setDictionary(dictionary);
+			return writer;
+		}
+	}
+
+	protected static byte[] readDictionary(Path path, Configuration conf) throws IOException {
+		FileSystem fs = path.getFileSystem(conf);
+		FSDataInputStream in = fs.open(path);
+		try {
+			return ByteStreams.toByteArray(in);
+		} finally {
+			in.close();
 		}
 	}
 
@@ -7,6 +7,7 @@ import java.nio.charset.Charset;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.archive.format.gzip.zipnum.BlockBloomFilterWriter;
 import org.archive.format.gzip.zipnum.ZipNumWriter;
 
 /**
@@ -17,6 +18,8 @@ import org.archive.format.gzip.zipnum.ZipNumWriter;
  */
 public class ZipNumRecordWriter extends RecordWriter<Text, Text>{
 	protected ZipNumWriter znw;
+	protected DataOutputStream outMain;
+	protected DataOutputStream outSummary;
 	
     public static char DEFAULT_DELIM = ' ';
     public static char DEFAULT_NL = 10;
@@ -25,13 +28,26 @@ public class ZipNumRecordWriter extends RecordWriter<Text, Text>{
 
     public ZipNumRecordWriter(int limit,
     		DataOutputStream outMain, DataOutputStream outSummary) {
-    	znw = new ZipNumWriter(outMain, outSummary, limit);
+    	this(limit, outMain, outSummary, 1);
+    }
+
+    /**
+     * @param numThreads number of threads deflating blocks, see ZipNumWriter
+     */
+    public ZipNumRecordWriter(int limit,
+    		DataOutputStream outMain, DataOutputStream outSummary, int numThreads) {
+    	this.outMain = outMain;
+    	this.outSummary = outSummary;
+    	znw = new ZipNumWriter(outMain, outSummary, limit, numThreads);
     }
 
 	@Override
 	public void close(TaskAttemptContext arg0) throws IOException,
 			InterruptedException {
 		znw.close();
+		// ZipNumWriter does not close its streams
+		outMain.close();
+		outSummary.close();
 	}
 
 	@Override
@@ -48,6 +64,14 @@ public class ZipNumRecordWriter extends RecordWriter<Text, Text>{
 	public void write(byte[] bytes) throws IOException {
 		znw.addRecord(bytes);
 	}
+
+	public void setBloomFilterWriter(BlockBloomFilterWriter bloomWriter) {
+		znw.setBloomFilterWriter(bloomWriter);
+	}
+
+	public void setDictionary(byte[] dictionary) {
+		znw.setDictionary(dictionary);
+	}
 	
 	/**
 	 * @return the delim
@@ -13,12 +13,16 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.archive.format.gzip.GZIPConstants;
 import org.archive.format.gzip.GZIPFooter;
 import org.archive.format.gzip.GZIPHeader;
+import org.archive.format.gzip.zipnum.BlockBloomFilterWriter;
 import org.archive.util.io.CRCOutputStream;
+import org.archive.util.zip.GZIPMembersInputStream;
 
 public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
     protected DataOutputStream outMain;
     protected DataOutputStream outSummary;
     protected int limit;
+    protected BlockBloomFilterWriter bloomWriter;
+    protected byte[] dictionary;
     
     private int count;
     private long offset;
@@ -51,6 +55,9 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		finishCurrent();
 		outMain.close();
 		outSummary.close();
+		if(bloomWriter != null) {
+			bloomWriter.close();
+		}
 	}
 
 	public void writeBytes(byte[] key, int delim, byte[] value) throws IOException {
@@ -64,6 +71,9 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		mainBuffer.write(delim);
 		mainBuffer.write(value);
 		mainBuffer.write(newline);
+		if(bloomWriter != null) {
+			bloomWriter.addLine(key);
+		}
 		count++;
 		if(count == limit) {
 			finishCurrent();
@@ -77,6 +87,9 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		}
 		mainBuffer.write(line);
 		mainBuffer.write(newline);
+		if(bloomWriter != null) {
+			bloomWriter.addLine(line);
+		}
 		count++;
 		if(count == limit) {
 			finishCurrent();
@@ -97,6 +110,9 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		// deflate the main buffer into the temp gzBuffer:
 
 		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		if(dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
 		DeflaterOutputStream deflateOut = new DeflaterOutputStream(gzBuffer,deflater);
 		CRCOutputStream crcOut = new CRCOutputStream(deflateOut);
 		mainBuffer.writeTo(crcOut);
@@ -106,10 +122,17 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		GZIPHeader gzHeader = new GZIPHeader();
 		gzHeader.addRecord(GZIPConstants.SL_RECORD, 
 				deflater.getBytesWritten() + GZIPConstants.GZIP_FOOTER_BYTES);
+		if(dictionary != null) {
+			// so readers without the dictionary fail clearly
+			gzHeader.addRecord(GZIPMembersInputStream.DICTIONARY_ID_SUBFIELD,
+					GZIPMembersInputStream.getDictionaryId(dictionary));
+		}
 
 		GZIPFooter gzFooter = new GZIPFooter(crcOut.getCRCValue(), 
 				crcOut.getBytesWritten());
 
+		deflater.end();
+
 		// write the header, the deflated bytes, and the footer:
 		int len = gzHeader.getLength() + gzBuffer.size()
 			+ GZIPConstants.GZIP_FOOTER_BYTES;
@@ -126,12 +149,32 @@ public class ZipNumRecordWriterOld  extends RecordWriter<Text, Text>{
 		summaryBuffer.writeTo(outSummary);
 		outSummary.flush();
 
+		if(bloomWriter != null) {
+			bloomWriter.finishBlock(startOffset);
+		}
+
 		// reset the main and summary buffers for the next block:
 		mainBuffer.reset();
 		summaryBuffer.reset();
 		count = 0;
 	}
 
+	/**
+	 * @param bloomWriter if set, gets the url key of every line and a 
+	 * filter per block, see ZipNumOutputFormat.setZipNumBloomFilterFpp()
+	 */
+	public void setBloomFilterWriter(BlockBloomFilterWriter bloomWriter) {
+		this.bloomWriter = bloomWriter;
+	}
+
+	/**
+	 * @param dictionary preset deflate dictionary for every block, see
+	 * ZipNumOutputFormat.setZipNumDictionary()
+	 */
+	public void setDictionary(byte[] dictionary) {
+		this.dictionary = dictionary;
+	}
+
 	/**
 	 * @return the delim
 	 */
@@ -0,0 +1,50 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.zipnum.BinarySummary;
+import org.archive.format.gzip.zipnum.BinarySummaryWriter;
+
+public class BinarySummaryTool implements Tool {
+	public final static String TOOL_NAME = "zipnum-binary-summary";
+	public final static String TOOL_DESCRIPTION = "A command line tool for converting a ZipNum ALL.summary to the binary summary format";
+	
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " SUMMARY [BINARY]");
+		System.err.println("Write binary form of the local text summary SUMMARY to BINARY");
+		System.err.println("If BINARY is not specified, write to SUMMARY" + BinarySummary.SUFFIX);
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		if((args.length < 1) || (args.length > 2)) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		File summary = new File(args[0]);
+		File binary = new File((args.length == 2) ? args[1] : (args[0] + BinarySummary.SUFFIX));
+		int numEntries = BinarySummaryWriter.convert(summary, binary);
+		System.err.println("Wrote " + numEntries + " entries to " + binary);
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new BinarySummaryTool(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,118 @@
+package org.archive.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.cdx.DeltaCDXInputSource;
+import org.archive.format.cdx.DeltaCompactor;
+import org.archive.format.gzip.zipnum.LocalClusterBuilder;
+
+public class DeltaClusterTool implements Tool {
+	public final static String TOOL_NAME = "cluster-delta";
+	public final static String TOOL_DESCRIPTION = "A command line tool for adding delta clusters and tombstones next to a ZipNum cluster, and compacting them";
+	
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " [OPTIONS] COMMAND DELTA_DIR [ARGS]");
+		System.err.println("COMMAND can be one of:");
+		System.err.println("\tadd DELTA_DIR INPUT...        build the CDX (or CDX.gz) INPUT files into a new delta");
+		System.err.println("\tdelete DELTA_DIR TOMBSTONES   add the lines of TOMBSTONES as tombstones: a CDX line,");
+		System.err.println("\t                              or its first fields, hides matching older lines");
+		System.err.println("\tcompact DELTA_DIR             merge the small deltas into one, and delete replaced deltas");
+		System.err.println("OPTIONS can be one of:");
+		System.err.println("\t-threads NUM      threads to use (default: number of cores)");
+		System.err.println("\t-zip-num-lines N  lines per compressed block (default: " + LocalClusterBuilder.DEFAULT_LINES_PER_BLOCK + ")");
+		System.err.println("\t-seal-mb MB       size of deltas not compacted again (default: " + (DeltaCompactor.DEFAULT_SEAL_BYTES >> 20) + ")");
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		LocalClusterBuilder builder = new LocalClusterBuilder();
+		long sealBytes = DeltaCompactor.DEFAULT_SEAL_BYTES;
+		int arg = 0;
+		try {
+			while(arg < args.length) {
+				if(args[arg].equals("-threads") && (arg + 1 < args.length)) {
+					builder.setNumThreads(Integer.parseInt(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-zip-num-lines") && (arg + 1 < args.length)) {
+					builder.setLinesPerBlock(Integer.parseInt(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-seal-mb") && (arg + 1 < args.length)) {
+					sealBytes = Long.parseLong(args[arg + 1]) << 20;
+					arg += 2;
+				} else {
+					break;
+				}
+			}
+		} catch(NumberFormatException e) {
+			return USAGE(1,"Bad number: " + e.getMessage());
+		}
+		if(args.length - arg < 2) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		String command = args[arg];
+		DeltaCDXInputSource source = new DeltaCDXInputSource(null, new File(args[arg + 1]));
+		try {
+			if(command.equals("add") && (args.length - arg > 2)) {
+				List<File> inputs = new ArrayList<File>();
+				for(int i = arg + 2; i < args.length; i++) {
+					inputs.add(new File(args[i]));
+				}
+				System.out.println(source.addDelta(inputs, builder));
+			} else if(command.equals("delete") && (args.length - arg == 3)) {
+				List<String> tombstones = new ArrayList<String>();
+				BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(args[arg + 2]), "UTF-8"));
+				try {
+					String line;
+					while((line = br.readLine()) != null) {
+						tombstones.add(line);
+					}
+				} finally {
+					br.close();
+				}
+				System.out.println(source.addTombstones(tombstones));
+			} else if(command.equals("compact") && (args.length - arg == 2)) {
+				DeltaCompactor compactor = new DeltaCompactor(source);
+				compactor.setBuilder(builder);
+				compactor.setSealBytes(sealBytes);
+				compactor.setDeleteDelayMs(0);
+				File compacted = compactor.compact(true);
+				if(compacted != null) {
+					System.out.println(compacted);
+				}
+				source.refresh();
+				compactor.deleteSuperseded();
+			} else {
+				return USAGE(1,"Bad command: " + command);
+			}
+		} finally {
+			source.close();
+		}
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new DeltaClusterTool(), args);
+		System.exit(res);
+	}
+}
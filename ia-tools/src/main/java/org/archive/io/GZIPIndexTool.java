@@ -0,0 +1,70 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.GZIPMemberIndex;
+import org.archive.format.gzip.GZIPMemberSeries;
+import org.archive.streamcontext.RandomAccessFileStream;
+import org.archive.streamcontext.Stream;
+
+public class GZIPIndexTool implements Tool {
+	public final static String TOOL_NAME = "gz-index";
+	public final static String TOOL_DESCRIPTION = "A command line tool for building the gzip member index of a local WARC.gz, ARC.gz or other gzip file";
+
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " [-lax] GZ [INDEX]");
+		System.err.println("Write the offset and lengths of every member of the local gzip file GZ to INDEX");
+		System.err.println("If INDEX is not specified, write to GZ" + GZIPMemberIndex.SUFFIX);
+		System.err.println("With -lax, skip bytes between members rather than fail");
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		boolean strict = true;
+		int arg = 0;
+		if((args.length > 0) && args[0].equals("-lax")) {
+			strict = false;
+			arg++;
+		}
+		int numArgs = args.length - arg;
+		if((numArgs < 1) || (numArgs > 2)) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		Logger.getLogger(GZIPMemberSeries.class.getName()).setLevel(Level.WARNING);
+		File gz = new File(args[arg]);
+		File indexFile = (numArgs == 2) ? new File(args[arg+1]) : GZIPMemberIndex.getIndexFile(gz);
+		Stream stream = new RandomAccessFileStream(gz);
+		GZIPMemberIndex index;
+		try {
+			index = GZIPMemberIndex.build(stream, gz.getName(), strict);
+		} finally {
+			stream.close();
+		}
+		index.write(indexFile);
+		System.err.println("Wrote " + index.size() + " members to " + indexFile);
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new GZIPIndexTool(), args);
+		System.exit(res);
+	}
+}
@@ -0,0 +1,93 @@
+package org.archive.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.zipnum.LocalClusterBuilder;
+import org.archive.format.gzip.zipnum.ZipNumDictionaryTrainer;
+
+public class LocalClusterBuildTool implements Tool {
+	public final static String TOOL_NAME = "cluster-build-local";
+	public final static String TOOL_DESCRIPTION = "A command line tool for building a ZipNum cluster from CDX files on one machine, without Hadoop";
+	
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " [OPTIONS] SPLIT OUTPUT_DIR INPUT...");
+		System.err.println("Sort the CDX (or CDX.gz) INPUT files into a ZipNum cluster in OUTPUT_DIR,");
+		System.err.println("one part per line of the SPLIT file (\"-\" for a single part).");
+		System.err.println("OPTIONS can be one of:");
+		System.err.println("\t-threads NUM      threads to use (default: number of cores)");
+		System.err.println("\t-zip-num-lines N  lines per compressed block (default: " + LocalClusterBuilder.DEFAULT_LINES_PER_BLOCK + ")");
+		System.err.println("\t-chunk-mb MB      memory per sorted run (default: " + (LocalClusterBuilder.DEFAULT_CHUNK_BYTES >> 20) + ")");
+		System.err.println("\t-tmp DIR          directory for sorted runs (default: OUTPUT_DIR)");
+		System.err.println("\t-bloom FPP        write a .bloom file per part with false positive rate FPP");
+		System.err.println("\t-dict FILE        compress blocks with the preset dictionary FILE");
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		LocalClusterBuilder builder = new LocalClusterBuilder();
+		int arg = 0;
+		try {
+			while(arg < args.length) {
+				if(args[arg].equals("-threads") && (arg + 1 < args.length)) {
+					builder.setNumThreads(Integer.parseInt(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-zip-num-lines") && (arg + 1 < args.length)) {
+					builder.setLinesPerBlock(Integer.parseInt(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-chunk-mb") && (arg + 1 < args.length)) {
+					builder.setChunkBytes(Long.parseLong(args[arg + 1]) << 20);
+					arg += 2;
+				} else if(args[arg].equals("-tmp") && (arg + 1 < args.length)) {
+					builder.setTmpDir(new File(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-bloom") && (arg + 1 < args.length)) {
+					builder.setBloomFpp(Double.parseDouble(args[arg + 1]));
+					arg += 2;
+				} else if(args[arg].equals("-dict") && (arg + 1 < args.length)) {
+					builder.setDictionary(ZipNumDictionaryTrainer.readDictionary(new File(args[arg + 1])));
+					arg += 2;
+				} else {
+					break;
+				}
+			}
+		} catch(NumberFormatException e) {
+			return USAGE(1,"Bad number: " + e.getMessage());
+		}
+		if(args.length - arg < 3) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		if(!args[arg].equals("-")) {
+			builder.setSplitFile(new File(args[arg]));
+		}
+		File outDir = new File(args[arg + 1]);
+		List<File> inputs = new ArrayList<File>();
+		for(int i = arg + 2; i < args.length; i++) {
+			inputs.add(new File(args[i]));
+		}
+		builder.build(inputs, outDir);
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new LocalClusterBuildTool(), args);
+		System.exit(res);
+	}
+}
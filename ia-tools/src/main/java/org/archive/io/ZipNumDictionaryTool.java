@@ -0,0 +1,77 @@
+package org.archive.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.zipnum.ZipNumDictionaryTrainer;
+
+public class ZipNumDictionaryTool implements Tool {
+	public final static String TOOL_NAME = "zipnum-train-dict";
+	public final static String TOOL_DESCRIPTION = "A command line tool for building a preset deflate dictionary for ZipNum blocks from sample CDX lines";
+	
+	private static final Charset UTF8 = Charset.forName("utf-8");
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " DICT [EVERY] [INPUT]");
+		System.err.println("Write a dictionary to DICT, sampling every EVERY-th line (default 1)");
+		System.err.println("If INPUT is specified, read lines from INPUT, otherwise from STDIN");
+		System.err.println("Store DICT as " + ZipNumDictionaryTrainer.DICTIONARY_NAME + " next to the cluster summary");
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		if((args.length < 1) || (args.length > 3)) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		File dict = new File(args[0]);
+		int every = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+		InputStream in = System.in;
+		if(args.length > 2) {
+			in = new FileInputStream(new File(args[2]));
+		}
+		ZipNumDictionaryTrainer trainer = new ZipNumDictionaryTrainer();
+		BufferedReader br = new BufferedReader(new InputStreamReader(in,UTF8));
+		long lineNum = 0;
+		while(true) {
+			String line = br.readLine();
+			if(line == null) {
+				break;
+			}
+			if((lineNum++ % every) == 0) {
+				if(!trainer.addSample(line)) {
+					break;
+				}
+			}
+		}
+		br.close();
+		byte[] dictionary = trainer.train();
+		ZipNumDictionaryTrainer.writeDictionary(dict, dictionary);
+		System.err.println("Wrote " + dictionary.length + " byte dictionary from " 
+				+ trainer.getNumSampleLines() + " lines to " + dict);
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new ZipNumDictionaryTool(), args);
+		System.exit(res);
+	}
+}
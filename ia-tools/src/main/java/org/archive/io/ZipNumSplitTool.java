@@ -0,0 +1,85 @@
+package org.archive.io;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.util.Tool;
+import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.zipnum.ZipNumCluster;
+import org.archive.format.gzip.zipnum.ZipNumSplitPlanner;
+import org.archive.format.gzip.zipnum.ZipNumSplitPlanner.Balance;
+import org.archive.format.gzip.zipnum.ZipNumSplitPlanner.Split;
+
+public class ZipNumSplitTool implements Tool {
+	public final static String TOOL_NAME = "zipnum-splits";
+	public final static String TOOL_DESCRIPTION = "A command line tool for computing ZipNum splits balanced by CDX lines or compressed bytes";
+	
+	private Configuration conf;
+	public void setConf(Configuration conf) {
+		this.conf = conf;
+	}
+
+	public Configuration getConf() {
+		return conf;
+	}
+
+	private static int USAGE(int code, String msg) {
+		if(msg != null) {
+			System.err.println(msg);
+		}
+		System.err.println("USAGE " + TOOL_NAME + " [OPTIONS] SUMMARY NUM_SPLITS");
+		System.err.println("Print NUM_SPLITS splits of the cluster with summary SUMMARY, one per line:");
+		System.err.println("\tSPLIT\tSTART\tEND\tLINES\tBYTES\tBLOCKS");
+		System.err.println("OPTIONS can be one of:");
+		System.err.println("\t-start KEY  first key of the range (default: start of the cluster)");
+		System.err.println("\t-end KEY    end key of the range, exclusive (default: end of the cluster)");
+		System.err.println("\t-bytes      balance by compressed bytes instead of CDX lines");
+
+		return code;
+	}
+
+	public int run(String args[]) throws IOException {
+		String start = "";
+		String end = "";
+		Balance balance = Balance.LINES;
+		int arg = 0;
+		while(arg < args.length) {
+			if(args[arg].equals("-start") && (arg + 1 < args.length)) {
+				start = args[arg + 1];
+				arg += 2;
+			} else if(args[arg].equals("-end") && (arg + 1 < args.length)) {
+				end = args[arg + 1];
+				arg += 2;
+			} else if(args[arg].equals("-bytes")) {
+				balance = Balance.BYTES;
+				arg++;
+			} else {
+				break;
+			}
+		}
+		if(args.length - arg != 2) {
+			return USAGE(1,"Wrong number of arguments");
+		}
+		int numSplits;
+		try {
+			numSplits = Integer.parseInt(args[arg + 1]);
+		} catch(NumberFormatException e) {
+			return USAGE(1,"Bad NUM_SPLITS: " + args[arg + 1]);
+		}
+		ZipNumCluster cluster = new ZipNumCluster();
+		cluster.setSummaryFile(args[arg]);
+		cluster.init();
+		
+		List<Split> splits = new ZipNumSplitPlanner(cluster).plan(start, end, numSplits, balance);
+		for(int i = 0; i < splits.size(); i++) {
+			System.out.println(i + "\t" + splits.get(i));
+		}
+		System.out.flush();
+		return 0;
+	}
+	public static void main(String[] args) throws Exception {
+		int res = ToolRunner.run(new Configuration(), new ZipNumSplitTool(), args);
+		System.exit(res);
+	}
+}
@@ -12,6 +12,7 @@ import java.nio.charset.Charset;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
+import org.archive.format.gzip.zipnum.ZipNumDictionaryTrainer;
 import org.archive.format.gzip.zipnum.ZipNumWriter;
 
 public class ZipNumWriterTool implements Tool {
@@ -32,28 +33,46 @@ public class ZipNumWriterTool implements Tool {
 		if(msg != null) {
 			System.err.println(msg);
 		}
-		System.err.println("USAGE " + TOOL_NAME + " GZ SUMM LIMIT");
-		System.err.println("USAGE " + TOOL_NAME + " GZ SUM LIMIT INPUT");
+		System.err.println("USAGE " + TOOL_NAME + " [-threads N] [-dict DICT] GZ SUMM LIMIT");
+		System.err.println("USAGE " + TOOL_NAME + " [-threads N] [-dict DICT] GZ SUM LIMIT INPUT");
 		System.err.println("Write ZipNum at GZ, Summary at SUM, with LIMIT lines per record");
 		System.err.println("If INPUT is specified, read lines from INPUT, otherwise from STDIN");
+		System.err.println("With -threads, compress blocks on N threads (same output)");
+		System.err.println("With -dict, compress blocks with the preset dictionary in DICT (see " + ZipNumDictionaryTool.TOOL_NAME + ")");
 
 		return code;
 	}
 
 	public int run(String args[]) throws IOException {
-		if((args.length < 3) || (args.length > 4)) {
+		int numThreads = 1;
+		byte[] dictionary = null;
+		int arg = 0;
+		while((args.length > arg + 1) && args[arg].startsWith("-")) {
+			if(args[arg].equals("-threads")) {
+				numThreads = Integer.parseInt(args[arg + 1]);
+			} else if(args[arg].equals("-dict")) {
+				dictionary = ZipNumDictionaryTrainer.readDictionary(new File(args[arg + 1]));
+			} else {
+				return USAGE(1,"Unknown option " + args[arg]);
+			}
+			arg += 2;
+		}
+		int numArgs = args.length - arg;
+		if((numArgs < 3) || (numArgs > 4)) {
 			return USAGE(1,"Wrong number of arguments");
 		}
 		InputStream in = System.in;
-		int arg = 0;
-		if(args.length == 4) {
+		if(numArgs == 4) {
 			in = new FileInputStream(new File(args[arg++]));
 		}
 		File gz = new File(args[arg++]);
 		File summ = new File(args[arg++]);
 		int limit = Integer.valueOf(args[arg++]);
 		ZipNumWriter znw = new ZipNumWriter(new FileOutputStream(gz,false), 
-				new FileOutputStream(summ,false), limit);
+				new FileOutputStream(summ,false), limit, numThreads);
+		if(dictionary != null) {
+			znw.setDictionary(dictionary);
+		}
 
 		InputStreamReader isr = new InputStreamReader(in,UTF8);
 		BufferedReader br = new BufferedReader(isr);
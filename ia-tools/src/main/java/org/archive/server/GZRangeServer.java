@@ -16,6 +16,7 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.util.Tool;
 import org.apache.hadoop.util.ToolRunner;
 import org.archive.format.gzip.GZIPFormatException;
+import org.archive.format.gzip.GZIPMemberIndex;
 import org.archive.format.gzip.GZIPMemberSeries;
 import org.archive.format.gzip.GZIPSeriesMember;
 import org.archive.streamcontext.SimpleStream;
@@ -23,6 +24,8 @@ import org.mortbay.jetty.Request;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.handler.AbstractHandler;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.LimitInputStream;
 
@@ -31,8 +34,23 @@ public class GZRangeServer extends AbstractHandler implements Tool {
 	public static final String TOOL_DESCRIPTION = 
 		"Run a special gzrange HTTP server.";
 
+	private final static int MAX_CACHED_INDEXES = 100;
+
 	private Configuration conf;
 
+	// Sidecar indexes by path, with the modification time of the file
+	private Cache<String, CachedIndex> indexes = 
+		CacheBuilder.newBuilder().maximumSize(MAX_CACHED_INDEXES).build();
+
+	private static class CachedIndex {
+		private long lastModified;
+		private GZIPMemberIndex index;
+		private CachedIndex(long lastModified, GZIPMemberIndex index) {
+			this.lastModified = lastModified;
+			this.index = index;
+		}
+	}
+
 	public void setConf(Configuration conf) {
 		this.conf = conf;
 	}
@@ -47,6 +65,7 @@ public class GZRangeServer extends AbstractHandler implements Tool {
 		System.err.println("fashion: it will scan ahead to determing the compressed length of the gzip member");
 		System.err.println("starting at the range start offset, and will return the exact number");
 		System.err.println("of compressed bytes in the member, including setting the Content-Length response header.");
+		System.err.println("If the file has a " + GZIPMemberIndex.SUFFIX + " sidecar index, the length is read from it instead.");
 		return code;
 	}
 
@@ -88,6 +107,24 @@ public class GZRangeServer extends AbstractHandler implements Tool {
 		return -1;
 	}
 	
+	/**
+	 * @return the length of the member at offset from the sidecar index of
+	 * file, or -1 if there is no index, or offset is not a member start in it
+	 */
+	private long getIndexedGZLength(File file, long offset) throws IOException {
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		CachedIndex cached = indexes.getIfPresent(path);
+		if((cached == null) || (cached.lastModified != lastModified)) {
+			cached = new CachedIndex(lastModified, GZIPMemberIndex.forFile(file));
+			indexes.put(path, cached);
+		}
+		if(cached.index == null) {
+			return -1;
+		}
+		return cached.index.getCompressedLength(offset);
+	}
+
 	private long getGZLength(InputStream is) 
 	throws IOException, GZIPFormatException {
 		
@@ -142,11 +179,13 @@ public class GZRangeServer extends AbstractHandler implements Tool {
 						raf.seek(offset);
 						FileInputStream fis = 
 							new FileInputStream(raf.getFD());
-						long gzLength = -1;
-						try {
-							gzLength = getGZLength(fis);
-						} catch(GZIPFormatException e) {
-							
+						long gzLength = getIndexedGZLength(file, offset);
+						if(gzLength == -1) {
+							try {
+								gzLength = getGZLength(fis);
+							} catch(GZIPFormatException e) {
+								
+							}
 						}
 						if(gzLength == -1) {
 
@@ -0,0 +1,46 @@
+package org.archive.hadoop.mapreduce;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.archive.util.IAUtils;
+import org.archive.util.zip.GZIPMembersInputStream;
+
+import junit.framework.TestCase;
+
+public class ZipNumRecordWriterOldTest extends TestCase {
+	public void testDictionaryId() throws IOException, InterruptedException {
+		byte[] dictionary = "Line number Value 0000".getBytes(IAUtils.UTF8);
+		ByteArrayOutputStream main = new ByteArrayOutputStream();
+		ByteArrayOutputStream summary = new ByteArrayOutputStream();
+
+		ZipNumRecordWriterOld w = new ZipNumRecordWriterOld(20,
+				new DataOutputStream(main), new DataOutputStream(summary));
+		w.setDictionary(dictionary);
+		StringBuilder expected = new StringBuilder();
+		for(int i = 0; i < 50; i++) {
+			String key = String.format("Line number %06d",i);
+			String val = String.format("Value %06d",i);
+			w.write(new Text(key), new Text(val));
+			expected.append(key).append(' ').append(val).append('\n');
+		}
+		w.close(null);
+
+		GZIPMembersInputStream gzin = new GZIPMembersInputStream(
+				new ByteArrayInputStream(main.toByteArray()), 512, dictionary);
+		assertEquals(expected.toString(), IOUtils.toString(gzin, "UTF-8"));
+
+		// without the dictionary, the first member says it needs one
+		try {
+			new GZIPMembersInputStream(new ByteArrayInputStream(main.toByteArray()), 512, null);
+			fail();
+		} catch (ZipException e) {
+			assertTrue(e.getMessage().contains("preset dictionary"));
+		}
+	}
+}